@@ -0,0 +1,61 @@
+package dtleakanalyzer.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Building of the combined (merged) call stack of the unique stacks (getMergedMemoryAllocatorStack).
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AggregationBenchmark {
+
+	@Param({"8", "50"})
+	public int stackDepth;
+
+	@Param({"100", "1000", "10000"})
+	public int uniqueStacks;
+
+	private Object analyzer;
+	private List<Object> stackOccurences;
+	private Integer[] positions;
+
+	@Setup(Level.Trial)
+	public void setup() throws Throwable {
+		analyzer = AnalyzerHandles.newAnalyzer(null, null);
+		SyntheticTraces traces = new SyntheticTraces(stackDepth, uniqueStacks, 42);
+		stackOccurences = new ArrayList<Object>();
+		positions = new Integer[uniqueStacks];
+		int i = 0;
+		for (String stack : traces.getAllocationStacks()) {
+			String normalized = (String)AnalyzerHandles.clearTopLevelStackReturnPointer.invoke(stack.replace("              ", ""));
+			stackOccurences.add(AnalyzerHandles.newStackOccurence.invoke(normalized, 1 + i % 100));
+			positions[i] = i;
+			i++;
+		}
+	}
+
+	@Benchmark
+	public Object getMergedMemoryAllocatorStack() throws Throwable {
+		return AnalyzerHandles.getMergedMemoryAllocatorStack.invoke(analyzer, 0, positions, stackOccurences);
+	}
+}
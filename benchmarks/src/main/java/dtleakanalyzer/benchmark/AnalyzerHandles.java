@@ -0,0 +1,88 @@
+package dtleakanalyzer.benchmark;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Method handles to the analyzer.
+ *
+ * The analyzer is a single class in the default package, which cannot be referenced from
+ * the (named) benchmark package, so the benchmarks call it through these handles.
+ * The handles are constants, so the JIT inlines them as if they were direct calls.
+ *
+ */
+final class AnalyzerHandles {
+	static final Class<?> analyzerClass = load("DTLeakAnalyzer");
+	static final Class<?> optionsClass = load("AnalyzerOptions");
+	static final Class<?> stackOccurenceClass = load("DTLeakAnalyzer$StackOccurence");
+	static final Class<?> metricsClass = load("AnalysisMetrics");
+	static final Class<?> processedFileParserClass = load("ProcessedFileParser");
+
+	//trace readers
+	static final MethodHandle readMemoryAllocatorTraceEntry = method(analyzerClass, "readMemoryAllocatorTraceEntry", BufferedReader.class);
+	static final MethodHandle readBrkTraceEntry = method(analyzerClass, "readBrkTraceEntry", BufferedReader.class);
+	static final MethodHandle newProcessedFileParser = constructor(processedFileParserClass, int.class);
+	static final MethodHandle parseProcessedFile = method(processedFileParserClass, "parse", File.class, metricsClass);
+	static final MethodHandle newAnalysisMetrics = constructor(metricsClass);
+	static final MethodHandle clearTopLevelStackReturnPointer = method(analyzerClass, "clearTopLevelStackReturnPointer", String.class);
+
+	//analysis
+	static final MethodHandle newAnalyzer = constructor(analyzerClass, String.class, String.class, optionsClass);
+	static final MethodHandle parseOptions = method(optionsClass, "parse", String[].class);
+	static final MethodHandle performMemoyAllocatorAnalysis = method(analyzerClass, "performMemoyAllocatorAnalysis");
+	static final MethodHandle performProcessedFileAnalysis = method(analyzerClass, "performProcessedFileAnalysis", Map.class);
+	static final MethodHandle getFreeMemoryStackRelationships = method(analyzerClass, "getFreeMemoryStackRelationships", File[].class);
+
+	//aggregation
+	static final MethodHandle newStackOccurence = constructor(stackOccurenceClass, String.class, long.class);
+	static final MethodHandle getMergedMemoryAllocatorStack = method(analyzerClass, "getMergedMemoryAllocatorStack", int.class, Integer[].class, List.class);
+
+	//reports
+	static final MethodHandle printMemoryAllocatorCombinedAnalysisResults = method(analyzerClass, "printMemoryAllocatorCombinedAnalysisResults", Map.class, String.class);
+	static final MethodHandle printProcessedFilesCombinedAnalysisResults = method(analyzerClass, "printProcessedFilesCombinedAnalysisResults", Map.class, String.class, boolean.class);
+
+	private AnalyzerHandles() {
+	}
+
+	/**
+	 * Creates an analyzer with the passed command line options
+	 */
+	static Object newAnalyzer(String inFile, String outFile, String... options) throws Throwable {
+		Object analyzerOptions = parseOptions.invoke(options);
+		return newAnalyzer.invoke(inFile, outFile, analyzerOptions);
+	}
+
+	private static Class<?> load(String name) {
+		try {
+			return Class.forName(name);
+		} catch (ClassNotFoundException e) {
+			throw new IllegalStateException("analyzer class not found:"+name, e);
+		}
+	}
+
+	private static MethodHandle method(Class<?> owner, String name, Class<?>... parameterTypes) {
+		try {
+			Method method = owner.getDeclaredMethod(name, parameterTypes);
+			method.setAccessible(true);
+			return MethodHandles.lookup().unreflect(method);
+		} catch (ReflectiveOperationException e) {
+			throw new IllegalStateException("analyzer method not found:"+name, e);
+		}
+	}
+
+	private static MethodHandle constructor(Class<?> owner, Class<?>... parameterTypes) {
+		try {
+			Constructor<?> constructor = owner.getDeclaredConstructor(parameterTypes);
+			constructor.setAccessible(true);
+			return MethodHandles.lookup().unreflectConstructor(constructor);
+		} catch (ReflectiveOperationException e) {
+			throw new IllegalStateException("analyzer constructor not found:"+owner.getName(), e);
+		}
+	}
+}
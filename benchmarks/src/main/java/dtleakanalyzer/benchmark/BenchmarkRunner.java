@@ -0,0 +1,49 @@
+package dtleakanalyzer.benchmark;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks with the GC profiler, so that every result reports the allocation
+ * rate next to the throughput. Accepts the usual JMH command line arguments,
+ * i.e. a benchmark name pattern or -p stackDepth=50, and handles the help and list
+ * arguments (-h, -l, -lp, -lprof, -lrf) as the JMH main class does.
+ *
+ */
+public class BenchmarkRunner {
+
+	public static void main(String[] args) throws Exception {
+		CommandLineOptions commandLineOptions;
+		try {
+			commandLineOptions = new CommandLineOptions(args);
+		} catch (CommandLineOptionException e) {
+			System.err.println("Error parsing command line:");
+			System.err.println(" "+e.getMessage());
+			System.exit(1);
+			return;
+		}
+		Options options = new OptionsBuilder()
+				.parent(commandLineOptions)
+				.addProfiler(GCProfiler.class)
+				.build();
+		Runner runner = new Runner(options);
+
+		if (commandLineOptions.shouldHelp()) {
+			commandLineOptions.showHelp();
+		} else if (commandLineOptions.shouldList()) {
+			runner.list();
+		} else if (commandLineOptions.shouldListWithParams()) {
+			runner.listWithParams(commandLineOptions);
+		} else if (commandLineOptions.shouldListProfilers()) {
+			commandLineOptions.listProfilers();
+		} else if (commandLineOptions.shouldListResultFormats()) {
+			commandLineOptions.listResultFormats();
+		} else {
+			runner.run();
+		}
+	}
+}
@@ -0,0 +1,65 @@
+package dtleakanalyzer.benchmark;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The complete memory allocator analysis of a trace file (performMemoyAllocatorAnalysis):
+ * reading, replay of the allocations and the leak / wrong free heuristics.
+ * One operation is one complete file.
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ReplayBenchmark {
+
+	@Param({"8", "50"})
+	public int stackDepth;
+
+	@Param({"100", "10000"})
+	public int uniqueStacks;
+
+	@Param({"10000", "50000"})
+	public int entries;
+
+	@Param({"1", "4"})
+	public int replayShards;
+
+	private File memoryAllocatorTrace;
+
+	@Setup(Level.Trial)
+	public void setup() throws Throwable {
+		memoryAllocatorTrace = File.createTempFile("trace-memalloc", ".log");
+		new SyntheticTraces(stackDepth, uniqueStacks, 42).writeMemoryAllocatorTrace(memoryAllocatorTrace, entries);
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		memoryAllocatorTrace.delete();
+	}
+
+	@Benchmark
+	public Object performMemoyAllocatorAnalysis() throws Throwable {
+		Object analyzer = AnalyzerHandles.newAnalyzer(memoryAllocatorTrace.getAbsolutePath(), null, "--replay-shards="+replayShards);
+		AnalyzerHandles.performMemoyAllocatorAnalysis.invoke(analyzer);
+		return analyzer;
+	}
+}
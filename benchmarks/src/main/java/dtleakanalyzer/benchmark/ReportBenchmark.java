@@ -0,0 +1,105 @@
+package dtleakanalyzer.benchmark;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Writing of the combined reports of the -d and -p modes.
+ *
+ * The report printers consume the per file results, so the analyses are
+ * repeated (outside of the measurement) before every invocation.
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 20)
+@Fork(1)
+public class ReportBenchmark {
+
+	@Param({"8", "50"})
+	public int stackDepth;
+
+	@Param({"100", "1000"})
+	public int uniqueStacks;
+
+	@Param({"3", "9"})
+	public int files;
+
+	private File directory;
+	private File[] memoryAllocatorTraces;
+	private File[] processedTraces;
+	private File report;
+	private Object stackRelationships;
+
+	private Map<File, Object> memoryAllocatorResults;
+	private Map<File, Object> processedResults;
+
+	@Setup(Level.Trial)
+	public void setup() throws Throwable {
+		directory = File.createTempFile("dtleakanalyzer", "");
+		directory.delete();
+		directory.mkdir();
+		memoryAllocatorTraces = new File[files];
+		processedTraces = new File[files];
+		for (int i=0;i<files;i++) {
+			SyntheticTraces traces = new SyntheticTraces(stackDepth, uniqueStacks, i);
+			memoryAllocatorTraces[i] = new File(directory, "trace-memalloc."+i);
+			traces.writeMemoryAllocatorTrace(memoryAllocatorTraces[i], 20 * uniqueStacks);
+			processedTraces[i] = new File(directory, "trace-memalloc-proc."+i);
+			traces.writeProcessedTrace(processedTraces[i]);
+		}
+		report = new File(directory, "combined.report");
+		stackRelationships = AnalyzerHandles.getFreeMemoryStackRelationships.invoke(memoryAllocatorTraces);
+	}
+
+	@Setup(Level.Invocation)
+	public void analyze() throws Throwable {
+		memoryAllocatorResults = new HashMap<File, Object>();
+		processedResults = new HashMap<File, Object>();
+		for (int i=0;i<files;i++) {
+			Object analyzer = AnalyzerHandles.newAnalyzer(memoryAllocatorTraces[i].getAbsolutePath(), null);
+			AnalyzerHandles.performMemoyAllocatorAnalysis.invoke(analyzer);
+			memoryAllocatorResults.put(memoryAllocatorTraces[i], analyzer);
+
+			Object processedAnalyzer = AnalyzerHandles.newAnalyzer(processedTraces[i].getAbsolutePath(), null);
+			AnalyzerHandles.performProcessedFileAnalysis.invoke(processedAnalyzer, stackRelationships);
+			processedResults.put(processedTraces[i], processedAnalyzer);
+		}
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		for (File file : directory.listFiles()) {
+			file.delete();
+		}
+		directory.delete();
+	}
+
+	@Benchmark
+	public void printMemoryAllocatorCombinedAnalysisResults() throws Throwable {
+		AnalyzerHandles.printMemoryAllocatorCombinedAnalysisResults.invoke(memoryAllocatorResults, report.getAbsolutePath());
+	}
+
+	@Benchmark
+	public void printProcessedFilesCombinedAnalysisResults() throws Throwable {
+		AnalyzerHandles.printProcessedFilesCombinedAnalysisResults.invoke(processedResults, report.getAbsolutePath(), true);
+	}
+}
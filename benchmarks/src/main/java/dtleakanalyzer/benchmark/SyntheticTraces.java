@@ -0,0 +1,150 @@
+package dtleakanalyzer.benchmark;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Writes deterministic synthetic traces in the formats of the D scripts
+ * (trace-memalloc.d, trace-procmem-increase.d and trace-memalloc-proc.d).
+ *
+ * Stacks form a tree: the frame on depth d of stack s is shared by all stacks
+ * with the same s modulo 2^(d+1), so the merged (combined) stacks have a realistic shape.
+ * The frame closest to the allocator makes each stack unique.
+ *
+ */
+final class SyntheticTraces {
+	private static final String timestamp = "2018 Nov  8 08:03:54";
+
+	private final int stackDepth;
+	private final int uniqueStacks;
+	private final Random random;
+
+	//raw stacks, top level frame first, as printed by ustack()
+	private final List<String> allocationStacks;
+	private final List<String> freeStacks;
+
+	SyntheticTraces(int stackDepth, int uniqueStacks, long seed) {
+		this.stackDepth = stackDepth;
+		this.uniqueStacks = uniqueStacks;
+		this.random = new Random(seed);
+		this.allocationStacks = new ArrayList<String>(uniqueStacks);
+		this.freeStacks = new ArrayList<String>(uniqueStacks);
+		for (int s=0;s<uniqueStacks;s++) {
+			allocationStacks.add(stack("libc.so.1`malloc", s));
+			freeStacks.add(stack("libc.so.1`free", s));
+		}
+	}
+
+	private String stack(String topFrame, int s) {
+		StringBuilder sb = new StringBuilder();
+		sb.append("              ").append(topFrame).append("+0x").append(Integer.toHexString(16 + random.nextInt(64))).append('\n');
+		//application frames, the deepest (closest to the allocator) first
+		for (int d=stackDepth-3;d>=0;d--) {
+			//the frame closest to the allocator is unique per stack
+			long branch = (d >= 30 || d == stackDepth-3) ? s : s % (1L << (d+1));
+			sb.append("              app`fn_").append(d).append('_').append(branch).append("+0x").append(Integer.toHexString(16 + (int)(branch % 240))).append('\n');
+		}
+		sb.append("              app`main+0x10\n");
+		sb.append("              app`_start+0x7c\n");
+		return sb.toString();
+	}
+
+	/**
+	 * @return the raw allocation stacks, as found on the traces
+	 */
+	List<String> getAllocationStacks() {
+		return allocationStacks;
+	}
+
+	/**
+	 * Writes a trace-memalloc.d trace. About half of the entries are allocations,
+	 * one tenth reallocs and the rest frees of live or unknown memory.
+	 */
+	void writeMemoryAllocatorTrace(File file, int entries) throws IOException {
+		try (Writer writer = new BufferedWriter(new FileWriter(file))) {
+			List<Long> live = new ArrayList<Long>();
+			List<Integer> liveStacks = new ArrayList<Integer>();
+			long nextAddress = 0x8000000L;
+			for (int i=0;i<entries;i++) {
+				int tid = 1 + random.nextInt(8);
+				double r = random.nextDouble();
+				if (r < 0.5 || live.isEmpty()) {
+					int s = random.nextInt(uniqueStacks);
+					nextAddress += 16 * (1 + random.nextInt(8));
+					writer.write("<__"+i+";"+timestamp+";"+tid+";malloc;0x"+Long.toHexString(nextAddress)+";"+(1 + random.nextInt(4096))+";\n");
+					writer.write(allocationStacks.get(s));
+					live.add(nextAddress);
+					liveStacks.add(s);
+				} else if (r < 0.6) {
+					int index = random.nextInt(live.size());
+					nextAddress += 16 * (1 + random.nextInt(8));
+					writer.write("<__"+i+";"+timestamp+";"+tid+";realloc;0x"+Long.toHexString(live.get(index))+";0x"+Long.toHexString(nextAddress)+";"+(1 + random.nextInt(8192))+";\n");
+					writer.write(allocationStacks.get(liveStacks.get(index)));
+					live.set(index, nextAddress);
+				} else if (r < 0.97) {
+					int index = random.nextInt(live.size());
+					int last = live.size()-1;
+					writer.write("<__"+i+";"+timestamp+";"+tid+";free;0x"+Long.toHexString(live.get(index))+";\n");
+					writer.write(freeStacks.get(liveStacks.get(index)));
+					live.set(index, live.get(last));
+					liveStacks.set(index, liveStacks.get(last));
+					live.remove(last);
+					liveStacks.remove(last);
+				} else {
+					//free of memory allocated before the trace
+					writer.write("<__"+i+";"+timestamp+";"+tid+";free;0x"+Long.toHexString(0x1000L + 16L * random.nextInt(1 << 20))+";\n");
+					writer.write(freeStacks.get(random.nextInt(uniqueStacks)));
+				}
+				writer.write("__>\n\n");
+			}
+			writer.write("== FINISHED ==\n\n");
+		}
+	}
+
+	/**
+	 * Writes a trace-procmem-increase.d trace with brk and sbrk entries
+	 */
+	void writeBrkTrace(File file, int entries) throws IOException {
+		try (Writer writer = new BufferedWriter(new FileWriter(file))) {
+			long brk = 0x8100000L;
+			for (int i=0;i<entries;i++) {
+				int s = random.nextInt(uniqueStacks);
+				long increase = 4096L * (random.nextInt(8) - 2);
+				if (random.nextBoolean()) {
+					brk += increase;
+					writer.write("<__"+i+";"+timestamp+";1;brk;0x"+Long.toHexString(brk)+";0;\n");
+				} else {
+					writer.write("<__"+i+";"+timestamp+";1;sbrk;0x"+Long.toHexString(brk)+";"+increase+";\n");
+					brk += increase;
+				}
+				writer.write(allocationStacks.get(s));
+				writer.write("__>\n\n");
+			}
+		}
+	}
+
+	/**
+	 * Writes a trace-memalloc-proc.d (aggregated) trace
+	 */
+	void writeProcessedTrace(File file) throws IOException {
+		try (Writer writer = new BufferedWriter(new FileWriter(file))) {
+			writer.write("== FINISHED ==\n\n== allocation stacks ==\n\n");
+			for (int s=0;s<uniqueStacks;s++) {
+				writer.write(allocationStacks.get(s));
+				writer.write("           "+(1 + random.nextInt(100000))+"\n\n");
+			}
+			writer.write("\n== deallocation stacks ==\n\n");
+			for (int s=0;s<uniqueStacks;s++) {
+				writer.write(freeStacks.get(s));
+				writer.write("           "+(1 + random.nextInt(100000))+"\n\n");
+			}
+			writer.write("\n== mem allocations vs deletions ==\n\n");
+		}
+	}
+}
@@ -0,0 +1,110 @@
+package dtleakanalyzer.benchmark;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Parsing of complete trace files with the trace entry readers, and the top level
+ * stack normalization. One operation is one complete file (or all unique stacks).
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TraceParsingBenchmark {
+
+	@Param({"8", "50"})
+	public int stackDepth;
+
+	@Param({"100", "10000"})
+	public int uniqueStacks;
+
+	@Param({"10000", "50000"})
+	public int entries;
+
+	private File memoryAllocatorTrace;
+	private File brkTrace;
+	private File processedTrace;
+	private String[] rawStacks;
+	private Object analyzer;
+
+	@Setup(Level.Trial)
+	public void setup() throws Throwable {
+		SyntheticTraces traces = new SyntheticTraces(stackDepth, uniqueStacks, 42);
+		memoryAllocatorTrace = File.createTempFile("trace-memalloc", ".log");
+		brkTrace = File.createTempFile("trace-procmem-increase", ".log");
+		processedTrace = File.createTempFile("trace-memalloc-proc", ".log");
+		traces.writeMemoryAllocatorTrace(memoryAllocatorTrace, entries);
+		traces.writeBrkTrace(brkTrace, entries);
+		traces.writeProcessedTrace(processedTrace);
+
+		List<String> stacks = traces.getAllocationStacks();
+		rawStacks = new String[stacks.size()];
+		for (int i=0;i<rawStacks.length;i++) {
+			rawStacks[i] = stacks.get(i).replace("              ", "");
+		}
+		analyzer = AnalyzerHandles.newAnalyzer(null, null);
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		memoryAllocatorTrace.delete();
+		brkTrace.delete();
+		processedTrace.delete();
+	}
+
+	@Benchmark
+	public void readMemoryAllocatorTraceEntry(Blackhole blackhole) throws Throwable {
+		try (BufferedReader br = new BufferedReader(new FileReader(memoryAllocatorTrace))) {
+			Object entry;
+			while ((entry = AnalyzerHandles.readMemoryAllocatorTraceEntry.invoke(br)) != null) {
+				blackhole.consume(entry);
+			}
+		}
+	}
+
+	@Benchmark
+	public void readBrkTraceEntry(Blackhole blackhole) throws Throwable {
+		try (BufferedReader br = new BufferedReader(new FileReader(brkTrace))) {
+			Object entry;
+			while ((entry = AnalyzerHandles.readBrkTraceEntry.invoke(analyzer, br)) != null) {
+				blackhole.consume(entry);
+			}
+		}
+	}
+
+	@Benchmark
+	public void parseProcessedFile(Blackhole blackhole) throws Throwable {
+		//allocation and de-allocation sections, on all processors
+		Object parser = AnalyzerHandles.newProcessedFileParser.invoke(0);
+		blackhole.consume(AnalyzerHandles.parseProcessedFile.invoke(parser, processedTrace, AnalyzerHandles.newAnalysisMetrics.invoke()));
+	}
+
+	@Benchmark
+	public void clearTopLevelStackReturnPointer(Blackhole blackhole) throws Throwable {
+		for (String stack : rawStacks) {
+			blackhole.consume(AnalyzerHandles.clearTopLevelStackReturnPointer.invoke(stack));
+		}
+	}
+}
@@ -1,2 +1,2 @@
-javac -d classes src/DTLeakAnalyzer.java
+javac -d classes src/*.java
 jar cvfm dtleakanalyzer.jar resources/manifest.txt -C classes .
\ No newline at end of file
@@ -0,0 +1,154 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Command line client of the AnalysisDaemon: sends the arguments of an analysis (as given to
+ * DTLeakAnalyzer) as a job to the daemon, prints the console output of the job and exits with
+ * its status.
+ *
+ * The files and directories of the arguments are sent as absolute paths, the daemon may run
+ * in another working directory. Each request starts with the token that the daemon wrote to its
+ * token file.
+ *
+ */
+public class AnalysisClient {
+
+	public static void printArgs() {
+		System.out.println("arguments: <analyzer arguments> [--port=<n>] [--token-file=<file>]");
+		System.out.println("arguments: --stop [--port=<n>] [--token-file=<file>]");
+		System.out.println("  <analyzer arguments>   the arguments and options of DTLeakAnalyzer, i.e. -d <directory> <output file>");
+		System.out.println("  --port=<n>             port of the daemon on the loopback address (default "+AnalysisDaemon.defaultPort+")");
+		System.out.println("  --token-file=<file>    token file of the daemon (default "+AnalysisDaemon.getDefaultTokenFile(AnalysisDaemon.defaultPort)+")");
+		System.out.println("  --stop                 stops the daemon after its running jobs");
+	}
+
+	/**
+	 * Entry point of the client
+	 * @param args arguments: <analyzer arguments> [--port=<n>] [--token-file=<file>] or --stop [--port=<n>] [--token-file=<file>]
+	 */
+	public static void main(String[] args) throws IOException {
+		int port = AnalysisDaemon.defaultPort;
+		File tokenFile = null;
+		boolean stop = false;
+		List<String> jobArgs = new ArrayList<String>();
+		try {
+			for (String arg : args) {
+				if (arg.startsWith("--port=")) {
+					port = AnalyzerOptions.parse(new String[]{arg}).getInt("port", AnalysisDaemon.defaultPort);
+				} else if (arg.startsWith("--token-file=")) {
+					tokenFile = new File(arg.substring("--token-file=".length()));
+				} else if (arg.equals("--stop")) {
+					stop = true;
+				} else {
+					jobArgs.add(arg);
+				}
+			}
+		} catch (IllegalArgumentException e) {
+			System.out.println(e.getMessage());
+			printArgs();
+			return;
+		}
+		if (stop ? !jobArgs.isEmpty() : jobArgs.isEmpty()) {
+			printArgs();
+			return;
+		}
+
+		if (tokenFile == null) {
+			tokenFile = AnalysisDaemon.getDefaultTokenFile(port);
+		}
+		String token;
+		try {
+			token = AnalysisDaemon.readToken(tokenFile);
+		} catch (IOException e) {
+			System.out.println("cannot read the token file of the analysis daemon "+tokenFile+":"+e.getMessage());
+			System.exit(1);
+			return;
+		}
+
+		int status;
+		try {
+			status = stop ? send(port, token, AnalysisDaemon.stopCommand, null) : send(port, token, AnalysisDaemon.jobCommand, getAbsoluteArguments(jobArgs));
+		} catch (ConnectException e) {
+			System.out.println("cannot connect to the analysis daemon on port "+port+":"+e.getMessage());
+			status = 1;
+		}
+		System.exit(status);
+	}
+
+	/**
+	 * Returns the arguments with the files and directories as absolute paths. The options and the
+	 * -f, -d, -p, -c and memalloc / brk arguments are kept as they are.
+	 */
+	private static String[] getAbsoluteArguments(List<String> args) {
+		String[] ret = new String[args.size()];
+		for (int i=0;i<ret.length;i++) {
+			String arg = args.get(i);
+			boolean traceType = i > 0 && args.get(i-1).equals("-f");
+			if (arg.startsWith("--") || arg.equals("-f") || arg.equals("-d") || arg.equals("-p") || arg.equals("-c") || traceType) {
+				ret[i] = arg;
+			} else {
+				ret[i] = new File(arg).getAbsolutePath();
+			}
+		}
+		return ret;
+	}
+
+	/**
+	 * Sends a command to the daemon and prints the output of the job
+	 * @return the exit status of the job
+	 */
+	private static int send(int port, String token, String command, String[] args) throws IOException {
+		try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), port)) {
+			DataOutputStream output = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+			output.writeUTF(token);
+			output.writeUTF(command);
+			if (args != null) {
+				output.writeInt(args.length);
+				for (String arg : args) {
+					output.writeUTF(arg);
+				}
+			}
+			output.flush();
+
+			DataInputStream input = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+			byte[] buffer = new byte[8192];
+			while (true) {
+				byte frame;
+				try {
+					frame = input.readByte();
+				} catch (EOFException e) {
+					System.out.println("the analysis daemon closed the connection");
+					return 1;
+				}
+				if (frame == AnalysisDaemon.outputFrame) {
+					int length = input.readInt();
+					if (length > buffer.length) {
+						buffer = new byte[length];
+					}
+					input.readFully(buffer, 0, length);
+					System.out.write(buffer, 0, length);
+					System.out.flush();
+				} else if (frame == AnalysisDaemon.exitFrame) {
+					int status = input.readInt();
+					String message = input.readUTF();
+					if (!message.isEmpty()) {
+						System.out.println(message);
+					}
+					return status;
+				} else {
+					throw new IOException("unexpected response of the analysis daemon:"+frame);
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,566 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Resident analyzer that runs the analyses (memalloc, brk, -d and -p) as jobs sent by the
+ * AnalysisClient over a local (loopback) socket.
+ *
+ * The daemon avoids the JVM start and JIT warm-up of each run, and keeps warm what the analyses
+ * build again on every run: the frame dictionaries of the frame normalizers and the exemplars of the
+ * stack keyers (one per stack setting), the per-file summaries of the -d mode and the stack
+ * relationships of the -p mode.
+ *
+ * The warm state is bounded: the normalizers and keyers of the 4 most recently used settings are kept,
+ * and when no job runs the normalizer and the keyer in use are dropped once their frame dictionary or
+ * their exemplars outgrow a limit, so a stream of distinct traces does not grow the daemon for ever.
+ *
+ * The jobs run on a shared pool of job threads. The frame normalizer and the stack keyer are process
+ * wide, so jobs with the same stack settings (--strip-offsets, --stack-key, --allocator-modules) run
+ * at the same time, a job with other settings waits until the running jobs have finished. The console
+ * output of a job is sent to its client, the reports are written by the daemon, as in a normal run.
+ *
+ * Only the clients of the user of the daemon are served: the daemon writes a random token to a file that
+ * only its user can read (0600), and every request starts with this token. The requests are read on
+ * their own threads, so a slow or idle client does not hold up the other connections.
+ *
+ * Protocol: the client sends the token, a command (job or stop) and, for a job, the arguments. The daemon
+ * answers with output frames ('O', length, bytes) and an exit frame ('X', status, message).
+ *
+ */
+public class AnalysisDaemon {
+	//default port of the daemon, on the loopback address
+	public static final int defaultPort = 17321;
+
+	//commands and response frames
+	static final String jobCommand = "job";
+	static final String stopCommand = "stop";
+	static final byte outputFrame = 'O';
+	static final byte exitFrame = 'X';
+
+	//time a client has to send its request
+	private static final int requestTimeoutMillis = 10000;
+	private static final int maxArguments = 1000;
+
+	//random bytes of the token
+	private static final int tokenBytes = 32;
+
+	//stack settings whose normalizer and keyer are kept warm, and the size from which they are dropped between jobs
+	private static final int warmSettings = 4;
+	private static final int maxWarmFrames = 500000;
+	private static final int maxWarmExemplars = 100000;
+
+	private final ServerSocket serverSocket;
+	private final File tokenFile;
+	private final byte[] token;
+	private final ExecutorService requestExecutor;
+	private final ExecutorService jobExecutor;
+	private final int jobThreads;
+	private final AtomicLong jobIds;
+
+	//console output of the job threads, System.out for the other threads
+	private final ThreadLocal<OutputStream> jobOutput;
+	private final PrintStream console;
+
+	//warm frame normalizers and stack keyers, by their settings, the most recently used last
+	private final Map<String, FrameNormalizer> frameNormalizers;
+	private final Map<String, StackKeyer> stackKeyers;
+
+	//stack settings of the running jobs
+	private String currentSettings;
+	private int runningJobs;
+
+	private volatile boolean stopping;
+
+	public static void printArgs() {
+		System.out.println("arguments: [options]");
+		System.out.println("options:");
+		System.out.println("  --port=<n>             port of the daemon on the loopback address (default "+defaultPort+")");
+		System.out.println("  --jobs=<n>             jobs that run at the same time (default 0 = number of processors)");
+		System.out.println("  --progress=<seconds>   interval of the progress lines of all jobs on the daemon console (default 0 = none)");
+		System.out.println("  --token-file=<file>    file of the token of the clients, only readable by the user (default "+getDefaultTokenFile(defaultPort)+")");
+	}
+
+	/**
+	 * @param port the port of the daemon
+	 * @return the default token file of a daemon, in the home directory of the user
+	 */
+	static File getDefaultTokenFile(int port) {
+		return new File(new File(System.getProperty("user.home"), ".dtleakanalyzer"), "daemon."+port+".token");
+	}
+
+	/**
+	 * Entry point of the daemon
+	 * @param args arguments: [options]
+	 */
+	public static void main(String[] args) throws IOException {
+		AnalyzerOptions options;
+		int port;
+		int jobs;
+		long progressInterval;
+		File tokenFile;
+		try {
+			options = AnalyzerOptions.parse(args);
+			port = options.getInt("port", defaultPort);
+			jobs = options.getInt("jobs", 0);
+			progressInterval = options.getLong("progress", 0);
+			tokenFile = options.isSet("token-file") ? new File(options.getString("token-file", null)) : getDefaultTokenFile(port);
+			if (jobs < 0) {
+				throw new IllegalArgumentException("option --jobs cannot be negative:"+jobs);
+			}
+		} catch (IllegalArgumentException e) {
+			System.out.println(e.getMessage());
+			printArgs();
+			return;
+		}
+		if (options.getArguments().length != 0) {
+			printArgs();
+			return;
+		}
+
+		//live introspection through JMX and flight recorder events
+		AnalyzerMonitor.getInstance().register();
+
+		ProgressReporter progressReporter = null;
+		if (progressInterval > 0) {
+			progressReporter = new ProgressReporter(AnalyzerMonitor.getInstance(), progressInterval);
+			progressReporter.start();
+		}
+		try {
+			new AnalysisDaemon(port, jobs == 0 ? Runtime.getRuntime().availableProcessors() : jobs, tokenFile).run();
+		} finally {
+			if (progressReporter != null) {
+				progressReporter.stop();
+			}
+		}
+	}
+
+	/**
+	 * new daemon, listening on the loopback address
+	 * @param port the port
+	 * @param jobThreads the jobs that run at the same time
+	 * @param tokenFile the file where the token of the clients is written
+	 * @throws IOException if the port cannot be bound or the token file cannot be written
+	 */
+	public AnalysisDaemon(int port, int jobThreads, File tokenFile) throws IOException {
+		this.serverSocket = new ServerSocket(port, 50, InetAddress.getLoopbackAddress());
+		this.tokenFile = tokenFile;
+		try {
+			this.token = createToken(tokenFile);
+		} catch (IOException e) {
+			serverSocket.close();
+			throw new IOException("cannot write the token file "+tokenFile+":"+e.getMessage(), e);
+		}
+		this.jobThreads = jobThreads;
+		this.requestExecutor = Executors.newCachedThreadPool();
+		this.jobExecutor = Executors.newFixedThreadPool(jobThreads);
+		this.jobIds = new AtomicLong();
+		this.jobOutput = new ThreadLocal<OutputStream>();
+		this.console = System.out;
+		this.frameNormalizers = new LinkedHashMap<String, FrameNormalizer>(warmSettings, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, FrameNormalizer> eldest) {
+				return size() > warmSettings;
+			}
+		};
+		this.stackKeyers = new LinkedHashMap<String, StackKeyer>(warmSettings, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, StackKeyer> eldest) {
+				return size() > warmSettings;
+			}
+		};
+	}
+
+	/**
+	 * Accepts the jobs until a stop command is received, then waits for the running jobs
+	 * @throws IOException if the connections cannot be accepted
+	 */
+	public void run() throws IOException {
+		System.setOut(new PrintStream(new OutputStream() {
+			@Override
+			public void write(int b) throws IOException {
+				getOutput().write(b);
+			}
+
+			@Override
+			public void write(byte[] b, int off, int len) throws IOException {
+				getOutput().write(b, off, len);
+			}
+
+			@Override
+			public void flush() throws IOException {
+				getOutput().flush();
+			}
+		}, true));
+		console.println("Analysis daemon listening on "+serverSocket.getInetAddress().getHostAddress()+":"+serverSocket.getLocalPort()+" with "+jobThreads+" job threads, token file "+tokenFile);
+		try {
+			while (!stopping) {
+				final Socket socket;
+				try {
+					socket = serverSocket.accept();
+				} catch (SocketException e) {
+					if (stopping) {
+						break;
+					}
+					throw e;
+				}
+				requestExecutor.execute(new Runnable() {
+					@Override
+					public void run() {
+						accept(socket);
+					}
+				});
+			}
+		} finally {
+			//the requests being read are scheduled before the job threads stop
+			requestExecutor.shutdown();
+			jobExecutor.shutdown();
+			try {
+				requestExecutor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+				jobExecutor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			System.setOut(console);
+			serverSocket.close();
+			Files.deleteIfExists(tokenFile.toPath());
+			console.println("Analysis daemon stopped");
+		}
+	}
+
+	/**
+	 * Writes a new random token to a file that only the user can read and write
+	 * @param tokenFile the file, replaced if it exists
+	 * @return the token
+	 * @throws IOException if the file cannot be written
+	 */
+	private static byte[] createToken(File tokenFile) throws IOException {
+		byte[] random = new byte[tokenBytes];
+		new SecureRandom().nextBytes(random);
+		StringBuilder token = new StringBuilder(tokenBytes * 2);
+		for (byte b : random) {
+			token.append(String.format("%02x", b & 0xff));
+		}
+
+		Path path = tokenFile.getAbsoluteFile().toPath();
+		Path directory = path.getParent();
+		if (directory != null && !Files.isDirectory(directory)) {
+			try {
+				Files.createDirectories(directory, PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rwx------")));
+			} catch (UnsupportedOperationException e) {
+				//not a POSIX file system
+				Files.createDirectories(directory);
+			}
+		}
+		//a new file, created with its permissions, so that it is never readable by others
+		Files.deleteIfExists(path);
+		try {
+			Files.createFile(path, PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rw-------")));
+		} catch (UnsupportedOperationException e) {
+			//not a POSIX file system
+			Files.createFile(path);
+			File file = path.toFile();
+			file.setReadable(false, false);
+			file.setReadable(true, true);
+			file.setWritable(false, false);
+			file.setWritable(true, true);
+		}
+		Files.write(path, token.toString().getBytes(StandardCharsets.US_ASCII));
+		return token.toString().getBytes(StandardCharsets.US_ASCII);
+	}
+
+	/**
+	 * Reads the token of a daemon
+	 * @param tokenFile the token file written by the daemon
+	 * @return the token
+	 * @throws IOException if the file cannot be read
+	 */
+	static String readToken(File tokenFile) throws IOException {
+		return new String(Files.readAllBytes(tokenFile.toPath()), StandardCharsets.US_ASCII).trim();
+	}
+
+	private OutputStream getOutput() {
+		OutputStream output = jobOutput.get();
+		return output == null ? console : output;
+	}
+
+	/**
+	 * Reads the request of a client and schedules its job, on a request thread
+	 */
+	private void accept(final Socket socket) {
+		final ClientOutput output;
+		String command;
+		final String[] args;
+		try {
+			socket.setSoTimeout(requestTimeoutMillis);
+			DataInputStream input = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+			output = new ClientOutput(socket);
+			if (!MessageDigest.isEqual(input.readUTF().getBytes(StandardCharsets.US_ASCII), token)) {
+				console.println("rejected a request without the token of the daemon");
+				output.exit(1, "not authorized: the token does not match the token file of the daemon");
+				close(socket);
+				return;
+			}
+			command = input.readUTF();
+			if (command.equals(jobCommand)) {
+				int count = input.readInt();
+				if (count < 0 || count > maxArguments) {
+					throw new IOException("unexpected number of arguments:"+count);
+				}
+				args = new String[count];
+				for (int i=0;i<args.length;i++) {
+					args[i] = input.readUTF();
+				}
+			} else {
+				args = null;
+			}
+			socket.setSoTimeout(0);
+		} catch (IOException e) {
+			console.println("cannot read the request of a client:"+e.getMessage());
+			close(socket);
+			return;
+		}
+
+		if (command.equals(stopCommand)) {
+			console.println("Stop requested, waiting for the running jobs");
+			stopping = true;
+			output.exit(0, "daemon stopping");
+			close(socket);
+			try {
+				serverSocket.close();
+			} catch (IOException e) {
+				//stops accepting either way
+			}
+		} else if (args == null) {
+			output.exit(1, "unknown command:"+command);
+			close(socket);
+		} else {
+			final long jobId = jobIds.incrementAndGet();
+			try {
+				jobExecutor.execute(new Runnable() {
+					@Override
+					public void run() {
+						runJob(jobId, args, output);
+						close(socket);
+					}
+				});
+			} catch (RejectedExecutionException e) {
+				output.exit(1, "daemon stopping");
+				close(socket);
+			}
+		}
+	}
+
+	/**
+	 * Runs the analysis of a job, with the console output sent to the client
+	 */
+	private void runJob(long jobId, String[] args, ClientOutput output) {
+		long start = System.nanoTime();
+		console.println("job "+jobId+" started:"+Arrays.toString(args));
+		jobOutput.set(output);
+		int status = 1;
+		String message = "";
+		try {
+			AnalyzerOptions options;
+			FrameNormalizer frameNormalizer;
+			StackKeyer stackKeyer;
+			try {
+				options = AnalyzerOptions.parse(args);
+				frameNormalizer = getFrameNormalizer(options.getString("strip-offsets", "top"));
+				stackKeyer = getStackKeyer(options.getString("stack-key", "full"), options.getString("allocator-modules", null));
+				DTLeakAnalyzer.checkOptions(options);
+			} catch (IllegalArgumentException e) {
+				System.out.println(e.getMessage());
+				DTLeakAnalyzer.printArgs();
+				return;
+			}
+			String[] arguments = options.getArguments();
+			if (arguments.length < 3 || arguments.length > 6) {
+				DTLeakAnalyzer.printArgs();
+				return;
+			}
+
+			acquireStackSettings(AnalysisSummary.getSettings(options), frameNormalizer, stackKeyer);
+			try {
+				DTLeakAnalyzer.analyze(arguments, options);
+				status = 0;
+			} finally {
+				releaseStackSettings();
+			}
+		} catch (IOException e) {
+			message = e.getMessage();
+		} catch (RuntimeException e) {
+			message = e.toString();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			message = "interrupted";
+		} finally {
+			System.out.flush();
+			jobOutput.remove();
+			output.exit(status, message);
+			console.println("job "+jobId+" finished in "+(System.nanoTime() - start) / 1000000+" ms, status "+status
+					+(message.isEmpty() ? "" : ":"+message));
+		}
+	}
+
+	private synchronized FrameNormalizer getFrameNormalizer(String value) {
+		FrameNormalizer frameNormalizer = frameNormalizers.get(value);
+		if (frameNormalizer == null) {
+			frameNormalizer = FrameNormalizer.fromOption(value);
+			frameNormalizers.put(value, frameNormalizer);
+		}
+		return frameNormalizer;
+	}
+
+	private synchronized StackKeyer getStackKeyer(String value, String modules) {
+		String key = value+";"+modules;
+		StackKeyer stackKeyer = stackKeyers.get(key);
+		if (stackKeyer == null) {
+			stackKeyer = StackKeyer.fromOptions(value, modules);
+			stackKeyers.put(key, stackKeyer);
+		}
+		return stackKeyer;
+	}
+
+	/**
+	 * Waits until the running jobs use the same stack settings (or no job runs), and sets them
+	 */
+	private synchronized void acquireStackSettings(String settings, FrameNormalizer frameNormalizer, StackKeyer stackKeyer) throws InterruptedException {
+		while (runningJobs > 0 && !settings.equals(currentSettings)) {
+			wait();
+		}
+		if (!settings.equals(currentSettings)) {
+			FrameNormalizer.setInstance(frameNormalizer);
+			StackKeyer.setInstance(stackKeyer);
+			currentSettings = settings;
+		}
+		runningJobs++;
+	}
+
+	private synchronized void releaseStackSettings() {
+		runningJobs--;
+		if (runningJobs == 0) {
+			dropLargeWarmState();
+		}
+		notifyAll();
+	}
+
+	/**
+	 * Drops the normalizer and the keyer in use if they outgrew their limits, when no job runs.
+	 * The next job starts with new ones.
+	 */
+	private void dropLargeWarmState() {
+		FrameNormalizer frameNormalizer = FrameNormalizer.getInstance();
+		StackKeyer stackKeyer = StackKeyer.getInstance();
+		boolean dropped = false;
+		if (frameNormalizer.getFrameCount() > maxWarmFrames) {
+			frameNormalizers.values().remove(frameNormalizer);
+			dropped = true;
+		}
+		if (stackKeyer.getExemplarCount() > maxWarmExemplars) {
+			stackKeyers.values().remove(stackKeyer);
+			dropped = true;
+		}
+		if (dropped) {
+			console.println("dropped the warm state of the settings "+currentSettings+" ("+frameNormalizer.getFrameCount()+" frames, "
+					+stackKeyer.getExemplarCount()+" exemplars)");
+			FrameNormalizer.setInstance(FrameNormalizer.fromOption("top"));
+			StackKeyer.setInstance(StackKeyer.fromOptions("full", null));
+			currentSettings = null;
+		}
+	}
+
+	private static void close(Socket socket) {
+		try {
+			socket.close();
+		} catch (IOException e) {
+			//already closed
+		}
+	}
+
+	/**
+	 * Sends the console output and the exit status of a job to its client. A client that went away
+	 * does not stop the job, its output is dropped.
+	 */
+	private static class ClientOutput extends OutputStream {
+		private final DataOutputStream output;
+		private boolean closed;
+
+		private ClientOutput(Socket socket) throws IOException {
+			this.output = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+		}
+
+		@Override
+		public void write(int b) {
+			write(new byte[]{(byte)b}, 0, 1);
+		}
+
+		@Override
+		public synchronized void write(byte[] b, int off, int len) {
+			if (closed || len == 0) {
+				return;
+			}
+			try {
+				output.writeByte(outputFrame);
+				output.writeInt(len);
+				output.write(b, off, len);
+			} catch (IOException e) {
+				closed = true;
+			}
+		}
+
+		@Override
+		public synchronized void flush() {
+			if (closed) {
+				return;
+			}
+			try {
+				output.flush();
+			} catch (IOException e) {
+				closed = true;
+			}
+		}
+
+		private synchronized void exit(int status, String message) {
+			if (closed) {
+				return;
+			}
+			try {
+				output.writeByte(exitFrame);
+				output.writeInt(status);
+				output.writeUTF(message == null ? "" : message);
+				output.flush();
+			} catch (IOException e) {
+				//the client went away
+			}
+			closed = true;
+		}
+	}
+}
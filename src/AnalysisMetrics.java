@@ -0,0 +1,322 @@
+import java.io.File;
+import java.io.PrintWriter;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Timing and throughput counters of the analysis phases of a trace file.
+ *
+ * The phase times are taken with the monotonic System.nanoTime() clock. Phases that run
+ * interleaved (reading and replaying the entries) accumulate their time with addNanos(),
+ * the other phases are timed with start() / stop().
+ *
+ * It also holds the live status of the analysis (current phase, bytes consumed, entries decoded,
+ * live allocations and unique stacks), which is read from other threads by the AnalyzerMonitor.
+ *
+ */
+public class AnalysisMetrics {
+	private static final double nanosPerMilli = 1000000.0;
+	private static final double bytesPerMegabyte = 1024.0 * 1024.0;
+
+	/**
+	 * The analysis phases
+	 */
+	public static enum Phase {
+		READ("read/parse"),
+		REPLAY("replay"),
+		AGGREGATION("unique-stack aggregation"),
+		HEURISTICS("heuristics"),
+		MERGED_TREE("merged-tree building"),
+		REPORT("report writing");
+
+		private final String description;
+
+		private Phase(String description) {
+			this.description = description;
+		}
+
+		public String getDescription() {
+			return description;
+		}
+	}
+
+	//per phase counters, indexed by the phase ordinal
+	private final long[] nanos;
+	private final long[] events;
+	private final long[] bytes;
+	private final long[] uniqueStacks;
+	private final long[] startTimes;
+	private final boolean[] used;
+
+	//highest number of allocations that were live at the same time
+	private long peakLiveAllocations = -1;
+
+	//size of the analyzed trace file
+	private long traceBytes;
+
+	//live status, written by the analysis thread and read by the monitoring
+	private volatile String file;
+	private volatile Phase currentPhase;
+	private volatile CountingInputStream traceInput;
+	private volatile long bytesConsumed;
+	private volatile long entriesDecoded;
+	private volatile MemoryAllocatorReplay replay;
+	private volatile long liveAllocations;
+	private volatile long uniqueStacksFound;
+
+	public AnalysisMetrics() {
+		int phases = Phase.values().length;
+		nanos = new long[phases];
+		events = new long[phases];
+		bytes = new long[phases];
+		uniqueStacks = new long[phases];
+		startTimes = new long[phases];
+		used = new boolean[phases];
+		for (int i=0;i<phases;i++) {
+			uniqueStacks[i] = -1;
+		}
+	}
+
+	public void start(Phase phase) {
+		currentPhase = phase;
+		startTimes[phase.ordinal()] = System.nanoTime();
+		used[phase.ordinal()] = true;
+	}
+
+	/**
+	 * Marks the phase as the current one, for phases that are timed with addNanos()
+	 * @param phase the phase
+	 */
+	public void enter(Phase phase) {
+		currentPhase = phase;
+	}
+
+	public void stop(Phase phase) {
+		addNanos(phase, System.nanoTime() - startTimes[phase.ordinal()]);
+	}
+
+	public void addNanos(Phase phase, long elapsed) {
+		nanos[phase.ordinal()] += elapsed;
+		used[phase.ordinal()] = true;
+	}
+
+	public void addEvents(Phase phase, long count) {
+		events[phase.ordinal()] += count;
+		used[phase.ordinal()] = true;
+	}
+
+	public void addBytes(Phase phase, long count) {
+		bytes[phase.ordinal()] += count;
+		used[phase.ordinal()] = true;
+	}
+
+	public void setUniqueStacks(Phase phase, long count) {
+		uniqueStacks[phase.ordinal()] = count;
+		used[phase.ordinal()] = true;
+		setUniqueStacksFound(count);
+	}
+
+	public void updatePeakLiveAllocations(long liveAllocations) {
+		if (liveAllocations > peakLiveAllocations) {
+			peakLiveAllocations = liveAllocations;
+		}
+	}
+
+	public void setFile(String file) {
+		this.file = file;
+	}
+
+	public String getFile() {
+		return file;
+	}
+
+	public Phase getCurrentPhase() {
+		return currentPhase;
+	}
+
+	public void setTraceInput(CountingInputStream traceInput) {
+		this.traceInput = traceInput;
+	}
+
+	/**
+	 * Sets the bytes read from the traces file, when it is not read through a trace input
+	 * @param bytesConsumed the bytes read
+	 */
+	public void setBytesConsumed(long bytesConsumed) {
+		this.bytesConsumed = bytesConsumed;
+	}
+
+	/**
+	 * @return the bytes read from the current traces file
+	 */
+	public long getBytesConsumed() {
+		CountingInputStream input = traceInput;
+		return input == null ? bytesConsumed : input.getCount();
+	}
+
+	public void setEntriesDecoded(long entriesDecoded) {
+		this.entriesDecoded = entriesDecoded;
+	}
+
+	public long getEntriesDecoded() {
+		return entriesDecoded;
+	}
+
+	/**
+	 * @param replay the replay whose live allocations are reported while it runs
+	 */
+	public void setReplay(MemoryAllocatorReplay replay) {
+		this.replay = replay;
+	}
+
+	/**
+	 * Sets the live allocations, when they are not kept by a replay, and updates the peak
+	 * @param liveAllocations the allocations that are currently live
+	 */
+	public void setLiveAllocations(long liveAllocations) {
+		this.liveAllocations = liveAllocations;
+		updatePeakLiveAllocations(liveAllocations);
+	}
+
+	/**
+	 * @return the allocations that are currently live
+	 */
+	public long getLiveAllocations() {
+		MemoryAllocatorReplay current = replay;
+		return current == null ? liveAllocations : current.getLiveAllocations();
+	}
+
+	public void setUniqueStacksFound(long uniqueStacksFound) {
+		this.uniqueStacksFound = uniqueStacksFound;
+	}
+
+	/**
+	 * @return the unique stacks found so far (for memory allocator traces known after the replay)
+	 */
+	public long getUniqueStacksFound() {
+		return uniqueStacksFound;
+	}
+
+	public void setTraceBytes(long traceBytes) {
+		this.traceBytes = traceBytes;
+	}
+
+	public long getTraceBytes() {
+		return traceBytes;
+	}
+
+	public long getNanos(Phase phase) {
+		return nanos[phase.ordinal()];
+	}
+
+	public long getEvents(Phase phase) {
+		return events[phase.ordinal()];
+	}
+
+	public long getPeakLiveAllocations() {
+		return peakLiveAllocations;
+	}
+
+	/**
+	 * @return the time of all phases
+	 */
+	public long getTotalNanos() {
+		long total = 0;
+		for (long phaseNanos : nanos) {
+			total += phaseNanos;
+		}
+		return total;
+	}
+
+	/**
+	 * @return the highest unique stack count of all phases, or -1 if not known
+	 */
+	public long getUniqueStacks() {
+		long max = -1;
+		for (long phaseStacks : uniqueStacks) {
+			max = Math.max(max, phaseStacks);
+		}
+		return max;
+	}
+
+	/**
+	 * Adds the counters of another analysis, used for the totals over multiple files.
+	 * Unique stack counts cannot be added and are not kept, the peak is the highest of both.
+	 * @param other the other metrics
+	 */
+	public void add(AnalysisMetrics other) {
+		for (int i=0;i<nanos.length;i++) {
+			nanos[i] += other.nanos[i];
+			events[i] += other.events[i];
+			bytes[i] += other.bytes[i];
+			used[i] |= other.used[i];
+		}
+		traceBytes += other.traceBytes;
+		updatePeakLiveAllocations(other.peakLiveAllocations);
+	}
+
+	/**
+	 * Prints the per phase metrics
+	 * @param title the section title
+	 * @param writer the report
+	 */
+	public void print(String title, PrintWriter writer) {
+		DTLeakAnalyzer.logMessage("\n"+title, false, writer);
+		DTLeakAnalyzer.logMessage(String.format(Locale.US, "%-26s %12s %12s %14s %10s %14s %22s",
+				"phase", "time (ms)", "events", "events/s", "MB/s", "unique stacks", "peak live allocations"), false, writer);
+		for (Phase phase : Phase.values()) {
+			int i = phase.ordinal();
+			if (!used[i]) {
+				continue;
+			}
+			DTLeakAnalyzer.logMessage(String.format(Locale.US, "%-26s %12.1f %12d %14s %10s %14s %22s",
+					phase.getDescription(), nanos[i] / nanosPerMilli, events[i],
+					rate(events[i], nanos[i]), megabyteRate(bytes[i], nanos[i]),
+					uniqueStacks[i] < 0 ? "-" : Long.toString(uniqueStacks[i]),
+					phase == Phase.REPLAY && peakLiveAllocations >= 0 ? Long.toString(peakLiveAllocations) : "-"), false, writer);
+		}
+		DTLeakAnalyzer.logMessage(String.format(Locale.US, "%-26s %12.1f", "total", getTotalNanos() / nanosPerMilli), false, writer);
+		DTLeakAnalyzer.logMessage(String.format(Locale.US, "trace size %.2f MB, overall %s MB/s", traceBytes / bytesPerMegabyte, megabyteRate(traceBytes, getTotalNanos())), false, writer);
+	}
+
+	/**
+	 * Prints the metrics of each file of a combined analysis and their totals
+	 * @param files the analyzed files, in the order of their combined report index
+	 * @param fileMetrics the metrics of each file
+	 * @param combinedReportNanos the time spent on the combined report
+	 * @param writer the combined report
+	 */
+	public static void printCombined(File[] files, List<AnalysisMetrics> fileMetrics, long combinedReportNanos, PrintWriter writer) {
+		DTLeakAnalyzer.logMessage("\n\n*** Analysis metrics ***\n", false, writer);
+		DTLeakAnalyzer.logMessage(String.format(Locale.US, "%-8s %12s %12s %12s %14s %10s %14s %22s",
+				"file", "trace MB", "entries", "time (ms)", "events/s", "MB/s", "unique stacks", "peak live allocations"), false, writer);
+		AnalysisMetrics totals = new AnalysisMetrics();
+		for (int i=0;i<files.length;i++) {
+			AnalysisMetrics metrics = fileMetrics.get(i);
+			totals.add(metrics);
+			long entries = metrics.getEvents(Phase.READ);
+			long total = metrics.getTotalNanos();
+			DTLeakAnalyzer.logMessage(String.format(Locale.US, "%-8s %12.2f %12d %12.1f %14s %10s %14s %22s",
+					"{"+i+"}", metrics.getTraceBytes() / bytesPerMegabyte, entries, total / nanosPerMilli,
+					rate(entries, total), megabyteRate(metrics.getTraceBytes(), total),
+					metrics.getUniqueStacks() < 0 ? "-" : Long.toString(metrics.getUniqueStacks()),
+					metrics.getPeakLiveAllocations() < 0 ? "-" : Long.toString(metrics.getPeakLiveAllocations())), false, writer);
+		}
+		totals.print("Analysis metrics of all files", writer);
+		DTLeakAnalyzer.logMessage(String.format(Locale.US, "combined report: %.1f ms", combinedReportNanos / nanosPerMilli), false, writer);
+	}
+
+	private static String rate(long count, long elapsedNanos) {
+		if (elapsedNanos <= 0 || count <= 0) {
+			return "-";
+		}
+		return String.format(Locale.US, "%.1f", count * 1000000000.0 / elapsedNanos);
+	}
+
+	private static String megabyteRate(long count, long elapsedNanos) {
+		if (elapsedNanos <= 0 || count <= 0) {
+			return "-";
+		}
+		return String.format(Locale.US, "%.2f", count / bytesPerMegabyte * 1000000000.0 / elapsedNanos);
+	}
+}
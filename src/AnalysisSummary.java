@@ -0,0 +1,406 @@
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32C;
+
+/**
+ * Compact summary of the memory allocator analysis of a trace file, as used by the combined
+ * report of the -d mode and by the differential report of the -c mode: the counters, the unique
+ * stacks (with their counts) of each category and the outstanding bytes of the leak stacks.
+ *
+ * The summary is kept next to the trace file (<trace file>.summary) and is keyed by the size,
+ * the modification time and the content hash (CRC32C) of the trace file, and by the settings
+ * that change the stacks (frame normalization and stack truncation). A later -d run loads the
+ * summaries of the unchanged files (memory mapped) instead of analyzing them again.
+ *
+ * The stacks are written once, in a string table, and referenced by their index.
+ *
+ * The summaries loaded or written by the process are also kept in memory. A summary in memory is
+ * reused while the trace file keeps the size and modification time it had when its content hash
+ * was checked, without reading the trace file again.
+ *
+ */
+public class AnalysisSummary {
+	//suffix of the summary files
+	public static final String fileSuffix = ".summary";
+
+	private static final int magic = 0x44544c53; //DTLS
+	private static final int version = 2;
+
+	//bytes hashed at a time
+	private static final long hashChunkBytes = 256L * 1024 * 1024;
+
+	//the summaries loaded or written by this process, by trace file (kept warm for the jobs of the AnalysisDaemon)
+	private static final int loadedSummariesSize = 256;
+	private static final Map<String, AnalysisSummary> loadedSummaries = Collections.synchronizedMap(
+			new LinkedHashMap<String, AnalysisSummary>(loadedSummariesSize, 0.75f, true) {
+				private static final long serialVersionUID = 1L;
+
+				@Override
+				protected boolean removeEldestEntry(Map.Entry<String, AnalysisSummary> eldest) {
+					return size() > loadedSummariesSize;
+				}
+			});
+
+	/**
+	 * The counters of the analysis
+	 */
+	public static enum Counter {
+		MALLOC_CALLS,
+		CALLOC_CALLS,
+		REALLOC_CALLS,
+		FREE_CALLS,
+		DOUBLE_FREES,
+		WRONG_FREES,
+		LEAKS
+	}
+
+	/**
+	 * The stack categories of the analysis, with their counts
+	 */
+	public static enum Category {
+		DOUBLE_FREE,
+		WRONG_FREE,
+		WRONG_FREE_NEVER_CORRECTLY_FREED,
+		LEAK,
+		LEAK_NEVER_FREED
+	}
+
+	//key of the summary
+	private final long traceSize;
+	private final long traceModified;
+	private final long contentHash;
+	private final String settings;
+
+	private final long[] counters;
+	private final Map<Category, List<DTLeakAnalyzer.StackOccurence>> stacks;
+	private final List<String> successfulFreeStacks;
+	private final List<String> successfullyDeletedStacks;
+
+	//exemplar full stacks of the truncated stacks
+	private final Map<String, String> exemplars;
+
+	//outstanding bytes of the leak stacks
+	private final Map<String, Long> outstandingBytes;
+
+	/**
+	 * new, empty summary
+	 * @param traceSize the size of the trace file
+	 * @param traceModified the modification time of the trace file
+	 * @param contentHash the content hash of the trace file
+	 * @param settings the settings that change the stacks
+	 */
+	public AnalysisSummary(long traceSize, long traceModified, long contentHash, String settings) {
+		this.traceSize = traceSize;
+		this.traceModified = traceModified;
+		this.contentHash = contentHash;
+		this.settings = settings;
+		this.counters = new long[Counter.values().length];
+		this.stacks = new HashMap<Category, List<DTLeakAnalyzer.StackOccurence>>();
+		for (Category category : Category.values()) {
+			stacks.put(category, new ArrayList<DTLeakAnalyzer.StackOccurence>());
+		}
+		this.successfulFreeStacks = new ArrayList<String>();
+		this.successfullyDeletedStacks = new ArrayList<String>();
+		this.exemplars = new HashMap<String, String>();
+		this.outstandingBytes = new HashMap<String, Long>();
+	}
+
+	/**
+	 * @param traceFile the trace file
+	 * @return the summary file of a trace file
+	 */
+	public static File getSummaryFile(File traceFile) {
+		return new File(traceFile.getPath()+fileSuffix);
+	}
+
+	/**
+	 * Returns the settings of the current run that change the stacks of the summaries
+	 * @param options the analysis settings
+	 * @return the settings as text
+	 */
+	public static String getSettings(AnalyzerOptions options) {
+		return "strip-offsets="+options.getString("strip-offsets", "top")
+				+";stack-key="+options.getString("stack-key", "full")
+				+";allocator-modules="+options.getString("allocator-modules", "");
+	}
+
+	/**
+	 * Calculates the content hash (CRC32C) of a file
+	 * @param file the file
+	 * @return the hash
+	 * @throws IOException if the file cannot be read
+	 */
+	public static long hash(File file) throws IOException {
+		CRC32C crc = new CRC32C();
+		try (RandomAccessFile input = new RandomAccessFile(file, "r")) {
+			FileChannel channel = input.getChannel();
+			long length = channel.size();
+			for (long position = 0; position < length; position += hashChunkBytes) {
+				crc.update(channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(hashChunkBytes, length - position)));
+			}
+		}
+		return crc.getValue();
+	}
+
+	/**
+	 * Loads the summary of a trace file, if it exists and the trace file has not changed
+	 * @param traceFile the trace file
+	 * @param settings the settings of the current run
+	 * @return the summary, or null if there is no valid summary
+	 */
+	public static AnalysisSummary load(File traceFile, String settings) {
+		AnalysisSummary loaded = loadedSummaries.get(traceFile.getAbsolutePath());
+		if (loaded != null && loaded.matches(traceFile, settings)) {
+			return loaded;
+		}
+		File summaryFile = getSummaryFile(traceFile);
+		if (!summaryFile.isFile()) {
+			return null;
+		}
+		try {
+			AnalysisSummary summary = read(summaryFile);
+			if (summary == null
+					|| !summary.matches(traceFile, settings)
+					|| summary.contentHash != hash(traceFile)) {
+				return null;
+			}
+			loadedSummaries.put(traceFile.getAbsolutePath(), summary);
+			return summary;
+		} catch (IOException e) {
+			System.out.println("cannot read summary "+summaryFile+", the trace file is analyzed:"+e.getMessage());
+			return null;
+		}
+	}
+
+	/**
+	 * Loads a summary file as it is, without checking its trace file
+	 * @param summaryFile the summary file
+	 * @return the summary
+	 * @throws IOException if the file cannot be read or is not a summary of this version
+	 */
+	public static AnalysisSummary loadFile(File summaryFile) throws IOException {
+		AnalysisSummary summary = read(summaryFile);
+		if (summary == null) {
+			throw new IOException("not a summary file of version "+version+":"+summaryFile);
+		}
+		return summary;
+	}
+
+	/**
+	 * @return true if the trace file has the size and modification time of the summary, and the settings are the same
+	 */
+	private boolean matches(File traceFile, String settings) {
+		return traceSize == traceFile.length() && traceModified == traceFile.lastModified() && this.settings.equals(settings);
+	}
+
+	/**
+	 * Reads a summary file (memory mapped)
+	 * @return the summary, or null if the file has another format
+	 */
+	private static AnalysisSummary read(File summaryFile) throws IOException {
+		try (RandomAccessFile input = new RandomAccessFile(summaryFile, "r")) {
+			MappedByteBuffer buffer = input.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, input.length());
+			if (buffer.remaining() < 8 || buffer.getInt() != magic || buffer.getInt() != version) {
+				return null;
+			}
+			long traceSize = buffer.getLong();
+			long traceModified = buffer.getLong();
+			long contentHash = buffer.getLong();
+			String settings = readString(buffer);
+			AnalysisSummary summary = new AnalysisSummary(traceSize, traceModified, contentHash, settings);
+			for (int i=0;i<summary.counters.length;i++) {
+				summary.counters[i] = buffer.getLong();
+			}
+
+			String[] strings = new String[buffer.getInt()];
+			for (int i=0;i<strings.length;i++) {
+				strings[i] = readString(buffer);
+			}
+			for (Category category : Category.values()) {
+				List<DTLeakAnalyzer.StackOccurence> categoryStacks = summary.stacks.get(category);
+				int count = buffer.getInt();
+				for (int i=0;i<count;i++) {
+					String stack = strings[buffer.getInt()];
+					categoryStacks.add(new DTLeakAnalyzer.StackOccurence(stack, buffer.getLong()));
+				}
+			}
+			readStacks(buffer, strings, summary.successfulFreeStacks);
+			readStacks(buffer, strings, summary.successfullyDeletedStacks);
+			int exemplarCount = buffer.getInt();
+			for (int i=0;i<exemplarCount;i++) {
+				summary.exemplars.put(strings[buffer.getInt()], strings[buffer.getInt()]);
+			}
+			int outstandingCount = buffer.getInt();
+			for (int i=0;i<outstandingCount;i++) {
+				summary.outstandingBytes.put(strings[buffer.getInt()], buffer.getLong());
+			}
+			return summary;
+		} catch (RuntimeException e) {
+			//truncated or corrupted
+			throw new IOException("corrupted summary:"+e);
+		}
+	}
+
+	private static void readStacks(MappedByteBuffer buffer, String[] strings, List<String> stacks) {
+		int count = buffer.getInt();
+		for (int i=0;i<count;i++) {
+			stacks.add(strings[buffer.getInt()]);
+		}
+	}
+
+	private static String readString(MappedByteBuffer buffer) {
+		byte[] bytes = new byte[buffer.getInt()];
+		buffer.get(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Writes the summary next to the trace file. The summary is written to a temporary
+	 * file first, so that an interrupted run does not leave a partial summary.
+	 * @param traceFile the trace file
+	 * @throws IOException if it cannot be written
+	 */
+	public void save(File traceFile) throws IOException {
+		File summaryFile = getSummaryFile(traceFile);
+		File temporaryFile = new File(summaryFile.getPath()+".tmp");
+
+		//string table
+		Map<String, Integer> stringIndex = new LinkedHashMap<String, Integer>();
+		for (List<DTLeakAnalyzer.StackOccurence> categoryStacks : stacks.values()) {
+			for (DTLeakAnalyzer.StackOccurence occurence : categoryStacks) {
+				index(stringIndex, occurence.getStack());
+			}
+		}
+		for (String stack : successfulFreeStacks) {
+			index(stringIndex, stack);
+		}
+		for (String stack : successfullyDeletedStacks) {
+			index(stringIndex, stack);
+		}
+		for (Map.Entry<String, String> exemplar : exemplars.entrySet()) {
+			index(stringIndex, exemplar.getKey());
+			index(stringIndex, exemplar.getValue());
+		}
+		for (String stack : outstandingBytes.keySet()) {
+			index(stringIndex, stack);
+		}
+
+		try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temporaryFile)))) {
+			output.writeInt(magic);
+			output.writeInt(version);
+			output.writeLong(traceSize);
+			output.writeLong(traceModified);
+			output.writeLong(contentHash);
+			writeString(output, settings);
+			for (long counter : counters) {
+				output.writeLong(counter);
+			}
+			output.writeInt(stringIndex.size());
+			for (String string : stringIndex.keySet()) {
+				writeString(output, string);
+			}
+			for (Category category : Category.values()) {
+				List<DTLeakAnalyzer.StackOccurence> categoryStacks = stacks.get(category);
+				output.writeInt(categoryStacks.size());
+				for (DTLeakAnalyzer.StackOccurence occurence : categoryStacks) {
+					output.writeInt(stringIndex.get(occurence.getStack()));
+					output.writeLong(occurence.getTimesFound());
+				}
+			}
+			writeStacks(output, stringIndex, successfulFreeStacks);
+			writeStacks(output, stringIndex, successfullyDeletedStacks);
+			output.writeInt(exemplars.size());
+			for (Map.Entry<String, String> exemplar : exemplars.entrySet()) {
+				output.writeInt(stringIndex.get(exemplar.getKey()));
+				output.writeInt(stringIndex.get(exemplar.getValue()));
+			}
+			output.writeInt(outstandingBytes.size());
+			for (Map.Entry<String, Long> bytes : outstandingBytes.entrySet()) {
+				output.writeInt(stringIndex.get(bytes.getKey()));
+				output.writeLong(bytes.getValue());
+			}
+		}
+		if (!temporaryFile.renameTo(summaryFile)) {
+			summaryFile.delete();
+			if (!temporaryFile.renameTo(summaryFile)) {
+				temporaryFile.delete();
+				throw new IOException("cannot create summary file:"+summaryFile);
+			}
+		}
+		loadedSummaries.put(traceFile.getAbsolutePath(), this);
+	}
+
+	private static void index(Map<String, Integer> stringIndex, String string) {
+		if (!stringIndex.containsKey(string)) {
+			stringIndex.put(string, stringIndex.size());
+		}
+	}
+
+	private static void writeStacks(DataOutputStream output, Map<String, Integer> stringIndex, List<String> stacks) throws IOException {
+		output.writeInt(stacks.size());
+		for (String stack : stacks) {
+			output.writeInt(stringIndex.get(stack));
+		}
+	}
+
+	private static void writeString(DataOutputStream output, String string) throws IOException {
+		byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+		output.writeInt(bytes.length);
+		output.write(bytes);
+	}
+
+	public long getCounter(Counter counter) {
+		return counters[counter.ordinal()];
+	}
+
+	public void setCounter(Counter counter, long value) {
+		counters[counter.ordinal()] = value;
+	}
+
+	/**
+	 * @param category the category
+	 * @return the (modifiable) unique stacks of a category
+	 */
+	public List<DTLeakAnalyzer.StackOccurence> getStacks(Category category) {
+		return stacks.get(category);
+	}
+
+	public List<String> getSuccessfulFreeStacks() {
+		return successfulFreeStacks;
+	}
+
+	public List<String> getSuccessfullyDeletedStacks() {
+		return successfullyDeletedStacks;
+	}
+
+	public Map<String, String> getExemplars() {
+		return exemplars;
+	}
+
+	/**
+	 * @return the (modifiable) outstanding bytes of the leak stacks
+	 */
+	public Map<String, Long> getOutstandingBytes() {
+		return outstandingBytes;
+	}
+
+	/**
+	 * @return the settings that changed the stacks of the summary
+	 */
+	public String getSettings() {
+		return settings;
+	}
+}
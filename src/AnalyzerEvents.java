@@ -0,0 +1,99 @@
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Period;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * Java Flight Recorder events of the analyzer. They are only recorded when a recording is running,
+ * i.e. started with -XX:StartFlightRecording or with jcmd <pid> JFR.start.
+ *
+ */
+public class AnalyzerEvents {
+
+	/**
+	 * The analysis of a single trace file, from its first read to the end of its report
+	 */
+	@Name("dtleakanalyzer.FileAnalysis")
+	@Label("File Analysis")
+	@Category("DTLeakAnalyzer")
+	@StackTrace(false)
+	public static class FileAnalysisEvent extends Event {
+		@Label("File")
+		public String file;
+
+		@Label("Trace Size")
+		@DataAmount
+		public long traceBytes;
+
+		@Label("Entries")
+		public long entries;
+
+		@Label("Unique Stacks")
+		public long uniqueStacks;
+
+		@Label("Peak Live Allocations")
+		public long peakLiveAllocations;
+	}
+
+	/**
+	 * The totals of an analysis phase of a trace file, committed when the file analysis ends.
+	 * Reading and replay are interleaved per entry, so the phase time is a field and not the event duration.
+	 */
+	@Name("dtleakanalyzer.AnalysisPhase")
+	@Label("Analysis Phase")
+	@Category("DTLeakAnalyzer")
+	@StackTrace(false)
+	public static class AnalysisPhaseEvent extends Event {
+		@Label("File")
+		public String file;
+
+		@Label("Phase")
+		public String phase;
+
+		@Label("Phase Time")
+		@Timespan(Timespan.NANOSECONDS)
+		public long phaseTime;
+
+		@Label("Events")
+		public long events;
+	}
+
+	/**
+	 * Periodic sample of the running analysis
+	 */
+	@Name("dtleakanalyzer.AnalysisProgress")
+	@Label("Analysis Progress")
+	@Description("Periodic sample of the counters of the running analysis")
+	@Category("DTLeakAnalyzer")
+	@Period("1 s")
+	@StackTrace(false)
+	public static class AnalysisProgressEvent extends Event {
+		@Label("File")
+		public String file;
+
+		@Label("Phase")
+		public String phase;
+
+		@Label("Bytes Consumed")
+		@DataAmount
+		public long bytesConsumed;
+
+		@Label("Trace Size")
+		@DataAmount
+		public long traceBytes;
+
+		@Label("Entries Decoded")
+		public long entriesDecoded;
+
+		@Label("Live Allocations")
+		public long liveAllocations;
+
+		@Label("Unique Stacks")
+		public long uniqueStacks;
+	}
+}
@@ -0,0 +1,247 @@
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+import jdk.jfr.FlightRecorder;
+
+/**
+ * Live introspection of the running analyses.
+ *
+ * Each trace file analysis is registered with begin() / end() together with its AnalysisMetrics,
+ * whose live status (phase, bytes consumed, entries decoded, live allocations, unique stacks)
+ * is exposed through the DTLeakAnalyzer:type=AnalyzerMonitor MBean and through periodic
+ * Java Flight Recorder events. The end of each file analysis commits a file event and one event
+ * per analysis phase.
+ *
+ * The scheduled files (-d and -p modes) are registered upfront, so that the progress over all
+ * files is known.
+ *
+ */
+public class AnalyzerMonitor implements AnalyzerMonitorMBean {
+	//the name of the MBean
+	private static final String objectName = "DTLeakAnalyzer:type=AnalyzerMonitor";
+
+	private static final AnalyzerMonitor instance = new AnalyzerMonitor();
+
+	//the running analyses and their file events, and the last one that started
+	private final Map<AnalysisMetrics, AnalyzerEvents.FileAnalysisEvent> running;
+	private volatile AnalysisMetrics current;
+
+	//scheduled and completed files
+	private final AtomicInteger filesScheduled;
+	private final AtomicInteger filesCompleted;
+	private final AtomicLong scheduledBytes;
+	private final AtomicLong completedBytes;
+	private final AtomicLong completedEntries;
+
+	private boolean registered = false;
+
+	private AnalyzerMonitor() {
+		running = new ConcurrentHashMap<AnalysisMetrics, AnalyzerEvents.FileAnalysisEvent>();
+		filesScheduled = new AtomicInteger();
+		filesCompleted = new AtomicInteger();
+		scheduledBytes = new AtomicLong();
+		completedBytes = new AtomicLong();
+		completedEntries = new AtomicLong();
+	}
+
+	public static AnalyzerMonitor getInstance() {
+		return instance;
+	}
+
+	/**
+	 * Registers the MBean and the periodic flight recorder event. Failures are reported
+	 * and do not stop the analysis.
+	 */
+	public synchronized void register() {
+		if (registered) {
+			return;
+		}
+		registered = true;
+		try {
+			ManagementFactory.getPlatformMBeanServer().registerMBean(this, new ObjectName(objectName));
+		} catch (JMException e) {
+			System.out.println("cannot register the analyzer MBean:"+e.getMessage());
+		}
+		FlightRecorder.addPeriodicEvent(AnalyzerEvents.AnalysisProgressEvent.class, new Runnable() {
+			@Override
+			public void run() {
+				for (AnalysisMetrics metrics : running.keySet()) {
+					AnalyzerEvents.AnalysisProgressEvent event = new AnalyzerEvents.AnalysisProgressEvent();
+					event.file = metrics.getFile();
+					event.phase = getPhase(metrics);
+					event.bytesConsumed = metrics.getBytesConsumed();
+					event.traceBytes = metrics.getTraceBytes();
+					event.entriesDecoded = metrics.getEntriesDecoded();
+					event.liveAllocations = metrics.getLiveAllocations();
+					event.uniqueStacks = metrics.getUniqueStacksFound();
+					event.commit();
+				}
+			}
+		});
+	}
+
+	/**
+	 * Registers trace files that will be analyzed
+	 * @param files the files
+	 */
+	public void schedule(File[] files) {
+		for (File file : files) {
+			filesScheduled.incrementAndGet();
+			scheduledBytes.addAndGet(file.length());
+		}
+	}
+
+	/**
+	 * Marks the start of the analysis of a trace file
+	 * @param metrics the metrics of the analysis
+	 */
+	public void begin(AnalysisMetrics metrics) {
+		AnalyzerEvents.FileAnalysisEvent event = new AnalyzerEvents.FileAnalysisEvent();
+		event.begin();
+		running.put(metrics, event);
+		current = metrics;
+	}
+
+	/**
+	 * Marks the end of the analysis of a trace file
+	 * @param metrics the metrics of the analysis
+	 */
+	public void end(AnalysisMetrics metrics) {
+		AnalyzerEvents.FileAnalysisEvent event = running.remove(metrics);
+		if (event == null) {
+			return;
+		}
+		filesCompleted.incrementAndGet();
+		completedBytes.addAndGet(metrics.getBytesConsumed());
+		completedEntries.addAndGet(metrics.getEntriesDecoded());
+		if (current == metrics) {
+			current = null;
+		}
+
+		for (AnalysisMetrics.Phase phase : AnalysisMetrics.Phase.values()) {
+			if (metrics.getNanos(phase) == 0 && metrics.getEvents(phase) == 0) {
+				continue;
+			}
+			AnalyzerEvents.AnalysisPhaseEvent phaseEvent = new AnalyzerEvents.AnalysisPhaseEvent();
+			if (phaseEvent.isEnabled()) {
+				phaseEvent.file = metrics.getFile();
+				phaseEvent.phase = phase.getDescription();
+				phaseEvent.phaseTime = metrics.getNanos(phase);
+				phaseEvent.events = metrics.getEvents(phase);
+				phaseEvent.commit();
+			}
+		}
+		event.end();
+		if (event.shouldCommit()) {
+			event.file = metrics.getFile();
+			event.traceBytes = metrics.getTraceBytes();
+			event.entries = metrics.getEntriesDecoded();
+			event.uniqueStacks = metrics.getUniqueStacks();
+			event.peakLiveAllocations = metrics.getPeakLiveAllocations();
+			event.commit();
+		}
+	}
+
+	/**
+	 * @return the analyses that are running
+	 */
+	public List<AnalysisMetrics> getRunning() {
+		return new ArrayList<AnalysisMetrics>(running.keySet());
+	}
+
+	/**
+	 * @return the analysis that started last and is still running, or null
+	 */
+	public AnalysisMetrics getCurrent() {
+		return current;
+	}
+
+	private static String getPhase(AnalysisMetrics metrics) {
+		AnalysisMetrics.Phase phase = metrics.getCurrentPhase();
+		return phase == null ? "" : phase.getDescription();
+	}
+
+	@Override
+	public String getCurrentFile() {
+		AnalysisMetrics metrics = current;
+		return metrics == null || metrics.getFile() == null ? "" : metrics.getFile();
+	}
+
+	@Override
+	public String getCurrentPhase() {
+		AnalysisMetrics metrics = current;
+		return metrics == null ? "" : getPhase(metrics);
+	}
+
+	@Override
+	public long getBytesConsumed() {
+		AnalysisMetrics metrics = current;
+		return metrics == null ? 0 : metrics.getBytesConsumed();
+	}
+
+	@Override
+	public long getTraceBytes() {
+		AnalysisMetrics metrics = current;
+		return metrics == null ? 0 : metrics.getTraceBytes();
+	}
+
+	@Override
+	public long getEntriesDecoded() {
+		AnalysisMetrics metrics = current;
+		return metrics == null ? 0 : metrics.getEntriesDecoded();
+	}
+
+	@Override
+	public long getLiveAllocations() {
+		AnalysisMetrics metrics = current;
+		return metrics == null ? 0 : metrics.getLiveAllocations();
+	}
+
+	@Override
+	public long getUniqueStacks() {
+		AnalysisMetrics metrics = current;
+		return metrics == null ? 0 : metrics.getUniqueStacksFound();
+	}
+
+	@Override
+	public int getFilesScheduled() {
+		return filesScheduled.get();
+	}
+
+	@Override
+	public int getFilesCompleted() {
+		return filesCompleted.get();
+	}
+
+	@Override
+	public long getScheduledBytes() {
+		return scheduledBytes.get();
+	}
+
+	@Override
+	public long getTotalBytesConsumed() {
+		long total = completedBytes.get();
+		for (AnalysisMetrics metrics : running.keySet()) {
+			total += metrics.getBytesConsumed();
+		}
+		return total;
+	}
+
+	@Override
+	public long getTotalEntriesDecoded() {
+		long total = completedEntries.get();
+		for (AnalysisMetrics metrics : running.keySet()) {
+			total += metrics.getEntriesDecoded();
+		}
+		return total;
+	}
+}
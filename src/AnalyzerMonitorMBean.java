@@ -0,0 +1,66 @@
+/**
+ * JMX view of a running analysis, registered as DTLeakAnalyzer:type=AnalyzerMonitor.
+ *
+ */
+public interface AnalyzerMonitorMBean {
+
+	/**
+	 * @return the trace file that is currently analyzed, or an empty string
+	 */
+	public String getCurrentFile();
+
+	/**
+	 * @return the current analysis phase, or an empty string
+	 */
+	public String getCurrentPhase();
+
+	/**
+	 * @return the bytes read from the current trace file
+	 */
+	public long getBytesConsumed();
+
+	/**
+	 * @return the size of the current trace file
+	 */
+	public long getTraceBytes();
+
+	/**
+	 * @return the entries decoded from the current trace file
+	 */
+	public long getEntriesDecoded();
+
+	/**
+	 * @return the allocations that are live on the current replay
+	 */
+	public long getLiveAllocations();
+
+	/**
+	 * @return the unique stacks found on the current trace file
+	 */
+	public long getUniqueStacks();
+
+	/**
+	 * @return the trace files scheduled for analysis
+	 */
+	public int getFilesScheduled();
+
+	/**
+	 * @return the trace files whose analysis finished
+	 */
+	public int getFilesCompleted();
+
+	/**
+	 * @return the size of all scheduled trace files
+	 */
+	public long getScheduledBytes();
+
+	/**
+	 * @return the bytes read from all trace files, including the current one
+	 */
+	public long getTotalBytesConsumed();
+
+	/**
+	 * @return the entries decoded from all trace files, including the current one
+	 */
+	public long getTotalEntriesDecoded();
+}
@@ -0,0 +1,167 @@
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Holds the optional analysis settings given on the command line.
+ *
+ * Options have the form --name or --name=value and may appear anywhere in the arguments.
+ * They are removed from the argument list, so that the positional arguments
+ * (-f, -d, -p and the files / directories) keep their meaning.
+ *
+ */
+public class AnalyzerOptions {
+	//option prefix
+	private static final String optionPrefix = "--";
+
+	//option values, an option without a value is stored with an empty value
+	private final Map<String, String> values;
+
+	//the remaining (positional) arguments
+	private final String[] arguments;
+
+	private AnalyzerOptions(Map<String, String> values, String[] arguments) {
+		this.values = values;
+		this.arguments = arguments;
+	}
+
+	/**
+	 * Returns the options with default values (no option set)
+	 * @return the default options
+	 */
+	public static AnalyzerOptions defaults() {
+		return new AnalyzerOptions(new HashMap<String, String>(), new String[0]);
+	}
+
+	/**
+	 * Separates the options from the positional arguments
+	 * @param args the program arguments
+	 * @return the parsed options
+	 */
+	public static AnalyzerOptions parse(String[] args) {
+		Map<String, String> values = new HashMap<String, String>();
+		List<String> arguments = new ArrayList<String>();
+		for (String arg : args) {
+			if (arg.startsWith(optionPrefix) && arg.length() > optionPrefix.length()) {
+				String option = arg.substring(optionPrefix.length());
+				int separator = option.indexOf('=');
+				if (separator < 0) {
+					values.put(option, "");
+				} else {
+					values.put(option.substring(0, separator), option.substring(separator+1));
+				}
+			} else {
+				arguments.add(arg);
+			}
+		}
+		return new AnalyzerOptions(values, arguments.toArray(new String[arguments.size()]));
+	}
+
+	/**
+	 * Prints the supported options
+	 */
+	public static void printOptions() {
+		System.out.println("options (may be given anywhere in the arguments):");
+		System.out.println("  --window=<seconds>    memalloc: time-windowed outstanding growth analysis per stack");
+		System.out.println("  --replay-shards=<n>   memalloc: replay the allocations on n threads (0 = number of processors)");
+		System.out.println("  --decode-threads=<n>  memalloc, brk: decode the trace entries on n threads (default 0 = number of processors)");
+		System.out.println("  --progress=<seconds>  interval of the progress lines, 0 disables them (default 10)");
+		System.out.println("  --strip-offsets=<top|all|module,...>  strip the +0x.. return offsets of the top frame (default),");
+		System.out.println("                        of all frames or of the frames of the given modules");
+		System.out.println("  --stack-key=<full|top:<n>|callsite>  key the analysis on the full stacks (default), on the top n frames");
+		System.out.println("                        or on the first frame after the allocator frames");
+		System.out.println("  --allocator-modules=<module,...>  the modules of the allocator frames skipped by --stack-key");
+		System.out.println("  --memory-limit=<bytes[k|m|g]>  brk: project when the heap growth reaches this limit");
+		System.out.println("  --timeline-points=<n>  brk: points of the heap growth timeline CSV (default 1000)");
+		System.out.println("  --parse-threads=<n>   -p: parse the processed files and replay the trace files on n threads (default 0 = number of processors)");
+		System.out.println("  --summary-cache=<on|off>  -d, -c: reuse the summaries of the files unchanged since their last analysis (default on)");
+		System.out.println("  --lifetimes=<on|off>   memalloc: record and report the allocation lifetimes of the stacks (default off)");
+		System.out.println("  --alive-age=<seconds>  memalloc: age from which an allocation live at the end of the trace is reported as old (default 60)");
+		System.out.println("  --churn-entries=<n>    memalloc: trace entries within which a freed allocation counts as churn (default 1000)");
+		System.out.println("  --churn-seconds=<n>    memalloc: seconds within which a freed allocation counts as churn (default 1)");
+		System.out.println("  --realloc-chain=<n>    memalloc: reallocs of a chain from which its growth pattern is flagged (default 8)");
+		System.out.println("  --top-stacks=<n>       memalloc: stacks listed in the lifetime, churn, size, realloc chain and thread sections,");
+		System.out.println("                        -d, -p: stacks without a significant growth listed in the growth trend,");
+		System.out.println("                        -c: stacks listed in each list of the differential report (default 20, 0 = all)");
+		System.out.println("  --top-k=<k>            memalloc: report only the top k allocation, free and leak stacks, with bounded memory (default 0 = off)");
+	}
+
+	public String[] getArguments() {
+		return arguments;
+	}
+
+	public boolean isSet(String name) {
+		return values.containsKey(name);
+	}
+
+	public String getString(String name, String defaultValue) {
+		String value = values.get(name);
+		if (value == null || value.isEmpty()) {
+			return defaultValue;
+		}
+		return value;
+	}
+
+	public long getLong(String name, long defaultValue) {
+		String value = getString(name, null);
+		if (value == null) {
+			return defaultValue;
+		}
+		try {
+			return Long.parseLong(value.trim());
+		} catch (NumberFormatException e) {
+			throw new IllegalArgumentException("option --"+name+" expects a number, found:"+value);
+		}
+	}
+
+	public int getInt(String name, int defaultValue) {
+		long value = getLong(name, defaultValue);
+		if (value > Integer.MAX_VALUE || value < Integer.MIN_VALUE) {
+			throw new IllegalArgumentException("option --"+name+" is out of range:"+value);
+		}
+		return (int)value;
+	}
+
+	/**
+	 * Returns a size in bytes, with an optional k, m or g (1024 based) suffix
+	 * @param name the option
+	 * @param defaultValue the value if the option is not set
+	 * @return the size in bytes
+	 */
+	public long getSize(String name, long defaultValue) {
+		String value = getString(name, null);
+		if (value == null) {
+			return defaultValue;
+		}
+		String number = value.trim().toLowerCase();
+		long multiplier = 1;
+		if (number.endsWith("k")) {
+			multiplier = 1024L;
+		} else if (number.endsWith("m")) {
+			multiplier = 1024L * 1024;
+		} else if (number.endsWith("g")) {
+			multiplier = 1024L * 1024 * 1024;
+		}
+		if (multiplier > 1) {
+			number = number.substring(0, number.length()-1);
+		}
+		try {
+			return (long)(Double.parseDouble(number.trim()) * multiplier);
+		} catch (NumberFormatException e) {
+			throw new IllegalArgumentException("option --"+name+" expects a size in bytes (optionally with k, m or g), found:"+value);
+		}
+	}
+
+	public double getDouble(String name, double defaultValue) {
+		String value = getString(name, null);
+		if (value == null) {
+			return defaultValue;
+		}
+		try {
+			return Double.parseDouble(value.trim());
+		} catch (NumberFormatException e) {
+			throw new IllegalArgumentException("option --"+name+" expects a number, found:"+value);
+		}
+	}
+}
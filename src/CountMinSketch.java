@@ -0,0 +1,82 @@
+/**
+ * Count-Min sketch (Cormode and Muthukrishnan) of 64-bit keys: depth rows of width counters,
+ * each key is counted on one counter per row. The estimate of a key (the lowest of its counters)
+ * is never below its frequency, and above it by at most total * e / width with a probability of
+ * 1 - e^-depth.
+ *
+ */
+public class CountMinSketch {
+	private final int depth;
+	private final int width;
+	private final long[] counters;
+	private long total;
+
+	/**
+	 * new sketch
+	 * @param depth the rows
+	 * @param widthBits the log2 of the counters per row
+	 */
+	public CountMinSketch(int depth, int widthBits) {
+		this.depth = depth;
+		this.width = 1 << widthBits;
+		this.counters = new long[depth * width];
+	}
+
+	/**
+	 * Counts a key
+	 * @param key the key
+	 * @param weight the count to add
+	 */
+	public void add(long key, long weight) {
+		total += weight;
+		for (int row=0;row<depth;row++) {
+			counters[row * width + index(key, row)] += weight;
+		}
+	}
+
+	/**
+	 * @param key the key
+	 * @return the estimated count of a key
+	 */
+	public long estimate(long key) {
+		long ret = Long.MAX_VALUE;
+		for (int row=0;row<depth;row++) {
+			ret = Math.min(ret, counters[row * width + index(key, row)]);
+		}
+		return ret;
+	}
+
+	/**
+	 * @return the overestimate that is not exceeded with the probability given by getConfidence()
+	 */
+	public long getMaxError() {
+		return (long)Math.ceil(total * Math.E / width);
+	}
+
+	/**
+	 * @return the probability that an estimate is within getMaxError() of the count
+	 */
+	public double getConfidence() {
+		return 1 - Math.exp(-depth);
+	}
+
+	public long getMemoryBytes() {
+		return counters.length * 8L;
+	}
+
+	private int index(long key, int row) {
+		return (int)(mix(key + (row + 1) * 0x9E3779B97F4A7C15L) & (width - 1));
+	}
+
+	/**
+	 * 64-bit finalizer of MurmurHash3
+	 */
+	static long mix(long h) {
+		h ^= h >>> 33;
+		h *= 0xff51afd7ed558ccdL;
+		h ^= h >>> 33;
+		h *= 0xc4ceb9fe1a85ec53L;
+		h ^= h >>> 33;
+		return h;
+	}
+}
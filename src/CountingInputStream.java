@@ -0,0 +1,80 @@
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.CRC32C;
+
+/**
+ * Input stream that counts the bytes read from the underlying stream.
+ * The count may be read from other threads (i.e. for progress reporting).
+ *
+ * The bytes read are also hashed (CRC32C, as AnalysisSummary.hash()), so the content hash of a trace
+ * file read to its end is known without reading it a second time. The hash is only read after the
+ * thread that reads the stream is done.
+ *
+ */
+public class CountingInputStream extends FilterInputStream {
+	//bytes read so far
+	private volatile long count;
+
+	//content hash of the bytes read so far
+	private final CRC32C crc;
+
+	public CountingInputStream(InputStream in) {
+		super(in);
+		this.crc = new CRC32C();
+	}
+
+	@Override
+	public int read() throws IOException {
+		int b = super.read();
+		if (b != -1) {
+			crc.update(b);
+			count++;
+		}
+		return b;
+	}
+
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException {
+		int read = super.read(b, off, len);
+		if (read > 0) {
+			crc.update(b, off, read);
+			count += read;
+		}
+		return read;
+	}
+
+	@Override
+	public long skip(long n) throws IOException {
+		//the skipped bytes are read, they are part of the hash
+		byte[] buffer = new byte[(int)Math.min(8192, Math.max(0, n))];
+		long skipped = 0;
+		while (skipped < n) {
+			int read = read(buffer, 0, (int)Math.min(buffer.length, n - skipped));
+			if (read < 0) {
+				break;
+			}
+			skipped += read;
+		}
+		return skipped;
+	}
+
+	@Override
+	public boolean markSupported() {
+		return false;
+	}
+
+	/**
+	 * @return the bytes read so far
+	 */
+	public long getCount() {
+		return count;
+	}
+
+	/**
+	 * @return the content hash (CRC32C) of the bytes read so far
+	 */
+	public long getHash() {
+		return crc.getValue();
+	}
+}
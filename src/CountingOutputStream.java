@@ -0,0 +1,35 @@
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Output stream that counts the bytes written to the underlying stream.
+ *
+ */
+public class CountingOutputStream extends FilterOutputStream {
+	//bytes written so far
+	private volatile long count;
+
+	public CountingOutputStream(OutputStream out) {
+		super(out);
+	}
+
+	@Override
+	public void write(int b) throws IOException {
+		out.write(b);
+		count++;
+	}
+
+	@Override
+	public void write(byte[] b, int off, int len) throws IOException {
+		out.write(b, off, len);
+		count += len;
+	}
+
+	/**
+	 * @return the bytes written so far
+	 */
+	public long getCount() {
+		return count;
+	}
+}
@@ -1,9 +1,14 @@
 import java.io.BufferedReader;
+import java.io.BufferedWriter;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileNotFoundException;
-import java.io.FileReader;
+import java.io.FileOutputStream;
 import java.io.FilenameFilter;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
 import java.io.PrintWriter;
 import java.io.UnsupportedEncodingException;
 import java.util.ArrayList;
@@ -12,8 +17,18 @@ import java.util.Collections;
 import java.util.Comparator;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
 import java.util.logging.LogManager;
 
 
@@ -39,17 +54,52 @@ public class DTLeakAnalyzer {
 	//start / end trace sequences
 	private static final String entryStartCharSequence = "<__";
 	private static final String entryEndCharSequence = "__>";
+
+	//decoders of the trace pipelines
+	private static final TracePipeline.Decoder<MemoryAllocatorTraceEntry> memoryAllocatorDecoder = new TracePipeline.Decoder<MemoryAllocatorTraceEntry>() {
+		@Override
+		public MemoryAllocatorTraceEntry read(BufferedReader br, Map<String, String> exemplars) throws IOException {
+			return readMemoryAllocatorTraceEntry(br, exemplars);
+		}
+	};
+	private static final TracePipeline.Decoder<BrkTraceEntry> brkDecoder = new TracePipeline.Decoder<BrkTraceEntry>() {
+		@Override
+		public BrkTraceEntry read(BufferedReader br, Map<String, String> exemplars) throws IOException {
+			return readBrkTraceEntry(br, exemplars);
+		}
+	};
 	
-	//the log file output writer
+	//the log file output writer, and the bytes written to the log file
 	private final PrintWriter writer;
+	private final CountingOutputStream reportOutput;
+	
+	//the bytes read from the traces file
+	private CountingInputStream traceInput;
+	
+	//phase timing and throughput
+	private final AnalysisMetrics metrics;
 		
 	//used for memory allocator analysis
 	private final List<StackOccurence> uniquePotentialLeakStacks;
 	private final List<StackOccurence> uniquePotentialLeakStacksNeverFreed; //more confident potential leaks
 	private final List<StackOccurence> uniquePotentialWrongFreeStacks;
 	private final List<StackOccurence> uniquePotentialWrongFreeStacksNeverCorrectlyFreed; //more confident wrong free/deletes
-	private int totalPoteltialLeakSuspects;
-	private int totalPotentialWrongFreeSuspects;
+	private long totalPoteltialLeakSuspects;
+	private long totalPotentialWrongFreeSuspects;
+	//allocated and freed bytes of each allocating stack
+	private final Map<String, MemoryAllocatorReplay.StackBytes> stackBytes;
+	//lifetimes of the allocations of each allocating stack
+	private final List<MemoryAllocatorReplay.StackLifetimes> stackLifetimes;
+	//allocation churn of each allocating stack
+	private final List<MemoryAllocatorReplay.StackChurn> stackChurn;
+	//requested sizes of each allocating stack, and the allocations of each size class
+	private final List<MemoryAllocatorReplay.StackSizes> stackSizes;
+	private final List<MemoryAllocatorReplay.SizeClassUsage> sizeClassUsage;
+	//realloc chains by the stack of their first allocation
+	private final List<MemoryAllocatorReplay.StackReallocChains> stackReallocChains;
+	//allocations and releases per thread, and the releases by another thread per pair of allocating and freeing stack
+	private final List<MemoryAllocatorReplay.ThreadAllocations> threadAllocations;
+	private final List<MemoryAllocatorReplay.CrossThreadFrees> crossThreadFrees;
 	//counters
 	private int totalMallocCalls = 0;
 	private int totalCallocCalls = 0;
@@ -61,12 +111,12 @@ public class DTLeakAnalyzer {
 	private String combinedLeakStackStrongSuspects = ""; 
 	
 	//store information for combined file processing
-	private final List<MemoryAllocatorTraceEntry> uniqueSuccessfulFreeStacks; //store unique stacks that correctly freed memory
-	private final List<MemoryAllocatorTraceEntry> uniqueSuccessfullyDeletedStacks; //store unique stacks that allocated memory that was correctly freed
+	private final List<String> uniqueSuccessfulFreeStacks; //store unique stacks that correctly freed memory
+	private final List<String> uniqueSuccessfullyDeletedStacks; //store unique stacks that allocated memory that was correctly freed
 	
 	//used for memory allocator analysis to detect double free operations
 	private final List<StackOccurence> uniqueDoubleFreeStacks; 
-	private int totalDoubleFreeStacks;
+	private long totalDoubleFreeStacks;
 
 	//used for brk processing
 	private final List<BrkStackOccurence> uniqueBrkStacks; //all brk stacks along with their appearance frequency and size
@@ -78,6 +128,9 @@ public class DTLeakAnalyzer {
 	
 	//combined brk stack
 	private String combinedBrkStacks; 
+	
+	//break address time line
+	private final HeapGrowthTimeline heapGrowthTimeline;
 		
 	//used for processed files analysis
 	private final List<StackOccurence> uniqueAllocationStacks;
@@ -85,11 +138,34 @@ public class DTLeakAnalyzer {
 	private final List<StackOccurence> uniqueUnfreedAllocationStacks;
 	private final List<StackOccurence> uniqueUnknownDeallocationStacks;
 	
+	//optional analysis settings
+	private final AnalyzerOptions options;
+	
+	//used for the time-windowed growth analysis (null if not requested)
+	private final WindowedGrowthAnalysis windowedGrowthAnalysis;
+	
+	//bounded memory top stacks of the memory allocator trace (null unless --top-k is set)
+	private HeavyHitterAnalysis heavyHitterAnalysis;
+	
+	//stack relationships of the last -p runs, by memory allocator files and stack settings
+	private static final int relationshipCacheSize = 4;
+	private static final Map<String, Map<StackOccurence, List<StackOccurence>>> relationshipCache = Collections.synchronizedMap(
+			new LinkedHashMap<String, Map<StackOccurence, List<StackOccurence>>>(relationshipCacheSize, 0.75f, true) {
+				private static final long serialVersionUID = 1L;
+
+				@Override
+				protected boolean removeEldestEntry(Map.Entry<String, Map<StackOccurence, List<StackOccurence>>> eldest) {
+					return size() > relationshipCacheSize;
+				}
+			});
+	
 	public static void printArgs(){
 		System.out.println("arguments: -f <type> <input file> <output file>" );;
 		System.out.println("arguments: -d <directory> <output file>" );
 		System.out.println("arguments: -p <directory> -d <directory> <output file>" );
+		System.out.println("arguments: -c <baseline trace or summary> <candidate trace or summary> <output file>" );
 		System.out.println("<type> = memalloc or brk.\nExample: <prog> -f memalloc inputFile outputFile"); 	
+		AnalyzerOptions.printOptions();
 	}
 	
 	/**
@@ -98,22 +174,111 @@ public class DTLeakAnalyzer {
 	 */
 	public static void main(String[] args) throws IOException{
 
+		AnalyzerOptions options;
+		long progressInterval;
+		try {
+			options = AnalyzerOptions.parse(args);
+			args = options.getArguments();
+			progressInterval = options.getLong("progress", 10);
+			FrameNormalizer.setInstance(FrameNormalizer.fromOption(options.getString("strip-offsets", "top")));
+			StackKeyer.setInstance(StackKeyer.fromOptions(options.getString("stack-key", "full"), options.getString("allocator-modules", null)));
+			checkOptions(options);
+		} catch (IllegalArgumentException e) {
+			System.out.println(e.getMessage());
+			printArgs();
+			return;
+		}
+		
 		if (args.length < 3 || args.length > 5) {
 			printArgs();
 			return;
 		}
-
-		if (args.length == 4) {	
+		
+		//live introspection through JMX and flight recorder events
+		AnalyzerMonitor.getInstance().register();
+		
+		//progress lines over all scheduled files
+		ProgressReporter progressReporter = null;
+		if (progressInterval > 0) {
+			progressReporter = new ProgressReporter(AnalyzerMonitor.getInstance(), progressInterval);
+			progressReporter.start();
+		}
+		try {
+			analyze(args, options);
+		} finally {
+			if (progressReporter != null) {
+				progressReporter.stop();
+			}
+		}
+	}
+	
+	/**
+	 * Checks the settings that are read later by the analyses, so that an invalid value is
+	 * reported before any analysis starts
+	 * @param options the optional analysis settings
+	 * @throws IllegalArgumentException if a value is invalid
+	 */
+	static void checkOptions(AnalyzerOptions options) {
+		options.getSize("memory-limit", -1);
+		options.getInt("timeline-points", 1000);
+		options.getInt("parse-threads", 0);
+		options.getInt("decode-threads", 0);
+		if (options.getLong("alive-age", 60) < 0) {
+			throw new IllegalArgumentException("option --alive-age cannot be negative:"+options.getLong("alive-age", 60));
+		}
+		if (options.getLong("churn-entries", 1000) < 0) {
+			throw new IllegalArgumentException("option --churn-entries cannot be negative:"+options.getLong("churn-entries", 1000));
+		}
+		if (options.getLong("churn-seconds", 1) < 0) {
+			throw new IllegalArgumentException("option --churn-seconds cannot be negative:"+options.getLong("churn-seconds", 1));
+		}
+		if (options.getInt("top-k", 0) < 0) {
+			throw new IllegalArgumentException("option --top-k cannot be negative:"+options.getInt("top-k", 0));
+		}
+		if (options.getInt("top-stacks", 20) < 0) {
+			throw new IllegalArgumentException("option --top-stacks cannot be negative:"+options.getInt("top-stacks", 20));
+		}
+		if (options.getInt("realloc-chain", 8) < 1) {
+			throw new IllegalArgumentException("option --realloc-chain must be positive:"+options.getInt("realloc-chain", 8));
+		}
+		String summaryCache = options.getString("summary-cache", "on");
+		if (!summaryCache.equals("on") && !summaryCache.equals("off")) {
+			throw new IllegalArgumentException("option --summary-cache expects on or off, found:"+summaryCache);
+		}
+		String lifetimes = options.getString("lifetimes", "off");
+		if (!lifetimes.equals("on") && !lifetimes.equals("off")) {
+			throw new IllegalArgumentException("option --lifetimes expects on or off, found:"+lifetimes);
+		}
+	}
+	
+	/**
+	 * Runs the analysis selected by the arguments
+	 * @param args the arguments, without the options
+	 * @param options the optional analysis settings
+	 * @throws IOException in case the traces cannot be parsed or the files cannot be accessed
+	 */
+	static void analyze(String[] args, AnalyzerOptions options) throws IOException {
+
+		if (args.length == 4 && args[0].equals("-c")) {
+			//differential mode, compares the memory allocator analyses of a baseline and a candidate
+			printDifferentialAnalysisResults(getDifferentialInput(new File(args[1]), options), getDifferentialInput(new File(args[2]), options), args[1], args[2], args[3],
+					options.getInt("top-stacks", 20));
+		} else if (args.length == 4) {	
+			AnalyzerMonitor.getInstance().schedule(new File[]{new File(args[2])});
 			if (args[1].equals("memalloc")) {
 				//single file mode, generic 
-				DTLeakAnalyzer dtLeakAnalyzer = new DTLeakAnalyzer(args[2], args[3]);
+				DTLeakAnalyzer dtLeakAnalyzer = new DTLeakAnalyzer(args[2], args[3], options);
 				DTLeakAnalyzer.logMessage("Started memory allocator analysis for file "+args[2]+" on:"+new Date(), true, dtLeakAnalyzer.writer);
-				dtLeakAnalyzer.performMemoyAllocatorAnalysis();
+				if (options.getInt("top-k", 0) > 0) {
+					dtLeakAnalyzer.performHeavyHitterAnalysis(options.getInt("top-k", 0));
+				} else {
+					dtLeakAnalyzer.performMemoyAllocatorAnalysis();
+				}
 				DTLeakAnalyzer.logMessage("Finished memory allocator analysis for file "+args[2]+" on:"+new Date(), true, dtLeakAnalyzer.writer);			
 				dtLeakAnalyzer.printAnalysisInformation(TraceFileType.MEMALLOC);
 			} else if (args[1].equals("brk")) {
 				//single file mode, generic 
-				DTLeakAnalyzer dtLeakAnalyzer = new DTLeakAnalyzer(args[2], args[3]);
+				DTLeakAnalyzer dtLeakAnalyzer = new DTLeakAnalyzer(args[2], args[3], options);
 				DTLeakAnalyzer.logMessage("Started process memory increase analysis for file "+args[2]+" on:"+new Date(), true, dtLeakAnalyzer.writer);
 				dtLeakAnalyzer.performBrkAnalysis();
 				DTLeakAnalyzer.logMessage("Finished process memory increase analysis for file "+args[2]+" on:"+new Date(), true, dtLeakAnalyzer.writer);			
@@ -130,7 +295,7 @@ public class DTLeakAnalyzer {
 
 					@Override
 					public boolean accept(File dir, String name) {
-						if (name.endsWith(".report")) {
+						if (name.endsWith(".report") || name.endsWith(AnalysisSummary.fileSuffix) || name.endsWith(AnalysisSummary.fileSuffix+".tmp")) {
 							return false;	
 						} else {
 							return true;
@@ -139,16 +304,33 @@ public class DTLeakAnalyzer {
 					
 				});
 				Arrays.sort(files);
+				AnalyzerMonitor.getInstance().schedule(files);
 	
 				//get each input file and do an analysis. Then write the combined results
+				//the files that have not changed since their last analysis are loaded from their summaries
+				boolean summaryCache = options.getString("summary-cache", "on").equals("on");
+				String summarySettings = AnalysisSummary.getSettings(options);
 				Map<File, DTLeakAnalyzer> fileAnalysisResults = new HashMap<File, DTLeakAnalyzer>();
 				for(File resultsFile : files) {
-					DTLeakAnalyzer dtLeakAnalyzer = new DTLeakAnalyzer(resultsFile.getAbsolutePath(), resultsFile.getAbsolutePath()+".report");
+					if (summaryCache) {
+						DTLeakAnalyzer cachedAnalysis = loadSummary(resultsFile, summarySettings, options);
+						if (cachedAnalysis != null) {
+							System.out.println("Using cached summary of file "+resultsFile+" (unchanged since its last analysis, its report is kept)");
+							fileAnalysisResults.put(resultsFile, cachedAnalysis);
+							continue;
+						}
+					}
+					long traceSize = resultsFile.length();
+					long traceModified = resultsFile.lastModified();
+					DTLeakAnalyzer dtLeakAnalyzer = new DTLeakAnalyzer(resultsFile.getAbsolutePath(), resultsFile.getAbsolutePath()+".report", options);
 					DTLeakAnalyzer.logMessage("Started memory allocator analysis for file "+resultsFile+" on:"+new Date(), true, dtLeakAnalyzer.writer);
 					dtLeakAnalyzer.performMemoyAllocatorAnalysis();
 					DTLeakAnalyzer.logMessage("Finished memory allocator analysis for file "+resultsFile+" on:"+new Date(), true, dtLeakAnalyzer.writer);
 					dtLeakAnalyzer.printAnalysisInformation(TraceFileType.MEMALLOC);
 					fileAnalysisResults.put(resultsFile, dtLeakAnalyzer);
+					if (summaryCache) {
+						dtLeakAnalyzer.saveSummary(resultsFile, traceSize, traceModified, summarySettings);
+					}
 				}
 	
 				//now write the combined results
@@ -167,7 +349,7 @@ public class DTLeakAnalyzer {
 					
 					@Override
 					public boolean accept(File dir, String name) {
-						if (name.endsWith(".report")) {
+						if (name.endsWith(".report") || name.endsWith(AnalysisSummary.fileSuffix) || name.endsWith(AnalysisSummary.fileSuffix+".tmp")) {
 							return false;	
 						} else {
 							return true;
@@ -177,11 +359,6 @@ public class DTLeakAnalyzer {
 				});
 				Arrays.sort(memallocFiles);
 				
-				//get the relationship information
-				Map<StackOccurence, List<StackOccurence>>  stackRelationships = getFreeMemoryStackRelationships(memallocFiles);
-								
-				//process processed files
-				
 				File[] processedfiles = new File(args[1]).listFiles(new FilenameFilter() {
 	
 					@Override
@@ -195,16 +372,25 @@ public class DTLeakAnalyzer {
 					
 				});
 				Arrays.sort(processedfiles);
+				AnalyzerMonitor.getInstance().schedule(memallocFiles);
+				AnalyzerMonitor.getInstance().schedule(processedfiles);
+				
+				//get the relationship information
+				AnalysisMetrics relationshipMetrics = new AnalysisMetrics();
+				Map<StackOccurence, List<StackOccurence>>  stackRelationships = getCachedFreeMemoryStackRelationships(memallocFiles, options, relationshipMetrics);
+								
+				//process processed files
 	
 				//get each input file and do an analysis. Then write the combined results
 				Map<File, DTLeakAnalyzer> fileAnalysisResults = new HashMap<File, DTLeakAnalyzer>();
 				for(File resultsFile : processedfiles) {
-					DTLeakAnalyzer dtLeakAnalyzer = new DTLeakAnalyzer(resultsFile.getAbsolutePath(), resultsFile.getAbsolutePath()+".report");
+					DTLeakAnalyzer dtLeakAnalyzer = new DTLeakAnalyzer(resultsFile.getAbsolutePath(), resultsFile.getAbsolutePath()+".report", options);
 					DTLeakAnalyzer.logMessage("Started processing file "+resultsFile+" on:"+new Date(), true, dtLeakAnalyzer.writer);
 					dtLeakAnalyzer.performProcessedFileAnalysis(stackRelationships);
 					DTLeakAnalyzer.logMessage("Finished processing file "+resultsFile+" on:"+new Date(), true, dtLeakAnalyzer.writer);
-					int numAlloc = 0; 
-					int numDealloc=0;
+					dtLeakAnalyzer.metrics.start(AnalysisMetrics.Phase.REPORT);
+					long numAlloc = 0; 
+					long numDealloc=0;
 					for (StackOccurence rep :dtLeakAnalyzer.uniqueAllocationStacks) {
 						numAlloc += rep.timesFound;
 					}
@@ -216,8 +402,8 @@ public class DTLeakAnalyzer {
 					DTLeakAnalyzer.logMessage("Found "+numDealloc+" memory de-allocation calls", true, dtLeakAnalyzer.writer);					
 					DTLeakAnalyzer.logMessage("Found "+dtLeakAnalyzer.uniqueDeallocationStacks.size()+" unique memory de-allocation stacks", true, dtLeakAnalyzer.writer);
 
-					int numAllocUnfreed = 0;
-					int numDeallocUnknown = 0;
+					long numAllocUnfreed = 0;
+					long numDeallocUnknown = 0;
 					for (StackOccurence rep :dtLeakAnalyzer.uniqueUnfreedAllocationStacks) {
 						numAllocUnfreed += rep.timesFound;
 					}
@@ -229,6 +415,7 @@ public class DTLeakAnalyzer {
 					
 					DTLeakAnalyzer.logMessage("number of memory allocation calls - number of free calls = "+(numAlloc-numDealloc)+"\n", true, dtLeakAnalyzer.writer);
 					fileAnalysisResults.put(resultsFile, dtLeakAnalyzer);
+					dtLeakAnalyzer.printMetrics();
 					dtLeakAnalyzer.writer.close();
 				}
 	
@@ -237,7 +424,7 @@ public class DTLeakAnalyzer {
 				if (args.length == 6) {
 					printNormalStacks = true;
 				}
-				printProcessedFilesCombinedAnalysisResults(fileAnalysisResults, args[4], printNormalStacks);
+				printProcessedFilesCombinedAnalysisResults(fileAnalysisResults, args[4], printNormalStacks, relationshipMetrics);
 			}else {
 				printArgs();
 				return;				
@@ -254,8 +441,30 @@ public class DTLeakAnalyzer {
 	 * @throws Exception in case the traces cannot be parsed or the files cannot be accessed
 	 */
 	public DTLeakAnalyzer(String inFile, String outFile) throws FileNotFoundException, UnsupportedEncodingException {
+		this(inFile, outFile, AnalyzerOptions.defaults());
+	}
+	
+	/**
+	 * new instance of the analyzer 
+	 * @param inFile the traces
+	 * @param outFile the output analysis of the traces that will be produced 
+	 * @param options the optional analysis settings
+	 * @throws UnsupportedEncodingException 
+	 * @throws FileNotFoundException 
+	 */
+	public DTLeakAnalyzer(String inFile, String outFile, AnalyzerOptions options) throws FileNotFoundException, UnsupportedEncodingException {
 		this.inFile = inFile;
 		this.outFile = outFile;
+		this.options = options;
+		this.metrics = new AnalysisMetrics();
+		metrics.setFile(inFile);
+		
+		if (options.isSet("window")) {
+			windowedGrowthAnalysis = new WindowedGrowthAnalysis(options.getLong("window", 60));
+		} else {
+			windowedGrowthAnalysis = null;
+		}
+		heapGrowthTimeline = new HeapGrowthTimeline(options.getSize("memory-limit", -1));
 		
 		uniquePotentialLeakStacks = new ArrayList<StackOccurence>();
 		uniquePotentialLeakStacksNeverFreed = new ArrayList<StackOccurence>();
@@ -264,10 +473,18 @@ public class DTLeakAnalyzer {
 		uniquePotentialWrongFreeStacksNeverCorrectlyFreed = new ArrayList<StackOccurence>();
 		uniqueBrkStacks = new ArrayList<BrkStackOccurence>();
 		uniqueFailedBrkStacks = new ArrayList<BrkStackOccurence>();
+		stackBytes = new HashMap<String, MemoryAllocatorReplay.StackBytes>();
+		stackLifetimes = new ArrayList<MemoryAllocatorReplay.StackLifetimes>();
+		stackChurn = new ArrayList<MemoryAllocatorReplay.StackChurn>();
+		stackSizes = new ArrayList<MemoryAllocatorReplay.StackSizes>();
+		sizeClassUsage = new ArrayList<MemoryAllocatorReplay.SizeClassUsage>();
+		stackReallocChains = new ArrayList<MemoryAllocatorReplay.StackReallocChains>();
+		threadAllocations = new ArrayList<MemoryAllocatorReplay.ThreadAllocations>();
+		crossThreadFrees = new ArrayList<MemoryAllocatorReplay.CrossThreadFrees>();
 		
 		//store some for combined operations
-		uniqueSuccessfulFreeStacks = new ArrayList<MemoryAllocatorTraceEntry>();
-		uniqueSuccessfullyDeletedStacks = new ArrayList<MemoryAllocatorTraceEntry>();
+		uniqueSuccessfulFreeStacks = new ArrayList<String>();
+		uniqueSuccessfullyDeletedStacks = new ArrayList<String>();
 		
 		//for dtrace-processed files
 		uniqueAllocationStacks = new ArrayList<StackOccurence>();
@@ -277,9 +494,11 @@ public class DTLeakAnalyzer {
 		
 		//open output file
 		if (outFile == null) {
+			reportOutput = null;
 			writer = null;
 		} else {
-			writer = new PrintWriter(outFile, "UTF-8");
+			reportOutput = new CountingOutputStream(new FileOutputStream(outFile));
+			writer = new PrintWriter(new BufferedWriter(new OutputStreamWriter(reportOutput, "UTF-8")));
 		}
 	}
 	
@@ -291,229 +510,165 @@ public class DTLeakAnalyzer {
 	 * @return the relationship map
 	 * @throws IOException 
 	 */
-	public static Map<StackOccurence, List<StackOccurence>> getFreeMemoryStackRelationships(File[] memallocFiles) throws IOException {		
-		Map<StackOccurence, List<StackOccurence>> stackRelationshipMap = new HashMap<StackOccurence, List<StackOccurence>>();
+	public static Map<StackOccurence, List<StackOccurence>> getFreeMemoryStackRelationships(File[] memallocFiles) throws IOException {
+		return getFreeMemoryStackRelationships(memallocFiles, new AnalysisMetrics());
+	}
+	
+	/**
+	 * Returns the relationships between stacks that free memory and stacks that allocated memory, from the
+	 * relationships of the last -p runs of this process if the memory allocator trace files and the stack
+	 * settings have not changed (i.e. the jobs of the AnalysisDaemon)
+	 * @param memallocFiles the memory allocator trace files
+	 * @param options the optional analysis settings
+	 * @param metrics the metrics where the reading and replay of the files is accounted
+	 * @return the relationship map, that must not be modified
+	 * @throws IOException 
+	 */
+	private static Map<StackOccurence, List<StackOccurence>> getCachedFreeMemoryStackRelationships(File[] memallocFiles, AnalyzerOptions options, AnalysisMetrics metrics) throws IOException {
+		StringBuilder key = new StringBuilder(AnalysisSummary.getSettings(options));
+		for (File memallocFile : memallocFiles) {
+			key.append('\n').append(memallocFile.getAbsolutePath()).append(';').append(memallocFile.length()).append(';').append(memallocFile.lastModified());
+		}
+		Map<StackOccurence, List<StackOccurence>> stackRelationships = relationshipCache.get(key.toString());
+		if (stackRelationships != null) {
+			System.out.println("Using cached memory allocator stack relationships");
+			return stackRelationships;
+		}
+		stackRelationships = getFreeMemoryStackRelationships(memallocFiles, metrics, options.getInt("parse-threads", 0));
+		relationshipCache.put(key.toString(), stackRelationships);
+		return stackRelationships;
+	}
+	
+	/**
+	 * Returns the relationships between stacks that free memory and stacks that allocated memory
+	 * @param memallocFiles the memory allocator trace files
+	 * @param metrics the metrics where the reading and replay of the files is accounted
+	 * @return the relationship map
+	 * @throws IOException 
+	 */
+	public static Map<StackOccurence, List<StackOccurence>> getFreeMemoryStackRelationships(File[] memallocFiles, AnalysisMetrics metrics) throws IOException {
+		return getFreeMemoryStackRelationships(memallocFiles, metrics, 1);
+	}
+
+	/**
+	 * Returns the relationships between stacks that free memory and stacks that allocated memory.
+	 * The files are replayed in parallel, each one on its own allocation map and thread local aggregation,
+	 * and merged into a StackAggregation, so the counts are exact and do not depend on the threads.
+	 * @param memallocFiles the memory allocator trace files
+	 * @param metrics the metrics where the reading and replay of the files is accounted
+	 * @param threads the files replayed in parallel (0 = number of processors)
+	 * @return the relationship map, the most found free stacks first
+	 * @throws IOException 
+	 */
+	public static Map<StackOccurence, List<StackOccurence>> getFreeMemoryStackRelationships(File[] memallocFiles, AnalysisMetrics metrics, int threads) throws IOException {
+		//the successful frees by free stack, and the freed allocations of each free stack by allocation stack
+		final StackAggregation freeStacks = new StackAggregation();
 		
 		System.out.println("Collecting memory allocator stack relationships");
-		for(File resultsFile : memallocFiles) {
-			System.out.println("processing file:"+resultsFile.getAbsolutePath());
-			//map to keep track of memory allocations
-			Map<String, MemoryAllocatorTraceEntry> memoryAllocation = new HashMap<String, MemoryAllocatorTraceEntry>();
-			
-			//open the traces file
-			try (BufferedReader br = new BufferedReader(new FileReader(resultsFile.getAbsolutePath()))) {
-				
-				//read all entries
-				MemoryAllocatorTraceEntry traceEntry = null;			
-				while ((traceEntry = readMemoryAllocatorTraceEntry(br)) != null) {
-					//now process the entry
-					if (traceEntry.getType().equals(MemoryAllocationTraceEntryType.MALLOC)) {
-						//sanity check
-						if (memoryAllocation.containsKey(traceEntry.getAddress())) {
-							//this should not happen.
-							throw new IOException("Found allocation on memory address:"+traceEntry.getAddress()+" that was already allocated by: "+memoryAllocation.get(traceEntry.getAddress()));
-						}
-						
-						//add to map
-						memoryAllocation.put(traceEntry.getAddress(), traceEntry);
-											
-					} else if (traceEntry.getType().equals(MemoryAllocationTraceEntryType.CALLOC)) {
-						//sanity check
-						if (memoryAllocation.containsKey(traceEntry.getAddress())) {
-							//this should not happen.
-							throw new IOException("Found allocation on memory address:"+traceEntry.getAddress()+" that was already allocated by: "+memoryAllocation.get(traceEntry.getAddress()));
-						}
-						
-						//add to map
-						memoryAllocation.put(traceEntry.getAddress(), traceEntry);
-												
-					} else if (traceEntry.getType().equals(MemoryAllocationTraceEntryType.REALLOC)) {
-						//sanity check
-						if (traceEntry.getAddress().equals(traceEntry.getPreviousAddress())) {
-							//the realloc did not move the memory address, no need to do something
-
-							//add to map, updating the previous entry if it exists
-							memoryAllocation.put(traceEntry.getAddress(), traceEntry);						
-						} else {
-							//new address, the realloc moved the memory
-							if (memoryAllocation.containsKey(traceEntry.getAddress())) {
-								//this should not happen.
-								throw new IOException("Found allocation on memory address:"+traceEntry.getAddress()+" that was already allocated by: "+memoryAllocation.get(traceEntry.getAddress()));
-							}
-
-							//add the new address of the allocation
-							memoryAllocation.put(traceEntry.getAddress(), traceEntry);		
-
-							//remove previous allocation
-							MemoryAllocatorTraceEntry removed = memoryAllocation.remove(traceEntry.getPreviousAddress());
-							
-							//add the previous deallocation to the relationships
-							//keep a reference of this successful delete stack
-							/**
-							 * We are doing this special handling here for realloc, because on the .proc d-script
-							 * we treat realloc calls as an allocation and a de-allocation. 
-							 * So we must associate the relevant stack as being deleted by this deallocation.
-							 */
-							boolean found = false;
-							OUTTER_LOOP:
-							for (StackOccurence existingSuccesfulFree : stackRelationshipMap.keySet()) {
-								if (existingSuccesfulFree.getStack().equals(traceEntry.getCallStack())) {								
-									found = true;
-									existingSuccesfulFree.increaseTimesFound();
-									//add this stack if it does not exist
-									List<StackOccurence> relatedAllocationStacks = stackRelationshipMap.get(existingSuccesfulFree);
-									boolean foundRelatedStack = false;
-									INNER_LOOP:
-									for (StackOccurence relatedStackOccurence : relatedAllocationStacks) {
-										//check if the freed memory was from a stack that we already know
-										if (relatedStackOccurence.getStack().equals(removed.getCallStack())) {
-											foundRelatedStack = true;
-											relatedStackOccurence.increaseTimesFound();
-											break INNER_LOOP;
-										}
-									}
-									if (!foundRelatedStack) { //related stack not found
-										relatedAllocationStacks.add(new StackOccurence(removed.getCallStack()));
-									}
-									break OUTTER_LOOP;
-								}
-							}
-							if (!found) { //free stack not found
-								//create a list and add the stack that its memory allocation was successfully freed
-								List<StackOccurence> allocationStacks = new ArrayList<StackOccurence>();
-								allocationStacks.add(new StackOccurence(removed.getCallStack()));
-								//add the free stack along with the list
-								stackRelationshipMap.put(new StackOccurence(traceEntry.getCallStack()), allocationStacks);
-							}							
-							
-						}
-											
-					}else if (traceEntry.getType().equals(MemoryAllocationTraceEntryType.FREE)) {
-						//check if it exists already on the map
-						if (memoryAllocation.containsKey(traceEntry.getAddress())) {
-							//as expected, we had an allocation and this is the de-allocation
-							MemoryAllocatorTraceEntry removed = memoryAllocation.remove(traceEntry.getAddress());
-							
-							//keep a reference of this successful delete stack
-							boolean found = false;
-							OUTTER_LOOP:
-							for (StackOccurence existingSuccesfulFree : stackRelationshipMap.keySet()) {
-								if (existingSuccesfulFree.getStack().equals(traceEntry.getCallStack())) {								
-									found = true;
-									existingSuccesfulFree.increaseTimesFound();
-									//add this stack if it does not exist
-									List<StackOccurence> relatedAllocationStacks = stackRelationshipMap.get(existingSuccesfulFree);
-									boolean foundRelatedStack = false;
-									INNER_LOOP:
-									for (StackOccurence relatedStackOccurence : relatedAllocationStacks) {
-										//check if the freed memory was from a stack that we already know
-										if (relatedStackOccurence.getStack().equals(removed.getCallStack())) {
-											foundRelatedStack = true;
-											relatedStackOccurence.increaseTimesFound();
-											break INNER_LOOP;
-										}
-									}
-									if (!foundRelatedStack) { //related stack not found
-										relatedAllocationStacks.add(new StackOccurence(removed.getCallStack()));
-									}
-									break OUTTER_LOOP;
-								}
-							}
-							if (!found) { //free stack not found
-								//create a list and add the stack that its memory allocation was successfully freed
-								List<StackOccurence> allocationStacks = new ArrayList<StackOccurence>();
-								allocationStacks.add(new StackOccurence(removed.getCallStack()));
-								//add the free stack along with the list
-								stackRelationshipMap.put(new StackOccurence(traceEntry.getCallStack()), allocationStacks);
-							}			
-							
-							
-						} else {
-							//not expected, but can happen since we are not monitoring all allocations from the beginning of the execution
-							
-						}
-
-					} else {
-						throw new IOException("Cannot handle entry type:"+traceEntry.getType());
-					}					
-				}
-			}catch (IOException e) {
-				System.out.println("problem reading input (traces) file:"+e.getMessage());
-				
-				throw e;
-			} 			
+		if (threads <= 0) {
+			threads = Runtime.getRuntime().availableProcessors();
+		}
+		ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, Math.min(threads, memallocFiles.length)));
+		try {
+			List<Future<AnalysisMetrics>> futures = new ArrayList<Future<AnalysisMetrics>>(memallocFiles.length);
+			for(final File resultsFile : memallocFiles) {
+				futures.add(executor.submit(new Callable<AnalysisMetrics>() {
+					@Override
+					public AnalysisMetrics call() throws IOException {
+						return collectFreeMemoryStackRelationships(resultsFile, freeStacks);
+					}
+				}));
+			}
+			//in the order of the files, so that the metrics do not depend on the threads
+			for (Future<AnalysisMetrics> future : futures) {
+				metrics.add(getFileResult(future));
+			}
+		} finally {
+			executor.shutdownNow();
 		}
 		
+		Map<StackOccurence, List<StackOccurence>> stackRelationshipMap = new LinkedHashMap<StackOccurence, List<StackOccurence>>();
 		int valuesCount = 0;
-		for (List<StackOccurence> values : stackRelationshipMap.values()) {
-			valuesCount += values.size();
+		for (StackOccurence freeStack : freeStacks.getStackOccurences()) {
+			List<StackOccurence> allocationStacks = freeStacks.getRelated(freeStack.getStack()).getStackOccurences();
+			stackRelationshipMap.put(freeStack, allocationStacks);
+			valuesCount += allocationStacks.size();
 		}
 		System.out.println("found in total "+stackRelationshipMap.size()+" unique free stacks, that freed memory allocated from "+valuesCount+" stacks\n");
 		return stackRelationshipMap;
 	}
 
-	
+	private static AnalysisMetrics getFileResult(Future<AnalysisMetrics> future) throws IOException {
+		try {
+			return future.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("interrupted while collecting the memory allocator stack relationships");
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof IOException) {
+				throw (IOException)e.getCause();
+			}
+			throw new IllegalStateException("cannot collect the memory allocator stack relationships", e.getCause());
+		}
+	}
+
 	/**
-	 * Performs the traces analysis for a generic program (using free/malloc/realloc/calloc)
-	 * @throws IOException 
+	 * Replays a memory allocator trace file, and adds the stacks that freed memory with the stacks
+	 * that had allocated it to an aggregation
+	 * @param resultsFile the memory allocator trace file
+	 * @param freeStacks the aggregation of the free stacks, with the allocation stacks as related stacks
+	 * @return the metrics of the file
+	 * @throws IOException if the file cannot be read or decoded
 	 */
-	public void performMemoyAllocatorAnalysis() throws IOException {				
+	private static AnalysisMetrics collectFreeMemoryStackRelationships(File resultsFile, StackAggregation freeStacks) throws IOException {
+		System.out.println("processing file:"+resultsFile.getAbsolutePath());
 		//map to keep track of memory allocations
 		Map<String, MemoryAllocatorTraceEntry> memoryAllocation = new HashMap<String, MemoryAllocatorTraceEntry>();
-
-		//list to keep track of free operations to unallocated memory
-		List<MemoryAllocatorTraceEntry> freeUnallocagedMemoryStacks = new ArrayList<MemoryAllocatorTraceEntry>();
-
-		//map to keep track of memory de-allocations related to free operations, for detecting double free operations
-		Map<String, MemoryAllocatorTraceEntry> freedAndNotReusedMemory = new HashMap<String, MemoryAllocatorTraceEntry>();
+		//the frees of this file, merged at its end
+		StackAggregation.Local localFreeStacks = freeStacks.newLocal();
 		
-		//list to keep track of double free stacks (errors)
-		List<MemoryAllocatorTraceEntry> doubleFree = new ArrayList<MemoryAllocatorTraceEntry>();
+		AnalysisMetrics fileMetrics = new AnalysisMetrics();
+		fileMetrics.setFile(resultsFile.getAbsolutePath());
+		fileMetrics.setTraceBytes(resultsFile.length());
+		AnalyzerMonitor.getInstance().begin(fileMetrics);
 		
 		//open the traces file
-		try (BufferedReader br = new BufferedReader(new FileReader(inFile))) {
+		CountingInputStream traceInput = new CountingInputStream(new FileInputStream(resultsFile.getAbsolutePath()));
+		fileMetrics.setTraceInput(traceInput);
+		try (BufferedReader br = new BufferedReader(new InputStreamReader(traceInput))) {
 			
 			//read all entries
-			MemoryAllocatorTraceEntry traceEntry = null;			
+			MemoryAllocatorTraceEntry traceEntry = null;
+			long entries = 0;
+			fileMetrics.enter(AnalysisMetrics.Phase.READ);
+			long phaseStart = System.nanoTime();
 			while ((traceEntry = readMemoryAllocatorTraceEntry(br)) != null) {
-
+				long parsed = System.nanoTime();
+				fileMetrics.addNanos(AnalysisMetrics.Phase.READ, parsed - phaseStart);
+				fileMetrics.setEntriesDecoded(++entries);
+				
 				//now process the entry
 				if (traceEntry.getType().equals(MemoryAllocationTraceEntryType.MALLOC)) {
-					totalMallocCalls++;
 					//sanity check
 					if (memoryAllocation.containsKey(traceEntry.getAddress())) {
 						//this should not happen.
-						throw new IOException("Entry:"+traceEntry+"\nFound allocation on memory address:"+traceEntry.getAddress()+" that was already allocated by: "+memoryAllocation.get(traceEntry.getAddress()));
+						throw new IOException("Found allocation on memory address:"+traceEntry.getAddress()+" that was already allocated by: "+memoryAllocation.get(traceEntry.getAddress()));
 					}
 					
 					//add to map
 					memoryAllocation.put(traceEntry.getAddress(), traceEntry);
-					
-					if (freedAndNotReusedMemory.containsKey(traceEntry.getAddress())) {
-						//System.out.println("removing from memoryFree list:"+traceEntry.getAddress());
-						//we now re-use memory that was freed, remove the address from the map
-						freedAndNotReusedMemory.remove(traceEntry.getAddress());
-					}
-					
+										
 				} else if (traceEntry.getType().equals(MemoryAllocationTraceEntryType.CALLOC)) {
-					totalCallocCalls++;
 					//sanity check
 					if (memoryAllocation.containsKey(traceEntry.getAddress())) {
 						//this should not happen.
-						throw new IOException("Entry:"+traceEntry+"\nFound allocation on memory address:"+traceEntry.getAddress()+" that was already allocated by: "+memoryAllocation.get(traceEntry.getAddress()));
+						throw new IOException("Found allocation on memory address:"+traceEntry.getAddress()+" that was already allocated by: "+memoryAllocation.get(traceEntry.getAddress()));
 					}
 					
 					//add to map
 					memoryAllocation.put(traceEntry.getAddress(), traceEntry);
-					
-					if (freedAndNotReusedMemory.containsKey(traceEntry.getAddress())) {
-						//System.out.println("removing from memoryFree list:"+traceEntry.getAddress());
-						//we now re-use memory that was freed, remove the address from the map
-						freedAndNotReusedMemory.remove(traceEntry.getAddress());
-					}
-					
+											
 				} else if (traceEntry.getType().equals(MemoryAllocationTraceEntryType.REALLOC)) {
-					totalReallocCalls++;
 					//sanity check
 					if (traceEntry.getAddress().equals(traceEntry.getPreviousAddress())) {
 						//the realloc did not move the memory address, no need to do something
@@ -524,102 +679,173 @@ public class DTLeakAnalyzer {
 						//new address, the realloc moved the memory
 						if (memoryAllocation.containsKey(traceEntry.getAddress())) {
 							//this should not happen.
-							throw new IOException("Entry:"+traceEntry+"\nFound allocation on memory address:"+traceEntry.getAddress()+" that was already allocated by: "+memoryAllocation.get(traceEntry.getAddress()));
+							throw new IOException("Found allocation on memory address:"+traceEntry.getAddress()+" that was already allocated by: "+memoryAllocation.get(traceEntry.getAddress()));
 						}
 
-						//remove previous allocation
-						memoryAllocation.remove(traceEntry.getPreviousAddress());						
 						//add the new address of the allocation
-						memoryAllocation.put(traceEntry.getAddress(), traceEntry);						
-					}
-					
-					if (freedAndNotReusedMemory.containsKey(traceEntry.getAddress())) {
-						//System.out.println("removing from memoryFree list:"+traceEntry.getAddress());
-						//we now re-use memory that was freed, remove the address from the map
-						freedAndNotReusedMemory.remove(traceEntry.getAddress());
+						memoryAllocation.put(traceEntry.getAddress(), traceEntry);		
+
+						//remove previous allocation
+						MemoryAllocatorTraceEntry removed = memoryAllocation.remove(traceEntry.getPreviousAddress());
+						
+						//add the previous deallocation to the relationships
+						/**
+						 * We are doing this special handling here for realloc, because on the .proc d-script
+						 * we treat realloc calls as an allocation and a de-allocation. 
+						 * So we must associate the relevant stack as being deleted by this deallocation.
+						 */
+						if (removed != null) {
+							localFreeStacks.add(traceEntry.getCallStack(), 1);
+							localFreeStacks.addRelated(traceEntry.getCallStack(), removed.getCallStack(), 1);
+						}
 					}
-					
+										
 				}else if (traceEntry.getType().equals(MemoryAllocationTraceEntryType.FREE)) {
-					totalFreeCalls++;
 					//check if it exists already on the map
-					if (memoryAllocation.containsKey(traceEntry.getAddress())) {
+					MemoryAllocatorTraceEntry removed = memoryAllocation.remove(traceEntry.getAddress());
+					if (removed != null) {
 						//as expected, we had an allocation and this is the de-allocation
-						MemoryAllocatorTraceEntry removed = memoryAllocation.remove(traceEntry.getAddress());
-						
-						//keep a reference of this successful delete stack
-						boolean found = false;
-						for (MemoryAllocatorTraceEntry existingSuccesfulDelete : uniqueSuccessfulFreeStacks) {
-							if (existingSuccesfulDelete.getCallStack().equals(traceEntry.getCallStack())) {								
-								found = true;
-								break;
-							}
-						}
-						if (!found) {
-							uniqueSuccessfulFreeStacks.add(traceEntry);
-						}			
-						
-						//keep a reference of the successfully deleted stack
-						boolean foundRemoved = false;
-						for (MemoryAllocatorTraceEntry existingSuccesfullyDeleted : uniqueSuccessfullyDeletedStacks) {
-							if (existingSuccesfullyDeleted.getCallStack().equals(removed.getCallStack())) {
-								foundRemoved = true;
-								break;
-							}
-						}
-						
-						if (!foundRemoved) {
-							uniqueSuccessfullyDeletedStacks.add(removed);
-						}
-						
-						//add to the map to keep track for double free operations
-						if (freedAndNotReusedMemory.containsKey(traceEntry.getAddress())) {
-							//this is an error
-							throw new IOException("Entry:"+traceEntry+"\nFound free on memory address:"+traceEntry.getAddress()+" that was succesfully removed from the memory allocation map, but appears also on the freed and not reused addresses");
-						} else {
-							//does not contain
-							freedAndNotReusedMemory.put(traceEntry.getAddress(), traceEntry);
-						}
-						
+						localFreeStacks.add(traceEntry.getCallStack(), 1);
+						localFreeStacks.addRelated(traceEntry.getCallStack(), removed.getCallStack(), 1);
 					} else {
 						//not expected, but can happen since we are not monitoring all allocations from the beginning of the execution
-												
-						//log this stack that did a free on unallocated memory
-						freeUnallocagedMemoryStacks.add(traceEntry);
-						
-						if (freedAndNotReusedMemory.containsKey(traceEntry.getAddress())) {
-							//System.out.println("adding to doubleFree list:"+traceEntry.getAddress());
-							//double free! log the error
-							doubleFree.add(traceEntry);
-						} else {
-							//System.out.println("adding to freeMemory map:"+traceEntry.getAddress());
-							//log the address that the free was done
-							freedAndNotReusedMemory.put(traceEntry.getAddress(), traceEntry);
-						}
 						
 					}
 
 				} else {
 					throw new IOException("Cannot handle entry type:"+traceEntry.getType());
 				}
-				
+				fileMetrics.setLiveAllocations(memoryAllocation.size());
+				phaseStart = System.nanoTime();
+				fileMetrics.addNanos(AnalysisMetrics.Phase.REPLAY, phaseStart - parsed);
 			}
+			fileMetrics.addNanos(AnalysisMetrics.Phase.READ, System.nanoTime() - phaseStart);
+			fileMetrics.addEvents(AnalysisMetrics.Phase.READ, entries);
+			fileMetrics.addEvents(AnalysisMetrics.Phase.REPLAY, entries);
+			fileMetrics.addBytes(AnalysisMetrics.Phase.READ, traceInput.getCount());
+			localFreeStacks.merge();
+			fileMetrics.setUniqueStacksFound(freeStacks.size());
+			AnalyzerMonitor.getInstance().end(fileMetrics);
+			return fileMetrics;
+		}catch (IOException e) {
+			System.out.println("problem reading input (traces) file:"+e.getMessage());
 			
-			totalDoubleFreeStacks = doubleFree.size();			
+			throw e;
+		} 			
+	}
+
+	
+	/**
+	 * Finds the top allocation, free and leak stacks of a generic program trace with bounded memory,
+	 * instead of replaying it on a map of all the stacks (see HeavyHitterAnalysis).
+	 * The texts of the top stacks that were not monitored during the first pass are read by a second pass.
+	 * @param topK the stacks reported per kind
+	 * @throws IOException if the trace cannot be read or decoded
+	 */
+	public void performHeavyHitterAnalysis(int topK) throws IOException {
+		heavyHitterAnalysis = new HeavyHitterAnalysis(topK);
+		metrics.setTraceBytes(new File(inFile).length());
+		AnalyzerMonitor.getInstance().begin(metrics);
+		metrics.start(AnalysisMetrics.Phase.READ);
+		long bytes = 0;
+		try (InputStream in = openTraceStream()) {
+			heavyHitterAnalysis.analyze(in);
+			bytes += traceInput.getCount();
+		}
+		if (!heavyHitterAnalysis.getUnresolvedStacks().isEmpty()) {
+			try (InputStream in = openTraceStream()) {
+				heavyHitterAnalysis.resolveStacks(in);
+				bytes += traceInput.getCount();
+			}
+		}
+		metrics.stop(AnalysisMetrics.Phase.READ);
+		metrics.setEntriesDecoded(heavyHitterAnalysis.getEntries());
+		metrics.addEvents(AnalysisMetrics.Phase.READ, heavyHitterAnalysis.getEntries());
+		metrics.addBytes(AnalysisMetrics.Phase.READ, bytes);
+		metrics.setLiveAllocations(heavyHitterAnalysis.getLiveAllocations());
+	}
+	
+	/**
+	 * Performs the traces analysis for a generic program (using free/malloc/realloc/calloc)
+	 * @throws IOException 
+	 */
+	public void performMemoyAllocatorAnalysis() throws IOException {				
+		//replays the memory allocations and de-allocations, optionally on multiple shards
+		int replayShards = options.getInt("replay-shards", 1);
+		if (replayShards <= 0) {
+			replayShards = Runtime.getRuntime().availableProcessors();
+		}
+		if (windowedGrowthAnalysis != null) {
+			//the time windows need the trace order of all entries
+			replayShards = 1;
+		}
+		MemoryAllocatorReplay replay = new MemoryAllocatorReplay(replayShards, windowedGrowthAnalysis, options.getString("lifetimes", "off").equals("on"), options.getLong("alive-age", 60),
+				options.getLong("churn-entries", 1000), options.getLong("churn-seconds", 1));
+		metrics.setTraceBytes(new File(inFile).length());
+		metrics.setReplay(replay);
+		AnalyzerMonitor.getInstance().begin(metrics);
+		
+		//open the traces file, the entries are read and decoded on the pipeline while they are replayed
+		try (TracePipeline<MemoryAllocatorTraceEntry> pipeline = openTracePipeline(memoryAllocatorDecoder)) {
 			
-			//find unique cases for qrong deletes and store them			
-			for (MemoryAllocatorTraceEntry entry : doubleFree) {
-				boolean found = false;
-				for (StackOccurence reportEntry : uniqueDoubleFreeStacks) {
-					if (reportEntry.getStack().equals(entry.getCallStack())) {
-						found = true;
-						//increase counter
-						reportEntry.increaseTimesFound();						
-						break;
-					}
+			//read all entries, the waits for the pipeline and the replay of each entry are timed separately
+			MemoryAllocatorTraceEntry traceEntry = null;
+			long entries = 0;
+			metrics.enter(AnalysisMetrics.Phase.READ);
+			long phaseStart = System.nanoTime();
+			while ((traceEntry = pipeline.next()) != null) {
+				long parsed = System.nanoTime();
+				metrics.addNanos(AnalysisMetrics.Phase.READ, parsed - phaseStart);
+				metrics.setEntriesDecoded(++entries);
+
+				//now process the entry
+				if (traceEntry.getType().equals(MemoryAllocationTraceEntryType.MALLOC)) {
+					totalMallocCalls++;
+				} else if (traceEntry.getType().equals(MemoryAllocationTraceEntryType.CALLOC)) {
+					totalCallocCalls++;
+				} else if (traceEntry.getType().equals(MemoryAllocationTraceEntryType.REALLOC)) {
+					totalReallocCalls++;
+				} else if (traceEntry.getType().equals(MemoryAllocationTraceEntryType.FREE)) {
+					totalFreeCalls++;
+				} else {
+					throw new IOException("Cannot handle entry type:"+traceEntry.getType());
 				}
-				if (!found) {
-					uniqueDoubleFreeStacks.add(new StackOccurence(entry.getCallStack()));
-				} 
+				replay.replay(traceEntry);
+				
+				phaseStart = System.nanoTime();
+				metrics.addNanos(AnalysisMetrics.Phase.REPLAY, phaseStart - parsed);
+			}
+			metrics.addNanos(AnalysisMetrics.Phase.READ, System.nanoTime() - phaseStart);
+			metrics.addEvents(AnalysisMetrics.Phase.READ, entries);
+			metrics.addBytes(AnalysisMetrics.Phase.READ, traceInput.getCount());
+			
+			metrics.start(AnalysisMetrics.Phase.REPLAY);
+			replay.awaitCompletion();
+			if (windowedGrowthAnalysis != null) {
+				windowedGrowthAnalysis.finish();
+			}
+			metrics.stop(AnalysisMetrics.Phase.REPLAY);
+			metrics.addEvents(AnalysisMetrics.Phase.REPLAY, entries);
+			metrics.setReplay(null);
+			metrics.setLiveAllocations(replay.getLiveAllocations());
+			metrics.updatePeakLiveAllocations(replay.getPeakLiveAllocations());
+			
+			metrics.start(AnalysisMetrics.Phase.AGGREGATION);
+			MemoryAllocatorReplay.ReplayResult replayResult = replay.getResult();
+			
+			//keep the unique successful free stacks and successfully deleted stacks for combined file processing
+			for (MemoryAllocatorTraceEntry sucDeleteEntry : replayResult.getSuccessfulFreeStacks()) {
+				uniqueSuccessfulFreeStacks.add(sucDeleteEntry.getCallStack());
+			}
+			for (MemoryAllocatorTraceEntry sucDeletedStackEntry : replayResult.getSuccessfullyDeletedStacks()) {
+				uniqueSuccessfullyDeletedStacks.add(sucDeletedStackEntry.getCallStack());
+			}
+			
+			//find unique cases for double frees and store them			
+			totalDoubleFreeStacks = 0;
+			for (MemoryAllocatorReplay.StackCount stackCount : replayResult.getDoubleFreeStacks()) {
+				totalDoubleFreeStacks += stackCount.getTimesFound();
+				uniqueDoubleFreeStacks.add(new StackOccurence(stackCount.getStack(), stackCount.getTimesFound()));
 			}
 						
 			
@@ -628,26 +854,16 @@ public class DTLeakAnalyzer {
 				@Override
 				public int compare(StackOccurence o1,
 						StackOccurence o2) {
-					return o2.getTimesFound()-o1.getTimesFound();
+					return Long.compare(o2.getTimesFound(), o1.getTimesFound());
 				}				
 			});
 			
 			
 			//now process deletes on wrong addresses. 		
-			totalPotentialWrongFreeSuspects = freeUnallocagedMemoryStacks.size();
-			for (MemoryAllocatorTraceEntry entry : freeUnallocagedMemoryStacks) {
-				boolean found = false;
-				for (StackOccurence reportEntry : uniquePotentialWrongFreeStacks) {
-					if (reportEntry.getStack().equals(entry.getCallStack())) {
-						found = true;
-						//increase counter
-						reportEntry.increaseTimesFound();						
-						break;
-					}
-				}
-				if (!found) {
-					uniquePotentialWrongFreeStacks.add(new StackOccurence(entry.getCallStack()));
-				} 
+			totalPotentialWrongFreeSuspects = 0;
+			for (MemoryAllocatorReplay.StackCount stackCount : replayResult.getFreeUnallocatedMemoryStacks()) {
+				totalPotentialWrongFreeSuspects += stackCount.getTimesFound();
+				uniquePotentialWrongFreeStacks.add(new StackOccurence(stackCount.getStack(), stackCount.getTimesFound()));
 			}
 						
 			
@@ -656,42 +872,25 @@ public class DTLeakAnalyzer {
 
 				@Override
 				public int compare(StackOccurence o1, StackOccurence o2) {					
-					return o2.getTimesFound() - o1.getTimesFound();
+					return Long.compare(o2.getTimesFound(), o1.getTimesFound());
 				}
 				
 			});
 			
-			//for each unique unallocated delete stack, now find the ones that have never freed successfully memory
-			for (StackOccurence entry :uniquePotentialWrongFreeStacks) {
-				boolean found = false;
-				for (MemoryAllocatorTraceEntry sucDeleteEntry : uniqueSuccessfulFreeStacks) {
-					if (sucDeleteEntry.getCallStack().equals(entry.getStack())) {
-						found = true;
-						break;
-					}
-				}
-				if (!found) {
-					//this stack has never correctly freed / deleted memory
-					uniquePotentialWrongFreeStacksNeverCorrectlyFreed.add(entry);
-				}
+			//second step, analyze non empty memory allocations to find unique call stacks
+			for (MemoryAllocatorReplay.StackBytes bytes : replayResult.getStackBytes()) {
+				stackBytes.put(bytes.getStack(), bytes);
 			}
-			
-			//second step, analyze non empty memory allocations on the map to find unique call stacks
-			totalPoteltialLeakSuspects = memoryAllocation.keySet().size();
-			for (String memoryAddress : memoryAllocation.keySet()) {
-				MemoryAllocatorTraceEntry unallocatedMemoryCallStack = memoryAllocation.get(memoryAddress);
-				boolean found = false;
-				for (StackOccurence uniquePLeak :uniquePotentialLeakStacks) {
-					if (uniquePLeak.getStack().equals(unallocatedMemoryCallStack.getCallStack())) {
-						found = true;
-						uniquePLeak.increaseTimesFound();
-						break;
-					}
-				}
-				if (!found) {
-					//insert for the first time
-					uniquePotentialLeakStacks.add(new StackOccurence(unallocatedMemoryCallStack.getCallStack()));
-				}
+			stackLifetimes.addAll(replayResult.getStackLifetimes());
+			stackChurn.addAll(replayResult.getStackChurn());
+			stackSizes.addAll(replayResult.getStackSizes());
+			sizeClassUsage.addAll(replayResult.getSizeClassUsage());
+			stackReallocChains.addAll(replayResult.getStackReallocChains());
+			threadAllocations.addAll(replayResult.getThreadAllocations());
+			crossThreadFrees.addAll(replayResult.getCrossThreadFrees());
+			totalPoteltialLeakSuspects = replayResult.getUnfreedAllocations();
+			for (MemoryAllocatorReplay.StackCount stackCount : replayResult.getUnfreedAllocationStacks()) {
+				uniquePotentialLeakStacks.add(new StackOccurence(stackCount.getStack(), stackCount.getTimesFound()));
 			}
 			
 			//sort based on frequency
@@ -699,27 +898,38 @@ public class DTLeakAnalyzer {
 
 				@Override
 				public int compare(StackOccurence o1, StackOccurence o2) {					
-					return o2.getTimesFound() - o1.getTimesFound();
+					return Long.compare(o2.getTimesFound(), o1.getTimesFound());
 				}
 				
 			});
+			metrics.stop(AnalysisMetrics.Phase.AGGREGATION);
+			metrics.addEvents(AnalysisMetrics.Phase.AGGREGATION, totalDoubleFreeStacks + totalPotentialWrongFreeSuspects + totalPoteltialLeakSuspects);
+			metrics.setUniqueStacks(AnalysisMetrics.Phase.AGGREGATION, uniqueDoubleFreeStacks.size() + uniquePotentialWrongFreeStacks.size() + uniquePotentialLeakStacks.size());
+			
+			metrics.start(AnalysisMetrics.Phase.HEURISTICS);
+			//for each unique unallocated delete stack, now find the ones that have never freed successfully memory
+			Set<String> successfulFreeStacks = new HashSet<String>(uniqueSuccessfulFreeStacks);
+			for (StackOccurence entry :uniquePotentialWrongFreeStacks) {
+				if (!successfulFreeStacks.contains(entry.getStack())) {
+					//this stack has never correctly freed / deleted memory
+					uniquePotentialWrongFreeStacksNeverCorrectlyFreed.add(entry);
+				}
+			}
 			
 			//now calculate from the potential leaks, the ones that have never been freed
+			Set<String> successfullyDeletedStacks = new HashSet<String>(uniqueSuccessfullyDeletedStacks);
 			for (StackOccurence entry :uniquePotentialLeakStacks) {
-				boolean found = false;
-				for (MemoryAllocatorTraceEntry sucDeletedStackEntry : uniqueSuccessfullyDeletedStacks) {
-					if (sucDeletedStackEntry.getCallStack().equals(entry.getStack())) {
-						found = true;
-						break;
-					}
-				}
-				if (!found) {
+				if (!successfullyDeletedStacks.contains(entry.getStack())) {
 					//this stack has never correctly freed / deleted memory
 					uniquePotentialLeakStacksNeverFreed.add(entry);
 				}
 			}	
+			metrics.stop(AnalysisMetrics.Phase.HEURISTICS);
+			metrics.addEvents(AnalysisMetrics.Phase.HEURISTICS, uniquePotentialWrongFreeStacks.size() + uniquePotentialLeakStacks.size());
+			metrics.setUniqueStacks(AnalysisMetrics.Phase.HEURISTICS, uniquePotentialWrongFreeStacksNeverCorrectlyFreed.size() + uniquePotentialLeakStacksNeverFreed.size());
 
 			//calculate combined suspect leak stack
+			metrics.start(AnalysisMetrics.Phase.MERGED_TREE);
 			
 			if (uniquePotentialLeakStacks.size() > 1) {
 				//initial conditions for the combined common stack print 
@@ -741,6 +951,9 @@ public class DTLeakAnalyzer {
 				}					
 				combinedLeakStackStrongSuspects = getMergedMemoryAllocatorStack(stackDepth, positions, uniquePotentialLeakStacksNeverFreed);
 			}
+			metrics.stop(AnalysisMetrics.Phase.MERGED_TREE);
+			metrics.addEvents(AnalysisMetrics.Phase.MERGED_TREE, uniquePotentialLeakStacks.size() + uniquePotentialLeakStacksNeverFreed.size());
+			metrics.setUniqueStacks(AnalysisMetrics.Phase.MERGED_TREE, uniquePotentialLeakStacks.size());
 
 			
 		}catch (IOException e) {
@@ -759,45 +972,44 @@ public class DTLeakAnalyzer {
 		//current break address (used to calculate growths and shrinks)
 		long currentBrkAddress = 0;
 
-		//list to keep stacks that allocated / deallocated memory
-		List<BrkTraceEntry> brkAllocationStacks = new ArrayList<BrkTraceEntry>();
-		List<BrkTraceEntry> brkDeAllocationStacks = new ArrayList<BrkTraceEntry>();
-		List<BrkTraceEntry> failedBrkCalls = new ArrayList<BrkTraceEntry>();
-		List<BrkTraceEntry> noIncreaseCalls = new ArrayList<BrkTraceEntry>();
+		//per stack accumulators, the entries are not kept (one pass over the trace)
+		Map<String, BrkStackOccurence> brkStacks = new LinkedHashMap<String, BrkStackOccurence>();
+		Map<String, BrkStackOccurence> failedBrkStacks = new LinkedHashMap<String, BrkStackOccurence>();
+		metrics.setTraceBytes(new File(inFile).length());
+		AnalyzerMonitor.getInstance().begin(metrics);
 		
-		//open the traces file and process each line 
-		try (BufferedReader br = new BufferedReader(new FileReader(inFile))) {
+		//open the traces file, the entries are read and decoded on the pipeline while they are replayed
+		try (TracePipeline<BrkTraceEntry> pipeline = openTracePipeline(brkDecoder)) {
 			
-			//read all entries
-			BrkTraceEntry traceEntry = null;			
-			while ((traceEntry = readBrkTraceEntry(br)) != null) {
+			//read all entries, the waits for the pipeline and the replay of each entry are timed separately
+			BrkTraceEntry traceEntry = null;
+			long entries = 0;
+			metrics.enter(AnalysisMetrics.Phase.READ);
+			long phaseStart = System.nanoTime();
+			while ((traceEntry = pipeline.next()) != null) {
+				long parsed = System.nanoTime();
+				metrics.addNanos(AnalysisMetrics.Phase.READ, parsed - phaseStart);
+				metrics.setEntriesDecoded(++entries);
 
 				//now process the entry
 				if (traceEntry.getType().equals(BrkTraceEntryType.BRK)) {
+					long newBrkAddress = Long.decode(traceEntry.getAddress());
 					if (traceEntry.isSuccess()) {
 						if (currentBrkAddress == 0) {
 							//first time 
-							currentBrkAddress = Long.decode(traceEntry.getAddress());						
+							currentBrkAddress = newBrkAddress;
 						} else {
-							//we already have a break address
-							//decode new brk address
-							long newBrkAddress = Long.decode(traceEntry.getAddress());
-							//calculate mem increase
+							//we already have a break address, calculate mem increase
 							long memIncrease = newBrkAddress - currentBrkAddress;
 							//store new current brk address
 							currentBrkAddress = newBrkAddress;
-							
-							if (memIncrease == 0) {
-								noIncreaseCalls.add(traceEntry);
-							} else if (memIncrease < 0) {
-								brkDeAllocationStacks.add(traceEntry);		
-							} else if (memIncrease > 0) {
-								brkAllocationStacks.add(traceEntry);
-							}
+							addBrkCall(brkStacks, traceEntry, memIncrease);
 						}
+						heapGrowthTimeline.record(traceEntry.getDate(), currentBrkAddress);
 					} else {
-						//failed brk call
-						failedBrkCalls.add(traceEntry);
+						//failed brk call, the requested increase is known once we have a break address
+						totalBrkFailedStacks++;
+						addBrkStack(failedBrkStacks, traceEntry.getCallStack(), currentBrkAddress == 0 ? 0 : newBrkAddress - currentBrkAddress);
 					}
 					
 				} else if (traceEntry.getType().equals(BrkTraceEntryType.SBRK)) {
@@ -805,91 +1017,52 @@ public class DTLeakAnalyzer {
 						
 						long previousBrkAddress = Long.decode(traceEntry.getAddress());
 						long memIncrease = traceEntry.getSize();
+						if (heapGrowthTimeline.getPoints() == 0) {
+							//the time line starts from the break address before the call
+							heapGrowthTimeline.record(traceEntry.getDate(), previousBrkAddress);
+						}
 
-						long newBrkAddress = previousBrkAddress + memIncrease;
 						//store new current brk address
-						currentBrkAddress = newBrkAddress;
-						
-						if (memIncrease == 0) {
-							noIncreaseCalls.add(traceEntry);
-						} else if (memIncrease < 0) {
-							brkDeAllocationStacks.add(traceEntry);		
-						} else if (memIncrease > 0) {
-							brkAllocationStacks.add(traceEntry);
-						}
+						currentBrkAddress = previousBrkAddress + memIncrease;
+						addBrkCall(brkStacks, traceEntry, memIncrease);
+						heapGrowthTimeline.record(traceEntry.getDate(), currentBrkAddress);
 
 					} else {
-						//failed brk call
-						failedBrkCalls.add(traceEntry);
+						//failed sbrk call
+						totalBrkFailedStacks++;
+						addBrkStack(failedBrkStacks, traceEntry.getCallStack(), traceEntry.getSize());
 					}
 				} else {
 					throw new IOException("Cannot handle entry type:"+traceEntry.getType());
 				}
+				metrics.setUniqueStacksFound(brkStacks.size() + failedBrkStacks.size());
 				
+				phaseStart = System.nanoTime();
+				metrics.addNanos(AnalysisMetrics.Phase.REPLAY, phaseStart - parsed);
 			}
+			metrics.addNanos(AnalysisMetrics.Phase.READ, System.nanoTime() - phaseStart);
+			metrics.addEvents(AnalysisMetrics.Phase.READ, entries);
+			metrics.addEvents(AnalysisMetrics.Phase.REPLAY, entries);
+			metrics.addBytes(AnalysisMetrics.Phase.READ, traceInput.getCount());
 			
-			//now we need to process all decoded entries
-			//calculate totals
-			totalBrkIncreaseStacks = brkAllocationStacks.size();
-			totalBrkDecreaseStacks = brkDeAllocationStacks.size();
-			totalBrkNeutralStacks = noIncreaseCalls.size();
-			totalBrkFailedStacks = failedBrkCalls.size();
-			
-			//now get unique failed stacks
-			for (BrkTraceEntry entry : failedBrkCalls) {
-				//see if this already exists on the unique list
-				boolean found = false;
-				for (int i=0;i<uniqueFailedBrkStacks.size();i++) {
-					BrkStackOccurence uniqueEntry = uniqueFailedBrkStacks.get(i);
-					if (uniqueEntry.getStack().equals(entry.getCallStack())) {
-						found = true;
-						//increse counters
-						uniqueEntry.increaseTimesFound();
-						uniqueEntry.increaseSize(entry.getSize());
-						break;
-					}
-				}
-				if (!found) {
-					//add
-					uniqueFailedBrkStacks.add(new BrkStackOccurence(entry.getCallStack(), entry.getSize()));
-				} 
-			}
-			
-			//calculate unique brk stacks
-			List<BrkTraceEntry> allBrkStacks =  new ArrayList<BrkTraceEntry>();
-			allBrkStacks.addAll(brkAllocationStacks);
-			allBrkStacks.addAll(brkDeAllocationStacks);
-			
-			for (BrkTraceEntry entry : allBrkStacks) {
-				//see if this already exists on the unique list
-				boolean found = false;
-				for (int i=0;i<uniqueBrkStacks.size();i++) {
-					BrkStackOccurence uniqueEntry = uniqueBrkStacks.get(i);
-					if (uniqueEntry.getStack().equals(entry.getCallStack())) {
-						found = true;
-						//increse counters
-						uniqueEntry.increaseTimesFound();
-						uniqueEntry.increaseSize(entry.getSize());
-						break;
-					}
-				}
-				if (!found) {
-					//add
-					uniqueBrkStacks.add(new BrkStackOccurence(entry.getCallStack(), entry.getSize()));
-				} 
-			}
-			
-			//sort per appearance frequency
+			//the unique stacks are already aggregated, sort them per appearance frequency
+			metrics.start(AnalysisMetrics.Phase.AGGREGATION);
+			uniqueFailedBrkStacks.addAll(failedBrkStacks.values());
+			uniqueBrkStacks.addAll(brkStacks.values());
 			Collections.sort(uniqueBrkStacks, new Comparator<BrkStackOccurence>() {
 				@Override
 				public int compare(BrkStackOccurence o1,
 						BrkStackOccurence o2) {					
-					return o2.getTimesFound()-o1.getTimesFound();
+					return Long.compare(o2.getTimesFound(), o1.getTimesFound());
 				}
 				
 			});
+			metrics.stop(AnalysisMetrics.Phase.AGGREGATION);
+			metrics.addEvents(AnalysisMetrics.Phase.AGGREGATION, uniqueFailedBrkStacks.size() + uniqueBrkStacks.size());
+			metrics.setUniqueStacks(AnalysisMetrics.Phase.AGGREGATION, uniqueFailedBrkStacks.size() + uniqueBrkStacks.size());
 			
 			//initial conditions for the combined common stack print 
+			metrics.start(AnalysisMetrics.Phase.MERGED_TREE);
 			int stackDepth = 0;	
 			//create initial positions array (all of them)
 			Integer[] positions = new Integer[uniqueBrkStacks.size()];
@@ -897,6 +1070,9 @@ public class DTLeakAnalyzer {
 				positions[i]=i;
 			}			
 			combinedBrkStacks = getMergedBrkStack(stackDepth, positions, uniqueBrkStacks);
+			metrics.stop(AnalysisMetrics.Phase.MERGED_TREE);
+			metrics.addEvents(AnalysisMetrics.Phase.MERGED_TREE, uniqueBrkStacks.size());
+			metrics.setUniqueStacks(AnalysisMetrics.Phase.MERGED_TREE, uniqueBrkStacks.size());
 
 			
 		}catch (IOException e) {
@@ -906,6 +1082,41 @@ public class DTLeakAnalyzer {
 		} 
 	}	
 	
+	/**
+	 * Counts a successful brk / sbrk call as an increase, decrease or neutral call
+	 * and adds its memory change to the stack, if it changed the break address
+	 * @param brkStacks the per stack accumulators
+	 * @param traceEntry the call
+	 * @param memIncrease the change of the break address
+	 */
+	private void addBrkCall(Map<String, BrkStackOccurence> brkStacks, BrkTraceEntry traceEntry, long memIncrease) {
+		if (memIncrease == 0) {
+			totalBrkNeutralStacks++;
+			return;
+		} else if (memIncrease < 0) {
+			totalBrkDecreaseStacks++;
+		} else {
+			totalBrkIncreaseStacks++;
+		}
+		addBrkStack(brkStacks, traceEntry.getCallStack(), memIncrease);
+	}
+
+	/**
+	 * Adds a call to the accumulator of its stack
+	 * @param brkStacks the per stack accumulators
+	 * @param stack the call stack
+	 * @param size the memory change of the call
+	 */
+	private static void addBrkStack(Map<String, BrkStackOccurence> brkStacks, String stack, long size) {
+		BrkStackOccurence occurence = brkStacks.get(stack);
+		if (occurence == null) {
+			brkStacks.put(stack, new BrkStackOccurence(stack, size));
+		} else {
+			occurence.increaseTimesFound();
+			occurence.increaseSize(size);
+		}
+	}
+
 	/**
 	 * Performs the traces analysis for processed files 
 	 * (produced by trace-malloc-free-prod.d)
@@ -914,49 +1125,21 @@ public class DTLeakAnalyzer {
 	 */
 	public void performProcessedFileAnalysis(Map<StackOccurence, List<StackOccurence>> stackRelationships) throws IOException {		
 		
-		//open the traces file and process each line 
-		try (BufferedReader br = new BufferedReader(new FileReader(inFile))) {
-
-			positionNextEntryOnProcessedFile(br);
-			positionNextEntryOnProcessedFile(br);
-			
-			//read all entries, first we have the allocation stacks
-			StackOccurence traceEntry = null;			
-			while ((traceEntry = readProcessedTraceEntry(br)) != null) {
-				//we might have top level memory allocator calls twice, because of their different return addresses
-				boolean found = false;
-				for (StackOccurence existingAllocStack : uniqueAllocationStacks) {
-					if (existingAllocStack.getStack().equals(traceEntry.getStack())) {
-						//already exists, increase
-						existingAllocStack.increaseTimesFound(traceEntry.getTimesFound());
-						found = true;
-						break;
-					}
-				}
-				if (!found) {
-					//first time
-					uniqueAllocationStacks.add(traceEntry);
-				} 
-			}
-					
-			//now the deallocation stacks
-			while ((traceEntry = readProcessedTraceEntry(br)) != null) {
-				//we might have top level memory allocator calls twice, because of their different return addresses			
-				boolean found = false;
-				for (StackOccurence existingDeAllocStack : uniqueDeallocationStacks) {
-					if (existingDeAllocStack.getStack().equals(traceEntry.getStack())) {
-						//already exists, increase
-						existingDeAllocStack.increaseTimesFound(traceEntry.getTimesFound());
-						found = true;
-						break;
-					}
-				}
-				if (!found) {
-					//first time
-					uniqueDeallocationStacks.add(traceEntry);
-				}
-			}
+		metrics.setTraceBytes(new File(inFile).length());
+		AnalyzerMonitor.getInstance().begin(metrics);
+		
+		//parse the allocation and deallocation stacks in parallel
+		try {
+			metrics.start(AnalysisMetrics.Phase.READ);
+			ProcessedFileParser.ParseResult parseResult = new ProcessedFileParser(options.getInt("parse-threads", 0)).parse(new File(inFile), metrics);
+			uniqueAllocationStacks.addAll(parseResult.getAllocationStacks());
+			uniqueDeallocationStacks.addAll(parseResult.getDeallocationStacks());
+			metrics.stop(AnalysisMetrics.Phase.READ);
+			metrics.addEvents(AnalysisMetrics.Phase.READ, parseResult.getEntries());
+			metrics.addBytes(AnalysisMetrics.Phase.READ, metrics.getBytesConsumed());
+			metrics.setUniqueStacks(AnalysisMetrics.Phase.READ, uniqueAllocationStacks.size() + uniqueDeallocationStacks.size());
 			
+			metrics.start(AnalysisMetrics.Phase.HEURISTICS);
 			//copy all of them, they will eventually be removed as they are located
 			uniqueUnfreedAllocationStacks.addAll(uniqueAllocationStacks);
 			
@@ -986,10 +1169,8 @@ public class DTLeakAnalyzer {
 							//check all allocation stacks
 							List<StackOccurence> foundStacks = new ArrayList<StackOccurence>();
 							for (StackOccurence unfreedAllocationStack : uniqueUnfreedAllocationStacks) {
-								/* workaround for some .d scripts 
-								if (unfreedAllocationStack.getStack().equals(relatedAllocationStack.getStack().replaceAll("malloc\\+0x64", "malloc"))) {									
-									foundStacks.add(unfreedAllocationStack);
-								}*/
+								//stacks that differ only in return offsets (i.e. malloc+0x64 in some .d scripts) 
+								//are normalized when they are read, see --strip-offsets
 								//System.out.println("\n### Comparing \n"+unfreedAllocationStack.getStack()+"\n\n with:\n"+relatedAllocationStack.getStack());
 								if (unfreedAllocationStack.getStack().equals(relatedAllocationStack.getStack())) {									
 									foundStacks.add(unfreedAllocationStack);
@@ -1011,7 +1192,9 @@ public class DTLeakAnalyzer {
 					
 				}
 			}
-			
+			metrics.stop(AnalysisMetrics.Phase.HEURISTICS);
+			metrics.addEvents(AnalysisMetrics.Phase.HEURISTICS, uniqueDeallocationStacks.size());
+			metrics.setUniqueStacks(AnalysisMetrics.Phase.HEURISTICS, uniqueUnfreedAllocationStacks.size() + uniqueUnknownDeallocationStacks.size());
 			
 		}catch (IOException e) {
 			System.out.println("problem reading input (traces) file:"+e.getMessage());
@@ -1036,7 +1219,7 @@ public class DTLeakAnalyzer {
 		if (elementPositions.length == 1) {
 			//this is a leaf
 			StackOccurence leafStackEntry = stackElements.get(elementPositions[0]);
-			String[] leafStack =  getCallStack(leafStackEntry.getStack());
+			String[] leafStack =  getTreeCallStack(leafStackEntry.getStack());
 			//create the formatted stack lines
 			StringBuffer stackLines = new StringBuffer();
 			for (int i=stackDepth;i<leafStack.length;i++) {				
@@ -1062,7 +1245,7 @@ public class DTLeakAnalyzer {
 		for (int j=0;j<stackDepth;j++) {
 			combinedStackLines.append("\t");									
 		}
-		combinedStackLines.append(getCallStack(stackElements.get(elementPositions[0]).getStack())[stackDepth]);
+		combinedStackLines.append(getTreeCallStack(stackElements.get(elementPositions[0]).getStack())[stackDepth]);
 		combinedStackLines.append("\n");
 		
 		//examine next stack depth for the selected positions
@@ -1071,7 +1254,7 @@ public class DTLeakAnalyzer {
 			
 			//examine all elements and split into sets that have the same stack at this level			
 			StackOccurence stackReportEntry = stackElements.get(pos);			
-			String[] callStack = getCallStack(stackReportEntry.getStack());
+			String[] callStack = getTreeCallStack(stackReportEntry.getStack());
 			if (callStack.length < stackDepth+1) {
 				//this stack has reached its end. Should not happen?
 				throw new IOException("Found stack that does not have a next element:\n"+stackReportEntry+"\n");	
@@ -1116,7 +1299,7 @@ public class DTLeakAnalyzer {
 		if (elementPositions.length == 1) {
 			//this is a leaf
 			BrkStackOccurence leafStackEntry = stackElements.get(elementPositions[0]);
-			String[] leafStack =  getCallStack(leafStackEntry.getStack());
+			String[] leafStack =  getTreeCallStack(leafStackEntry.getStack());
 			//create the formatted stack lines
 			StringBuffer stackLines = new StringBuffer();
 			for (int i=stackDepth;i<leafStack.length;i++) {				
@@ -1143,7 +1326,7 @@ public class DTLeakAnalyzer {
 		for (int j=0;j<stackDepth;j++) {
 			combinedStackLines.append("\t");									
 		}
-		combinedStackLines.append(getCallStack(stackElements.get(elementPositions[0]).getStack())[stackDepth]);
+		combinedStackLines.append(getTreeCallStack(stackElements.get(elementPositions[0]).getStack())[stackDepth]);
 		combinedStackLines.append("\n");
 		
 		//examine next stack depth for the selected positions
@@ -1152,7 +1335,7 @@ public class DTLeakAnalyzer {
 			
 			//examine all elements and split into sets that have the same stack at this level			
 			BrkStackOccurence stackReportEntry = stackElements.get(pos);			
-			String[] callStack = getCallStack(stackReportEntry.getStack());
+			String[] callStack = getTreeCallStack(stackReportEntry.getStack());
 			if (callStack.length < stackDepth+1) {
 				//this stack has reached its end. Should not happen?
 				throw new IOException("Found stack that does not have a next element:\n"+stackReportEntry+"\n");	
@@ -1193,6 +1376,16 @@ public class DTLeakAnalyzer {
 		return reversedStackEntries;
 	}
 	
+	/**
+	 * Returns the callstack of the merged trees as a String array. Truncated stacks are replaced
+	 * by their exemplar full stacks, as the merged trees need the stacks down to their root.
+	 * @param callstack the callstack with new lines as a single string
+	 * @return the callstack as a string array
+	 */
+	private String[] getTreeCallStack(String callstack) {
+		return getCallStack(StackKeyer.getInstance().getExemplar(callstack));
+	}
+
 	/**
 	 * Simpy reverses the stack entries
 	 * @param stackEntries 
@@ -1218,6 +1411,190 @@ public class DTLeakAnalyzer {
 		}
 	}
 	
+	/**
+	 * Writes the summary of the memory allocator analysis next to the trace file, for later -d runs.
+	 * The content hash is the one of the bytes read by the analysis, the trace file is only hashed
+	 * again if the analysis did not read the size it had when the analysis started.
+	 * A summary that cannot be written is reported and skipped, the analysis itself is complete.
+	 * @param traceFile the trace file
+	 * @param traceSize the size of the trace file when the analysis started
+	 * @param traceModified the modification time of the trace file when the analysis started
+	 * @param settings the settings that change the stacks
+	 */
+	private void saveSummary(File traceFile, long traceSize, long traceModified, String settings) {
+		try {
+			long contentHash = traceInput != null && traceInput.getCount() == traceSize ? traceInput.getHash() : AnalysisSummary.hash(traceFile);
+			createSummary(traceSize, traceModified, contentHash, settings).save(traceFile);
+		} catch (IOException e) {
+			System.out.println("cannot write the summary of file "+traceFile+":"+e.getMessage());
+		}
+	}
+	
+	/**
+	 * Creates the summary of the memory allocator analysis
+	 * @param traceSize the size of the trace file when the analysis started
+	 * @param traceModified the modification time of the trace file when the analysis started
+	 * @param contentHash the content hash of the trace file
+	 * @param settings the settings that change the stacks
+	 * @return the summary
+	 */
+	private AnalysisSummary createSummary(long traceSize, long traceModified, long contentHash, String settings) {
+		AnalysisSummary summary = new AnalysisSummary(traceSize, traceModified, contentHash, settings);
+		summary.setCounter(AnalysisSummary.Counter.MALLOC_CALLS, totalMallocCalls);
+		summary.setCounter(AnalysisSummary.Counter.CALLOC_CALLS, totalCallocCalls);
+		summary.setCounter(AnalysisSummary.Counter.REALLOC_CALLS, totalReallocCalls);
+		summary.setCounter(AnalysisSummary.Counter.FREE_CALLS, totalFreeCalls);
+		summary.setCounter(AnalysisSummary.Counter.DOUBLE_FREES, totalDoubleFreeStacks);
+		summary.setCounter(AnalysisSummary.Counter.WRONG_FREES, totalPotentialWrongFreeSuspects);
+		summary.setCounter(AnalysisSummary.Counter.LEAKS, totalPoteltialLeakSuspects);
+		summary.getStacks(AnalysisSummary.Category.DOUBLE_FREE).addAll(uniqueDoubleFreeStacks);
+		summary.getStacks(AnalysisSummary.Category.WRONG_FREE).addAll(uniquePotentialWrongFreeStacks);
+		summary.getStacks(AnalysisSummary.Category.WRONG_FREE_NEVER_CORRECTLY_FREED).addAll(uniquePotentialWrongFreeStacksNeverCorrectlyFreed);
+		summary.getStacks(AnalysisSummary.Category.LEAK).addAll(uniquePotentialLeakStacks);
+		summary.getStacks(AnalysisSummary.Category.LEAK_NEVER_FREED).addAll(uniquePotentialLeakStacksNeverFreed);
+		summary.getSuccessfulFreeStacks().addAll(uniqueSuccessfulFreeStacks);
+		summary.getSuccessfullyDeletedStacks().addAll(uniqueSuccessfullyDeletedStacks);
+		if (StackKeyer.getInstance().isTruncating()) {
+			//keep the exemplars of the truncated stacks, for the combined report
+			List<String> stacks = new ArrayList<String>(uniqueSuccessfulFreeStacks);
+			stacks.addAll(uniqueSuccessfullyDeletedStacks);
+			for (AnalysisSummary.Category category : AnalysisSummary.Category.values()) {
+				for (StackOccurence occurence : summary.getStacks(category)) {
+					stacks.add(occurence.getStack());
+				}
+			}
+			for (String stack : stacks) {
+				summary.getExemplars().put(stack, StackKeyer.getInstance().getExemplar(stack));
+			}
+		}
+		for (StackOccurence occurence : uniquePotentialLeakStacks) {
+			summary.getOutstandingBytes().put(occurence.getStack(), getOutstandingBytes(occurence.getStack()));
+		}
+		return summary;
+	}
+	
+	/**
+	 * Loads the memory allocator analysis of a trace file from its summary, if the file has not changed since
+	 * the summary was written. The report of the file is not written again.
+	 * @param traceFile the trace file
+	 * @param settings the settings that change the stacks
+	 * @param options the optional analysis settings
+	 * @return the analysis, or null if there is no valid summary
+	 * @throws UnsupportedEncodingException 
+	 * @throws FileNotFoundException 
+	 */
+	private static DTLeakAnalyzer loadSummary(File traceFile, String settings, AnalyzerOptions options) throws FileNotFoundException, UnsupportedEncodingException {
+		long loadStart = System.nanoTime();
+		AnalysisSummary summary = AnalysisSummary.load(traceFile, settings);
+		if (summary == null) {
+			return null;
+		}
+		DTLeakAnalyzer analysis = new DTLeakAnalyzer(traceFile.getAbsolutePath(), null, options);
+		analysis.metrics.setTraceBytes(traceFile.length());
+		AnalyzerMonitor.getInstance().begin(analysis.metrics);
+		analysis.metrics.addNanos(AnalysisMetrics.Phase.READ, System.nanoTime() - loadStart);
+		//the trace file counts as consumed for the progress
+		analysis.metrics.setBytesConsumed(traceFile.length());
+		analysis.metrics.addBytes(AnalysisMetrics.Phase.READ, AnalysisSummary.getSummaryFile(traceFile).length());
+		analysis.totalMallocCalls = (int)summary.getCounter(AnalysisSummary.Counter.MALLOC_CALLS);
+		analysis.totalCallocCalls = (int)summary.getCounter(AnalysisSummary.Counter.CALLOC_CALLS);
+		analysis.totalReallocCalls = (int)summary.getCounter(AnalysisSummary.Counter.REALLOC_CALLS);
+		analysis.totalFreeCalls = (int)summary.getCounter(AnalysisSummary.Counter.FREE_CALLS);
+		analysis.totalDoubleFreeStacks = summary.getCounter(AnalysisSummary.Counter.DOUBLE_FREES);
+		analysis.totalPotentialWrongFreeSuspects = summary.getCounter(AnalysisSummary.Counter.WRONG_FREES);
+		analysis.totalPoteltialLeakSuspects = summary.getCounter(AnalysisSummary.Counter.LEAKS);
+		analysis.uniqueDoubleFreeStacks.addAll(summary.getStacks(AnalysisSummary.Category.DOUBLE_FREE));
+		analysis.uniquePotentialWrongFreeStacks.addAll(summary.getStacks(AnalysisSummary.Category.WRONG_FREE));
+		analysis.uniquePotentialWrongFreeStacksNeverCorrectlyFreed.addAll(summary.getStacks(AnalysisSummary.Category.WRONG_FREE_NEVER_CORRECTLY_FREED));
+		analysis.uniquePotentialLeakStacks.addAll(summary.getStacks(AnalysisSummary.Category.LEAK));
+		analysis.uniquePotentialLeakStacksNeverFreed.addAll(summary.getStacks(AnalysisSummary.Category.LEAK_NEVER_FREED));
+		analysis.uniqueSuccessfulFreeStacks.addAll(summary.getSuccessfulFreeStacks());
+		analysis.uniqueSuccessfullyDeletedStacks.addAll(summary.getSuccessfullyDeletedStacks());
+		for (Map.Entry<String, String> exemplar : summary.getExemplars().entrySet()) {
+			StackKeyer.getInstance().putExemplar(exemplar.getKey(), exemplar.getValue());
+		}
+		analysis.metrics.setUniqueStacks(AnalysisMetrics.Phase.AGGREGATION, analysis.uniqueDoubleFreeStacks.size() + analysis.uniquePotentialWrongFreeStacks.size() + analysis.uniquePotentialLeakStacks.size());
+		AnalyzerMonitor.getInstance().end(analysis.metrics);
+		return analysis;
+	}
+	
+	/**
+	 * Returns the summary of the memory allocator analysis of an input of the -c mode. A summary file is
+	 * loaded as it is, a trace file is loaded from its summary if it has not changed since it was written
+	 * (see --summary-cache), otherwise it is analyzed (with its report in <trace file>.report).
+	 * @param file the trace file or summary file
+	 * @param options the optional analysis settings
+	 * @return the summary
+	 * @throws IOException if the input cannot be read or analyzed, or a summary file has other stack settings
+	 */
+	private static AnalysisSummary getDifferentialInput(File file, AnalyzerOptions options) throws IOException {
+		String settings = AnalysisSummary.getSettings(options);
+		AnalysisSummary summary;
+		if (file.getName().endsWith(AnalysisSummary.fileSuffix)) {
+			summary = AnalysisSummary.loadFile(file);
+			if (!summary.getSettings().equals(settings)) {
+				throw new IOException("summary "+file+" was written with other stack settings:"+summary.getSettings()+", expected:"+settings);
+			}
+			System.out.println("Using summary file "+file);
+		} else {
+			boolean summaryCache = options.getString("summary-cache", "on").equals("on");
+			summary = summaryCache ? AnalysisSummary.load(file, settings) : null;
+			if (summary != null) {
+				System.out.println("Using cached summary of file "+file+" (unchanged since its last analysis, its report is kept)");
+			} else {
+				AnalyzerMonitor.getInstance().schedule(new File[]{file});
+				long traceSize = file.length();
+				long traceModified = file.lastModified();
+				DTLeakAnalyzer dtLeakAnalyzer = new DTLeakAnalyzer(file.getAbsolutePath(), file.getAbsolutePath()+".report", options);
+				DTLeakAnalyzer.logMessage("Started memory allocator analysis for file "+file+" on:"+new Date(), true, dtLeakAnalyzer.writer);
+				dtLeakAnalyzer.performMemoyAllocatorAnalysis();
+				DTLeakAnalyzer.logMessage("Finished memory allocator analysis for file "+file+" on:"+new Date(), true, dtLeakAnalyzer.writer);
+				dtLeakAnalyzer.printAnalysisInformation(TraceFileType.MEMALLOC);
+				if (summaryCache) {
+					dtLeakAnalyzer.saveSummary(file, traceSize, traceModified, settings);
+				}
+				return dtLeakAnalyzer.createSummary(traceSize, traceModified, 0, settings);
+			}
+		}
+		for (Map.Entry<String, String> exemplar : summary.getExemplars().entrySet()) {
+			StackKeyer.getInstance().putExemplar(exemplar.getKey(), exemplar.getValue());
+		}
+		return summary;
+	}
+	
+	/**
+	 * opens the traces file as bytes, counting the bytes that are read from it
+	 * @return the stream
+	 * @throws FileNotFoundException if the traces file does not exist
+	 */
+	private InputStream openTraceStream() throws FileNotFoundException {
+		traceInput = new CountingInputStream(new FileInputStream(inFile));
+		metrics.setTraceInput(traceInput);
+		return traceInput;
+	}
+	
+	/**
+	 * opens the traces file on a pipeline that reads and decodes its entries on other threads (see TracePipeline)
+	 * @param decoder decodes the entries
+	 * @return the pipeline, that closes the file
+	 * @throws FileNotFoundException if the traces file does not exist
+	 */
+	private <T> TracePipeline<T> openTracePipeline(TracePipeline.Decoder<T> decoder) throws FileNotFoundException {
+		return new TracePipeline<T>(openTraceStream(), options.getInt("decode-threads", 0), entryEndCharSequence, decoder);
+	}
+	
+	/**
+	 * Prints the phase metrics of this analysis at the end of the report.
+	 * The report writing phase ends here, with the bytes written so far.
+	 */
+	private void printMetrics() {
+		writer.flush();
+		metrics.stop(AnalysisMetrics.Phase.REPORT);
+		metrics.addBytes(AnalysisMetrics.Phase.REPORT, reportOutput.getCount());
+		metrics.print("Analysis metrics", writer);
+		AnalyzerMonitor.getInstance().end(metrics);
+	}
+	
 
 	/**
 	 * reads the next log entry from the file, for a generic file
@@ -1226,6 +1603,17 @@ public class DTLeakAnalyzer {
 	 * @throws IOException
 	 */
 	public static MemoryAllocatorTraceEntry readMemoryAllocatorTraceEntry(BufferedReader br) throws IOException{
+		return readMemoryAllocatorTraceEntry(br, null);
+	}
+
+	/**
+	 * reads the next log entry from the file, for a generic file
+	 * @param br
+	 * @param exemplars where the exemplars of the truncated stacks are kept, null for the exemplars of the StackKeyer
+	 * @return
+	 * @throws IOException
+	 */
+	public static MemoryAllocatorTraceEntry readMemoryAllocatorTraceEntry(BufferedReader br, Map<String, String> exemplars) throws IOException{
 		
 		List<String> entryLines = new ArrayList<String>();
 		
@@ -1248,7 +1636,7 @@ public class DTLeakAnalyzer {
 					if (line.contains(entryEndCharSequence)) {
 						//mark end of processing entry
 						processingEntry = false;
-						return new MemoryAllocatorTraceEntry(entryLines);
+						return new MemoryAllocatorTraceEntry(entryLines, exemplars);
 					}
 				}
 			} else {				
@@ -1269,7 +1657,7 @@ public class DTLeakAnalyzer {
 					
 					//mark end of processing entry
 					processingEntry = false;
-					return new MemoryAllocatorTraceEntry(entryLines);
+					return new MemoryAllocatorTraceEntry(entryLines, exemplars);
 				}
 			}
 											
@@ -1285,6 +1673,17 @@ public class DTLeakAnalyzer {
 	 * @throws IOException
 	 */
 	public BrkTraceEntry readBrkTraceEntry(BufferedReader br) throws IOException{
+		return readBrkTraceEntry(br, null);
+	}
+
+	/**
+	 * reads the next log entry from the file, for a brk file
+	 * @param br
+	 * @param exemplars where the exemplars of the truncated stacks are kept, null for the exemplars of the StackKeyer
+	 * @return
+	 * @throws IOException
+	 */
+	public static BrkTraceEntry readBrkTraceEntry(BufferedReader br, Map<String, String> exemplars) throws IOException{
 		
 		List<String> entryLines = new ArrayList<String>();
 		
@@ -1307,7 +1706,7 @@ public class DTLeakAnalyzer {
 					if (line.contains(entryEndCharSequence)) {
 						//mark end of processing entry
 						processingEntry = false;
-						return new BrkTraceEntry(entryLines);
+						return new BrkTraceEntry(entryLines, exemplars);
 					}
 				}
 			} else {				
@@ -1324,122 +1723,62 @@ public class DTLeakAnalyzer {
 					//sanity check
 					if (!processingEntry) {
 						throw new IOException("Trace file corrupted. Found char sequence:"+entryEndCharSequence+" while not processing a trace entry. Current line:"+line);					
-					}
-					
-					//mark end of processing entry
-					processingEntry = false;
-					return new BrkTraceEntry(entryLines);
-				}
-			}
-											
-		}
-		//reached end of file
-		return null;
-	}
-		
-	
-	/**
-	 * reads the next log entry from the file (processed file)
-	 * @param br
-	 * @return
-	 * @throws IOException
-	 */
-	public StackOccurence readProcessedTraceEntry(BufferedReader br) throws IOException{
-		List<String> entryLines = new ArrayList<String>();
-		
-		String line;
-		boolean processingEntry = false;
-		while ((line = br.readLine()) != null) {
-			//System.out.println("read entry: reading line:"+line);
-			if (line.trim().equals("") && (!processingEntry)) {
-				//go on next line
-				continue;
-			} else if (line.trim().equals("") && processingEntry) {
-				break;
-			} else {
-				if (line.trim().startsWith("==")) {
-					//found end of section
-					return null;
-				} else {
-					processingEntry = true;
-					entryLines.add(line.trim());
+					}
+					
+					//mark end of processing entry
+					processingEntry = false;
+					return new BrkTraceEntry(entryLines, exemplars);
 				}
-			}										
-		}
-		
-		//convert entry & return
-		StringBuffer stackSB = new StringBuffer();
-		Integer times = null;
-		
-		for (int i=0;i<entryLines.size();i++) {
-			if (i==entryLines.size()-1) {
-				///last line is the number of times
-				times = Integer.parseInt(entryLines.get(i));
-			} else {
-				stackSB.append(entryLines.get(i)+"\n");
 			}
+											
 		}
+		//reached end of file
+		return null;
+	}
 		
-		return new StackOccurence(clearTopLevelStackReturnPointer(stackSB.toString()), times);
-
-	}	
-
+	
 	/**
 	 * Method that clears the return address of the top level call,
 	 * i.e. malloc+064 ==> malloc
+	 * and of the other frames selected with --strip-offsets
 	 * @param stack the string that is the stack
 	 * @return
 	 */
 	public static String clearTopLevelStackReturnPointer(String stack) {
-		StringBuffer ret = new StringBuffer();
-		String[] stackLines = stack.split("\n");
-		for (int i=0;i<stackLines.length;i++) {
-			if (i == 0) {
-				//top level stack element, only work here
-				ret.append(stackLines[0].replaceAll("\\+.+", "")); //i.e. malloc+064 ==> malloc
-				if (i != (stackLines.length-1)) {
-					ret.append("\n");
-				}
-			} else {
-				if (!stackLines[i].isEmpty()) {
-					ret.append(stackLines[i]);
-					if (i != (stackLines.length-1)) {
-						ret.append("\n");
-					}
-				}
-			}
-		}
-		return ret.toString();
+		return FrameNormalizer.getInstance().normalize(stack);
 	}
+
 	/**
-	 * positions the reader on the first entry
-	 * @param br the reader
-	 * @throws IOException if it cannot position on the next entry
+	 * Returns the stack as it is printed on the reports, with its exemplar full stack if it was truncated (see --stack-key)
+	 * @param stack the stack
+	 * @return the stack to print
 	 */
-	private void positionNextEntryOnProcessedFile(BufferedReader br) throws IOException{
-		String line;
-		
-		while ( (line = br.readLine() ) != null ) {
-			//System.out.println("position: reading line:"+line);
-			if (line.trim().equals("")) {
-				//go on next line
-				continue;
-			} else if (line.trim().startsWith("==")) {
-				break;
-			} else {
-				//wrong.....
-				throw new IOException("Cannot determine file position");
-			}
+	private static String reportStack(String stack) {
+		return StackKeyer.getInstance().describe(stack);
+	}
+
+	/**
+	 * Prints how the stacks were truncated, if they were
+	 * @param writer the report
+	 */
+	private static void logStackKey(PrintWriter writer) {
+		if (StackKeyer.getInstance().isTruncating()) {
+			logMessage("Stacks truncated to the "+StackKeyer.getInstance().getDescription()+"\n", false, writer);
 		}
 	}
-	
 	/**
 	 * Prints the analysis information
 	 */
 	public void printAnalysisInformation(TraceFileType fileType) {
+		metrics.start(AnalysisMetrics.Phase.REPORT);
+		logStackKey(writer);
 		switch (fileType) {
 		
 		case MEMALLOC : {
+			if (heavyHitterAnalysis != null) {
+				printHeavyHitterInformation();
+				break;
+			}
 			//to plevel info
 			logMessage("Call statistics", true, writer);
 			logMessage("Found "+totalMallocCalls+" malloc calls", true, writer);
@@ -1452,7 +1791,7 @@ public class DTLeakAnalyzer {
 			if (totalDoubleFreeStacks > 0) {
 				logMessage("Found "+uniqueDoubleFreeStacks.size()+" unique double free stacks", true, writer);
 				for (StackOccurence dFreeStack : uniqueDoubleFreeStacks) {
-					logMessage("Found double free stack "+dFreeStack.getTimesFound()+" times. Stack:\n"+dFreeStack.getStack()+"\n", false, writer);				
+					logMessage("Found double free stack "+dFreeStack.getTimesFound()+" times. Stack:\n"+reportStack(dFreeStack.getStack())+"\n", false, writer);				
 				}
 				
 			}			
@@ -1466,13 +1805,13 @@ public class DTLeakAnalyzer {
 			logMessage("Suspected wrong free stacks\n",false, writer);
 			for (StackOccurence delUnallocatedStack : uniquePotentialWrongFreeStacks) {
 				logMessage("Suspected wrong free stack found "+delUnallocatedStack.getTimesFound()+" times",false, writer);
-				logMessage(delUnallocatedStack.getStack()+"\n\n",false, writer);
+				logMessage(reportStack(delUnallocatedStack.getStack())+"\n\n",false, writer);
 			}
 			
 			logMessage("Strongly suspected wrong free stacks\n",false, writer);
 			for (StackOccurence delUnallocatedStack : uniquePotentialWrongFreeStacksNeverCorrectlyFreed) {
 				logMessage("Strongly suspected wrong free stack found "+delUnallocatedStack.getTimesFound()+" times",false, writer);
-				logMessage(delUnallocatedStack.getStack()+"\n\n",false, writer);
+				logMessage(reportStack(delUnallocatedStack.getStack())+"\n\n",false, writer);
 			}
 			
 			//potential memory leaks
@@ -1482,24 +1821,34 @@ public class DTLeakAnalyzer {
 			logMessage("Found "+uniqueSuccessfullyDeletedStacks.size()+" unique stacks that allocated memory that was correctly freed", true, writer);
 			logMessage("Found "+uniquePotentialLeakStacksNeverFreed.size()+" unique stacks that were never correctly deleted/freed (strong suspects)\n", true, writer);
 			
-			int totalUndeletedAllocations = 0;
+			long totalUndeletedAllocations = 0;
 			//here we are showing the leak stacks based on their frequency 
 			
 			for (StackOccurence suspectCallStack : uniquePotentialLeakStacks) {
 				logMessage("Suspect leak stack found "+suspectCallStack.getTimesFound()+" times",false, writer);
 				totalUndeletedAllocations += suspectCallStack.getTimesFound();
-				logMessage(suspectCallStack.getStack()+"\n\n",false, writer);
+				logMessage(reportStack(suspectCallStack.getStack())+"\n\n",false, writer);
 			}
 
 			for (StackOccurence suspectCallStack : uniquePotentialLeakStacksNeverFreed) {
 				logMessage("Strongly suspect leak stack found "+suspectCallStack.getTimesFound()+" times",false, writer);
-				logMessage(suspectCallStack.getStack()+"\n\n",false, writer);
+				logMessage(reportStack(suspectCallStack.getStack())+"\n\n",false, writer);
 			}
 
 			if (totalUndeletedAllocations != totalPoteltialLeakSuspects) {
 				//total undeleted allocations			
 				logMessage("(Warn) Found mispatch in counting total memory allocations that were not deleted. From pre-processing: "+totalPoteltialLeakSuspects+" from each individual stack count:"+totalUndeletedAllocations+"\n", true, writer);
 			}
+			
+			//the same suspects, by the bytes they keep allocated
+			printOutstandingBytesInformation();
+			if (options.getString("lifetimes", "off").equals("on")) {
+				printLifetimeInformation();
+			}
+			printChurnInformation();
+			printSizeClassInformation();
+			printReallocChainInformation();
+			printThreadInformation();
 
 			//combined stacks
 			if (!combinedLeakStackSuspects.isEmpty()) {
@@ -1511,6 +1860,13 @@ public class DTLeakAnalyzer {
 				logMessage("Presenting strong memory leak suspects in a combined call stack\n", false, writer);
 				logMessage(combinedLeakStackStrongSuspects, false, writer);
 			}			
+			
+			//time-windowed growth
+			if (windowedGrowthAnalysis != null) {
+				printWindowedGrowthInformation();
+			}
+			metrics.addEvents(AnalysisMetrics.Phase.REPORT, uniqueDoubleFreeStacks.size() + uniquePotentialWrongFreeStacks.size() + uniquePotentialWrongFreeStacksNeverCorrectlyFreed.size()
+					+ uniquePotentialLeakStacks.size() + uniquePotentialLeakStacksNeverFreed.size());
 			break;
 		}
 		
@@ -1526,19 +1882,22 @@ public class DTLeakAnalyzer {
 				logMessage("\n*** Failed brk calls (unsuccessful memory increase requests) ***\n", true, writer);			
 				for (BrkStackOccurence failedBrkStacks : uniqueFailedBrkStacks) {
 					logMessage("Failed brk stack found "+failedBrkStacks.getTimesFound()+" times, total size:"+failedBrkStacks.getSizeIncrease(),false, writer);
-					logMessage(failedBrkStacks.getStack()+"\n\n",false, writer);
+					logMessage(reportStack(failedBrkStacks.getStack())+"\n\n",false, writer);
 				}
 			}
 			
 			logMessage("\n*** Unique brk call stacks ***\n", false, writer);						
 			for (BrkStackOccurence failedBrkStacks : uniqueBrkStacks) {
 				logMessage("Unique brk stack found "+failedBrkStacks.getTimesFound()+" times, total size:"+failedBrkStacks.getSizeIncrease(),false, writer);
-				logMessage(failedBrkStacks.getStack()+"\n\n",false, writer);
+				logMessage(reportStack(failedBrkStacks.getStack())+"\n\n",false, writer);
 			}
 			
+			printHeapGrowthTimeline();
+			
 			//combined stack
 			logMessage("Presenting brk stacks in a combined call stack\n", false, writer);
 			logMessage(combinedBrkStacks, false, writer);			
+			metrics.addEvents(AnalysisMetrics.Phase.REPORT, uniqueFailedBrkStacks.size() + uniqueBrkStacks.size());
 			
 			break;
 		}
@@ -1547,6 +1906,7 @@ public class DTLeakAnalyzer {
 		}
 		}
 
+		printMetrics();
 		writer.close();
 	}
 	
@@ -1554,6 +1914,550 @@ public class DTLeakAnalyzer {
 
 
 
+	/**
+	 * Prints the break address time line and its growth projection, and writes the
+	 * downsampled curve as CSV next to the report
+	 */
+	private void printHeapGrowthTimeline() {
+		logMessage("\n*** Heap growth timeline ***\n", true, writer);
+		if (heapGrowthTimeline.getPoints() == 0) {
+			logMessage("No successful brk calls found", true, writer);
+			return;
+		}
+		logMessage(String.format(Locale.US, "Break address from 0x%x to 0x%x in %d seconds (%d calls), growth %d bytes, peak growth %d bytes",
+				heapGrowthTimeline.getInitialBreakAddress(), heapGrowthTimeline.getFinalBreakAddress(), heapGrowthTimeline.getDurationSeconds(),
+				heapGrowthTimeline.getCalls(), heapGrowthTimeline.getGrowth(), heapGrowthTimeline.getPeakGrowth()), true, writer);
+		double slope = heapGrowthTimeline.getSlope();
+		logMessage(String.format(Locale.US, "Growth trend %.1f bytes per second (%.2f MB per hour), fit %.2f",
+				slope, slope * 3600 / (1024.0 * 1024.0), heapGrowthTimeline.getFit()), true, writer);
+		
+		long memoryLimit = heapGrowthTimeline.getMemoryLimit();
+		if (memoryLimit >= 0) {
+			long reached = heapGrowthTimeline.getLimitReachedTimestamp();
+			long projected = heapGrowthTimeline.getProjectedLimitTimestamp();
+			if (reached >= 0) {
+				logMessage("The growth reached the memory limit of "+memoryLimit+" bytes during the trace on:"+heapGrowthTimeline.formatTimestamp(reached), true, writer);
+			} else if (projected < 0) {
+				logMessage("The growth is not projected to reach the memory limit of "+memoryLimit+" bytes, the heap does not grow", true, writer);
+			} else {
+				double hours = (projected - heapGrowthTimeline.getLastTimestamp()) / 3600.0;
+				logMessage(String.format(Locale.US, "The growth is projected to reach the memory limit of %d bytes on:%s (%.1f hours after the end of the trace)",
+						memoryLimit, heapGrowthTimeline.formatTimestamp(projected), hours), true, writer);
+			}
+		}
+		
+		File csvFile = new File(outFile+".timeline.csv");
+		try {
+			int points = heapGrowthTimeline.writeCsv(csvFile, options.getInt("timeline-points", 1000));
+			logMessage("Wrote "+points+" of "+heapGrowthTimeline.getPoints()+" timeline points to "+csvFile, true, writer);
+		} catch (IOException e) {
+			logMessage("cannot write the timeline to "+csvFile+":"+e.getMessage(), true, writer);
+		}
+	}
+	
+	/**
+	 * Prints the memory leak suspects ranked by the bytes they keep allocated
+	 */
+	private void printOutstandingBytesInformation() {
+		long allocatedBytes = 0;
+		long freedBytes = 0;
+		for (MemoryAllocatorReplay.StackBytes bytes : stackBytes.values()) {
+			allocatedBytes += bytes.getAllocatedBytes();
+			freedBytes += bytes.getFreedBytes();
+		}
+		List<StackOccurence> suspectsByBytes = new ArrayList<StackOccurence>(uniquePotentialLeakStacks);
+		Collections.sort(suspectsByBytes, new Comparator<StackOccurence>() {
+			@Override
+			public int compare(StackOccurence o1, StackOccurence o2) {
+				int ret = Long.compare(getOutstandingBytes(o2.getStack()), getOutstandingBytes(o1.getStack()));
+				return ret != 0 ? ret : Long.compare(o2.getTimesFound(), o1.getTimesFound());
+			}
+		});
+		
+		logMessage("\nMemory leak issues by outstanding bytes", true, writer);
+		logMessage("Found "+allocatedBytes+" allocated bytes and "+freedBytes+" freed bytes in total", true, writer);
+		logMessage("Found "+(allocatedBytes - freedBytes)+" outstanding bytes in "+totalPoteltialLeakSuspects+" potential memory leaks\n", true, writer);
+		for (StackOccurence suspectCallStack : suspectsByBytes) {
+			MemoryAllocatorReplay.StackBytes bytes = stackBytes.get(suspectCallStack.getStack());
+			logMessage("Suspect leak stack with "+getOutstandingBytes(suspectCallStack.getStack())+" outstanding bytes in "+suspectCallStack.getTimesFound()+" allocations"
+					+(bytes == null ? "" : " (allocated "+bytes.getAllocatedBytes()+" bytes in "+bytes.getAllocations()+" allocations, freed "+bytes.getFreedBytes()+" bytes in "+bytes.getFrees()+" frees)"), false, writer);
+			logMessage(reportStack(suspectCallStack.getStack())+"\n\n", false, writer);
+		}
+	}
+	
+	/**
+	 * @return the bytes allocated by a stack that were not freed
+	 */
+	private long getOutstandingBytes(String stack) {
+		MemoryAllocatorReplay.StackBytes bytes = stackBytes.get(stack);
+		return bytes == null ? 0 : bytes.getOutstandingBytes();
+	}
+	
+	/**
+	 * Prints the lifetimes of the allocations of the top stacks (see --top-stacks), the stacks with the
+	 * most old allocations still live at the end of the trace first
+	 */
+	private void printLifetimeInformation() {
+		final long aliveAge = options.getLong("alive-age", 60);
+		int topStacks = options.getInt("top-stacks", 20);
+		List<MemoryAllocatorReplay.StackLifetimes> lifetimes = new ArrayList<MemoryAllocatorReplay.StackLifetimes>();
+		long aliveOld = 0;
+		for (MemoryAllocatorReplay.StackLifetimes stackLifetime : stackLifetimes) {
+			if (stackLifetime.getEventLifetimes().getTotalCount() > 0 || stackLifetime.getAliveAges().getTotalCount() > 0) {
+				lifetimes.add(stackLifetime);
+				aliveOld += stackLifetime.getAliveOld();
+			}
+		}
+		Collections.sort(lifetimes, new Comparator<MemoryAllocatorReplay.StackLifetimes>() {
+			@Override
+			public int compare(MemoryAllocatorReplay.StackLifetimes o1, MemoryAllocatorReplay.StackLifetimes o2) {
+				int ret = Long.compare(o2.getAliveOld(), o1.getAliveOld());
+				return ret != 0 ? ret : Long.compare(o2.getEventLifetimes().getTotalCount(), o1.getEventLifetimes().getTotalCount());
+			}
+		});
+
+		logMessage("\nAllocation lifetimes", true, writer);
+		logMessage("Found "+aliveOld+" allocations live at the end of the trace for at least "+aliveAge+" seconds, in "+lifetimes.size()+" allocating stacks\n", true, writer);
+		int listed = topStacks == 0 ? lifetimes.size() : Math.min(topStacks, lifetimes.size());
+		for (MemoryAllocatorReplay.StackLifetimes stackLifetime : lifetimes.subList(0, listed)) {
+			LogHistogram events = stackLifetime.getEventLifetimes();
+			LogHistogram seconds = stackLifetime.getSecondLifetimes();
+			LogHistogram aliveAges = stackLifetime.getAliveAges();
+			logMessage("Allocation stack with "+events.getTotalCount()+" freed allocations, "+aliveAges.getTotalCount()+" live at the end of the trace ("
+					+stackLifetime.getAliveOld()+" for at least "+aliveAge+" seconds)", false, writer);
+			if (events.getTotalCount() > 0) {
+				logMessage("Lifetime in entries p50:"+events.getValueAtPercentile(50)+" p90:"+events.getValueAtPercentile(90)+" p99:"+events.getValueAtPercentile(99)+" max:"+events.getMaxValue()
+						+", in seconds p50:"+seconds.getValueAtPercentile(50)+" p90:"+seconds.getValueAtPercentile(90)+" p99:"+seconds.getValueAtPercentile(99)+" max:"+seconds.getMaxValue(), false, writer);
+				logMessage("Lifetime in seconds histogram:"+seconds.getBuckets(), false, writer);
+			}
+			if (aliveAges.getTotalCount() > 0) {
+				logMessage("Live age in seconds p50:"+aliveAges.getValueAtPercentile(50)+" max:"+aliveAges.getMaxValue()+", histogram:"+aliveAges.getBuckets(), false, writer);
+			}
+			logMessage(reportStack(stackLifetime.getStack())+"\n\n", false, writer);
+		}
+		if (listed < lifetimes.size()) {
+			logMessage("... "+(lifetimes.size() - listed)+" more allocating stacks (see --top-stacks)\n", false, writer);
+		}
+	}
+
+	/**
+	 * Prints the allocating stacks ranked by their short lived allocations, the call sites where
+	 * pooling or stack allocation would save most allocator calls
+	 */
+	private void printChurnInformation() {
+		long churnEntries = options.getLong("churn-entries", 1000);
+		long churnSeconds = options.getLong("churn-seconds", 1);
+		int topStacks = options.getInt("top-stacks", 20);
+		//only the stacks with churn are hotspots
+		List<MemoryAllocatorReplay.StackChurn> hotspots = new ArrayList<MemoryAllocatorReplay.StackChurn>();
+		long allocations = 0;
+		long churned = 0;
+		int candidates = 0;
+		for (MemoryAllocatorReplay.StackChurn churn : stackChurn) {
+			allocations += churn.getAllocations();
+			churned += churn.getChurnedByEntries();
+			if (churn.getChurnedByEntries() > 0) {
+				hotspots.add(churn);
+				if (isPoolingCandidate(churn)) {
+					candidates++;
+				}
+			}
+		}
+		Collections.sort(hotspots, new Comparator<MemoryAllocatorReplay.StackChurn>() {
+			@Override
+			public int compare(MemoryAllocatorReplay.StackChurn o1, MemoryAllocatorReplay.StackChurn o2) {
+				int ret = Long.compare(o2.getChurnedByEntries(), o1.getChurnedByEntries());
+				return ret != 0 ? ret : Long.compare(o2.getAllocations(), o1.getAllocations());
+			}
+		});
+
+		logMessage("\nAllocation churn hotspots", true, writer);
+		logMessage("Found "+churned+" of "+allocations+" allocations freed within "+churnEntries+" entries, in "+hotspots.size()+" allocating stacks ("
+				+candidates+" pooling or stack allocation candidates)\n", true, writer);
+		int listed = topStacks == 0 ? hotspots.size() : Math.min(topStacks, hotspots.size());
+		for (MemoryAllocatorReplay.StackChurn churn : hotspots.subList(0, listed)) {
+			logMessage(String.format(Locale.US, "Allocation stack with %d allocations (%.2f per second), %.1f%% freed within %d entries, %.1f%% within %d seconds, median size %d bytes, freed by %d distinct stacks",
+					churn.getAllocations(), churn.getAllocationsPerSecond(), percentage(churn.getChurnedByEntries(), churn.getAllocations()), churnEntries,
+					percentage(churn.getChurnedBySeconds(), churn.getAllocations()), churnSeconds, churn.getMedianSize(), churn.getFreeingStacks())
+					+(isPoolingCandidate(churn) ? " (pooling or stack allocation candidate)" : ""), false, writer);
+			logMessage(reportStack(churn.getStack())+"\n\n", false, writer);
+		}
+		if (listed < hotspots.size()) {
+			logMessage("... "+(hotspots.size() - listed)+" more allocating stacks (see --top-stacks)\n", false, writer);
+		}
+	}
+
+	/**
+	 * @return whether at least half of the allocations of a stack were freed within the churn window of entries
+	 */
+	private static boolean isPoolingCandidate(MemoryAllocatorReplay.StackChurn churn) {
+		return churn.getChurnedByEntries() * 2 >= churn.getAllocations();
+	}
+
+	/**
+	 * Prints the allocations of each size class with their live and peak counts, and the requested sizes
+	 * of the top allocating stacks (see --top-stacks). The size classes with a large share of the allocations, and the stacks
+	 * that allocate mostly in a single size class, are the candidates for dedicated caches (but not the
+	 * oversize class, whose requests have no cache size).
+	 */
+	private void printSizeClassInformation() {
+		long allocations = 0;
+		for (MemoryAllocatorReplay.SizeClassUsage usage : sizeClassUsage) {
+			allocations += usage.getAllocations();
+		}
+
+		logMessage("\nAllocation size classes", true, writer);
+		logMessage("size class     allocations   share   requested bytes      unused bytes        live   peak live", true, writer);
+		for (MemoryAllocatorReplay.SizeClassUsage usage : sizeClassUsage) {
+			if (usage.getAllocations() == 0) {
+				continue;
+			}
+			double share = percentage(usage.getAllocations(), allocations);
+			logMessage(String.format(Locale.US, "%-10s %15d %6.1f%% %17d %17d %11d %11d", SizeClasses.getSizeClassName(usage.getSizeClass()), usage.getAllocations(), share,
+					usage.getRequestedBytes(), usage.getUnusedBytes(), usage.getLiveAllocations(), usage.getPeakLiveAllocations())
+					+(share >= 10 && usage.getSizeClass() != SizeClasses.oversizeClass ? "  (dedicated cache candidate)" : ""), true, writer);
+		}
+		logMessage("", true, writer);
+
+		int topStacks = options.getInt("top-stacks", 20);
+		List<MemoryAllocatorReplay.StackSizes> sizes = new ArrayList<MemoryAllocatorReplay.StackSizes>();
+		int candidates = 0;
+		for (MemoryAllocatorReplay.StackSizes stackSize : stackSizes) {
+			if (stackSize.getAllocations() > 0) {
+				sizes.add(stackSize);
+				if (isDedicatedCacheCandidate(stackSize)) {
+					candidates++;
+				}
+			}
+		}
+		Collections.sort(sizes, new Comparator<MemoryAllocatorReplay.StackSizes>() {
+			@Override
+			public int compare(MemoryAllocatorReplay.StackSizes o1, MemoryAllocatorReplay.StackSizes o2) {
+				return Long.compare(o2.getAllocations(), o1.getAllocations());
+			}
+		});
+		logMessage("Requested sizes of "+sizes.size()+" allocating stacks ("+candidates+" dedicated cache candidates)\n", false, writer);
+		int listed = topStacks == 0 ? sizes.size() : Math.min(topStacks, sizes.size());
+		for (MemoryAllocatorReplay.StackSizes stackSize : sizes.subList(0, listed)) {
+			int dominant = stackSize.getDominantSizeClass();
+			double dominantShare = percentage(stackSize.getSizeClassCounts()[dominant], stackSize.getAllocations());
+			logMessage(String.format(Locale.US, "Allocation stack with %d allocations, %.1f%% in size class %s", stackSize.getAllocations(), dominantShare, SizeClasses.getSizeClassName(dominant))
+					+(isDedicatedCacheCandidate(stackSize) ? " (dedicated cache candidate)" : ""), false, writer);
+			StringBuilder powerOfTwo = new StringBuilder();
+			long[] powerOfTwoCounts = stackSize.getPowerOfTwoCounts();
+			for (int i=0;i<powerOfTwoCounts.length;i++) {
+				if (powerOfTwoCounts[i] > 0) {
+					powerOfTwo.append(' ').append(SizeClasses.getPowerOfTwoName(i)).append(':').append(powerOfTwoCounts[i]);
+				}
+			}
+			StringBuilder sizeClasses = new StringBuilder();
+			long[] sizeClassCounts = stackSize.getSizeClassCounts();
+			for (int i=0;i<sizeClassCounts.length;i++) {
+				if (sizeClassCounts[i] > 0) {
+					sizeClasses.append(' ').append(SizeClasses.getSizeClassName(i)).append(':').append(sizeClassCounts[i]);
+				}
+			}
+			logMessage("Sizes by power of two:"+powerOfTwo, false, writer);
+			logMessage("Sizes by size class:"+sizeClasses, false, writer);
+			logMessage(reportStack(stackSize.getStack())+"\n\n", false, writer);
+		}
+		if (listed < sizes.size()) {
+			logMessage("... "+(sizes.size() - listed)+" more allocating stacks (see --top-stacks)\n", false, writer);
+		}
+	}
+
+	/**
+	 * @return whether at least 90% of the allocations of a stack are in one size class, other than the oversize class
+	 */
+	private static boolean isDedicatedCacheCandidate(MemoryAllocatorReplay.StackSizes stackSize) {
+		int dominant = stackSize.getDominantSizeClass();
+		return dominant != SizeClasses.oversizeClass && percentage(stackSize.getSizeClassCounts()[dominant], stackSize.getAllocations()) >= 90;
+	}
+
+	/**
+	 * Prints the top allocation, free and leak stacks of the bounded memory analysis, with the bounds of their
+	 * counts, the estimated distinct stacks and the memory used by the sketches
+	 */
+	private void printHeavyHitterInformation() {
+		logMessage("Top stacks (bounded memory analysis of "+heavyHitterAnalysis.getEntries()+" trace entries)", true, writer);
+		for (HeavyHitterAnalysis.StackKind kind : HeavyHitterAnalysis.StackKind.values()) {
+			HeavyHitterAnalysis.StackCounter counter = heavyHitterAnalysis.getCounter(kind);
+			String name = kind.name().toLowerCase(Locale.US);
+			logMessage("\nTop "+name+" stacks", true, writer);
+			logMessage(String.format(Locale.US, "Found %d %ss on about %d unique stacks (+/-%.1f%%), counts exact within %d (Count-Min within %d with %.1f%% confidence)\n",
+					counter.getTotal(), name, counter.getDistinctStacks(), 100 * counter.getDistinctError(), counter.getMaxError(),
+					counter.getSketchError(), 100 * counter.getSketchConfidence()), true, writer);
+			for (HeavyHitterAnalysis.HeavyHitter heavyHitter : counter.getTop(heavyHitterAnalysis.getTopK())) {
+				String times = heavyHitter.getLowerBound() == heavyHitter.getUpperBound() ? heavyHitter.getUpperBound()+" times"
+						: "between "+heavyHitter.getLowerBound()+" and "+heavyHitter.getUpperBound()+" times";
+				logMessage("Top "+name+" stack found "+times+". Stack:", false, writer);
+				logMessage(reportStack(heavyHitter.getStack())+"\n\n", false, writer);
+			}
+		}
+		logMessage("\nBounded memory analysis", true, writer);
+		logMessage("Sketches and counters: "+heavyHitterAnalysis.getSketchBytes()+" bytes", true, writer);
+		logMessage("Live allocations at the end of the trace: "+heavyHitterAnalysis.getLiveAllocations()+" ("+heavyHitterAnalysis.getLiveTableBytes()+" bytes)", true, writer);
+		logMessage("Distinct frames: "+heavyHitterAnalysis.getFrames(), true, writer);
+	}
+
+	/**
+	 * Prints the realloc chains of the top stacks of their first allocation (see --top-stacks), the flagged
+	 * stacks first, then the stacks that copied most. A stack with a chain of at least --realloc-chain reallocs is flagged when most of its reallocs grow
+	 * the block by small steps or move it, the patterns that copy the block over and over.
+	 */
+	private void printReallocChainInformation() {
+		final int longChain = options.getInt("realloc-chain", 8);
+		int topStacks = options.getInt("top-stacks", 20);
+		List<MemoryAllocatorReplay.StackReallocChains> reallocChains = new ArrayList<MemoryAllocatorReplay.StackReallocChains>();
+		long chains = 0;
+		long bytesCopied = 0;
+		int flagged = 0;
+		for (MemoryAllocatorReplay.StackReallocChains chain : stackReallocChains) {
+			if (chain.getChains() > 0) {
+				reallocChains.add(chain);
+				chains += chain.getChains();
+				bytesCopied += chain.getBytesCopied();
+				if (!getReallocPattern(chain, longChain).isEmpty()) {
+					flagged++;
+				}
+			}
+		}
+		Collections.sort(reallocChains, new Comparator<MemoryAllocatorReplay.StackReallocChains>() {
+			@Override
+			public int compare(MemoryAllocatorReplay.StackReallocChains o1, MemoryAllocatorReplay.StackReallocChains o2) {
+				int ret = Boolean.compare(getReallocPattern(o1, longChain).isEmpty(), getReallocPattern(o2, longChain).isEmpty());
+				if (ret != 0) {
+					return ret;
+				}
+				ret = Long.compare(o2.getBytesCopied(), o1.getBytesCopied());
+				return ret != 0 ? ret : Long.compare(o2.getReallocs(), o1.getReallocs());
+			}
+		});
+
+		logMessage("\nRealloc chains", true, writer);
+		logMessage("Found "+chains+" realloc chains that copied "+bytesCopied+" bytes, started by "+reallocChains.size()+" allocating stacks ("
+				+flagged+" flagged)\n", true, writer);
+		int listed = topStacks == 0 ? reallocChains.size() : Math.min(topStacks, reallocChains.size());
+		for (MemoryAllocatorReplay.StackReallocChains chain : reallocChains.subList(0, listed)) {
+			String pattern = getReallocPattern(chain, longChain);
+			logMessage(String.format(Locale.US, "Allocation stack that started %d realloc chains with %d reallocs (%.1f per chain, longest %d), %d moves, %d small growth steps, %d bytes copied",
+					chain.getChains(), chain.getReallocs(), (double)chain.getReallocs() / chain.getChains(), chain.getLongestChain(), chain.getMoves(),
+					chain.getSmallSteps(), chain.getBytesCopied())+pattern, false, writer);
+			logMessage(reportStack(chain.getStack())+"\n\n", false, writer);
+		}
+		if (listed < reallocChains.size()) {
+			logMessage("... "+(reallocChains.size() - listed)+" more allocating stacks (see --top-stacks)\n", false, writer);
+		}
+	}
+
+	/**
+	 * @return the growth patterns a stack is flagged for, empty if its chains are shorter than longChain reallocs
+	 * or most of its reallocs neither grow by small steps nor move the block
+	 */
+	private static String getReallocPattern(MemoryAllocatorReplay.StackReallocChains chain, int longChain) {
+		String ret = "";
+		if (chain.getLongestChain() >= longChain) {
+			if (chain.getSmallSteps() * 2 >= chain.getReallocs()) {
+				ret += " (small linear growth steps)";
+			}
+			if (chain.getMoves() * 2 >= chain.getReallocs()) {
+				ret += " (frequent moving reallocs)";
+			}
+		}
+		return ret;
+	}
+
+	/**
+	 * Prints the allocations and releases of the top threads, and the top pairs of allocating and freeing
+	 * stack ranked by the releases on another thread than the allocating thread (see --top-stacks). Only
+	 * the summary goes to the console.
+	 */
+	private void printThreadInformation() {
+		int topStacks = options.getInt("top-stacks", 20);
+		List<MemoryAllocatorReplay.ThreadAllocations> threads = new ArrayList<MemoryAllocatorReplay.ThreadAllocations>(threadAllocations);
+		Collections.sort(threads, new Comparator<MemoryAllocatorReplay.ThreadAllocations>() {
+			@Override
+			public int compare(MemoryAllocatorReplay.ThreadAllocations o1, MemoryAllocatorReplay.ThreadAllocations o2) {
+				int ret = Long.compare(o2.getAllocations(), o1.getAllocations());
+				return ret != 0 ? ret : o1.getThreadId().compareTo(o2.getThreadId());
+			}
+		});
+		List<MemoryAllocatorReplay.CrossThreadFrees> pairs = new ArrayList<MemoryAllocatorReplay.CrossThreadFrees>(crossThreadFrees);
+		Collections.sort(pairs, new Comparator<MemoryAllocatorReplay.CrossThreadFrees>() {
+			@Override
+			public int compare(MemoryAllocatorReplay.CrossThreadFrees o1, MemoryAllocatorReplay.CrossThreadFrees o2) {
+				int ret = Long.compare(o2.getFrees(), o1.getFrees());
+				return ret != 0 ? ret : Long.compare(o2.getBytes(), o1.getBytes());
+			}
+		});
+		long frees = 0;
+		long crossThread = 0;
+		for (MemoryAllocatorReplay.ThreadAllocations thread : threads) {
+			frees += thread.getFrees();
+			crossThread += thread.getCrossThreadFrees();
+		}
+
+		logMessage("\nAllocations per thread", true, writer);
+		logMessage("Found "+crossThread+" of "+frees+" frees on another thread than the allocating thread, in "+threads.size()+" threads\n", true, writer);
+		logMessage("thread        allocations  allocated bytes        frees     freed bytes  frees of other threads  freed by other threads", false, writer);
+		int listedThreads = topStacks == 0 ? threads.size() : Math.min(topStacks, threads.size());
+		for (MemoryAllocatorReplay.ThreadAllocations thread : threads.subList(0, listedThreads)) {
+			logMessage(String.format(Locale.US, "%-10s %14d %16d %12d %15d %23d %22d", thread.getThreadId(), thread.getAllocations(), thread.getAllocatedBytes(),
+					thread.getFrees(), thread.getFreedBytes(), thread.getCrossThreadFrees(), thread.getFreedByOtherThreads()), false, writer);
+		}
+		if (listedThreads < threads.size()) {
+			logMessage("... "+(threads.size() - listedThreads)+" more threads (see --top-stacks)", false, writer);
+		}
+
+		logMessage("\nCross-thread frees by allocating and freeing stack ("+pairs.size()+" pairs)\n", false, writer);
+		int listedPairs = topStacks == 0 ? pairs.size() : Math.min(topStacks, pairs.size());
+		for (MemoryAllocatorReplay.CrossThreadFrees pair : pairs.subList(0, listedPairs)) {
+			logMessage(String.format(Locale.US, "Allocation stack freed %d times on another thread (%d bytes, %.1f%% of its frees) by the free stack",
+					pair.getFrees(), pair.getBytes(), percentage(pair.getFrees(), pair.getStackFrees())), false, writer);
+			logMessage(reportStack(pair.getStack())+"\n", false, writer);
+			logMessage("Freed by:", false, writer);
+			logMessage(reportStack(pair.getFreeingStack())+"\n\n", false, writer);
+		}
+		if (listedPairs < pairs.size()) {
+			logMessage("... "+(pairs.size() - listedPairs)+" more pairs (see --top-stacks)\n", false, writer);
+		}
+	}
+
+	private static double percentage(long part, long total) {
+		return total == 0 ? 0 : part * 100.0 / total;
+	}
+
+	private void printWindowedGrowthInformation() {
+		List<WindowedGrowthAnalysis.StackGrowth> growingStacks = windowedGrowthAnalysis.getGrowingStacks();
+		int steadyGrowthStacks = 0;
+		int burstStacks = 0;
+		for (WindowedGrowthAnalysis.StackGrowth growth : growingStacks) {
+			if (growth.getGrowthType() == WindowedGrowthAnalysis.GrowthType.STEADY) {
+				steadyGrowthStacks++;
+			} else if (growth.getGrowthType() == WindowedGrowthAnalysis.GrowthType.BURST) {
+				burstStacks++;
+			}
+		}
+		logMessage("\nTime-windowed growth analysis", true, writer);
+		logMessage("Analyzed "+windowedGrowthAnalysis.getWindows()+" windows of "+windowedGrowthAnalysis.getWindowSeconds()+" seconds", true, writer);
+		logMessage("Found "+growingStacks.size()+" unique stacks with outstanding memory at the end of the trace", true, writer);
+		logMessage("Found "+steadyGrowthStacks+" unique stacks with steady outstanding growth (steady leak suspects)", true, writer);
+		logMessage("Found "+burstStacks+" unique stacks with burst allocations\n", true, writer);
+		
+		for (WindowedGrowthAnalysis.StackGrowth growth : growingStacks) {
+			logMessage("Outstanding growth stack: "+growth.getInformation(), false, writer);
+			logMessage(reportStack(growth.getStack())+"\n\n", false, writer);
+		}
+	}
+	
+	/**
+	 * Prints the differential report of the suspect leak stacks of a baseline and a candidate analysis:
+	 * the new and vanished stacks, and the changes of the outstanding allocations and bytes of the stacks
+	 * of both, ranked by absolute and by relative change. Each list is capped at the top stacks, the differential
+	 * folded stacks of the outstanding bytes of all stacks are written to <output file>.folded.
+	 * @param baseline the summary of the baseline analysis
+	 * @param candidate the summary of the candidate analysis
+	 * @param baselineName the baseline input
+	 * @param candidateName the candidate input
+	 * @param fileOut the report file
+	 * @param topStacks the stacks listed in each list, 0 for all
+	 * @throws FileNotFoundException
+	 * @throws UnsupportedEncodingException
+	 */
+	public static void printDifferentialAnalysisResults(AnalysisSummary baseline, AnalysisSummary candidate, String baselineName, String candidateName,
+			String fileOut, int topStacks) throws FileNotFoundException, UnsupportedEncodingException {
+		long start = System.nanoTime();
+		DifferentialAnalysis analysis = new DifferentialAnalysis(baseline, candidate);
+		long joined = System.nanoTime();
+		try (PrintWriter differentialWriter = new PrintWriter(fileOut, "UTF-8")) {
+			logMessage("Differential memory allocator analysis", true, differentialWriter);
+			logStackKey(differentialWriter);
+			logDifferentialInput("Baseline", baselineName, baseline, differentialWriter);
+			logDifferentialInput("Candidate", candidateName, candidate, differentialWriter);
+
+			List<DifferentialAnalysis.StackChange> newStacks = analysis.getNewStacks();
+			List<DifferentialAnalysis.StackChange> vanishedStacks = analysis.getVanishedStacks();
+			List<DifferentialAnalysis.StackChange> changes = analysis.getChangesByAbsoluteChange();
+			long newBytes = 0;
+			for (DifferentialAnalysis.StackChange change : newStacks) {
+				newBytes += change.getCandidateBytes();
+			}
+			long vanishedBytes = 0;
+			for (DifferentialAnalysis.StackChange change : vanishedStacks) {
+				vanishedBytes += change.getBaselineBytes();
+			}
+			logMessage("Found "+newStacks.size()+" new suspect leak stacks with "+newBytes+" outstanding bytes", true, differentialWriter);
+			logMessage("Found "+vanishedStacks.size()+" vanished suspect leak stacks with "+vanishedBytes+" outstanding bytes", true, differentialWriter);
+			logMessage("Found "+changes.size()+" changed suspect leak stacks of "+analysis.getCommonStacks()+" stacks found in both\n", true, differentialWriter);
+
+			logMessage("\nNew suspect leak stacks\n", false, differentialWriter);
+			int listed = topStacks == 0 ? newStacks.size() : Math.min(topStacks, newStacks.size());
+			for (DifferentialAnalysis.StackChange change : newStacks.subList(0, listed)) {
+				logMessage("New suspect leak stack with "+change.getCandidateBytes()+" outstanding bytes in "+change.getCandidateCount()+" allocations", false, differentialWriter);
+				logMessage(reportStack(change.getStack())+"\n\n", false, differentialWriter);
+			}
+			logMoreStacks(newStacks.size() - listed, differentialWriter);
+			logMessage("\nVanished suspect leak stacks\n", false, differentialWriter);
+			listed = topStacks == 0 ? vanishedStacks.size() : Math.min(topStacks, vanishedStacks.size());
+			for (DifferentialAnalysis.StackChange change : vanishedStacks.subList(0, listed)) {
+				logMessage("Vanished suspect leak stack with "+change.getBaselineBytes()+" outstanding bytes in "+change.getBaselineCount()+" allocations in the baseline", false, differentialWriter);
+				logMessage(reportStack(change.getStack())+"\n\n", false, differentialWriter);
+			}
+			logMoreStacks(vanishedStacks.size() - listed, differentialWriter);
+			logMessage("\nSuspect leak stacks by absolute change\n", false, differentialWriter);
+			listed = topStacks == 0 ? changes.size() : Math.min(topStacks, changes.size());
+			Set<String> listedStacks = new HashSet<String>();
+			for (DifferentialAnalysis.StackChange change : changes.subList(0, listed)) {
+				logDifferentialChange(change, true, differentialWriter);
+				listedStacks.add(change.getStack());
+			}
+			logMoreStacks(changes.size() - listed, differentialWriter);
+			logMessage("\nSuspect leak stacks by relative change\n", false, differentialWriter);
+			List<DifferentialAnalysis.StackChange> relativeChanges = analysis.getChangesByRelativeChange();
+			listed = topStacks == 0 ? relativeChanges.size() : Math.min(topStacks, relativeChanges.size());
+			for (DifferentialAnalysis.StackChange change : relativeChanges.subList(0, listed)) {
+				//the stacks of the absolute change list are not printed again
+				logDifferentialChange(change, !listedStacks.contains(change.getStack()), differentialWriter);
+			}
+			logMoreStacks(relativeChanges.size() - listed, differentialWriter);
+			logMessage("", false, differentialWriter);
+
+			File foldedFile = new File(fileOut+".folded");
+			try {
+				int stacks = analysis.writeFolded(foldedFile);
+				logMessage("Wrote the differential folded stacks of "+stacks+" suspect leak stacks (baseline and candidate outstanding bytes) to "+foldedFile, true, differentialWriter);
+			} catch (IOException e) {
+				logMessage("cannot write the differential folded stacks to "+foldedFile+":"+e.getMessage(), true, differentialWriter);
+			}
+			logMessage(String.format(Locale.US, "Joined the suspect leak stacks in %.1f ms, report written in %.1f ms",
+					(joined - start) / 1000000.0, (System.nanoTime() - joined) / 1000000.0), true, differentialWriter);
+		}
+	}
+
+	private static void logDifferentialInput(String name, String input, AnalysisSummary summary, PrintWriter writer) {
+		long outstandingBytes = 0;
+		for (long bytes : summary.getOutstandingBytes().values()) {
+			outstandingBytes += bytes;
+		}
+		logMessage(name+" "+input+": "+summary.getCounter(AnalysisSummary.Counter.LEAKS)+" potential memory leaks with "+outstandingBytes+" outstanding bytes in "
+				+summary.getStacks(AnalysisSummary.Category.LEAK).size()+" unique suspect leak stacks", true, writer);
+	}
+
+	private static void logMoreStacks(int more, PrintWriter writer) {
+		if (more > 0) {
+			logMessage("... "+more+" more stacks (see --top-stacks)\n", false, writer);
+		}
+	}
+
+	private static void logDifferentialChange(DifferentialAnalysis.StackChange change, boolean printStack, PrintWriter writer) {
+		logMessage(String.format(Locale.US, "Suspect leak stack changed by %+d outstanding bytes (%+.1f%%, %d to %d) and %+d allocations (%d to %d)",
+				change.getBytesChange(), 100 * change.getRelativeChange(), change.getBaselineBytes(), change.getCandidateBytes(),
+				change.getCountChange(), change.getBaselineCount(), change.getCandidateCount())+(printStack ? "" : ", stack listed by absolute change"), false, writer);
+		if (printStack) {
+			logMessage(reportStack(change.getStack())+"\n\n", false, writer);
+		}
+	}
+
 	/**
 	 * Prints a combined analysis results from a set of results files
 	 * @param fileAnalysisResults the map with the files and their analysis results
@@ -1562,6 +2466,7 @@ public class DTLeakAnalyzer {
 	 * @throws FileNotFoundException 
 	 */
 	public static void printMemoryAllocatorCombinedAnalysisResults(Map<File, DTLeakAnalyzer> fileAnalysisResults, String fileOut) throws FileNotFoundException, UnsupportedEncodingException {
+		long reportStart = System.nanoTime();
 		PrintWriter combinedFileWrite = new PrintWriter(fileOut, "UTF-8");		
 		
 		File[] files = fileAnalysisResults.keySet().toArray(new File[]{});
@@ -1580,6 +2485,14 @@ public class DTLeakAnalyzer {
 		}
 		fileNamesSb.append("\n");
 		DTLeakAnalyzer.logMessage("Combined memory allocator analysis for files:\n"+fileNamesSb, false, combinedFileWrite);
+		logStackKey(combinedFileWrite);
+
+		//growth trend of the suspected leaks, before the sections below remove the stacks they have matched
+		Map<File, List<StackOccurence>> unfreedStacks = new HashMap<File, List<StackOccurence>>();
+		for (File file : files) {
+			unfreedStacks.put(file, fileAnalysisResults.get(file).uniquePotentialLeakStacks);
+		}
+		printGrowthTrends(files, unfreedStacks, getTopStacks(files, fileAnalysisResults), combinedFileWrite);
 
 		//get all results
 
@@ -1621,7 +2534,7 @@ public class DTLeakAnalyzer {
 						doubleFreeTimesFound.append("{"+j+"}=0, ");
 					}
 				}
-				logMessage("Found double free stack "+doubleFreeTimesFound+" times. Stack:\n"+doubleFreeStack.getStack()+"\n", false, combinedFileWrite);
+				logMessage("Found double free stack "+doubleFreeTimesFound+" times. Stack:\n"+reportStack(doubleFreeStack.getStack())+"\n", false, combinedFileWrite);
 				
 			}			
 		}
@@ -1665,7 +2578,7 @@ public class DTLeakAnalyzer {
 					}
 				}
 				logMessage("Suspected wrong free stack found "+wrongDeleteCandidateTimesFound+" times",false, combinedFileWrite);
-				logMessage(wrongDeleteCandidate.getStack()+"\n\n",false, combinedFileWrite);
+				logMessage(reportStack(wrongDeleteCandidate.getStack())+"\n\n",false, combinedFileWrite);
 				
 			}			
 		}
@@ -1715,9 +2628,9 @@ public class DTLeakAnalyzer {
 					DTLeakAnalyzer otherTraceAnalysis = fileAnalysisResults.get(files[j]);					
 					//now check if this free stack has succeeded in any other log file
 					for (int oplIndex=0;oplIndex<otherTraceAnalysis.uniqueSuccessfulFreeStacks.size();oplIndex++) {
-						MemoryAllocatorTraceEntry otherSuccesfullyDeletedStack = otherTraceAnalysis.uniqueSuccessfulFreeStacks.get(oplIndex);
+						String otherSuccesfullyDeletedStack = otherTraceAnalysis.uniqueSuccessfulFreeStacks.get(oplIndex);
 						
-						if (wrongDeleteCandidate.getStack().equals(otherSuccesfullyDeletedStack.getCallStack())) {
+						if (wrongDeleteCandidate.getStack().equals(otherSuccesfullyDeletedStack)) {
 							//found match, the same stack
 							foundSuccessfulFree = true;
 							break LOOP2;
@@ -1731,16 +2644,16 @@ public class DTLeakAnalyzer {
 					logMessage("Strongly suspected wrong free stack found "+wrongDeleteCandidateTimesFound+" times",false, combinedFileWrite);
 					
 				}
-				logMessage(wrongDeleteCandidate.getStack()+"\n\n",false, combinedFileWrite);
+				logMessage(reportStack(wrongDeleteCandidate.getStack())+"\n\n",false, combinedFileWrite);
 				
 			}			
 		}
 		
 		DTLeakAnalyzer.logMessage("\n\n*** Suspected leaks (stacks that allocated memory that was not freed during the tracing)***\n\n", false, combinedFileWrite);
-		Integer[] totalPendingAllocationsPerFile = new Integer[files.length];
+		Long[] totalPendingAllocationsPerFile = new Long[files.length];
 		
 		for (int i=0;i<totalPendingAllocationsPerFile.length;i++) {
-			totalPendingAllocationsPerFile[i] = 0;
+			totalPendingAllocationsPerFile[i] = 0L;
 		}
 		//for each processed file
 		for (int i=0;i<files.length;i++) {		
@@ -1781,7 +2694,7 @@ public class DTLeakAnalyzer {
 					}
 				}
 				logMessage("Suspected leak stack found "+potentialLeakTimesFound+" times",false, combinedFileWrite);
-				logMessage(leakCandidate.getStack()+"\n\n",false, combinedFileWrite);
+				logMessage(reportStack(leakCandidate.getStack())+"\n\n",false, combinedFileWrite);
 				
 			}			
 		}		
@@ -1832,9 +2745,9 @@ public class DTLeakAnalyzer {
 
 					//now check if this free stack has succeeded in any other log file
 					for (int oplIndex=0;oplIndex<otherTraceAnalysis.uniqueSuccessfullyDeletedStacks.size();oplIndex++) {
-						MemoryAllocatorTraceEntry otherSuccesfullyDeletedStack = otherTraceAnalysis.uniqueSuccessfullyDeletedStacks.get(oplIndex);
+						String otherSuccesfullyDeletedStack = otherTraceAnalysis.uniqueSuccessfullyDeletedStacks.get(oplIndex);
 						
-						if (stronglySuspectedLeakCandidate.getStack().equals(otherSuccesfullyDeletedStack.getCallStack())) {
+						if (stronglySuspectedLeakCandidate.getStack().equals(otherSuccesfullyDeletedStack)) {
 							//found match, the same stack
 							foundSuccessfulStackDeallocation = true;
 							break LOOP2;
@@ -1848,7 +2761,7 @@ public class DTLeakAnalyzer {
 				} else {
 					logMessage("Strongly suspected leak stack found "+strongSuspectLeaktimesFound+" times",false, combinedFileWrite);	
 				}
-				logMessage(stronglySuspectedLeakCandidate.getStack()+"\n\n",false, combinedFileWrite);
+				logMessage(reportStack(stronglySuspectedLeakCandidate.getStack())+"\n\n",false, combinedFileWrite);
 				
 			}			
 		}		
@@ -1861,6 +2774,7 @@ public class DTLeakAnalyzer {
 		
 		logMessage(totalPendingAllocationsPerFileSB.toString(),false, combinedFileWrite);
 		
+		printCombinedMetrics(files, fileAnalysisResults, System.nanoTime() - reportStart, combinedFileWrite);
 		combinedFileWrite.close();
 	}
 		
@@ -1872,6 +2786,19 @@ public class DTLeakAnalyzer {
 	 * @throws FileNotFoundException 
 	 */
 	public static void printProcessedFilesCombinedAnalysisResults(Map<File, DTLeakAnalyzer> fileAnalysisResults, String fileOut, boolean printAllocDeallocStacks) throws FileNotFoundException, UnsupportedEncodingException {
+		printProcessedFilesCombinedAnalysisResults(fileAnalysisResults, fileOut, printAllocDeallocStacks, null);
+	}
+	
+	/**
+	 * Prints a combined analysis results from a set of processed results files
+	 * @param fileAnalysisResults the map with the files and their analysis results
+	 * @param fileOut the output file to be used
+	 * @param relationshipMetrics the metrics of the stack relationship collection, or null
+	 * @throws UnsupportedEncodingException 
+	 * @throws FileNotFoundException 
+	 */
+	public static void printProcessedFilesCombinedAnalysisResults(Map<File, DTLeakAnalyzer> fileAnalysisResults, String fileOut, boolean printAllocDeallocStacks, AnalysisMetrics relationshipMetrics) throws FileNotFoundException, UnsupportedEncodingException {
+		long reportStart = System.nanoTime();
 		PrintWriter combinedFileWrite = new PrintWriter(fileOut, "UTF-8");		
 		
 		File[] files = fileAnalysisResults.keySet().toArray(new File[]{});
@@ -1890,15 +2817,23 @@ public class DTLeakAnalyzer {
 		}
 		fileNamesSb.append("\n");
 		DTLeakAnalyzer.logMessage("Combined (short and long term) memory allocator analysis for files:\n"+fileNamesSb, false, combinedFileWrite);
+		logStackKey(combinedFileWrite);
+
+		//growth trend of the suspect memory leak stacks, before the sections below remove the stacks they have matched
+		Map<File, List<StackOccurence>> unfreedStacks = new HashMap<File, List<StackOccurence>>();
+		for (File file : files) {
+			unfreedStacks.put(file, fileAnalysisResults.get(file).uniqueUnfreedAllocationStacks);
+		}
+		printGrowthTrends(files, unfreedStacks, getTopStacks(files, fileAnalysisResults), combinedFileWrite);
 
 		//ALLOCATION STACKS
 		if (printAllocDeallocStacks) {
 			DTLeakAnalyzer.logMessage("\n\n*** Allocation Stacks ***\n\n", false, combinedFileWrite);
 		}
 		
-		Integer[] totalAllocationsPerFile = new Integer[files.length];
+		Long[] totalAllocationsPerFile = new Long[files.length];
 		for (int i=0;i<totalAllocationsPerFile.length;i++) {
-			totalAllocationsPerFile[i] = 0;
+			totalAllocationsPerFile[i] = 0L;
 		}		
 		//for each processed file
 		for (int i=0;i<files.length;i++) {		
@@ -1940,7 +2875,7 @@ public class DTLeakAnalyzer {
 				}
 				if (printAllocDeallocStacks) {
 					logMessage("Allocation stack found "+allocationStacksTimesFound+" times",false, combinedFileWrite);
-					logMessage(allocationStack.getStack()+"\n\n",false, combinedFileWrite);
+					logMessage(reportStack(allocationStack.getStack())+"\n\n",false, combinedFileWrite);
 				}
 				
 			}			
@@ -1987,7 +2922,7 @@ public class DTLeakAnalyzer {
 					}
 				}
 				logMessage("Suspect allocation stack found "+allocationStacksTimesFound+" times",false, combinedFileWrite);
-				logMessage(allocationStack.getStack()+"\n\n",false, combinedFileWrite);
+				logMessage(reportStack(allocationStack.getStack())+"\n\n",false, combinedFileWrite);
 				
 			}			
 		}				
@@ -1996,9 +2931,9 @@ public class DTLeakAnalyzer {
 			//DEALLOCATION STACKS
 			DTLeakAnalyzer.logMessage("\n\n*** Dellocation Stacks ***\n\n", false, combinedFileWrite);
 		}
-		Integer[] totalDeallocationsPerFile = new Integer[files.length];			
+		Long[] totalDeallocationsPerFile = new Long[files.length];			
 		for (int i=0;i<totalDeallocationsPerFile.length;i++) {
-			totalDeallocationsPerFile[i] = 0;
+			totalDeallocationsPerFile[i] = 0L;
 		}		
 		
 		//for each processed file
@@ -2041,7 +2976,7 @@ public class DTLeakAnalyzer {
 				}
 				if (printAllocDeallocStacks) {
 					logMessage("Deallocation stack found "+deallocationStacksTimesFound+" times",false, combinedFileWrite);
-					logMessage(deallocationStack.getStack()+"\n\n",false, combinedFileWrite);
+					logMessage(reportStack(deallocationStack.getStack())+"\n\n",false, combinedFileWrite);
 				}
 				
 			}			
@@ -2088,7 +3023,7 @@ public class DTLeakAnalyzer {
 					}
 				}
 				logMessage("Unknown Deallocation stack found "+deallocationStacksTimesFound+" times",false, combinedFileWrite);
-				logMessage(deallocationStack.getStack()+"\n\n",false, combinedFileWrite);
+				logMessage(reportStack(deallocationStack.getStack())+"\n\n",false, combinedFileWrite);
 				
 			}			
 		}						
@@ -2101,9 +3036,81 @@ public class DTLeakAnalyzer {
 		
 		logMessage(totalAllocDeallocDiffPerFile.toString(),false, combinedFileWrite);
 		
+		long reportNanos = System.nanoTime() - reportStart;
+		if (relationshipMetrics != null) {
+			relationshipMetrics.print("Stack relationship collection metrics (memory allocator trace files)", combinedFileWrite);
+		}
+		printCombinedMetrics(files, fileAnalysisResults, reportNanos, combinedFileWrite);
 		combinedFileWrite.close();
 	}
 	
+	/**
+	 * Prints the growth trend of the unfreed allocations of each stack over the trace durations of the loop
+	 * trace files (trace-memalloc[-proc].<SLTIME>.<REP>): all stacks with a significant growth, then the
+	 * top other stacks
+	 * @param files the files of the combined report
+	 * @param unfreedStacks the unfreed allocation stacks of each file
+	 * @param topStacks the other stacks listed after the significant growths, 0 for all
+	 * @param combinedFileWrite the combined report
+	 */
+	private static void printGrowthTrends(File[] files, Map<File, List<StackOccurence>> unfreedStacks, int topStacks, PrintWriter combinedFileWrite) {
+		GrowthTrendAnalysis growthTrendAnalysis = new GrowthTrendAnalysis(files, 0);
+		DTLeakAnalyzer.logMessage("\n\n*** Growth trend of the unfreed allocations over the trace durations ***\n\n", false, combinedFileWrite);
+		if (!growthTrendAnalysis.canFit()) {
+			logMessage("No growth trend: the growth trend needs at least 3 files named trace-memalloc[-proc].<SLTIME>.<REP> with 2 durations, found "
+					+growthTrendAnalysis.getFiles().size()+" files with "+growthTrendAnalysis.getDistinctDurations()+" durations", false, combinedFileWrite);
+			return;
+		}
+		long start = System.nanoTime();
+		List<GrowthTrendAnalysis.StackTrend> trends;
+		try {
+			trends = growthTrendAnalysis.fit(unfreedStacks);
+		} catch (IOException e) {
+			logMessage("cannot fit the growth trends:"+e.getMessage(), true, combinedFileWrite);
+			return;
+		}
+		int significant = 0;
+		int uncorrected = 0;
+		for (GrowthTrendAnalysis.StackTrend trend : trends) {
+			if (trend.isSignificantGrowth()) {
+				significant++;
+			}
+			if (trend.isUncorrectedSignificantGrowth()) {
+				uncorrected++;
+			}
+		}
+		logMessage(String.format(Locale.US, "Found %d of %d stacks with a significant growth (Benjamini-Hochberg, %.0f%% false discovery rate over the %d stacks) over %d files with %d durations, fitted in %.1f ms",
+				significant, trends.size(), 100 * GrowthTrendAnalysis.falseDiscoveryRate, trends.size(), growthTrendAnalysis.getFiles().size(),
+				growthTrendAnalysis.getDistinctDurations(), (System.nanoTime() - start) / 1000000.0), true, combinedFileWrite);
+		logMessage(uncorrected+" stacks have their whole 95% confidence interval above 0 without the correction for the number of stacks\n", true, combinedFileWrite);
+		int listed = topStacks == 0 ? trends.size() : Math.min(significant + topStacks, trends.size());
+		for (GrowthTrendAnalysis.StackTrend trend : trends.subList(0, listed)) {
+			logMessage((trend.isSignificantGrowth() ? "Significant growth stack: " : "Growth stack: ")+trend.getInformation(), false, combinedFileWrite);
+			logMessage(reportStack(trend.getStack())+"\n\n", false, combinedFileWrite);
+		}
+		if (listed < trends.size()) {
+			logMessage("... "+(trends.size() - listed)+" more stacks without a significant growth (see --top-stacks)\n", false, combinedFileWrite);
+		}
+	}
+
+	/**
+	 * @return the --top-stacks setting of the analyses of a combined report
+	 */
+	private static int getTopStacks(File[] files, Map<File, DTLeakAnalyzer> fileAnalysisResults) {
+		return files.length == 0 ? 20 : fileAnalysisResults.get(files[0]).options.getInt("top-stacks", 20);
+	}
+
+	/**
+	 * Prints the metrics of each analyzed file and the time of the combined report
+	 */
+	private static void printCombinedMetrics(File[] files, Map<File, DTLeakAnalyzer> fileAnalysisResults, long combinedReportNanos, PrintWriter combinedFileWrite) {
+		List<AnalysisMetrics> fileMetrics = new ArrayList<AnalysisMetrics>();
+		for (File file : files) {
+			fileMetrics.add(fileAnalysisResults.get(file).metrics);
+		}
+		AnalysisMetrics.printCombined(files, fileMetrics, combinedReportNanos, combinedFileWrite);
+	}
+	
 	
 
 	/**
@@ -2122,8 +3129,29 @@ public class DTLeakAnalyzer {
 		private final long size;
 		private final String previousAddress;
 		private final String callStack; 
+		//id of the call stack in the stack index of the replay, -1 before the replay
+		private int stackId = -1;
+		//timestamp in seconds, decoded by the replay
+		private long second = -1;
+		//realloc chain that led to this allocation: stack id of the first allocation, reallocs, moving reallocs,
+		//reallocs that grew the block by less than half of its size, and the bytes copied by the moves
+		private int chainOriginStackId = -1;
+		private int chainLength;
+		private int chainMoves;
+		private int chainSmallSteps;
+		private long chainBytesCopied;
 		
 		public MemoryAllocatorTraceEntry(List<String> lines) throws IOException {
+			this(lines, null);
+		}
+
+		/**
+		 * new entry, decoded from its lines
+		 * @param lines the lines of the entry
+		 * @param exemplars where the exemplar of its truncated stack is kept, null for the exemplars of the StackKeyer
+		 * @throws IOException if the entry cannot be decoded
+		 */
+		public MemoryAllocatorTraceEntry(List<String> lines, Map<String, String> exemplars) throws IOException {
 			if (lines.size() == 0) {
 				throw new IOException("Empty trace entry requested");
 			} else {
@@ -2199,7 +3227,7 @@ public class DTLeakAnalyzer {
 				if (sb.toString().isEmpty()) {
 					callStack = null;
 				} else {
-					callStack = clearTopLevelStackReturnPointer(sb.toString());
+					callStack = StackKeyer.getInstance().key(clearTopLevelStackReturnPointer(sb.toString()), exemplars);
 				}
 				
 			}
@@ -2237,6 +3265,62 @@ public class DTLeakAnalyzer {
 			return callStack;
 		}
 
+		public int getStackId() {
+			return stackId;
+		}
+
+		public void setStackId(int stackId) {
+			this.stackId = stackId;
+		}
+
+		public long getSecond() {
+			return second;
+		}
+
+		public void setSecond(long second) {
+			this.second = second;
+		}
+
+		/**
+		 * Continues the realloc chain of the allocation released by this realloc
+		 * @param released the allocation released by this realloc
+		 */
+		public void continueChain(MemoryAllocatorTraceEntry released) {
+			boolean moved = !address.equals(released.address);
+			long growth = size - released.size;
+			chainOriginStackId = released.chainLength == 0 ? released.stackId : released.chainOriginStackId;
+			chainLength = released.chainLength + 1;
+			chainMoves = released.chainMoves + (moved ? 1 : 0);
+			chainSmallSteps = released.chainSmallSteps + (growth > 0 && growth < released.size / 2 ? 1 : 0);
+			chainBytesCopied = released.chainBytesCopied + (moved ? Math.min(size, released.size) : 0);
+		}
+
+		/**
+		 * @return the stack id of the allocation that started the realloc chain of this allocation
+		 */
+		public int getChainOriginStackId() {
+			return chainOriginStackId;
+		}
+
+		/**
+		 * @return the reallocs of the chain that led to this allocation, 0 if it was not reallocated
+		 */
+		public int getChainLength() {
+			return chainLength;
+		}
+
+		public int getChainMoves() {
+			return chainMoves;
+		}
+
+		public int getChainSmallSteps() {
+			return chainSmallSteps;
+		}
+
+		public long getChainBytesCopied() {
+			return chainBytesCopied;
+		}
+
 		@Override
 		public String toString() {
 			return "DTGenericLeakLogEntry [entryNumber=" + entryNumber
@@ -2267,6 +3351,16 @@ public class DTLeakAnalyzer {
 		private final String callStack; 
 		
 		public BrkTraceEntry(List<String> lines) throws IOException {
+			this(lines, null);
+		}
+
+		/**
+		 * new entry, decoded from its lines
+		 * @param lines the lines of the entry
+		 * @param exemplars where the exemplar of its truncated stack is kept, null for the exemplars of the StackKeyer
+		 * @throws IOException if the entry cannot be decoded
+		 */
+		public BrkTraceEntry(List<String> lines, Map<String, String> exemplars) throws IOException {
 			if (lines.size() == 0) {
 				throw new IOException("Empty trace entry requested");
 			} else {
@@ -2337,7 +3431,7 @@ public class DTLeakAnalyzer {
 				if (sb.toString().isEmpty()) {
 					callStack = null;
 				} else {
-					callStack = clearTopLevelStackReturnPointer(sb.toString());
+					callStack = StackKeyer.getInstance().key(clearTopLevelStackReturnPointer(sb.toString()), exemplars);
 				}
 				
 			}
@@ -2394,10 +3488,12 @@ public class DTLeakAnalyzer {
 	 *
 	 */
 	public static class StackOccurence {
+		//atomic increments of the volatile field, the occurences can be shared by threads
+		private static final AtomicLongFieldUpdater<StackOccurence> timesFoundUpdater = AtomicLongFieldUpdater.newUpdater(StackOccurence.class, "timesFound");
 		private final String stack;
-		private volatile int timesFound;
+		private volatile long timesFound;
 		
-		public StackOccurence(String stack, int times) {
+		public StackOccurence(String stack, long times) {
 			this.stack = stack;
 			this.timesFound = times;
 		}
@@ -2411,16 +3507,16 @@ public class DTLeakAnalyzer {
 			return stack;
 		}
 
-		public int getTimesFound() {
+		public long getTimesFound() {
 			return timesFound;
 		}
 
 		public void increaseTimesFound() {
-			timesFound++;
+			timesFoundUpdater.incrementAndGet(this);
 		}
 		
-		public void increaseTimesFound(int amount) {
-			timesFound+=amount;;
+		public void increaseTimesFound(long amount) {
+			timesFoundUpdater.addAndGet(this, amount);
 		}		
 		public String getInformation() {
 			return "Found "+timesFound+" times";
@@ -2435,9 +3531,10 @@ public class DTLeakAnalyzer {
 	 *
 	 */
 	public static class BrkStackOccurence extends StackOccurence{
+		private static final AtomicLongFieldUpdater<BrkStackOccurence> sizeIncreaseUpdater = AtomicLongFieldUpdater.newUpdater(BrkStackOccurence.class, "sizeIncrease");
 		private volatile long sizeIncrease;
 		
-		public BrkStackOccurence(String stack, int times, long sizeIncrease) {
+		public BrkStackOccurence(String stack, long times, long sizeIncrease) {
 			super(stack, times);
 			this.sizeIncrease = sizeIncrease;
 		}
@@ -2452,7 +3549,7 @@ public class DTLeakAnalyzer {
 		}
 		
 		public void increaseSize(long size) {
-			sizeIncrease+=size;
+			sizeIncreaseUpdater.addAndGet(this, size);
 		}		
 		
 		public String getInformation() {
@@ -0,0 +1,266 @@
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.PrintWriter;
+import java.io.UnsupportedEncodingException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Differential analysis of the memory leak suspects of two memory allocator analyses: a baseline
+ * (i.e. the previous build) and a candidate (i.e. the new build), given as their summaries.
+ *
+ * The suspect leak stacks of both analyses are joined on their normalized stacks in one hash map,
+ * so the join costs one lookup per stack. The stacks found only in the candidate are new, the ones
+ * found only in the baseline vanished, and the stacks of both are compared by their outstanding
+ * (not freed) allocations and bytes.
+ *
+ */
+public class DifferentialAnalysis {
+	private final AnalysisSummary baseline;
+	private final AnalysisSummary candidate;
+
+	//the suspect leak stacks of both analyses, by stack
+	private final Map<String, StackChange> stackChanges;
+
+	/**
+	 * new differential analysis, joins the suspect leak stacks of the analyses
+	 * @param baseline the summary of the baseline analysis
+	 * @param candidate the summary of the candidate analysis
+	 */
+	public DifferentialAnalysis(AnalysisSummary baseline, AnalysisSummary candidate) {
+		this.baseline = baseline;
+		this.candidate = candidate;
+		List<DTLeakAnalyzer.StackOccurence> baselineStacks = baseline.getStacks(AnalysisSummary.Category.LEAK);
+		List<DTLeakAnalyzer.StackOccurence> candidateStacks = candidate.getStacks(AnalysisSummary.Category.LEAK);
+		this.stackChanges = new HashMap<String, StackChange>((baselineStacks.size() + candidateStacks.size()) * 4 / 3 + 1);
+		for (DTLeakAnalyzer.StackOccurence occurence : baselineStacks) {
+			StackChange change = getStackChange(occurence.getStack());
+			change.baselineCount += occurence.getTimesFound();
+			change.baselineBytes = getOutstandingBytes(baseline, occurence.getStack());
+			change.inBaseline = true;
+		}
+		for (DTLeakAnalyzer.StackOccurence occurence : candidateStacks) {
+			StackChange change = getStackChange(occurence.getStack());
+			change.candidateCount += occurence.getTimesFound();
+			change.candidateBytes = getOutstandingBytes(candidate, occurence.getStack());
+			change.inCandidate = true;
+		}
+	}
+
+	private StackChange getStackChange(String stack) {
+		StackChange ret = stackChanges.get(stack);
+		if (ret == null) {
+			ret = new StackChange(stack);
+			stackChanges.put(stack, ret);
+		}
+		return ret;
+	}
+
+	private static long getOutstandingBytes(AnalysisSummary summary, String stack) {
+		Long ret = summary.getOutstandingBytes().get(stack);
+		return ret == null ? 0 : ret;
+	}
+
+	public AnalysisSummary getBaseline() {
+		return baseline;
+	}
+
+	public AnalysisSummary getCandidate() {
+		return candidate;
+	}
+
+	/**
+	 * @return the suspect leak stacks found only in the candidate, the most outstanding bytes first
+	 */
+	public List<StackChange> getNewStacks() {
+		List<StackChange> ret = new ArrayList<StackChange>();
+		for (StackChange change : stackChanges.values()) {
+			if (!change.inBaseline) {
+				ret.add(change);
+			}
+		}
+		Collections.sort(ret, new Comparator<StackChange>() {
+			@Override
+			public int compare(StackChange o1, StackChange o2) {
+				int ret = Long.compare(o2.candidateBytes, o1.candidateBytes);
+				return ret != 0 ? ret : Long.compare(o2.candidateCount, o1.candidateCount);
+			}
+		});
+		return ret;
+	}
+
+	/**
+	 * @return the suspect leak stacks found only in the baseline, the most outstanding bytes first
+	 */
+	public List<StackChange> getVanishedStacks() {
+		List<StackChange> ret = new ArrayList<StackChange>();
+		for (StackChange change : stackChanges.values()) {
+			if (!change.inCandidate) {
+				ret.add(change);
+			}
+		}
+		Collections.sort(ret, new Comparator<StackChange>() {
+			@Override
+			public int compare(StackChange o1, StackChange o2) {
+				int ret = Long.compare(o2.baselineBytes, o1.baselineBytes);
+				return ret != 0 ? ret : Long.compare(o2.baselineCount, o1.baselineCount);
+			}
+		});
+		return ret;
+	}
+
+	/**
+	 * @return the suspect leak stacks of both analyses whose outstanding allocations or bytes changed,
+	 * the highest absolute change of outstanding bytes first
+	 */
+	public List<StackChange> getChangesByAbsoluteChange() {
+		List<StackChange> ret = getChangedStacks();
+		Collections.sort(ret, new Comparator<StackChange>() {
+			@Override
+			public int compare(StackChange o1, StackChange o2) {
+				int ret = Long.compare(Math.abs(o2.getBytesChange()), Math.abs(o1.getBytesChange()));
+				return ret != 0 ? ret : Long.compare(Math.abs(o2.getCountChange()), Math.abs(o1.getCountChange()));
+			}
+		});
+		return ret;
+	}
+
+	/**
+	 * @return the suspect leak stacks of both analyses whose outstanding allocations or bytes changed,
+	 * the highest relative change first
+	 */
+	public List<StackChange> getChangesByRelativeChange() {
+		List<StackChange> ret = getChangedStacks();
+		Collections.sort(ret, new Comparator<StackChange>() {
+			@Override
+			public int compare(StackChange o1, StackChange o2) {
+				int ret = Double.compare(Math.abs(o2.getRelativeChange()), Math.abs(o1.getRelativeChange()));
+				return ret != 0 ? ret : Long.compare(Math.abs(o2.getBytesChange()), Math.abs(o1.getBytesChange()));
+			}
+		});
+		return ret;
+	}
+
+	private List<StackChange> getChangedStacks() {
+		List<StackChange> ret = new ArrayList<StackChange>();
+		for (StackChange change : stackChanges.values()) {
+			if (change.inBaseline && change.inCandidate && (change.getCountChange() != 0 || change.getBytesChange() != 0)) {
+				ret.add(change);
+			}
+		}
+		return ret;
+	}
+
+	/**
+	 * @return the suspect leak stacks of both analyses
+	 */
+	public int getCommonStacks() {
+		int ret = 0;
+		for (StackChange change : stackChanges.values()) {
+			if (change.inBaseline && change.inCandidate) {
+				ret++;
+			}
+		}
+		return ret;
+	}
+
+	/**
+	 * Writes the differential folded stacks (as read by difffolded flame graphs): one line per suspect
+	 * leak stack, with its frames from the outermost caller to the allocating frame separated by ;
+	 * followed by its outstanding bytes in the baseline and in the candidate
+	 * @param file the folded stacks file
+	 * @return the stacks written
+	 * @throws FileNotFoundException if the file cannot be created
+	 * @throws UnsupportedEncodingException
+	 */
+	public int writeFolded(File file) throws FileNotFoundException, UnsupportedEncodingException {
+		List<String> stacks = new ArrayList<String>(stackChanges.keySet());
+		Collections.sort(stacks);
+		try (PrintWriter folded = new PrintWriter(file, "UTF-8")) {
+			for (String stack : stacks) {
+				StackChange change = stackChanges.get(stack);
+				folded.println(fold(stack)+" "+change.baselineBytes+" "+change.candidateBytes);
+			}
+		}
+		return stacks.size();
+	}
+
+	/**
+	 * @return the frames of a stack from the outermost caller, separated by ;
+	 */
+	private static String fold(String stack) {
+		String[] frames = stack.split("\n");
+		StringBuilder ret = new StringBuilder(stack.length());
+		for (int i=frames.length - 1;i>=0;i--) {
+			String frame = frames[i].trim().replace(';', ':').replace(' ', '_');
+			if (frame.isEmpty()) {
+				continue;
+			}
+			if (ret.length() > 0) {
+				ret.append(';');
+			}
+			ret.append(frame);
+		}
+		return ret.length() == 0 ? "[no frames]" : ret.toString();
+	}
+
+	/**
+	 * A suspect leak stack and its outstanding allocations and bytes in the baseline and in the candidate
+	 */
+	public static class StackChange {
+		private final String stack;
+		private long baselineCount;
+		private long baselineBytes;
+		private long candidateCount;
+		private long candidateBytes;
+		private boolean inBaseline;
+		private boolean inCandidate;
+
+		private StackChange(String stack) {
+			this.stack = stack;
+		}
+
+		public String getStack() {
+			return stack;
+		}
+
+		public long getBaselineCount() {
+			return baselineCount;
+		}
+
+		public long getBaselineBytes() {
+			return baselineBytes;
+		}
+
+		public long getCandidateCount() {
+			return candidateCount;
+		}
+
+		public long getCandidateBytes() {
+			return candidateBytes;
+		}
+
+		public long getCountChange() {
+			return candidateCount - baselineCount;
+		}
+
+		public long getBytesChange() {
+			return candidateBytes - baselineBytes;
+		}
+
+		/**
+		 * @return the change of the outstanding bytes relative to the baseline (of the outstanding allocations
+		 * if the baseline has no outstanding bytes), 1.0 for a growth of 100%
+		 */
+		public double getRelativeChange() {
+			if (baselineBytes > 0) {
+				return (double)getBytesChange() / baselineBytes;
+			}
+			return baselineCount > 0 ? (double)getCountChange() / baselineCount : 0;
+		}
+	}
+}
@@ -0,0 +1,200 @@
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Normalizes the frames of the call stacks by stripping their return offsets,
+ * i.e. libc.so.1`malloc+0x64 ==> libc.so.1`malloc
+ *
+ * The top frame is always stripped (the memory allocator call is found with different return
+ * addresses). Optionally all frames, or the frames of selected modules, are stripped as well, so
+ * that stacks that differ only by return offsets become one stack.
+ *
+ * Every distinct frame is interned once, with an id and its normalized forms, so the
+ * normalization of a stack is a lookup per frame. The dictionary is shared by all threads.
+ *
+ */
+public class FrameNormalizer {
+	//separator of the module and the function of a frame
+	private static final char moduleSeparator = '`';
+
+	//the normalizer used by the trace readers
+	private static volatile FrameNormalizer instance = new FrameNormalizer(Mode.TOP, Collections.<String>emptySet());
+
+	/**
+	 * Which frames are stripped, besides the top frame
+	 */
+	public static enum Mode {
+		TOP,
+		ALL,
+		MODULES
+	}
+
+	private final Mode mode;
+	private final Set<String> modules;
+
+	//interned frames
+	private final ConcurrentHashMap<String, Frame> frames;
+	private final AtomicInteger nextFrameId;
+
+	/**
+	 * new normalizer
+	 * @param mode which frames are stripped besides the top frame
+	 * @param modules the modules whose frames are stripped, for Mode.MODULES
+	 */
+	public FrameNormalizer(Mode mode, Set<String> modules) {
+		this.mode = mode;
+		this.modules = modules;
+		this.frames = new ConcurrentHashMap<String, Frame>();
+		this.nextFrameId = new AtomicInteger();
+	}
+
+	/**
+	 * Creates a normalizer from the value of the --strip-offsets option
+	 * @param value top, all or a comma separated list of modules (i.e. libc.so.1,libumem.so.1)
+	 * @return the normalizer
+	 */
+	public static FrameNormalizer fromOption(String value) {
+		if (value == null || value.equals("top")) {
+			return new FrameNormalizer(Mode.TOP, Collections.<String>emptySet());
+		} else if (value.equals("all")) {
+			return new FrameNormalizer(Mode.ALL, Collections.<String>emptySet());
+		}
+		Set<String> modules = new HashSet<String>();
+		for (String module : value.split(",")) {
+			if (!module.trim().isEmpty()) {
+				modules.add(module.trim());
+			}
+		}
+		if (modules.isEmpty()) {
+			throw new IllegalArgumentException("option --strip-offsets expects top, all or a list of modules, found:"+value);
+		}
+		return new FrameNormalizer(Mode.MODULES, modules);
+	}
+
+	public static FrameNormalizer getInstance() {
+		return instance;
+	}
+
+	public static void setInstance(FrameNormalizer normalizer) {
+		instance = normalizer;
+	}
+
+	/**
+	 * Normalizes a stack, one frame per line with the top frame first. Empty lines
+	 * (except the first) are dropped and the frames are joined without a trailing new line.
+	 * @param stack the stack
+	 * @return the normalized stack
+	 */
+	public String normalize(String stack) {
+		StringBuilder ret = new StringBuilder(stack.length());
+		int length = stack.length();
+		int start = 0;
+		boolean top = true;
+		while (start <= length) {
+			int end = stack.indexOf('\n', start);
+			if (end < 0) {
+				end = length;
+			}
+			if (top) {
+				ret.append(intern(stack.substring(start, end)).topNormalized);
+				top = false;
+			} else if (end > start) {
+				ret.append('\n');
+				if (mode == Mode.TOP) {
+					ret.append(stack, start, end);
+				} else {
+					ret.append(intern(stack.substring(start, end)).normalized);
+				}
+			}
+			start = end + 1;
+		}
+		return ret.toString();
+	}
+
+	/**
+	 * Normalizes a single frame, as in normalize()
+	 * @param frame the frame as found on the trace, without surrounding white space
+	 * @param top true for the top frame of a stack
+	 * @return the normalized frame
+	 */
+	public String normalizeFrame(String frame, boolean top) {
+		if (!top && mode == Mode.TOP) {
+			return frame;
+		}
+		Frame interned = intern(frame);
+		return top ? interned.topNormalized : interned.normalized;
+	}
+
+	/**
+	 * Returns the id of a frame, interning it if needed. The ids are unique
+	 * but may have gaps when the same new frame is interned concurrently.
+	 * @param frame the frame as found on the trace
+	 * @return the frame id
+	 */
+	public int getFrameId(String frame) {
+		return intern(frame).id;
+	}
+
+	/**
+	 * @return the number of distinct frames seen
+	 */
+	public int getFrameCount() {
+		return frames.size();
+	}
+
+	private Frame intern(String frame) {
+		Frame interned = frames.get(frame);
+		if (interned == null) {
+			Frame created = new Frame(frame);
+			interned = frames.putIfAbsent(frame, created);
+			if (interned == null) {
+				interned = created;
+			}
+		}
+		return interned;
+	}
+
+	/**
+	 * removes the return offset, i.e. malloc+0x64 ==> malloc
+	 */
+	private static String stripOffset(String frame) {
+		int offset = frame.indexOf('+');
+		if (offset < 0 || offset == frame.length()-1) {
+			return frame;
+		}
+		return frame.substring(0, offset);
+	}
+
+	private boolean isStripped(String frame) {
+		switch (mode) {
+		case ALL : {
+			return true;
+		}
+		case MODULES : {
+			int separator = frame.indexOf(moduleSeparator);
+			return separator > 0 && modules.contains(frame.substring(0, separator));
+		}
+		default : {
+			return false;
+		}
+		}
+	}
+
+	/**
+	 * An interned frame and its normalized forms
+	 */
+	private class Frame {
+		private final int id;
+		private final String topNormalized;
+		private final String normalized;
+
+		private Frame(String frame) {
+			id = nextFrameId.getAndIncrement();
+			topNormalized = stripOffset(frame);
+			normalized = isStripped(frame) ? topNormalized : frame;
+		}
+	}
+}
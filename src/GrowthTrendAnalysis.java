@@ -0,0 +1,501 @@
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Growth trend of the unfreed allocations of each stack over the trace durations of the repeated loop
+ * traces (execute-memalloc-loop and execute-memalloc-loop-proc), whose files are named
+ * trace-memalloc[-proc].<SLTIME>.<REP>: the trace duration in seconds and the repetition.
+ *
+ * For each stack the unfreed allocations of every file (0 if the stack is not found in a file) are fitted
+ * against the trace duration by least squares. The repetitions of each duration give the residual error,
+ * so the slope (unfreed allocations per second) has a 95% confidence interval from the Student t
+ * distribution. The whole interval above 0 means that the unfreed allocations keep growing with the trace
+ * duration instead of levelling off, but with thousands of stacks a 95% test finds a growth in 5% of the
+ * stacks that do not grow. The p values of the slopes (from the t statistic) are therefore corrected with
+ * the Benjamini-Hochberg procedure, and a stack grows significantly when its slope is positive and its
+ * test is kept at a false discovery rate of 5% over all fitted stacks.
+ *
+ * The stack x file count matrix is filled by one task per file and the stacks are fitted in chunks,
+ * on a thread pool.
+ *
+ */
+public class GrowthTrendAnalysis {
+	//trace-memalloc.<SLTIME>.<REP> and trace-memalloc-proc.<SLTIME>.<REP>
+	private static final Pattern fileNamePattern = Pattern.compile("trace-memalloc(-proc)?\\.(\\d+)\\.(\\d+)");
+
+	//two-sided 95% quantiles of the Student t distribution, by degrees of freedom (1 to 30)
+	private static final double[] tQuantiles = {12.706, 4.303, 3.182, 2.776, 2.571, 2.447, 2.365, 2.306, 2.262, 2.228,
+			2.201, 2.179, 2.160, 2.145, 2.131, 2.120, 2.110, 2.101, 2.093, 2.086,
+			2.080, 2.074, 2.069, 2.064, 2.060, 2.056, 2.052, 2.048, 2.045, 2.042};
+
+	//stacks fitted by a task
+	private static final int stacksPerTask = 1024;
+
+	//expected share of false growths among the significant growths
+	public static final double falseDiscoveryRate = 0.05;
+
+	//continued fraction of the incomplete beta function
+	private static final int maxIterations = 300;
+	private static final double epsilon = 1e-12;
+	private static final double tiny = 1e-300;
+
+	//Lanczos coefficients of the log gamma function
+	private static final double[] lanczos = {76.18009172947146, -86.50532032941677, 24.01409824083091,
+			-1.231739572450155, 0.1208650973866179e-2, -0.5395239384953e-5};
+
+	private final int threads;
+
+	//the trace files with a duration and repetition, and their durations
+	private final List<File> files;
+	private final double[] durations;
+	private final int distinctDurations;
+
+	/**
+	 * new growth trend analysis of the files named trace-memalloc[-proc].<SLTIME>.<REP>, the other files are ignored
+	 * @param files the trace files
+	 * @param threads the threads (0 = number of processors)
+	 */
+	public GrowthTrendAnalysis(File[] files, int threads) {
+		this.threads = threads == 0 ? Runtime.getRuntime().availableProcessors() : threads;
+		this.files = new ArrayList<File>();
+		List<Double> fileDurations = new ArrayList<Double>();
+		for (File file : files) {
+			long[] durationAndRepetition = parseFileName(file.getName());
+			if (durationAndRepetition != null) {
+				this.files.add(file);
+				fileDurations.add((double)durationAndRepetition[0]);
+			}
+		}
+		this.durations = new double[fileDurations.size()];
+		for (int i=0;i<durations.length;i++) {
+			durations[i] = fileDurations.get(i);
+		}
+		this.distinctDurations = new HashSet<Double>(fileDurations).size();
+	}
+
+	/**
+	 * @param name the file name
+	 * @return the duration (seconds) and repetition of a loop trace file, null if the name does not have them
+	 */
+	public static long[] parseFileName(String name) {
+		Matcher matcher = fileNamePattern.matcher(name);
+		if (!matcher.matches()) {
+			return null;
+		}
+		try {
+			return new long[]{Long.parseLong(matcher.group(2)), Long.parseLong(matcher.group(3))};
+		} catch (NumberFormatException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * @return true if the files have at least two durations and one more file, which a fit needs
+	 */
+	public boolean canFit() {
+		return distinctDurations >= 2 && files.size() >= 3;
+	}
+
+	public List<File> getFiles() {
+		return files;
+	}
+
+	public int getDistinctDurations() {
+		return distinctDurations;
+	}
+
+	/**
+	 * Fits the unfreed allocations of each stack against the trace durations
+	 * @param unfreedStacks the unfreed allocation stacks of each file (with their counts)
+	 * @return the trends of the stacks, the significant growths (after the correction for the number of stacks) first,
+	 * by their t statistic
+	 * @throws IOException if the fit is interrupted
+	 */
+	public List<StackTrend> fit(final Map<File, List<DTLeakAnalyzer.StackOccurence>> unfreedStacks) throws IOException {
+		if (!canFit()) {
+			return new ArrayList<StackTrend>();
+		}
+		//the stack index, in the order of the files
+		final Map<String, Integer> stackIndex = new HashMap<String, Integer>();
+		final List<String> stacks = new ArrayList<String>();
+		for (File file : files) {
+			for (DTLeakAnalyzer.StackOccurence occurence : unfreedStacks.get(file)) {
+				if (!stackIndex.containsKey(occurence.getStack())) {
+					stackIndex.put(occurence.getStack(), stacks.size());
+					stacks.add(occurence.getStack());
+				}
+			}
+		}
+		final long[][] counts = new long[stacks.size()][files.size()];
+
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		try {
+			//fill the matrix, each task writes the column of its file
+			List<Future<Object>> columns = new ArrayList<Future<Object>>();
+			for (int i=0;i<files.size();i++) {
+				final int column = i;
+				columns.add(executor.submit(new Callable<Object>() {
+					@Override
+					public Object call() {
+						for (DTLeakAnalyzer.StackOccurence occurence : unfreedStacks.get(files.get(column))) {
+							counts[stackIndex.get(occurence.getStack())][column] += occurence.getTimesFound();
+						}
+						return null;
+					}
+				}));
+			}
+			for (Future<Object> column : columns) {
+				get(column);
+			}
+
+			//fit the stacks in chunks
+			List<Future<List<StackTrend>>> chunks = new ArrayList<Future<List<StackTrend>>>();
+			for (int start=0;start<stacks.size();start+=stacksPerTask) {
+				final int from = start;
+				final int to = Math.min(stacks.size(), start + stacksPerTask);
+				chunks.add(executor.submit(new Callable<List<StackTrend>>() {
+					@Override
+					public List<StackTrend> call() {
+						List<StackTrend> ret = new ArrayList<StackTrend>(to - from);
+						for (int i=from;i<to;i++) {
+							ret.add(fit(stacks.get(i), counts[i]));
+						}
+						return ret;
+					}
+				}));
+			}
+			List<StackTrend> ret = new ArrayList<StackTrend>(stacks.size());
+			for (Future<List<StackTrend>> chunk : chunks) {
+				ret.addAll(get(chunk));
+			}
+			markSignificantGrowths(ret);
+			Collections.sort(ret, new Comparator<StackTrend>() {
+				@Override
+				public int compare(StackTrend o1, StackTrend o2) {
+					if (o1.isSignificantGrowth() != o2.isSignificantGrowth()) {
+						return o1.isSignificantGrowth() ? -1 : 1;
+					}
+					int ret = Double.compare(o2.tStatistic, o1.tStatistic);
+					return ret != 0 ? ret : Double.compare(o2.slope, o1.slope);
+				}
+			});
+			return ret;
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	/**
+	 * Marks the stacks that grow significantly, with the Benjamini-Hochberg procedure: of the p values sorted
+	 * in increasing order, the tests up to the last one with p(k) <= k / m * falseDiscoveryRate are kept
+	 */
+	private static void markSignificantGrowths(List<StackTrend> trends) {
+		List<StackTrend> byPValue = new ArrayList<StackTrend>(trends);
+		Collections.sort(byPValue, new Comparator<StackTrend>() {
+			@Override
+			public int compare(StackTrend o1, StackTrend o2) {
+				return Double.compare(o1.pValue, o2.pValue);
+			}
+		});
+		int kept = 0;
+		for (int i=0;i<byPValue.size();i++) {
+			if (byPValue.get(i).pValue <= falseDiscoveryRate * (i + 1) / byPValue.size()) {
+				kept = i + 1;
+			}
+		}
+		for (int i=0;i<kept;i++) {
+			StackTrend trend = byPValue.get(i);
+			trend.significantGrowth = trend.slope > 0;
+		}
+	}
+
+	private static <T> T get(Future<T> future) throws IOException {
+		try {
+			return future.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("interrupted while fitting the growth trends");
+		} catch (ExecutionException e) {
+			throw new IllegalStateException("cannot fit the growth trends", e.getCause());
+		}
+	}
+
+	/**
+	 * Fits the unfreed allocations of a stack against the durations of the files
+	 */
+	private StackTrend fit(String stack, long[] counts) {
+		int n = counts.length;
+		double meanDuration = 0;
+		double meanCount = 0;
+		for (int i=0;i<n;i++) {
+			meanDuration += durations[i];
+			meanCount += counts[i];
+		}
+		meanDuration /= n;
+		meanCount /= n;
+		double sxx = 0;
+		double sxy = 0;
+		double syy = 0;
+		for (int i=0;i<n;i++) {
+			double dx = durations[i] - meanDuration;
+			double dy = counts[i] - meanCount;
+			sxx += dx * dx;
+			sxy += dx * dy;
+			syy += dy * dy;
+		}
+		double slope = sxy / sxx;
+		double intercept = meanCount - slope * meanDuration;
+		double residuals = Math.max(0, syy - slope * sxy);
+		double standardError = Math.sqrt(residuals / (n - 2) / sxx);
+		double halfWidth = getTQuantile(n - 2) * standardError;
+		double tStatistic;
+		if (standardError > 0) {
+			tStatistic = slope / standardError;
+		} else {
+			//exact fit
+			tStatistic = slope == 0 ? 0 : Math.copySign(Double.POSITIVE_INFINITY, slope);
+		}
+		double pValue = getTwoSidedPValue(tStatistic, n - 2);
+		double rSquared = syy > 0 ? 1 - residuals / syy : 0;
+
+		//mean and 95% interval of the repetitions of each duration
+		Map<Double, List<Long>> repetitions = new TreeMap<Double, List<Long>>();
+		for (int i=0;i<n;i++) {
+			List<Long> durationCounts = repetitions.get(durations[i]);
+			if (durationCounts == null) {
+				durationCounts = new ArrayList<Long>();
+				repetitions.put(durations[i], durationCounts);
+			}
+			durationCounts.add(counts[i]);
+		}
+		StringBuilder durationSummary = new StringBuilder();
+		for (Map.Entry<Double, List<Long>> durationCounts : repetitions.entrySet()) {
+			List<Long> values = durationCounts.getValue();
+			double mean = 0;
+			for (long value : values) {
+				mean += value;
+			}
+			mean /= values.size();
+			double variance = 0;
+			for (long value : values) {
+				variance += (value - mean) * (value - mean);
+			}
+			if (durationSummary.length() > 0) {
+				durationSummary.append(", ");
+			}
+			durationSummary.append(String.format(Locale.US, "%.0fs=%.1f", durationCounts.getKey(), mean));
+			if (values.size() > 1) {
+				double meanHalfWidth = getTQuantile(values.size() - 1) * Math.sqrt(variance / (values.size() - 1) / values.size());
+				durationSummary.append(String.format(Locale.US, "+/-%.1f", meanHalfWidth));
+			}
+		}
+		return new StackTrend(stack, slope, intercept, slope - halfWidth, slope + halfWidth, tStatistic, pValue, rSquared, durationSummary.toString());
+	}
+
+	/**
+	 * @return the probability of a t statistic at least as far from 0, for a slope of 0
+	 */
+	static double getTwoSidedPValue(double tStatistic, int degreesOfFreedom) {
+		if (Double.isNaN(tStatistic)) {
+			return 1;
+		}
+		if (Double.isInfinite(tStatistic)) {
+			return 0;
+		}
+		double df = degreesOfFreedom;
+		return getRegularizedBeta(df / (df + tStatistic * tStatistic), df / 2, 0.5);
+	}
+
+	/**
+	 * @return the regularized incomplete beta function I_x(a, b)
+	 */
+	static double getRegularizedBeta(double x, double a, double b) {
+		if (x <= 0) {
+			return 0;
+		}
+		if (x >= 1) {
+			return 1;
+		}
+		double front = Math.exp(getLogGamma(a + b) - getLogGamma(a) - getLogGamma(b) + a * Math.log(x) + b * Math.log(1 - x));
+		//the continued fraction converges fast below (a + 1) / (a + b + 2), the symmetry I_x(a, b) = 1 - I_1-x(b, a) above
+		if (x < (a + 1) / (a + b + 2)) {
+			return front * getBetaContinuedFraction(x, a, b) / a;
+		}
+		return 1 - front * getBetaContinuedFraction(1 - x, b, a) / b;
+	}
+
+	/**
+	 * @return the continued fraction of the incomplete beta function, by the modified Lentz method
+	 */
+	private static double getBetaContinuedFraction(double x, double a, double b) {
+		double c = 1;
+		double d = 1 - (a + b) * x / (a + 1);
+		d = 1 / (Math.abs(d) < tiny ? tiny : d);
+		double ret = d;
+		for (int m=1;m<=maxIterations;m++) {
+			//even step
+			double numerator = m * (b - m) * x / ((a + 2 * m - 1) * (a + 2 * m));
+			d = 1 + numerator * d;
+			d = 1 / (Math.abs(d) < tiny ? tiny : d);
+			c = 1 + numerator / c;
+			c = Math.abs(c) < tiny ? tiny : c;
+			ret *= d * c;
+			//odd step
+			numerator = -(a + m) * (a + b + m) * x / ((a + 2 * m) * (a + 2 * m + 1));
+			d = 1 + numerator * d;
+			d = 1 / (Math.abs(d) < tiny ? tiny : d);
+			c = 1 + numerator / c;
+			c = Math.abs(c) < tiny ? tiny : c;
+			double delta = d * c;
+			ret *= delta;
+			if (Math.abs(delta - 1) < epsilon) {
+				break;
+			}
+		}
+		return ret;
+	}
+
+	/**
+	 * @return the natural logarithm of the gamma function, by the Lanczos approximation (x > 0)
+	 */
+	static double getLogGamma(double x) {
+		double series = 1.000000000190015;
+		double y = x;
+		for (double coefficient : lanczos) {
+			series += coefficient / ++y;
+		}
+		double tmp = x + 5.5;
+		return (x + 0.5) * Math.log(tmp) - tmp + Math.log(2.5066282746310005 * series / x);
+	}
+
+	/**
+	 * @return the two-sided 95% quantile of the Student t distribution
+	 */
+	static double getTQuantile(int degreesOfFreedom) {
+		if (degreesOfFreedom <= tQuantiles.length) {
+			return tQuantiles[degreesOfFreedom - 1];
+		}
+		//Cornish-Fisher expansion around the normal quantile
+		double z = 1.959964;
+		double df = degreesOfFreedom;
+		return z + (z * z * z + z) / (4 * df) + (5 * Math.pow(z, 5) + 16 * z * z * z + 3 * z) / (96 * df * df);
+	}
+
+	/**
+	 * The fitted growth of the unfreed allocations of a stack over the trace duration
+	 */
+	public static class StackTrend {
+		private final String stack;
+		private final double slope;
+		private final double intercept;
+		private final double slopeLow;
+		private final double slopeHigh;
+		private final double tStatistic;
+		private final double pValue;
+		private final double rSquared;
+		private final String durationSummary;
+		//set by the correction for the number of stacks
+		private boolean significantGrowth;
+
+		private StackTrend(String stack, double slope, double intercept, double slopeLow, double slopeHigh, double tStatistic,
+				double pValue, double rSquared, String durationSummary) {
+			this.stack = stack;
+			this.slope = slope;
+			this.intercept = intercept;
+			this.slopeLow = slopeLow;
+			this.slopeHigh = slopeHigh;
+			this.tStatistic = tStatistic;
+			this.pValue = pValue;
+			this.rSquared = rSquared;
+			this.durationSummary = durationSummary;
+		}
+
+		public String getStack() {
+			return stack;
+		}
+
+		/**
+		 * @return the unfreed allocations per second of trace duration
+		 */
+		public double getSlope() {
+			return slope;
+		}
+
+		public double getIntercept() {
+			return intercept;
+		}
+
+		/**
+		 * @return the 95% confidence interval of the slope
+		 */
+		public double getSlopeLow() {
+			return slopeLow;
+		}
+
+		public double getSlopeHigh() {
+			return slopeHigh;
+		}
+
+		public double getTStatistic() {
+			return tStatistic;
+		}
+
+		/**
+		 * @return the two-sided p value of the slope, before the correction for the number of stacks
+		 */
+		public double getPValue() {
+			return pValue;
+		}
+
+		/**
+		 * @return the coefficient of determination of the fit
+		 */
+		public double getRSquared() {
+			return rSquared;
+		}
+
+		/**
+		 * @return true if the slope is positive and its test is kept by the Benjamini-Hochberg procedure at
+		 * the false discovery rate over all fitted stacks
+		 */
+		public boolean isSignificantGrowth() {
+			return significantGrowth;
+		}
+
+		/**
+		 * @return true if the whole 95% confidence interval of the slope is above 0, without the correction
+		 * for the number of stacks
+		 */
+		public boolean isUncorrectedSignificantGrowth() {
+			return slopeLow > 0;
+		}
+
+		/**
+		 * @return the mean unfreed allocations of each duration and their 95% interval over the repetitions
+		 */
+		public String getDurationSummary() {
+			return durationSummary;
+		}
+
+		public String getInformation() {
+			return String.format(Locale.US, "%+.3f unfreed allocations per second (95%% confidence %.3f to %.3f, t=%.1f, p=%.2g, R2=%.2f), mean per duration: %s",
+					slope, slopeLow, slopeHigh, tStatistic, pValue, rSquared, durationSummary);
+		}
+	}
+}
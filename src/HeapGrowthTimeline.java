@@ -0,0 +1,291 @@
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.UnsupportedEncodingException;
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Time series of the break address, built from the brk / sbrk trace entries.
+ *
+ * The series keeps one point per second of the trace (the break address after the last call
+ * of that second), in primitive arrays, so a long trace with millions of calls stays compact.
+ * The growth trend is the least squares fit of the growth (the break address minus the break
+ * address at the start of the trace) over the time, and is used to project when the growth
+ * reaches a memory limit.
+ *
+ * For rendering, the series is downsampled with the largest triangle three buckets algorithm,
+ * which keeps the visually important points (peaks, steps) of the curve.
+ *
+ */
+public class HeapGrowthTimeline {
+	private static final int initialCapacity = 1024;
+
+	private final TimestampDecoder timestampDecoder;
+
+	//seconds since the start of the trace and break address of each point
+	private long[] seconds;
+	private long[] breakAddresses;
+	private int points;
+
+	private long firstTimestamp = -1;
+	private long initialBreakAddress;
+	private long peakBreakAddress;
+	private long calls;
+
+	//first second at which the growth reached the memory limit, -1 if not reached
+	private final long memoryLimit;
+	private long limitReachedSecond = -1;
+
+	/**
+	 * new time line
+	 * @param memoryLimit the growth over the initial break address that is projected, or a negative value for none
+	 */
+	public HeapGrowthTimeline(long memoryLimit) {
+		this.memoryLimit = memoryLimit;
+		this.timestampDecoder = new TimestampDecoder();
+		this.seconds = new long[initialCapacity];
+		this.breakAddresses = new long[initialCapacity];
+	}
+
+	/**
+	 * Records the break address after a successful call
+	 * @param timestamp the walltimestamp of the trace entry
+	 * @param breakAddress the break address after the call
+	 * @throws IOException if the timestamp cannot be decoded
+	 */
+	public void record(String timestamp, long breakAddress) throws IOException {
+		long second = timestampDecoder.decode(timestamp);
+		if (firstTimestamp == -1) {
+			firstTimestamp = second;
+			initialBreakAddress = breakAddress;
+			peakBreakAddress = breakAddress;
+		}
+		second -= firstTimestamp;
+		calls++;
+		if (points > 0 && seconds[points-1] == second) {
+			//same second, keep the last break address
+			breakAddresses[points-1] = breakAddress;
+		} else {
+			if (points == seconds.length) {
+				seconds = Arrays.copyOf(seconds, points * 2);
+				breakAddresses = Arrays.copyOf(breakAddresses, points * 2);
+			}
+			seconds[points] = second;
+			breakAddresses[points] = breakAddress;
+			points++;
+		}
+		if (breakAddress > peakBreakAddress) {
+			peakBreakAddress = breakAddress;
+		}
+		if (memoryLimit >= 0 && limitReachedSecond == -1 && breakAddress - initialBreakAddress >= memoryLimit) {
+			limitReachedSecond = second;
+		}
+	}
+
+	public int getPoints() {
+		return points;
+	}
+
+	public long getCalls() {
+		return calls;
+	}
+
+	public long getInitialBreakAddress() {
+		return initialBreakAddress;
+	}
+
+	public long getFinalBreakAddress() {
+		return points == 0 ? initialBreakAddress : breakAddresses[points-1];
+	}
+
+	public long getGrowth() {
+		return getFinalBreakAddress() - initialBreakAddress;
+	}
+
+	public long getPeakGrowth() {
+		return peakBreakAddress - initialBreakAddress;
+	}
+
+	/**
+	 * @return the seconds between the first and the last point
+	 */
+	public long getDurationSeconds() {
+		return points == 0 ? 0 : seconds[points-1];
+	}
+
+	public long getMemoryLimit() {
+		return memoryLimit;
+	}
+
+	/**
+	 * @return the timestamp (seconds) at which the growth reached the memory limit during the trace, or -1
+	 */
+	public long getLimitReachedTimestamp() {
+		return limitReachedSecond == -1 ? -1 : firstTimestamp + limitReachedSecond;
+	}
+
+	/**
+	 * @return the growth trend in bytes per second (least squares slope), 0 if it cannot be calculated
+	 */
+	public double getSlope() {
+		double n = points;
+		double sumX = 0, sumXX = 0, sumY = 0, sumXY = 0;
+		for (int i=0;i<points;i++) {
+			double x = seconds[i];
+			double y = breakAddresses[i] - initialBreakAddress;
+			sumX += x;
+			sumXX += x * x;
+			sumY += y;
+			sumXY += x * y;
+		}
+		double denominator = n * sumXX - sumX * sumX;
+		if (points < 2 || denominator == 0) {
+			return 0;
+		}
+		return (n * sumXY - sumX * sumY) / denominator;
+	}
+
+	/**
+	 * @return the growth at the start of the trace on the growth trend
+	 */
+	public double getIntercept() {
+		if (points == 0) {
+			return 0;
+		}
+		double sumX = 0, sumY = 0;
+		for (int i=0;i<points;i++) {
+			sumX += seconds[i];
+			sumY += breakAddresses[i] - initialBreakAddress;
+		}
+		return (sumY - getSlope() * sumX) / points;
+	}
+
+	/**
+	 * @return the coefficient of determination of the growth trend
+	 */
+	public double getFit() {
+		if (points < 2) {
+			return 0;
+		}
+		double slope = getSlope();
+		double intercept = getIntercept();
+		double mean = 0;
+		for (int i=0;i<points;i++) {
+			mean += breakAddresses[i] - initialBreakAddress;
+		}
+		mean /= points;
+		double residual = 0, total = 0;
+		for (int i=0;i<points;i++) {
+			double y = breakAddresses[i] - initialBreakAddress;
+			double fitted = intercept + slope * seconds[i];
+			residual += (y - fitted) * (y - fitted);
+			total += (y - mean) * (y - mean);
+		}
+		return total == 0 ? 0 : 1.0 - residual / total;
+	}
+
+	/**
+	 * Projects when the growth trend reaches the memory limit
+	 * @return the projected timestamp (seconds), or -1 if there is no limit or the growth trend does not grow
+	 */
+	public long getProjectedLimitTimestamp() {
+		double slope = getSlope();
+		if (memoryLimit < 0 || slope <= 0) {
+			return -1;
+		}
+		double second = (memoryLimit - getIntercept()) / slope;
+		return firstTimestamp + (long)Math.ceil(Math.max(second, getDurationSeconds()));
+	}
+
+	/**
+	 * @return the timestamp (seconds) of the end of the trace
+	 */
+	public long getLastTimestamp() {
+		return firstTimestamp + getDurationSeconds();
+	}
+
+	/**
+	 * @param timestamp seconds
+	 * @return the timestamp in the trace format
+	 */
+	public String formatTimestamp(long timestamp) {
+		return timestampDecoder.format(timestamp);
+	}
+
+	/**
+	 * Selects the points of the downsampled curve with the largest triangle three buckets algorithm.
+	 * The first and the last point are always kept.
+	 * @param threshold the number of points to keep
+	 * @return the indexes of the selected points, in time order
+	 */
+	public int[] downsample(int threshold) {
+		if (threshold >= points || threshold < 3) {
+			int[] all = new int[points];
+			for (int i=0;i<points;i++) {
+				all[i] = i;
+			}
+			return all;
+		}
+		int[] sampled = new int[threshold];
+		int sampledPoints = 0;
+		//size of the buckets, the first and last point are buckets by their own
+		double bucketSize = (double)(points - 2) / (threshold - 2);
+		int selected = 0;
+		sampled[sampledPoints++] = selected;
+		for (int i=0;i<threshold-2;i++) {
+			//average point of the next bucket
+			int averageStart = (int)Math.floor((i + 1) * bucketSize) + 1;
+			int averageEnd = Math.min((int)Math.floor((i + 2) * bucketSize) + 1, points);
+			double averageX = 0;
+			double averageY = 0;
+			for (int j=averageStart;j<averageEnd;j++) {
+				averageX += seconds[j];
+				averageY += breakAddresses[j];
+			}
+			averageX /= (averageEnd - averageStart);
+			averageY /= (averageEnd - averageStart);
+
+			//point of the current bucket with the largest triangle with the previously selected point and the average
+			int bucketStart = (int)Math.floor(i * bucketSize) + 1;
+			int bucketEnd = (int)Math.floor((i + 1) * bucketSize) + 1;
+			double selectedX = seconds[selected];
+			double selectedY = breakAddresses[selected];
+			double maxArea = -1;
+			int next = bucketStart;
+			for (int j=bucketStart;j<bucketEnd;j++) {
+				double area = Math.abs((selectedX - averageX) * (breakAddresses[j] - selectedY)
+						- (selectedX - seconds[j]) * (averageY - selectedY));
+				if (area > maxArea) {
+					maxArea = area;
+					next = j;
+				}
+			}
+			sampled[sampledPoints++] = next;
+			selected = next;
+		}
+		sampled[sampledPoints++] = points - 1;
+		return sampled;
+	}
+
+	/**
+	 * Writes the downsampled curve as CSV
+	 * @param file the CSV file
+	 * @param threshold the number of points to keep
+	 * @return the number of points written
+	 * @throws FileNotFoundException if the file cannot be created
+	 * @throws UnsupportedEncodingException
+	 */
+	public int writeCsv(File file, int threshold) throws FileNotFoundException, UnsupportedEncodingException {
+		int[] sampled = downsample(threshold);
+		try (PrintWriter csv = new PrintWriter(file, "UTF-8")) {
+			csv.println("timestamp,seconds,break address,growth bytes");
+			for (int i : sampled) {
+				csv.println(String.format(Locale.US, "%s,%d,0x%x,%d", formatTimestamp(firstTimestamp + seconds[i]),
+						seconds[i], breakAddresses[i], breakAddresses[i] - initialBreakAddress));
+			}
+		}
+		return sampled.length;
+	}
+}
@@ -0,0 +1,672 @@
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Bounded memory analysis of a memory allocator trace (trace-memalloc.d) that finds the most frequent
+ * allocation, free and leak stacks without keeping a map of all the stacks.
+ *
+ * The trace is parsed as bytes. Each frame line is hashed (FNV-1a) and looked up in a dictionary of the
+ * distinct frames, which holds the normalized frame (see FrameNormalizer) and its hash, so the 64-bit hash
+ * of a stack is built without creating strings. The stacks are keyed as the StackKeyer keys them.
+ *
+ * Each stack kind (allocations, frees, leaks) has a Space-Saving counter of the top stacks, a Count-Min
+ * sketch that bounds their frequencies and a HyperLogLog estimate of the distinct stacks. The memory of
+ * these does not depend on the trace size. The leaks need the stack hash of each live allocation, kept in a
+ * primitive open addressing table, so their memory follows the live allocations (not the trace size).
+ *
+ * The text of a stack is kept only while it is monitored by a Space-Saving counter. The leak stacks are
+ * counted at the end of the trace, the texts of the top leak stacks that were not monitored as allocation
+ * stacks are read by a second pass over the trace.
+ *
+ */
+public class HeavyHitterAnalysis {
+	//Count-Min sketch rows and log2 of their width, HyperLogLog precision
+	private static final int sketchDepth = 4;
+	private static final int sketchWidthBits = 15;
+	private static final int distinctPrecision = 14;
+
+	//monitored stacks per reported stack, and the least monitored stacks
+	private static final int monitoredPerReported = 10;
+	private static final int minimumMonitored = 1000;
+
+	//FNV-1a 64-bit parameters
+	private static final long fnvOffset = 0xcbf29ce484222325L;
+	private static final long fnvPrime = 0x100000001b3L;
+
+	//trace entry markers
+	private static final byte[] entryStart = "<__".getBytes(StandardCharsets.US_ASCII);
+	private static final byte[] entryEnd = "__>".getBytes(StandardCharsets.US_ASCII);
+
+	/**
+	 * The kinds of stacks counted
+	 */
+	public static enum StackKind {
+		ALLOCATION,
+		FREE,
+		LEAK
+	}
+
+	private final int topK;
+	private final Map<StackKind, StackCounter> counters;
+
+	//distinct frames by the hash of their bytes
+	private final Map<Long, FrameInfo> frames;
+
+	//stack hash of the live allocations, by address
+	private final LiveTable liveAllocations;
+
+	//current line, and the header fields and frames of the entry being parsed
+	private byte[] line;
+	private int lineLength;
+	private final int[] fields;
+	private final List<FrameInfo> entryFrames;
+	private boolean inEntry;
+	private byte entryType;
+	private long entryAddress;
+	private long entryPreviousAddress;
+	private long entries;
+
+	//stacks whose texts are read by the second pass, and the ones not found yet
+	private Map<Long, String> resolving;
+	private int unresolved;
+
+	/**
+	 * new analysis
+	 * @param topK the stacks reported per kind
+	 */
+	public HeavyHitterAnalysis(int topK) {
+		this.topK = topK;
+		this.counters = new HashMap<StackKind, StackCounter>();
+		int monitored = Math.max(minimumMonitored, topK * monitoredPerReported);
+		for (StackKind kind : StackKind.values()) {
+			counters.put(kind, new StackCounter(kind, monitored));
+		}
+		this.frames = new HashMap<Long, FrameInfo>();
+		this.liveAllocations = new LiveTable();
+		this.entryFrames = new ArrayList<FrameInfo>();
+		this.line = new byte[256];
+		this.fields = new int[8];
+	}
+
+	/**
+	 * Counts the stacks of a trace, then the leak stacks
+	 * @param in the trace
+	 * @throws IOException if the trace cannot be read or decoded
+	 */
+	public void analyze(InputStream in) throws IOException {
+		parse(in, null);
+		StackCounter leaks = counters.get(StackKind.LEAK);
+		StackCounter allocations = counters.get(StackKind.ALLOCATION);
+		for (int i=0;i<liveAllocations.capacity;i++) {
+			if (liveAllocations.used[i]) {
+				long stackHash = liveAllocations.stackHashes[i];
+				int slot = leaks.count(stackHash);
+				if (leaks.top.getText(slot) == null) {
+					int allocationSlot = allocations.top.getSlot(stackHash);
+					if (allocationSlot >= 0) {
+						leaks.top.setText(slot, allocations.top.getText(allocationSlot));
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * @return the hashes of the reported stacks without a text, to be read by resolveStacks()
+	 */
+	public Set<Long> getUnresolvedStacks() {
+		Set<Long> ret = new HashSet<Long>();
+		for (StackCounter counter : counters.values()) {
+			for (int slot : counter.top.getTop(topK)) {
+				if (counter.top.getText(slot) == null) {
+					ret.add(counter.top.getKey(slot));
+				}
+			}
+		}
+		return ret;
+	}
+
+	/**
+	 * Reads the texts of the reported stacks that have none from the trace
+	 * @param in the trace
+	 * @throws IOException if the trace cannot be read or decoded
+	 */
+	public void resolveStacks(InputStream in) throws IOException {
+		Map<Long, String> texts = new HashMap<Long, String>();
+		for (Long stackHash : getUnresolvedStacks()) {
+			texts.put(stackHash, null);
+		}
+		if (texts.isEmpty()) {
+			return;
+		}
+		parse(in, texts);
+		for (StackCounter counter : counters.values()) {
+			for (int slot : counter.top.getTop(topK)) {
+				if (counter.top.getText(slot) == null) {
+					counter.top.setText(slot, texts.get(counter.top.getKey(slot)));
+				}
+			}
+		}
+	}
+
+	/**
+	 * @param kind the kind of stacks
+	 * @return the counter of a kind of stacks
+	 */
+	public StackCounter getCounter(StackKind kind) {
+		return counters.get(kind);
+	}
+
+	public int getTopK() {
+		return topK;
+	}
+
+	/**
+	 * @return the trace entries of the first pass
+	 */
+	public long getEntries() {
+		return entries;
+	}
+
+	/**
+	 * @return the estimated bytes of the sketches and counters, which do not depend on the trace size
+	 */
+	public long getSketchBytes() {
+		long ret = 0;
+		for (StackCounter counter : counters.values()) {
+			ret += counter.getMemoryBytes();
+		}
+		return ret;
+	}
+
+	/**
+	 * @return the distinct frames of the frame dictionary
+	 */
+	public int getFrames() {
+		return frames.size();
+	}
+
+	/**
+	 * @return the live allocations at the end of the trace and the bytes of their table
+	 */
+	public long getLiveAllocations() {
+		return liveAllocations.size;
+	}
+
+	public long getLiveTableBytes() {
+		return liveAllocations.capacity * 17L;
+	}
+
+	/**
+	 * Parses the trace entries, counting them (texts == null) or reading the texts of the given stacks
+	 */
+	private void parse(InputStream in, Map<Long, String> texts) throws IOException {
+		byte[] buffer = new byte[65536];
+		resolving = texts;
+		unresolved = texts == null ? 0 : texts.size();
+		inEntry = false;
+		lineLength = 0;
+		int read;
+		while ((read = in.read(buffer)) > 0) {
+			int start = 0;
+			for (int i=0;i<read;i++) {
+				if (buffer[i] == '\n') {
+					appendLine(buffer, start, i);
+					start = i + 1;
+					if (!processLine()) {
+						return;
+					}
+				}
+			}
+			appendLine(buffer, start, read);
+		}
+		if (lineLength > 0) {
+			processLine();
+		}
+	}
+
+	/**
+	 * Processes the current line
+	 * @return false if the texts of all the resolved stacks were found
+	 */
+	private boolean processLine() throws IOException {
+		int from = 0;
+		int to = lineLength;
+		lineLength = 0;
+		while (from < to && line[from] <= ' ') {
+			from++;
+		}
+		while (to > from && line[to - 1] <= ' ') {
+			to--;
+		}
+		int startMarker = indexOf(line, from, to, entryStart);
+		int endMarker = indexOf(line, from, to, entryEnd);
+		if (startMarker >= 0) {
+			if (inEntry) {
+				throw new IOException("Trace file corrupted. Found char sequence:<__ while already processing trace entry. Current line:"+new String(line, from, to - from, StandardCharsets.UTF_8));
+			}
+			inEntry = true;
+			entryFrames.clear();
+			parseHeader(startMarker + entryStart.length, to);
+		} else if (inEntry && endMarker < 0 && to > from) {
+			addFrame(from, to);
+		}
+		if (endMarker < 0) {
+			return true;
+		}
+		if (!inEntry) {
+			throw new IOException("Trace file corrupted. Found char sequence:__> while not processing a trace entry. Current line:"+new String(line, from, to - from, StandardCharsets.UTF_8));
+		}
+		inEntry = false;
+		if (resolving == null) {
+			entries++;
+			count();
+			return true;
+		}
+		long stackHash = getStackHash();
+		if (resolving.containsKey(stackHash) && resolving.get(stackHash) == null) {
+			resolving.put(stackHash, getStackText());
+			unresolved--;
+		}
+		return unresolved > 0;
+	}
+
+	/**
+	 * Parses the header of an entry: entry;date;thread;type;address[;new address];size;
+	 */
+	private void parseHeader(int start, int end) throws IOException {
+		int fieldCount = 0;
+		fields[fieldCount++] = start;
+		for (int i=start;i<end && fieldCount < fields.length;i++) {
+			if (line[i] == ';') {
+				fields[fieldCount++] = i + 1;
+			}
+		}
+		if (fieldCount < 6) {
+			throw new IOException("cannot decode line:"+new String(line, start, end - start, StandardCharsets.UTF_8));
+		}
+		entryType = line[fields[3]];
+		if (entryType == 'r') {
+			entryPreviousAddress = parseAddress(line, fields[4], end);
+			entryAddress = parseAddress(line, fields[5], end);
+		} else {
+			entryAddress = parseAddress(line, fields[4], end);
+		}
+	}
+
+	/**
+	 * Counts a parsed entry on the counters and the live allocations
+	 */
+	private void count() throws IOException {
+		long stackHash = getStackHash();
+		switch (entryType) {
+		case 'm' :
+		case 'c' : {
+			countStack(StackKind.ALLOCATION, stackHash);
+			liveAllocations.put(entryAddress, stackHash);
+			break;
+		}
+		case 'r' : {
+			countStack(StackKind.ALLOCATION, stackHash);
+			liveAllocations.remove(entryPreviousAddress);
+			liveAllocations.put(entryAddress, stackHash);
+			break;
+		}
+		case 'f' : {
+			countStack(StackKind.FREE, stackHash);
+			liveAllocations.remove(entryAddress);
+			break;
+		}
+		default : {
+			throw new IOException("cannot determine type of trace entry "+entries);
+		}
+		}
+	}
+
+	private void countStack(StackKind kind, long stackHash) {
+		StackCounter counter = counters.get(kind);
+		int slot = counter.count(stackHash);
+		if (counter.top.getText(slot) == null) {
+			counter.top.setText(slot, getStackText());
+		}
+	}
+
+	private void appendLine(byte[] buffer, int start, int end) {
+		int length = end - start;
+		if (lineLength + length > line.length) {
+			byte[] grown = new byte[Math.max(line.length * 2, lineLength + length)];
+			System.arraycopy(line, 0, grown, 0, lineLength);
+			line = grown;
+		}
+		System.arraycopy(buffer, start, line, lineLength, length);
+		lineLength += length;
+	}
+
+	/**
+	 * Looks up a frame of the current entry in the frame dictionary by the hash of its bytes
+	 */
+	private void addFrame(int from, int to) {
+		long hash = fnvOffset;
+		for (int i=from;i<to;i++) {
+			hash = (hash ^ (line[i] & 0xff)) * fnvPrime;
+		}
+		FrameInfo frame = frames.get(hash);
+		if (frame == null) {
+			frame = new FrameInfo(new String(line, from, to - from, StandardCharsets.UTF_8));
+			frames.put(hash, frame);
+		}
+		entryFrames.add(frame);
+	}
+
+	/**
+	 * @return the index of the first frame of the key of the current entry
+	 */
+	private int getKeyStart() {
+		if (StackKeyer.getInstance().getKeyFrames() == 0) {
+			return 0;
+		}
+		int start = 0;
+		while (start < entryFrames.size() && entryFrames.get(start).allocator) {
+			start++;
+		}
+		//stacks that have only allocator frames are kept as they are
+		return start == entryFrames.size() ? 0 : start;
+	}
+
+	private int getKeyEnd(int start) {
+		int keyFrames = StackKeyer.getInstance().getKeyFrames();
+		if (keyFrames == 0 || (start == 0 && entryFrames.size() > 0 && entryFrames.get(0).allocator)) {
+			return entryFrames.size();
+		}
+		return Math.min(entryFrames.size(), start + keyFrames);
+	}
+
+	/**
+	 * @return the 64-bit hash of the stack key of the current entry
+	 */
+	private long getStackHash() {
+		int start = getKeyStart();
+		int end = getKeyEnd(start);
+		long hash = fnvOffset;
+		for (int i=start;i<end;i++) {
+			FrameInfo frame = entryFrames.get(i);
+			hash = CountMinSketch.mix(hash ^ (i == 0 ? frame.topHash : frame.hash));
+		}
+		return hash;
+	}
+
+	/**
+	 * @return the stack key of the current entry, as the replay keys it
+	 */
+	private String getStackText() {
+		int start = getKeyStart();
+		int end = getKeyEnd(start);
+		StringBuilder ret = new StringBuilder();
+		for (int i=start;i<end;i++) {
+			FrameInfo frame = entryFrames.get(i);
+			if (i > start) {
+				ret.append('\n');
+			}
+			ret.append(i == 0 ? frame.topText : frame.text);
+		}
+		return ret.toString();
+	}
+
+	private static int indexOf(byte[] bytes, int from, int to, byte[] sequence) {
+		for (int i=from;i<=to - sequence.length;i++) {
+			boolean found = true;
+			for (int j=0;j<sequence.length && found;j++) {
+				found = bytes[i + j] == sequence[j];
+			}
+			if (found) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * parses a hexadecimal address (0x...) that ends with a ;
+	 */
+	private static long parseAddress(byte[] bytes, int start, int end) throws IOException {
+		int i = start;
+		if (i + 1 < end && bytes[i] == '0' && (bytes[i + 1] == 'x' || bytes[i + 1] == 'X')) {
+			i += 2;
+		}
+		long ret = 0;
+		for (;i<end && bytes[i] != ';';i++) {
+			int digit = Character.digit(bytes[i], 16);
+			if (digit < 0) {
+				throw new IOException("cannot decode address:"+new String(bytes, start, i - start + 1, StandardCharsets.UTF_8));
+			}
+			ret = (ret << 4) | digit;
+		}
+		return ret;
+	}
+
+	/**
+	 * A distinct frame of the trace, normalized as a top frame and as another frame
+	 */
+	private static class FrameInfo {
+		private final String topText;
+		private final String text;
+		private final long topHash;
+		private final long hash;
+		private final boolean allocator;
+
+		private FrameInfo(String frame) {
+			FrameNormalizer normalizer = FrameNormalizer.getInstance();
+			topText = normalizer.normalizeFrame(frame, true);
+			text = normalizer.normalizeFrame(frame, false);
+			topHash = hash(topText);
+			hash = hash(text);
+			allocator = StackKeyer.getInstance().isAllocatorFrame(text);
+		}
+
+		private static long hash(String text) {
+			long ret = fnvOffset;
+			for (byte b : text.getBytes(StandardCharsets.UTF_8)) {
+				ret = (ret ^ (b & 0xff)) * fnvPrime;
+			}
+			return ret;
+		}
+	}
+
+	/**
+	 * The top stacks, the frequency sketch and the distinct stacks of a kind of stacks
+	 */
+	public static class StackCounter {
+		private final StackKind kind;
+		private final SpaceSaving top;
+		private final CountMinSketch frequencies;
+		private final HyperLogLog distinct;
+
+		private StackCounter(StackKind kind, int monitored) {
+			this.kind = kind;
+			this.top = new SpaceSaving(monitored);
+			this.frequencies = new CountMinSketch(sketchDepth, sketchWidthBits);
+			this.distinct = new HyperLogLog(distinctPrecision);
+		}
+
+		private int count(long stackHash) {
+			frequencies.add(stackHash, 1);
+			distinct.add(stackHash);
+			return top.offer(stackHash, 1);
+		}
+
+		public StackKind getKind() {
+			return kind;
+		}
+
+		/**
+		 * @return the stacks counted
+		 */
+		public long getTotal() {
+			return top.getTotal();
+		}
+
+		/**
+		 * @return the estimated distinct stacks
+		 */
+		public long getDistinctStacks() {
+			return distinct.estimate();
+		}
+
+		public double getDistinctError() {
+			return distinct.getStandardError();
+		}
+
+		/**
+		 * @return the highest error of the Space-Saving counts
+		 */
+		public long getMaxError() {
+			return top.getMaxError();
+		}
+
+		public long getSketchError() {
+			return frequencies.getMaxError();
+		}
+
+		public double getSketchConfidence() {
+			return frequencies.getConfidence();
+		}
+
+		/**
+		 * @param k the stacks returned
+		 * @return the most frequent stacks, the most frequent first
+		 */
+		public List<HeavyHitter> getTop(int k) {
+			List<HeavyHitter> ret = new ArrayList<HeavyHitter>();
+			for (int slot : top.getTop(k)) {
+				long count = top.getCount(slot);
+				long sketchEstimate = frequencies.estimate(top.getKey(slot));
+				ret.add(new HeavyHitter(top.getText(slot), Math.max(0, count - top.getError(slot)), Math.min(count, sketchEstimate)));
+			}
+			return ret;
+		}
+
+		private long getMemoryBytes() {
+			return top.getMemoryBytes() + frequencies.getMemoryBytes() + distinct.getMemoryBytes();
+		}
+	}
+
+	/**
+	 * A frequent stack and the bounds of its count
+	 */
+	public static class HeavyHitter {
+		private final String stack;
+		private final long lowerBound;
+		private final long upperBound;
+
+		private HeavyHitter(String stack, long lowerBound, long upperBound) {
+			this.stack = stack;
+			this.lowerBound = lowerBound;
+			this.upperBound = upperBound;
+		}
+
+		public String getStack() {
+			return stack;
+		}
+
+		/**
+		 * @return the guaranteed lowest count (Space-Saving count minus its error)
+		 */
+		public long getLowerBound() {
+			return lowerBound;
+		}
+
+		/**
+		 * @return the highest count, the lower of the Space-Saving count and the Count-Min estimate
+		 */
+		public long getUpperBound() {
+			return upperBound;
+		}
+	}
+
+	/**
+	 * Open addressing table (linear probing, backward shift deletion) of the stack hash of each live address
+	 */
+	private static class LiveTable {
+		private int capacity;
+		private long[] addresses;
+		private long[] stackHashes;
+		private boolean[] used;
+		private int size;
+
+		private LiveTable() {
+			allocate(1 << 16);
+		}
+
+		private void allocate(int newCapacity) {
+			capacity = newCapacity;
+			addresses = new long[capacity];
+			stackHashes = new long[capacity];
+			used = new boolean[capacity];
+			size = 0;
+		}
+
+		private int slot(long address) {
+			return (int)(CountMinSketch.mix(address) & (capacity - 1));
+		}
+
+		private void put(long address, long stackHash) {
+			if ((size + 1) * 4 > capacity * 3) {
+				long[] oldAddresses = addresses;
+				long[] oldStackHashes = stackHashes;
+				boolean[] oldUsed = used;
+				allocate(capacity * 2);
+				for (int i=0;i<oldUsed.length;i++) {
+					if (oldUsed[i]) {
+						put(oldAddresses[i], oldStackHashes[i]);
+					}
+				}
+			}
+			int i = slot(address);
+			while (used[i] && addresses[i] != address) {
+				i = (i + 1) & (capacity - 1);
+			}
+			if (!used[i]) {
+				used[i] = true;
+				addresses[i] = address;
+				size++;
+			}
+			stackHashes[i] = stackHash;
+		}
+
+		private void remove(long address) {
+			int i = slot(address);
+			while (used[i] && addresses[i] != address) {
+				i = (i + 1) & (capacity - 1);
+			}
+			if (!used[i]) {
+				return;
+			}
+			used[i] = false;
+			size--;
+			//shift back the following entries of the probe sequence
+			int j = i;
+			while (true) {
+				j = (j + 1) & (capacity - 1);
+				if (!used[j]) {
+					return;
+				}
+				int home = slot(addresses[j]);
+				boolean movable = i <= j ? (home <= i || home > j) : (home <= i && home > j);
+				if (movable) {
+					addresses[i] = addresses[j];
+					stackHashes[i] = stackHashes[j];
+					used[i] = true;
+					used[j] = false;
+					i = j;
+				}
+			}
+		}
+	}
+}
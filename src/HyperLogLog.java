@@ -0,0 +1,65 @@
+/**
+ * HyperLogLog distinct count estimator (Flajolet et al.) of 64-bit keys, with 2^precision one byte
+ * registers. The relative standard error of the estimate is 1.04 / sqrt(2^precision), the small
+ * counts are estimated by linear counting.
+ *
+ */
+public class HyperLogLog {
+	private final int precision;
+	private final byte[] registers;
+
+	/**
+	 * new estimator
+	 * @param precision the log2 of the registers, 4 to 18
+	 */
+	public HyperLogLog(int precision) {
+		this.precision = precision;
+		this.registers = new byte[1 << precision];
+	}
+
+	/**
+	 * Counts a key
+	 * @param key the key
+	 */
+	public void add(long key) {
+		long hash = CountMinSketch.mix(key);
+		int index = (int)(hash >>> (64 - precision));
+		//the rank of the first one bit of the remaining bits, bounded by a guard bit
+		int rank = Long.numberOfLeadingZeros((hash << precision) | (1L << (precision - 1))) + 1;
+		if (rank > registers[index]) {
+			registers[index] = (byte)rank;
+		}
+	}
+
+	/**
+	 * @return the estimated number of distinct keys
+	 */
+	public long estimate() {
+		int m = registers.length;
+		double sum = 0;
+		int zeros = 0;
+		for (byte register : registers) {
+			sum += Math.pow(2, -register);
+			if (register == 0) {
+				zeros++;
+			}
+		}
+		double alpha = 0.7213 / (1 + 1.079 / m);
+		double estimate = alpha * m * m / sum;
+		if (estimate <= 2.5 * m && zeros > 0) {
+			estimate = m * Math.log((double)m / zeros);
+		}
+		return Math.round(estimate);
+	}
+
+	/**
+	 * @return the relative standard error of the estimate
+	 */
+	public double getStandardError() {
+		return 1.04 / Math.sqrt(registers.length);
+	}
+
+	public long getMemoryBytes() {
+		return registers.length;
+	}
+}
@@ -0,0 +1,134 @@
+import java.util.Arrays;
+
+/**
+ * Compact histogram of non negative long values with logarithmic buckets (in the style of
+ * HdrHistogram): each power of two range is split in 4 linear sub-buckets, so a value is
+ * recorded with a relative error below 25%, and the values below 4 exactly.
+ *
+ * The counts are kept in a primitive array that grows only up to the bucket of the highest
+ * value recorded, so a histogram of small values stays a few dozen longs.
+ *
+ */
+public class LogHistogram {
+	//sub-buckets per power of two, as bits
+	private static final int subBucketBits = 2;
+	private static final int subBuckets = 1 << subBucketBits;
+
+	private long[] counts;
+	private long totalCount;
+	private long maxValue;
+
+	public LogHistogram() {
+		counts = new long[subBuckets * 4];
+	}
+
+	/**
+	 * Records a value, negative values are recorded as 0
+	 * @param value the value
+	 */
+	public void record(long value) {
+		record(value, 1);
+	}
+
+	/**
+	 * Records a value a number of times
+	 * @param value the value, negative values are recorded as 0
+	 * @param count the times
+	 */
+	public void record(long value, long count) {
+		if (value < 0) {
+			value = 0;
+		}
+		int bucket = getBucket(value);
+		if (bucket >= counts.length) {
+			counts = Arrays.copyOf(counts, Math.max(counts.length * 2, bucket + 1));
+		}
+		counts[bucket] += count;
+		totalCount += count;
+		if (value > maxValue) {
+			maxValue = value;
+		}
+	}
+
+	/**
+	 * Adds the counts of another histogram
+	 * @param other the histogram to add
+	 */
+	public void add(LogHistogram other) {
+		if (other.counts.length > counts.length) {
+			counts = Arrays.copyOf(counts, other.counts.length);
+		}
+		for (int i=0;i<other.counts.length;i++) {
+			counts[i] += other.counts[i];
+		}
+		totalCount += other.totalCount;
+		maxValue = Math.max(maxValue, other.maxValue);
+	}
+
+	/**
+	 * @return the bucket of a value
+	 */
+	static int getBucket(long value) {
+		if (value < subBuckets) {
+			return (int)value;
+		}
+		int exponent = 63 - Long.numberOfLeadingZeros(value);
+		int subBucket = (int)(value >>> (exponent - subBucketBits)) & (subBuckets - 1);
+		return (exponent - subBucketBits + 1) * subBuckets + subBucket;
+	}
+
+	/**
+	 * @return the lowest value of a bucket
+	 */
+	static long getLowestValue(int bucket) {
+		if (bucket < subBuckets) {
+			return bucket;
+		}
+		int exponent = bucket / subBuckets + subBucketBits - 1;
+		return (long)(subBuckets + bucket % subBuckets) << (exponent - subBucketBits);
+	}
+
+	public long getTotalCount() {
+		return totalCount;
+	}
+
+	public long getMaxValue() {
+		return maxValue;
+	}
+
+	/**
+	 * Returns the value at a percentile, as the highest value of its bucket (at most the highest value recorded)
+	 * @param percentile the percentile, 0 to 100
+	 * @return the value, 0 if nothing was recorded
+	 */
+	public long getValueAtPercentile(double percentile) {
+		if (totalCount == 0) {
+			return 0;
+		}
+		long target = Math.max(1, (long)Math.ceil(totalCount * percentile / 100.0));
+		long cumulative = 0;
+		for (int i=0;i<counts.length;i++) {
+			cumulative += counts[i];
+			if (cumulative >= target) {
+				return Math.min(maxValue, getLowestValue(i+1) - 1);
+			}
+		}
+		return maxValue;
+	}
+
+	/**
+	 * @return the non empty buckets as [lowest value, count] pairs, for the reports
+	 */
+	public String getBuckets() {
+		StringBuilder sb = new StringBuilder();
+		for (int i=0;i<counts.length;i++) {
+			if (counts[i] > 0) {
+				if (sb.length() > 0) {
+					sb.append(' ');
+				}
+				sb.append(getLowestValue(i)).append(':').append(counts[i]);
+			}
+		}
+		return sb.toString();
+	}
+}
@@ -0,0 +1,1461 @@
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Replays the memory allocator trace entries (malloc / calloc / realloc / free)
+ * in order to find the memory that was not freed, the wrong frees and the double frees.
+ *
+ * The lifecycle of each memory address is independent from the other addresses, so the entries
+ * are routed by address hash to a number of shards. Each shard has its own allocation and
+ * freed-not-reused tables and (when more than one shard is used) its own worker thread,
+ * fed with batches of entries through a bounded queue.
+ *
+ * A realloc that moves memory between addresses of different shards is split in two parts,
+ * the release of the old address (on the shard of the old address) and the allocation of the
+ * new address (on the shard of the new address). The released allocation is handed over from
+ * the old shard to the new shard. The release part is always queued before the allocation part
+ * so the handover cannot deadlock.
+ *
+ * The results of the shards are merged when the replay finishes.
+ *
+ * Each shard also counts the allocated and freed bytes of each allocating stack, in primitive
+ * arrays indexed by the id of the stack in a StackIndex shared by all shards. The allocation keeps
+ * its stack id, so the bytes of a free or realloc are released on the stack that allocated them.
+ *
+ * The lifetime of each released allocation (trace entries and seconds from the allocation to the free
+ * or realloc) is recorded in log histograms of the allocating stack. The allocations that are still live
+ * at the end of the trace are aged against the last entry of the trace instead. The lifetimes are only
+ * recorded when they are reported, two histogram updates per free are not free on large traces.
+ *
+ * For the churn analysis each shard also counts, per allocating stack, the allocations released within
+ * a window of trace entries or seconds, the sizes and the distinct stacks that released the allocations.
+ *
+ * The requested sizes are counted per allocating stack in power of two buckets and in allocator size
+ * classes. The live allocations of each size class are published with the live allocations, so the
+ * peak per size class is sampled in the same way.
+ *
+ * The allocations and releases are also counted per thread, and the releases by another thread than the
+ * allocating thread (which defeat the per-thread caches of the allocators) per pair of allocating and freeing stack.
+ *
+ * A realloc continues the realloc chain of the allocation it releases: the chain state is kept on the
+ * live allocation, so it moves with the allocation between addresses and shards. A chain is counted on
+ * the stack of its first allocation when its last allocation is freed, or at the end of the trace.
+ *
+ * The number of live allocations (over all shards) is published by each shard after every
+ * entry when replaying on the calling thread and after every batch when replaying on workers,
+ * so with multiple shards the peak is sampled at batch granularity.
+ *
+ */
+public class MemoryAllocatorReplay {
+	//number of entries sent to a shard in a single queue operation
+	private static final int batchSize = 512;
+
+	//number of batches that can wait on the queue of each shard
+	private static final int queueCapacity = 64;
+
+	//marks the end of the entries
+	private static final List<ReplayEvent> endOfReplay = new ArrayList<ReplayEvent>();
+
+	//the shards
+	private final ReplayShard[] shards;
+
+	//ids of the allocating stacks, shared by the shards
+	private final StackIndex stackIndex;
+
+	//worker threads and their queues, not used with a single shard
+	private final Thread[] workers;
+	private final List<BlockingQueue<List<ReplayEvent>>> queues;
+
+	//batches being filled per shard
+	private final List<List<ReplayEvent>> pendingBatches;
+
+	//first failure of a shard worker
+	private final AtomicReference<Throwable> failure;
+
+	//allocations that are currently live and the highest value seen
+	private final AtomicLong liveAllocations;
+	private final AtomicLong peakLiveAllocations;
+
+	//allocations per size class that are currently live and the highest values seen
+	private final AtomicLongArray liveSizeClasses;
+	private final AtomicLongArray peakLiveSizeClasses;
+
+	//whether the lifetimes are recorded, and the age from which a live allocation at the end of the trace is counted as old
+	private final boolean lifetimes;
+	private final long aliveAgeSeconds;
+
+	/**
+	 * new replay
+	 * @param shardCount the number of shards (and worker threads when more than one)
+	 * @param windowedGrowthAnalysis the time-windowed growth analysis, or null. It needs the trace order
+	 * of all entries, so it can only be used with a single shard
+	 * @param lifetimes whether the lifetimes of the allocations of each stack are recorded
+	 * @param aliveAgeSeconds the age from which the allocations still live at the end of the trace are counted as old
+	 * @param churnEntries the trace entries within which a released allocation is counted as churn
+	 * @param churnSeconds the seconds within which a released allocation is counted as churn
+	 */
+	public MemoryAllocatorReplay(int shardCount, WindowedGrowthAnalysis windowedGrowthAnalysis, boolean lifetimes, long aliveAgeSeconds, long churnEntries, long churnSeconds) {
+		if (shardCount < 1) {
+			throw new IllegalArgumentException("number of replay shards must be positive:"+shardCount);
+		}
+		if (shardCount > 1 && windowedGrowthAnalysis != null) {
+			throw new IllegalArgumentException("time-windowed growth analysis requires a single replay shard");
+		}
+
+		this.lifetimes = lifetimes;
+		this.aliveAgeSeconds = aliveAgeSeconds;
+		failure = new AtomicReference<Throwable>();
+		liveAllocations = new AtomicLong();
+		peakLiveAllocations = new AtomicLong();
+		liveSizeClasses = new AtomicLongArray(SizeClasses.sizeClasses);
+		peakLiveSizeClasses = new AtomicLongArray(SizeClasses.sizeClasses);
+		stackIndex = new StackIndex();
+		shards = new ReplayShard[shardCount];
+		for (int i=0;i<shardCount;i++) {
+			shards[i] = new ReplayShard(stackIndex, new StackAccumulators(lifetimes, churnEntries, churnSeconds), windowedGrowthAnalysis, liveAllocations, peakLiveAllocations,
+					liveSizeClasses, peakLiveSizeClasses);
+		}
+
+		queues = new ArrayList<BlockingQueue<List<ReplayEvent>>>();
+		pendingBatches = new ArrayList<List<ReplayEvent>>();
+		if (shardCount == 1) {
+			//replay on the calling thread
+			workers = new Thread[0];
+		} else {
+			workers = new Thread[shardCount];
+			for (int i=0;i<shardCount;i++) {
+				final ReplayShard shard = shards[i];
+				final BlockingQueue<List<ReplayEvent>> queue = new ArrayBlockingQueue<List<ReplayEvent>>(queueCapacity);
+				queues.add(queue);
+				pendingBatches.add(new ArrayList<ReplayEvent>(batchSize));
+				workers[i] = new Thread(new Runnable() {
+					@Override
+					public void run() {
+						try {
+							List<ReplayEvent> batch;
+							while ((batch = queue.take()) != endOfReplay) {
+								for (ReplayEvent event : batch) {
+									shard.process(event, failure);
+								}
+								shard.publishLiveAllocations();
+							}
+						} catch (Throwable t) {
+							failure.compareAndSet(null, t);
+						}
+					}
+				}, "replay-shard-"+i);
+				workers[i].setDaemon(true);
+				workers[i].start();
+			}
+		}
+	}
+
+	/**
+	 * Replays the next trace entry
+	 * @param traceEntry the entry
+	 * @throws IOException if the entry is inconsistent with the previous entries
+	 */
+	public void replay(DTLeakAnalyzer.MemoryAllocatorTraceEntry traceEntry) throws IOException {
+		if (traceEntry.getType() == DTLeakAnalyzer.MemoryAllocationTraceEntryType.REALLOC) {
+			int shard = getShard(traceEntry.getAddress());
+			int previousShard = getShard(traceEntry.getPreviousAddress());
+			if (shard == previousShard) {
+				dispatch(shard, new ReplayEvent(traceEntry, ReplayEventType.REALLOCATE, null));
+			} else {
+				//memory moved to an address of another shard
+				ReplayHandoff handoff = new ReplayHandoff();
+				dispatch(previousShard, new ReplayEvent(traceEntry, ReplayEventType.REALLOCATE_FROM, handoff));
+				//the release must not wait on a partially filled batch
+				flush(previousShard);
+				dispatch(shard, new ReplayEvent(traceEntry, ReplayEventType.REALLOCATE_TO, handoff));
+			}
+		} else if (traceEntry.getType() == DTLeakAnalyzer.MemoryAllocationTraceEntryType.FREE) {
+			dispatch(getShard(traceEntry.getAddress()), new ReplayEvent(traceEntry, ReplayEventType.FREE, null));
+		} else {
+			dispatch(getShard(traceEntry.getAddress()), new ReplayEvent(traceEntry, ReplayEventType.ALLOCATE, null));
+		}
+	}
+
+	/**
+	 * Waits for all shards to finish and merges their results
+	 * @return the merged results
+	 * @throws IOException if any of the entries was inconsistent
+	 */
+	public ReplayResult finish() throws IOException {
+		awaitCompletion();
+		return getResult();
+	}
+
+	/**
+	 * Waits for all shards to replay their pending entries
+	 * @throws IOException if any of the entries was inconsistent
+	 */
+	public void awaitCompletion() throws IOException {
+		for (int i=0;i<workers.length;i++) {
+			flush(i);
+			enqueue(i, endOfReplay);
+		}
+		for (Thread worker : workers) {
+			try {
+				worker.join();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IOException("interrupted while waiting for the replay to finish");
+			}
+		}
+		checkFailure();
+	}
+
+	/**
+	 * Merges the results of the shards, after awaitCompletion()
+	 * @return the merged results
+	 */
+	public ReplayResult getResult() {
+		return new ReplayResult(shards, stackIndex, lifetimes, aliveAgeSeconds, liveSizeClasses, peakLiveSizeClasses);
+	}
+
+	/**
+	 * @return the number of allocations that are currently live
+	 */
+	public long getLiveAllocations() {
+		return liveAllocations.get();
+	}
+
+	/**
+	 * @return the highest number of allocations that were live at the same time
+	 */
+	public long getPeakLiveAllocations() {
+		return peakLiveAllocations.get();
+	}
+
+	/**
+	 * Routes the event to its shard
+	 */
+	private void dispatch(int shard, ReplayEvent event) throws IOException {
+		if (workers.length == 0) {
+			shards[shard].process(event, failure);
+			shards[shard].publishLiveAllocations();
+			return;
+		}
+		List<ReplayEvent> batch = pendingBatches.get(shard);
+		batch.add(event);
+		if (batch.size() == batchSize) {
+			flush(shard);
+		}
+	}
+
+	/**
+	 * Sends the partially filled batch of the shard to its worker
+	 */
+	private void flush(int shard) throws IOException {
+		List<ReplayEvent> batch = pendingBatches.get(shard);
+		if (!batch.isEmpty()) {
+			enqueue(shard, batch);
+			pendingBatches.set(shard, new ArrayList<ReplayEvent>(batchSize));
+		}
+	}
+
+	/**
+	 * Puts a batch on the queue of the shard, waiting while the queue is full
+	 */
+	private void enqueue(int shard, List<ReplayEvent> batch) throws IOException {
+		try {
+			while (!queues.get(shard).offer(batch, 100, TimeUnit.MILLISECONDS)) {
+				checkFailure();
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("interrupted while replaying");
+		}
+		checkFailure();
+	}
+
+	/**
+	 * Throws the failure of a shard worker, if any
+	 */
+	private void checkFailure() throws IOException {
+		Throwable t = failure.get();
+		if (t == null) {
+			return;
+		}
+		for (Thread worker : workers) {
+			worker.interrupt();
+		}
+		if (t instanceof IOException) {
+			throw (IOException)t;
+		}
+		throw new IOException("replay failed:"+t, t);
+	}
+
+	/**
+	 * Returns the shard of a memory address
+	 */
+	private int getShard(String address) {
+		int h = address.hashCode();
+		h ^= (h >>> 16);
+		return (h & 0x7fffffff) % shards.length;
+	}
+
+	/**
+	 * The parts in which a trace entry is replayed
+	 */
+	private static enum ReplayEventType {
+		ALLOCATE,
+		REALLOCATE,
+		REALLOCATE_FROM,
+		REALLOCATE_TO,
+		FREE
+	}
+
+	/**
+	 * A trace entry (or part of it) routed to a shard
+	 */
+	private static class ReplayEvent {
+		private final DTLeakAnalyzer.MemoryAllocatorTraceEntry traceEntry;
+		private final ReplayEventType type;
+		private final ReplayHandoff handoff;
+
+		private ReplayEvent(DTLeakAnalyzer.MemoryAllocatorTraceEntry traceEntry, ReplayEventType type, ReplayHandoff handoff) {
+			this.traceEntry = traceEntry;
+			this.type = type;
+			this.handoff = handoff;
+		}
+	}
+
+	/**
+	 * Hands the allocation released by a realloc from the shard of the old address
+	 * to the shard of the new address
+	 */
+	private static class ReplayHandoff {
+		private final CountDownLatch released = new CountDownLatch(1);
+		private volatile DTLeakAnalyzer.MemoryAllocatorTraceEntry releasedAllocation;
+
+		private void release(DTLeakAnalyzer.MemoryAllocatorTraceEntry allocation) {
+			releasedAllocation = allocation;
+			released.countDown();
+		}
+
+		private DTLeakAnalyzer.MemoryAllocatorTraceEntry await(AtomicReference<Throwable> failure) throws IOException {
+			try {
+				while (!released.await(100, TimeUnit.MILLISECONDS)) {
+					if (failure.get() != null) {
+						throw new IOException("replay aborted");
+					}
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IOException("interrupted while replaying");
+			}
+			return releasedAllocation;
+		}
+	}
+
+	/**
+	 * Occurrences of a stack and the first entry it was found on
+	 */
+	public static class StackCount {
+		private final String stack;
+		private final long firstEntryNumber;
+		private int timesFound;
+
+		private StackCount(String stack, long firstEntryNumber) {
+			this.stack = stack;
+			this.firstEntryNumber = firstEntryNumber;
+		}
+
+		public String getStack() {
+			return stack;
+		}
+
+		public int getTimesFound() {
+			return timesFound;
+		}
+	}
+
+	/**
+	 * Allocated and freed bytes of the allocations of a stack
+	 */
+	public static class StackBytes {
+		private final String stack;
+		private final long allocations;
+		private final long allocatedBytes;
+		private final long frees;
+		private final long freedBytes;
+
+		private StackBytes(String stack, long allocations, long allocatedBytes, long frees, long freedBytes) {
+			this.stack = stack;
+			this.allocations = allocations;
+			this.allocatedBytes = allocatedBytes;
+			this.frees = frees;
+			this.freedBytes = freedBytes;
+		}
+
+		public String getStack() {
+			return stack;
+		}
+
+		public long getAllocations() {
+			return allocations;
+		}
+
+		public long getAllocatedBytes() {
+			return allocatedBytes;
+		}
+
+		/**
+		 * @return the frees (and moving or resizing reallocs) of the allocations of this stack
+		 */
+		public long getFrees() {
+			return frees;
+		}
+
+		public long getFreedBytes() {
+			return freedBytes;
+		}
+
+		/**
+		 * @return the bytes of the allocations of this stack that were not freed
+		 */
+		public long getOutstandingBytes() {
+			return allocatedBytes - freedBytes;
+		}
+
+		public long getOutstandingAllocations() {
+			return allocations - frees;
+		}
+	}
+
+	/**
+	 * Lifetimes of the allocations of a stack: of the released allocations, and the ages of the
+	 * allocations still live at the end of the trace
+	 */
+	public static class StackLifetimes {
+		private final String stack;
+		private final LogHistogram eventLifetimes;
+		private final LogHistogram secondLifetimes;
+		private final LogHistogram aliveAges;
+		private long aliveOld;
+
+		private StackLifetimes(String stack, LogHistogram eventLifetimes, LogHistogram secondLifetimes) {
+			this.stack = stack;
+			this.eventLifetimes = eventLifetimes == null ? new LogHistogram() : eventLifetimes;
+			this.secondLifetimes = secondLifetimes == null ? new LogHistogram() : secondLifetimes;
+			this.aliveAges = new LogHistogram();
+		}
+
+		public String getStack() {
+			return stack;
+		}
+
+		/**
+		 * @return the lifetimes of the released allocations, in trace entries
+		 */
+		public LogHistogram getEventLifetimes() {
+			return eventLifetimes;
+		}
+
+		/**
+		 * @return the lifetimes of the released allocations, in seconds
+		 */
+		public LogHistogram getSecondLifetimes() {
+			return secondLifetimes;
+		}
+
+		/**
+		 * @return the ages in seconds of the allocations still live at the end of the trace
+		 */
+		public LogHistogram getAliveAges() {
+			return aliveAges;
+		}
+
+		/**
+		 * @return the allocations still live at the end of the trace that were allocated at least the alive age before it
+		 */
+		public long getAliveOld() {
+			return aliveOld;
+		}
+	}
+
+	/**
+	 * Churn of the allocations of a stack: how often it allocates and how much of it is released shortly after
+	 */
+	public static class StackChurn {
+		private final String stack;
+		private final long allocations;
+		private final long frees;
+		private final double allocationsPerSecond;
+		private final long churnedByEntries;
+		private final long churnedBySeconds;
+		private final long medianSize;
+		private final int freeingStacks;
+
+		private StackChurn(String stack, long allocations, long frees, double allocationsPerSecond, long churnedByEntries, long churnedBySeconds,
+				long medianSize, int freeingStacks) {
+			this.stack = stack;
+			this.allocations = allocations;
+			this.frees = frees;
+			this.allocationsPerSecond = allocationsPerSecond;
+			this.churnedByEntries = churnedByEntries;
+			this.churnedBySeconds = churnedBySeconds;
+			this.medianSize = medianSize;
+			this.freeingStacks = freeingStacks;
+		}
+
+		public String getStack() {
+			return stack;
+		}
+
+		public long getAllocations() {
+			return allocations;
+		}
+
+		public long getFrees() {
+			return frees;
+		}
+
+		/**
+		 * @return the allocations per second over the duration of the trace
+		 */
+		public double getAllocationsPerSecond() {
+			return allocationsPerSecond;
+		}
+
+		/**
+		 * @return the allocations released within the churn window in trace entries
+		 */
+		public long getChurnedByEntries() {
+			return churnedByEntries;
+		}
+
+		/**
+		 * @return the allocations released within the churn window in seconds
+		 */
+		public long getChurnedBySeconds() {
+			return churnedBySeconds;
+		}
+
+		/**
+		 * @return the median size of the allocations, as the upper bound of its log histogram bucket
+		 */
+		public long getMedianSize() {
+			return medianSize;
+		}
+
+		/**
+		 * @return the number of distinct stacks that released the allocations
+		 */
+		public int getFreeingStacks() {
+			return freeingStacks;
+		}
+	}
+
+	/**
+	 * Requested sizes of the allocations of a stack, in power of two buckets and in size classes
+	 */
+	public static class StackSizes {
+		private final String stack;
+		private final long allocations;
+		private final long[] powerOfTwoCounts;
+		private final long[] sizeClassCounts;
+
+		private StackSizes(String stack, long allocations, long[] powerOfTwoCounts, long[] sizeClassCounts) {
+			this.stack = stack;
+			this.allocations = allocations;
+			this.powerOfTwoCounts = powerOfTwoCounts;
+			this.sizeClassCounts = sizeClassCounts;
+		}
+
+		public String getStack() {
+			return stack;
+		}
+
+		public long getAllocations() {
+			return allocations;
+		}
+
+		/**
+		 * @return the allocations per power of two bucket, see SizeClasses.getPowerOfTwoBucket
+		 */
+		public long[] getPowerOfTwoCounts() {
+			return powerOfTwoCounts;
+		}
+
+		/**
+		 * @return the allocations per size class, see SizeClasses.getSizeClass
+		 */
+		public long[] getSizeClassCounts() {
+			return sizeClassCounts;
+		}
+
+		/**
+		 * @return the size class with the most allocations
+		 */
+		public int getDominantSizeClass() {
+			int ret = 0;
+			for (int i=1;i<sizeClassCounts.length;i++) {
+				if (sizeClassCounts[i] > sizeClassCounts[ret]) {
+					ret = i;
+				}
+			}
+			return ret;
+		}
+	}
+
+	/**
+	 * Allocations of a size class over all stacks
+	 */
+	public static class SizeClassUsage {
+		private final int sizeClass;
+		private final long allocations;
+		private final long requestedBytes;
+		private final long liveAllocations;
+		private final long peakLiveAllocations;
+
+		private SizeClassUsage(int sizeClass, long allocations, long requestedBytes, long liveAllocations, long peakLiveAllocations) {
+			this.sizeClass = sizeClass;
+			this.allocations = allocations;
+			this.requestedBytes = requestedBytes;
+			this.liveAllocations = liveAllocations;
+			this.peakLiveAllocations = peakLiveAllocations;
+		}
+
+		public int getSizeClass() {
+			return sizeClass;
+		}
+
+		public long getAllocations() {
+			return allocations;
+		}
+
+		public long getRequestedBytes() {
+			return requestedBytes;
+		}
+
+		/**
+		 * @return the bytes of the size class not used by the requests (internal fragmentation), 0 for the oversize class
+		 */
+		public long getUnusedBytes() {
+			long limit = SizeClasses.getSizeClassLimit(sizeClass);
+			return limit < 0 ? 0 : allocations * limit - requestedBytes;
+		}
+
+		/**
+		 * @return the allocations of the size class live at the end of the trace
+		 */
+		public long getLiveAllocations() {
+			return liveAllocations;
+		}
+
+		/**
+		 * @return the highest number of allocations of the size class live at the same time
+		 */
+		public long getPeakLiveAllocations() {
+			return peakLiveAllocations;
+		}
+	}
+
+	/**
+	 * Realloc chains started by the allocations of a stack
+	 */
+	public static class StackReallocChains {
+		private final String stack;
+		private final long chains;
+		private final long reallocs;
+		private final long longestChain;
+		private final long moves;
+		private final long smallSteps;
+		private final long bytesCopied;
+
+		private StackReallocChains(String stack, long chains, long reallocs, long longestChain, long moves, long smallSteps, long bytesCopied) {
+			this.stack = stack;
+			this.chains = chains;
+			this.reallocs = reallocs;
+			this.longestChain = longestChain;
+			this.moves = moves;
+			this.smallSteps = smallSteps;
+			this.bytesCopied = bytesCopied;
+		}
+
+		/**
+		 * @return the stack of the allocations that started the chains
+		 */
+		public String getStack() {
+			return stack;
+		}
+
+		public long getChains() {
+			return chains;
+		}
+
+		/**
+		 * @return the reallocs of all the chains
+		 */
+		public long getReallocs() {
+			return reallocs;
+		}
+
+		/**
+		 * @return the reallocs of the longest chain
+		 */
+		public long getLongestChain() {
+			return longestChain;
+		}
+
+		/**
+		 * @return the reallocs that moved the block to another address
+		 */
+		public long getMoves() {
+			return moves;
+		}
+
+		/**
+		 * @return the reallocs that grew the block by less than half of its size
+		 */
+		public long getSmallSteps() {
+			return smallSteps;
+		}
+
+		/**
+		 * @return the bytes copied by the moving reallocs
+		 */
+		public long getBytesCopied() {
+			return bytesCopied;
+		}
+	}
+
+	/**
+	 * Allocations and releases of a thread
+	 */
+	public static class ThreadAllocations {
+		private final String threadId;
+		private long allocations;
+		private long allocatedBytes;
+		private long frees;
+		private long freedBytes;
+		private long crossThreadFrees;
+		private long freedByOtherThreads;
+
+		private ThreadAllocations(String threadId) {
+			this.threadId = threadId;
+		}
+
+		private void add(ThreadAllocations other) {
+			allocations += other.allocations;
+			allocatedBytes += other.allocatedBytes;
+			frees += other.frees;
+			freedBytes += other.freedBytes;
+			crossThreadFrees += other.crossThreadFrees;
+			freedByOtherThreads += other.freedByOtherThreads;
+		}
+
+		public String getThreadId() {
+			return threadId;
+		}
+
+		public long getAllocations() {
+			return allocations;
+		}
+
+		public long getAllocatedBytes() {
+			return allocatedBytes;
+		}
+
+		/**
+		 * @return the frees and reallocs of the thread that released an allocation
+		 */
+		public long getFrees() {
+			return frees;
+		}
+
+		public long getFreedBytes() {
+			return freedBytes;
+		}
+
+		/**
+		 * @return the releases by the thread of allocations of other threads
+		 */
+		public long getCrossThreadFrees() {
+			return crossThreadFrees;
+		}
+
+		/**
+		 * @return the allocations of the thread released by other threads
+		 */
+		public long getFreedByOtherThreads() {
+			return freedByOtherThreads;
+		}
+	}
+
+	/**
+	 * Releases by another thread than the allocating thread, for a pair of allocating and freeing stack
+	 */
+	public static class CrossThreadFrees {
+		private final String stack;
+		private final String freeingStack;
+		private final long frees;
+		private final long bytes;
+		private final long stackFrees;
+
+		private CrossThreadFrees(String stack, String freeingStack, long frees, long bytes, long stackFrees) {
+			this.stack = stack;
+			this.freeingStack = freeingStack;
+			this.frees = frees;
+			this.bytes = bytes;
+			this.stackFrees = stackFrees;
+		}
+
+		/**
+		 * @return the stack that allocated the memory
+		 */
+		public String getStack() {
+			return stack;
+		}
+
+		/**
+		 * @return the stack of the free or realloc on the other thread
+		 */
+		public String getFreeingStack() {
+			return freeingStack;
+		}
+
+		public long getFrees() {
+			return frees;
+		}
+
+		public long getBytes() {
+			return bytes;
+		}
+
+		/**
+		 * @return all the releases of the allocations of the allocating stack, by any thread
+		 */
+		public long getStackFrees() {
+			return stackFrees;
+		}
+	}
+
+	/**
+	 * Replays the entries of a subset of the memory addresses
+	 */
+	private static class ReplayShard {
+		//map to keep track of memory allocations
+		private final Map<String, DTLeakAnalyzer.MemoryAllocatorTraceEntry> memoryAllocation;
+
+		//map to keep track of memory de-allocations related to free operations, for detecting double free operations
+		private final Map<String, DTLeakAnalyzer.MemoryAllocatorTraceEntry> freedAndNotReusedMemory;
+
+		//stacks that did a free on unallocated memory, and double free stacks
+		private final Map<String, StackCount> freeUnallocatedMemoryStacks;
+		private final Map<String, StackCount> doubleFreeStacks;
+
+		//unique stacks that correctly freed memory, and unique stacks that allocated memory that was correctly freed
+		private final Map<String, DTLeakAnalyzer.MemoryAllocatorTraceEntry> successfulFreeStacks;
+		private final Map<String, DTLeakAnalyzer.MemoryAllocatorTraceEntry> successfullyDeletedStacks;
+
+		//allocated and freed bytes, lifetimes and churn per allocating stack
+		private final StackIndex stackIndex;
+		private final StackAccumulators accumulators;
+
+		//timestamps of the entries of this shard, the first second and the last entry replayed
+		private final TimestampDecoder timestampDecoder;
+		private long firstSecond = Long.MAX_VALUE;
+		private long lastEntryNumber = -1;
+		private long lastSecond = -1;
+
+		//optional time-windowed growth analysis
+		private final WindowedGrowthAnalysis windowedGrowthAnalysis;
+
+		//live allocations of all shards, and the size of the allocation map last added to them
+		private final AtomicLong liveAllocations;
+		private final AtomicLong peakLiveAllocations;
+		private int publishedAllocations;
+
+		//allocations and releases per thread id, and the counters of the thread of the last entry
+		private final Map<String, ThreadAllocations> threadAllocations;
+		private ThreadAllocations lastThreadAllocations;
+
+		//live allocations per size class of all shards, the change of this shard since the last publish and the changed size classes
+		private final AtomicLongArray liveSizeClasses;
+		private final AtomicLongArray peakLiveSizeClasses;
+		private final long[] sizeClassDeltas;
+		private final boolean[] sizeClassChanged;
+		private final int[] changedSizeClasses;
+		private int changedSizeClassCount;
+
+		private ReplayShard(StackIndex stackIndex, StackAccumulators accumulators, WindowedGrowthAnalysis windowedGrowthAnalysis, AtomicLong liveAllocations, AtomicLong peakLiveAllocations,
+				AtomicLongArray liveSizeClasses, AtomicLongArray peakLiveSizeClasses) {
+			this.stackIndex = stackIndex;
+			this.accumulators = accumulators;
+			this.timestampDecoder = new TimestampDecoder();
+			this.windowedGrowthAnalysis = windowedGrowthAnalysis;
+			this.liveAllocations = liveAllocations;
+			this.peakLiveAllocations = peakLiveAllocations;
+			this.liveSizeClasses = liveSizeClasses;
+			this.peakLiveSizeClasses = peakLiveSizeClasses;
+			this.sizeClassDeltas = new long[SizeClasses.sizeClasses];
+			this.sizeClassChanged = new boolean[SizeClasses.sizeClasses];
+			this.changedSizeClasses = new int[SizeClasses.sizeClasses];
+			memoryAllocation = new HashMap<String, DTLeakAnalyzer.MemoryAllocatorTraceEntry>();
+			threadAllocations = new HashMap<String, ThreadAllocations>();
+			freedAndNotReusedMemory = new HashMap<String, DTLeakAnalyzer.MemoryAllocatorTraceEntry>();
+			freeUnallocatedMemoryStacks = new LinkedHashMap<String, StackCount>();
+			doubleFreeStacks = new LinkedHashMap<String, StackCount>();
+			successfulFreeStacks = new HashMap<String, DTLeakAnalyzer.MemoryAllocatorTraceEntry>();
+			successfullyDeletedStacks = new HashMap<String, DTLeakAnalyzer.MemoryAllocatorTraceEntry>();
+		}
+
+		private void process(ReplayEvent event, AtomicReference<Throwable> failure) throws IOException {
+			DTLeakAnalyzer.MemoryAllocatorTraceEntry traceEntry = event.traceEntry;
+			if (event.type != ReplayEventType.REALLOCATE_FROM) {
+				traceEntry.setSecond(timestampDecoder.decode(traceEntry.getDate()));
+				firstSecond = Math.min(firstSecond, traceEntry.getSecond());
+				lastEntryNumber = Math.max(lastEntryNumber, traceEntry.getEntryNumber());
+				lastSecond = Math.max(lastSecond, traceEntry.getSecond());
+			}
+			switch (event.type) {
+			case ALLOCATE : {
+				checkNotAllocated(traceEntry);
+				//add to map
+				memoryAllocation.put(traceEntry.getAddress(), traceEntry);
+				allocated(traceEntry);
+				if (windowedGrowthAnalysis != null) {
+					windowedGrowthAnalysis.recordAllocation(traceEntry.getCallStack(), traceEntry.getSize(), traceEntry.getDate());
+				}
+				//we now re-use memory that was freed, remove the address from the map
+				freedAndNotReusedMemory.remove(traceEntry.getAddress());
+				break;
+			}
+
+			case REALLOCATE : {
+				DTLeakAnalyzer.MemoryAllocatorTraceEntry released;
+				if (traceEntry.getAddress().equals(traceEntry.getPreviousAddress())) {
+					//the realloc did not move the memory address, update the previous entry if it exists
+					released = memoryAllocation.put(traceEntry.getAddress(), traceEntry);
+				} else {
+					//new address, the realloc moved the memory
+					checkNotAllocated(traceEntry);
+					released = memoryAllocation.remove(traceEntry.getPreviousAddress());
+					memoryAllocation.put(traceEntry.getAddress(), traceEntry);
+				}
+				reallocated(traceEntry, released);
+				break;
+			}
+
+			case REALLOCATE_FROM : {
+				//release the old address and hand it over to the shard of the new address
+				event.handoff.release(memoryAllocation.remove(traceEntry.getPreviousAddress()));
+				break;
+			}
+
+			case REALLOCATE_TO : {
+				checkNotAllocated(traceEntry);
+				DTLeakAnalyzer.MemoryAllocatorTraceEntry released = event.handoff.await(failure);
+				memoryAllocation.put(traceEntry.getAddress(), traceEntry);
+				reallocated(traceEntry, released);
+				break;
+			}
+
+			case FREE : {
+				free(traceEntry);
+				break;
+			}
+
+			default : {
+				throw new IOException("Cannot handle entry type:"+traceEntry.getType());
+			}
+			}
+		}
+
+		/**
+		 * counts the realloc chain of an allocation that will not be reallocated any more
+		 */
+		private static void chainEnded(StackAccumulators accumulators, DTLeakAnalyzer.MemoryAllocatorTraceEntry allocation) {
+			if (allocation.getChainLength() > 0) {
+				accumulators.chainEnded(allocation.getChainOriginStackId(), allocation.getChainLength(), allocation.getChainMoves(),
+						allocation.getChainSmallSteps(), allocation.getChainBytesCopied());
+			}
+		}
+
+		/**
+		 * adds the change of the allocation map size since the last call to the live allocations
+		 */
+		private void publishLiveAllocations() {
+			publishLiveSizeClasses();
+			int delta = memoryAllocation.size() - publishedAllocations;
+			if (delta == 0) {
+				return;
+			}
+			publishedAllocations += delta;
+			long live = liveAllocations.addAndGet(delta);
+			long peak;
+			while (live > (peak = peakLiveAllocations.get()) && !peakLiveAllocations.compareAndSet(peak, live)) {
+				//retry, another shard raised the peak
+			}
+		}
+
+		/**
+		 * adds the changes of the live allocations per size class since the last call, only the changed size classes are visited
+		 */
+		private void publishLiveSizeClasses() {
+			for (int i=0;i<changedSizeClassCount;i++) {
+				int sizeClass = changedSizeClasses[i];
+				long delta = sizeClassDeltas[sizeClass];
+				sizeClassDeltas[sizeClass] = 0;
+				sizeClassChanged[sizeClass] = false;
+				if (delta == 0) {
+					continue;
+				}
+				long live = liveSizeClasses.addAndGet(sizeClass, delta);
+				long peak;
+				while (live > (peak = peakLiveSizeClasses.get(sizeClass)) && !peakLiveSizeClasses.compareAndSet(sizeClass, peak, live)) {
+					//retry, another shard raised the peak
+				}
+			}
+			changedSizeClassCount = 0;
+		}
+
+		/**
+		 * counts an allocation of a size class that became live (1) or was released (-1)
+		 */
+		private void changeLiveSizeClass(long size, int delta) {
+			int sizeClass = SizeClasses.getSizeClass(size);
+			if (!sizeClassChanged[sizeClass]) {
+				sizeClassChanged[sizeClass] = true;
+				changedSizeClasses[changedSizeClassCount++] = sizeClass;
+			}
+			sizeClassDeltas[sizeClass] += delta;
+		}
+
+		/**
+		 * sanity check, the address of an allocation must not be allocated already
+		 */
+		private void checkNotAllocated(DTLeakAnalyzer.MemoryAllocatorTraceEntry traceEntry) throws IOException {
+			if (memoryAllocation.containsKey(traceEntry.getAddress())) {
+				//this should not happen.
+				throw new IOException("Entry:"+traceEntry+"\nFound allocation on memory address:"+traceEntry.getAddress()+" that was already allocated by: "+memoryAllocation.get(traceEntry.getAddress()));
+			}
+		}
+
+		/**
+		 * common handling after the realloc has been placed on the new address
+		 */
+		private void reallocated(DTLeakAnalyzer.MemoryAllocatorTraceEntry traceEntry, DTLeakAnalyzer.MemoryAllocatorTraceEntry released) throws IOException {
+			//the old size is released on the stack that allocated it, the new size is allocated by the realloc stack
+			if (released != null) {
+				released(released, traceEntry);
+				traceEntry.continueChain(released);
+			}
+			allocated(traceEntry);
+			if (windowedGrowthAnalysis != null) {
+				if (released != null) {
+					windowedGrowthAnalysis.recordFree(released.getCallStack(), released.getSize(), traceEntry.getDate());
+				}
+				windowedGrowthAnalysis.recordAllocation(traceEntry.getCallStack(), traceEntry.getSize(), traceEntry.getDate());
+			}
+			//we now re-use memory that was freed, remove the address from the map
+			freedAndNotReusedMemory.remove(traceEntry.getAddress());
+		}
+
+		private void free(DTLeakAnalyzer.MemoryAllocatorTraceEntry traceEntry) throws IOException {
+			//check if it exists already on the map
+			DTLeakAnalyzer.MemoryAllocatorTraceEntry removed = memoryAllocation.remove(traceEntry.getAddress());
+			if (removed != null) {
+				//as expected, we had an allocation and this is the de-allocation
+				released(removed, traceEntry);
+				chainEnded(accumulators, removed);
+				if (windowedGrowthAnalysis != null) {
+					windowedGrowthAnalysis.recordFree(removed.getCallStack(), removed.getSize(), traceEntry.getDate());
+				}
+
+				//keep a reference of this successful delete stack and of the successfully deleted stack
+				if (!successfulFreeStacks.containsKey(traceEntry.getCallStack())) {
+					successfulFreeStacks.put(traceEntry.getCallStack(), traceEntry);
+				}
+				if (!successfullyDeletedStacks.containsKey(removed.getCallStack())) {
+					successfullyDeletedStacks.put(removed.getCallStack(), removed);
+				}
+
+				//add to the map to keep track for double free operations
+				if (freedAndNotReusedMemory.containsKey(traceEntry.getAddress())) {
+					//this is an error
+					throw new IOException("Entry:"+traceEntry+"\nFound free on memory address:"+traceEntry.getAddress()+" that was succesfully removed from the memory allocation map, but appears also on the freed and not reused addresses");
+				} else {
+					freedAndNotReusedMemory.put(traceEntry.getAddress(), traceEntry);
+				}
+			} else {
+				//not expected, but can happen since we are not monitoring all allocations from the beginning of the execution
+
+				//log this stack that did a free on unallocated memory
+				count(freeUnallocatedMemoryStacks, traceEntry);
+
+				if (freedAndNotReusedMemory.containsKey(traceEntry.getAddress())) {
+					//double free! log the error
+					count(doubleFreeStacks, traceEntry);
+				} else {
+					//log the address that the free was done
+					freedAndNotReusedMemory.put(traceEntry.getAddress(), traceEntry);
+				}
+			}
+		}
+
+		/**
+		 * counts the bytes of an allocation on its stack, the allocation keeps the id of its stack
+		 */
+		private void allocated(DTLeakAnalyzer.MemoryAllocatorTraceEntry traceEntry) {
+			int stackId = stackIndex.getId(traceEntry.getCallStack());
+			traceEntry.setStackId(stackId);
+			accumulators.allocated(stackId, traceEntry.getSize());
+			changeLiveSizeClass(traceEntry.getSize(), 1);
+			ThreadAllocations thread = getThreadAllocations(traceEntry.getThreadId());
+			thread.allocations++;
+			thread.allocatedBytes += traceEntry.getSize();
+		}
+
+		/**
+		 * counts the bytes, the lifetime and the freeing stack of an allocation released by a free or a realloc
+		 */
+		private void released(DTLeakAnalyzer.MemoryAllocatorTraceEntry allocation, DTLeakAnalyzer.MemoryAllocatorTraceEntry traceEntry) {
+			int freeingStackId = stackIndex.getId(traceEntry.getCallStack());
+			accumulators.freed(allocation.getStackId(), allocation.getSize(),
+					traceEntry.getEntryNumber() - allocation.getEntryNumber(), traceEntry.getSecond() - allocation.getSecond(), freeingStackId);
+			changeLiveSizeClass(allocation.getSize(), -1);
+			ThreadAllocations thread = getThreadAllocations(traceEntry.getThreadId());
+			thread.frees++;
+			thread.freedBytes += allocation.getSize();
+			if (!traceEntry.getThreadId().equals(allocation.getThreadId())) {
+				thread.crossThreadFrees++;
+				getThreadAllocations(allocation.getThreadId()).freedByOtherThreads++;
+				accumulators.crossThreadFreed(allocation.getStackId(), freeingStackId, allocation.getSize());
+			}
+		}
+
+		/**
+		 * returns the counters of a thread, consecutive entries are mostly of the same thread
+		 */
+		private ThreadAllocations getThreadAllocations(String threadId) {
+			if (lastThreadAllocations != null && lastThreadAllocations.threadId.equals(threadId)) {
+				return lastThreadAllocations;
+			}
+			ThreadAllocations thread = threadAllocations.get(threadId);
+			if (thread == null) {
+				thread = new ThreadAllocations(threadId);
+				threadAllocations.put(threadId, thread);
+			}
+			lastThreadAllocations = thread;
+			return thread;
+		}
+
+		private static void count(Map<String, StackCount> stackCounts, DTLeakAnalyzer.MemoryAllocatorTraceEntry traceEntry) {
+			StackCount stackCount = stackCounts.get(traceEntry.getCallStack());
+			if (stackCount == null) {
+				stackCount = new StackCount(traceEntry.getCallStack(), traceEntry.getEntryNumber());
+				stackCounts.put(traceEntry.getCallStack(), stackCount);
+			}
+			stackCount.timesFound++;
+		}
+	}
+
+	/**
+	 * The merged results of all shards
+	 */
+	public static class ReplayResult {
+		private final List<StackCount> unfreedAllocationStacks;
+		private final List<StackCount> freeUnallocatedMemoryStacks;
+		private final List<StackCount> doubleFreeStacks;
+		private final List<DTLeakAnalyzer.MemoryAllocatorTraceEntry> successfulFreeStacks;
+		private final List<DTLeakAnalyzer.MemoryAllocatorTraceEntry> successfullyDeletedStacks;
+		private final int unfreedAllocations;
+		private final List<StackBytes> stackBytes;
+		private final List<StackLifetimes> stackLifetimes;
+		private final List<StackChurn> stackChurn;
+		private final List<StackSizes> stackSizes;
+		private final List<SizeClassUsage> sizeClassUsage;
+		private final List<StackReallocChains> stackReallocChains;
+		private final List<ThreadAllocations> threadAllocations;
+		private final List<CrossThreadFrees> crossThreadFrees;
+
+		private ReplayResult(ReplayShard[] shards, StackIndex stackIndex, boolean lifetimes, long aliveAgeSeconds, AtomicLongArray liveSizeClasses, AtomicLongArray peakLiveSizeClasses) {
+			Map<String, StackCount> unfreed = new HashMap<String, StackCount>();
+			Map<String, StackCount> freeUnallocated = new HashMap<String, StackCount>();
+			Map<String, StackCount> doubleFree = new HashMap<String, StackCount>();
+			Map<String, DTLeakAnalyzer.MemoryAllocatorTraceEntry> successfulFree = new HashMap<String, DTLeakAnalyzer.MemoryAllocatorTraceEntry>();
+			Map<String, DTLeakAnalyzer.MemoryAllocatorTraceEntry> successfullyDeleted = new HashMap<String, DTLeakAnalyzer.MemoryAllocatorTraceEntry>();
+			int unfreedCount = 0;
+
+			for (ReplayShard shard : shards) {
+				unfreedCount += shard.memoryAllocation.size();
+				for (DTLeakAnalyzer.MemoryAllocatorTraceEntry allocation : shard.memoryAllocation.values()) {
+					merge(unfreed, allocation.getCallStack(), allocation.getEntryNumber(), 1);
+				}
+				for (StackCount stackCount : shard.freeUnallocatedMemoryStacks.values()) {
+					merge(freeUnallocated, stackCount.stack, stackCount.firstEntryNumber, stackCount.timesFound);
+				}
+				for (StackCount stackCount : shard.doubleFreeStacks.values()) {
+					merge(doubleFree, stackCount.stack, stackCount.firstEntryNumber, stackCount.timesFound);
+				}
+				mergeFirst(successfulFree, shard.successfulFreeStacks);
+				mergeFirst(successfullyDeleted, shard.successfullyDeletedStacks);
+			}
+
+			//the stack ids are shared, the counters of the shards are added by id
+			StackAccumulators accumulators = new StackAccumulators();
+			for (ReplayShard shard : shards) {
+				accumulators.add(shard.accumulators);
+			}
+			stackBytes = new ArrayList<StackBytes>();
+			for (int i=0;i<stackIndex.size();i++) {
+				stackBytes.add(new StackBytes(stackIndex.getStack(i), accumulators.getAllocations(i), accumulators.getAllocatedBytes(i),
+						accumulators.getFrees(i), accumulators.getFreedBytes(i)));
+			}
+
+			//age of the live allocations at the last entry of the trace
+			long firstSecond = Long.MAX_VALUE;
+			long lastEntryNumber = -1;
+			long lastSecond = -1;
+			for (ReplayShard shard : shards) {
+				firstSecond = Math.min(firstSecond, shard.firstSecond);
+				lastEntryNumber = Math.max(lastEntryNumber, shard.lastEntryNumber);
+				lastSecond = Math.max(lastSecond, shard.lastSecond);
+			}
+			stackLifetimes = new ArrayList<StackLifetimes>();
+			if (lifetimes) {
+				for (int i=0;i<stackIndex.size();i++) {
+					stackLifetimes.add(new StackLifetimes(stackIndex.getStack(i), accumulators.getEventLifetimes(i), accumulators.getSecondLifetimes(i)));
+				}
+			}
+			for (ReplayShard shard : shards) {
+				for (DTLeakAnalyzer.MemoryAllocatorTraceEntry allocation : shard.memoryAllocation.values()) {
+					if (lifetimes) {
+						StackLifetimes stackLifetime = stackLifetimes.get(allocation.getStackId());
+						long age = lastSecond - allocation.getSecond();
+						stackLifetime.aliveAges.record(age);
+						if (age >= aliveAgeSeconds) {
+							stackLifetime.aliveOld++;
+						}
+					}
+					//the realloc chains of the live allocations end with the trace
+					ReplayShard.chainEnded(accumulators, allocation);
+				}
+			}
+
+			//churn of each stack over the duration of the trace (at least a second)
+			long traceSeconds = lastSecond < firstSecond ? 1 : Math.max(1, lastSecond - firstSecond);
+			int[] freeingStackCounts = accumulators.getFreeingStackCounts();
+			stackChurn = new ArrayList<StackChurn>();
+			for (int i=0;i<stackIndex.size();i++) {
+				LogHistogram sizes = accumulators.getSizes(i);
+				stackChurn.add(new StackChurn(stackIndex.getStack(i), accumulators.getAllocations(i), accumulators.getFrees(i),
+						(double)accumulators.getAllocations(i) / traceSeconds, accumulators.getChurnedByEntries(i), accumulators.getChurnedBySeconds(i),
+						sizes == null ? 0 : sizes.getValueAtPercentile(50), i < freeingStackCounts.length ? freeingStackCounts[i] : 0));
+			}
+
+			//requested sizes per stack and per size class
+			stackSizes = new ArrayList<StackSizes>();
+			for (int i=0;i<stackIndex.size();i++) {
+				stackSizes.add(new StackSizes(stackIndex.getStack(i), accumulators.getAllocations(i),
+						accumulators.getPowerOfTwoCounts(i), accumulators.getSizeClassCounts(i)));
+			}
+			sizeClassUsage = new ArrayList<SizeClassUsage>();
+			for (int i=0;i<SizeClasses.sizeClasses;i++) {
+				sizeClassUsage.add(new SizeClassUsage(i, accumulators.getSizeClassAllocations(i), accumulators.getSizeClassBytes(i),
+						liveSizeClasses.get(i), peakLiveSizeClasses.get(i)));
+			}
+
+			//realloc chains by the stack of their first allocation, the live chains were counted above
+			stackReallocChains = new ArrayList<StackReallocChains>();
+			for (int i=0;i<stackIndex.size();i++) {
+				stackReallocChains.add(new StackReallocChains(stackIndex.getStack(i), accumulators.getChains(i), accumulators.getChainReallocs(i),
+						accumulators.getLongestChain(i), accumulators.getChainMoves(i), accumulators.getChainSmallSteps(i), accumulators.getChainBytesCopied(i)));
+			}
+
+			//counters per thread, and the cross-thread releases per pair of allocating and freeing stack
+			Map<String, ThreadAllocations> threads = new HashMap<String, ThreadAllocations>();
+			for (ReplayShard shard : shards) {
+				for (ThreadAllocations thread : shard.threadAllocations.values()) {
+					ThreadAllocations merged = threads.get(thread.threadId);
+					if (merged == null) {
+						merged = new ThreadAllocations(thread.threadId);
+						threads.put(thread.threadId, merged);
+					}
+					merged.add(thread);
+				}
+			}
+			threadAllocations = new ArrayList<ThreadAllocations>(threads.values());
+			crossThreadFrees = new ArrayList<CrossThreadFrees>();
+			for (Map.Entry<Long, long[]> pair : accumulators.getCrossThreadPairs().entrySet()) {
+				int stackId = (int)(pair.getKey() >>> 32);
+				int freeingStackId = (int)(long)pair.getKey();
+				crossThreadFrees.add(new CrossThreadFrees(stackIndex.getStack(stackId), stackIndex.getStack(freeingStackId),
+						pair.getValue()[0], pair.getValue()[1], accumulators.getFrees(stackId)));
+			}
+
+			unfreedAllocations = unfreedCount;
+			unfreedAllocationStacks = sortedByFirstEntry(unfreed.values());
+			freeUnallocatedMemoryStacks = sortedByFirstEntry(freeUnallocated.values());
+			doubleFreeStacks = sortedByFirstEntry(doubleFree.values());
+			successfulFreeStacks = sortedEntries(successfulFree.values());
+			successfullyDeletedStacks = sortedEntries(successfullyDeleted.values());
+		}
+
+		private static void merge(Map<String, StackCount> merged, String stack, long firstEntryNumber, int timesFound) {
+			StackCount stackCount = merged.get(stack);
+			if (stackCount == null) {
+				stackCount = new StackCount(stack, firstEntryNumber);
+				merged.put(stack, stackCount);
+			} else if (firstEntryNumber < stackCount.firstEntryNumber) {
+				StackCount earlier = new StackCount(stack, firstEntryNumber);
+				earlier.timesFound = stackCount.timesFound;
+				stackCount = earlier;
+				merged.put(stack, stackCount);
+			}
+			stackCount.timesFound += timesFound;
+		}
+
+		private static void mergeFirst(Map<String, DTLeakAnalyzer.MemoryAllocatorTraceEntry> merged, Map<String, DTLeakAnalyzer.MemoryAllocatorTraceEntry> shardEntries) {
+			for (DTLeakAnalyzer.MemoryAllocatorTraceEntry entry : shardEntries.values()) {
+				DTLeakAnalyzer.MemoryAllocatorTraceEntry existing = merged.get(entry.getCallStack());
+				if (existing == null || entry.getEntryNumber() < existing.getEntryNumber()) {
+					merged.put(entry.getCallStack(), entry);
+				}
+			}
+		}
+
+		/**
+		 * the stacks in the order they were first found on the trace, as with a sequential replay
+		 */
+		private static List<StackCount> sortedByFirstEntry(Collection<StackCount> stackCounts) {
+			List<StackCount> ret = new ArrayList<StackCount>(stackCounts);
+			Collections.sort(ret, new Comparator<StackCount>() {
+				@Override
+				public int compare(StackCount o1, StackCount o2) {
+					return Long.compare(o1.firstEntryNumber, o2.firstEntryNumber);
+				}
+			});
+			return ret;
+		}
+
+		private static List<DTLeakAnalyzer.MemoryAllocatorTraceEntry> sortedEntries(Collection<DTLeakAnalyzer.MemoryAllocatorTraceEntry> entries) {
+			List<DTLeakAnalyzer.MemoryAllocatorTraceEntry> ret = new ArrayList<DTLeakAnalyzer.MemoryAllocatorTraceEntry>(entries);
+			Collections.sort(ret, new Comparator<DTLeakAnalyzer.MemoryAllocatorTraceEntry>() {
+				@Override
+				public int compare(DTLeakAnalyzer.MemoryAllocatorTraceEntry o1, DTLeakAnalyzer.MemoryAllocatorTraceEntry o2) {
+					return Long.compare(o1.getEntryNumber(), o2.getEntryNumber());
+				}
+			});
+			return ret;
+		}
+
+		/**
+		 * @return the stacks that allocated memory that was not freed, in trace order
+		 */
+		public List<StackCount> getUnfreedAllocationStacks() {
+			return unfreedAllocationStacks;
+		}
+
+		/**
+		 * @return the stacks that freed memory that was not allocated, in trace order
+		 */
+		public List<StackCount> getFreeUnallocatedMemoryStacks() {
+			return freeUnallocatedMemoryStacks;
+		}
+
+		/**
+		 * @return the double free stacks, in trace order
+		 */
+		public List<StackCount> getDoubleFreeStacks() {
+			return doubleFreeStacks;
+		}
+
+		/**
+		 * @return the unique stacks that correctly freed memory
+		 */
+		public List<DTLeakAnalyzer.MemoryAllocatorTraceEntry> getSuccessfulFreeStacks() {
+			return successfulFreeStacks;
+		}
+
+		/**
+		 * @return the unique stacks that allocated memory that was correctly freed
+		 */
+		public List<DTLeakAnalyzer.MemoryAllocatorTraceEntry> getSuccessfullyDeletedStacks() {
+			return successfullyDeletedStacks;
+		}
+
+		/**
+		 * @return the number of allocations that were not freed
+		 */
+		public int getUnfreedAllocations() {
+			return unfreedAllocations;
+		}
+
+		/**
+		 * @return the allocations and releases of each thread, in no particular order
+		 */
+		public List<ThreadAllocations> getThreadAllocations() {
+			return threadAllocations;
+		}
+
+		/**
+		 * @return the releases by another thread than the allocating thread, per pair of allocating and freeing stack, in no particular order
+		 */
+		public List<CrossThreadFrees> getCrossThreadFrees() {
+			return crossThreadFrees;
+		}
+
+		/**
+		 * @return the realloc chains started by the allocations of each stack, in the order the stacks were first replayed
+		 */
+		public List<StackReallocChains> getStackReallocChains() {
+			return stackReallocChains;
+		}
+
+		/**
+		 * @return the requested sizes of the allocations of each stack, in the order the stacks were first replayed
+		 */
+		public List<StackSizes> getStackSizes() {
+			return stackSizes;
+		}
+
+		/**
+		 * @return the allocations of each size class, in the order of the size classes
+		 */
+		public List<SizeClassUsage> getSizeClassUsage() {
+			return sizeClassUsage;
+		}
+
+		/**
+		 * @return the churn of the allocations of each stack, in the order the stacks were first replayed
+		 */
+		public List<StackChurn> getStackChurn() {
+			return stackChurn;
+		}
+
+		/**
+		 * @return the lifetimes of the allocations of each allocating stack, in the order the stacks were first replayed,
+		 * empty when the lifetimes were not recorded
+		 */
+		public List<StackLifetimes> getStackLifetimes() {
+			return stackLifetimes;
+		}
+
+		/**
+		 * @return the allocated and freed bytes of each allocating stack, in the order the stacks were first replayed
+		 */
+		public List<StackBytes> getStackBytes() {
+			return stackBytes;
+		}
+	}
+}
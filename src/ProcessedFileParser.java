@@ -0,0 +1,352 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Parallel parser of the processed files (produced by trace-memalloc-proc.d).
+ *
+ * A processed file has sections that start with a == line (== FINISHED ==, == allocation stacks ==,
+ * == deallocation stacks == and the totals), the stack sections hold the printa() output: the frames
+ * of each stack followed by its count, with blank lines between the stacks.
+ *
+ * The file is split into byte ranges that end on blank lines, so that no stack crosses two ranges.
+ * The ranges are memory mapped and parsed in parallel, each range into its own unique stack maps
+ * (one per section found in the range). The section of a stack is only known once the == lines of
+ * the previous ranges are counted, so the ranges are merged in file order at the end, which keeps the
+ * stacks in the order of their first appearance. The counts are long, printa() counts of long runs
+ * exceed Integer.MAX_VALUE.
+ *
+ */
+public class ProcessedFileParser {
+	//sections of the processed files, counted by their == lines
+	private static final int allocationSection = 2;
+	private static final int deallocationSection = 3;
+
+	//default size of the parsed byte ranges
+	private static final long defaultRangeBytes = 16L * 1024 * 1024;
+
+	//buffer used to find the range boundaries
+	private static final int boundaryBufferBytes = 64 * 1024;
+
+	private final int threads;
+	private final long rangeBytes;
+
+	/**
+	 * new parser
+	 * @param threads the parsing threads (0 = number of processors)
+	 */
+	public ProcessedFileParser(int threads) {
+		this(threads, defaultRangeBytes);
+	}
+
+	/**
+	 * new parser
+	 * @param threads the parsing threads (0 = number of processors)
+	 * @param rangeBytes the size of the byte ranges parsed by a thread at a time
+	 */
+	public ProcessedFileParser(int threads, long rangeBytes) {
+		if (threads < 0) {
+			throw new IllegalArgumentException("number of parsing threads cannot be negative:"+threads);
+		}
+		if (rangeBytes <= 0) {
+			throw new IllegalArgumentException("range size must be positive:"+rangeBytes);
+		}
+		this.threads = threads == 0 ? Runtime.getRuntime().availableProcessors() : threads;
+		this.rangeBytes = rangeBytes;
+	}
+
+	/**
+	 * Parses the allocation and deallocation stacks of a processed file
+	 * @param file the processed file
+	 * @param metrics the metrics that receive the parsing progress
+	 * @return the unique stacks of both sections
+	 * @throws IOException if the file cannot be read or has unexpected data
+	 */
+	public ParseResult parse(File file, final AnalysisMetrics metrics) throws IOException {
+		try (RandomAccessFile input = new RandomAccessFile(file, "r")) {
+			final FileChannel channel = input.getChannel();
+			List<long[]> ranges = split(channel);
+
+			final AtomicLong bytesConsumed = new AtomicLong();
+			final AtomicLong entriesDecoded = new AtomicLong();
+			ExecutorService executor = Executors.newFixedThreadPool(Math.min(threads, Math.max(1, ranges.size())));
+			try {
+				List<Future<RangeResult>> futures = new ArrayList<Future<RangeResult>>();
+				for (final long[] range : ranges) {
+					futures.add(executor.submit(new Callable<RangeResult>() {
+						@Override
+						public RangeResult call() throws IOException {
+							RangeResult result = parseRange(channel.map(FileChannel.MapMode.READ_ONLY, range[0], range[1] - range[0]));
+							metrics.setBytesConsumed(bytesConsumed.addAndGet(range[1] - range[0]));
+							metrics.setEntriesDecoded(entriesDecoded.addAndGet(result.entries));
+							return result;
+						}
+					}));
+				}
+
+				//merge in file order
+				ParseResult ret = new ParseResult();
+				int section = 0;
+				for (Future<RangeResult> future : futures) {
+					RangeResult result = get(future);
+					ret.entries += result.entries;
+					for (int i=0;i<result.segments.size();i++) {
+						if (i > 0) {
+							section++;
+						}
+						Segment segment = result.segments.get(i);
+						if (section < allocationSection) {
+							if (segment.error != null || !segment.stacks.isEmpty()) {
+								throw new IOException("Cannot determine file position");
+							}
+						} else if (section == allocationSection) {
+							merge(segment, ret.allocationStacks);
+						} else if (section == deallocationSection) {
+							merge(segment, ret.deallocationStacks);
+						}
+					}
+				}
+				return ret;
+			} finally {
+				executor.shutdownNow();
+			}
+		}
+	}
+
+	private static RangeResult get(Future<RangeResult> future) throws IOException {
+		try {
+			return future.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("interrupted while parsing");
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof IOException) {
+				throw (IOException)e.getCause();
+			}
+			throw new IOException("cannot parse processed file:"+e.getCause(), e.getCause());
+		}
+	}
+
+	private static void merge(Segment segment, Map<String, DTLeakAnalyzer.StackOccurence> stacks) throws IOException {
+		if (segment.error != null) {
+			throw segment.error;
+		}
+		for (DTLeakAnalyzer.StackOccurence occurence : segment.stacks.values()) {
+			DTLeakAnalyzer.StackOccurence existing = stacks.get(occurence.getStack());
+			if (existing == null) {
+				stacks.put(occurence.getStack(), occurence);
+			} else {
+				existing.increaseTimesFound(occurence.getTimesFound());
+			}
+		}
+	}
+
+	/**
+	 * Splits the file into ranges of about rangeBytes that end after a blank line (or at the end of the file)
+	 */
+	private List<long[]> split(FileChannel channel) throws IOException {
+		List<long[]> ranges = new ArrayList<long[]>();
+		long length = channel.size();
+		long start = 0;
+		ByteBuffer buffer = ByteBuffer.allocate(boundaryBufferBytes);
+		while (start < length) {
+			long end = start + rangeBytes >= length ? length : findBoundary(channel, start + rangeBytes, length, buffer);
+			ranges.add(new long[]{start, end});
+			start = end;
+		}
+		return ranges;
+	}
+
+	/**
+	 * Returns the position after the first blank line that starts after a position
+	 */
+	private static long findBoundary(FileChannel channel, long from, long length, ByteBuffer buffer) throws IOException {
+		long position = from;
+		//the first (partial) line is skipped
+		boolean lineStart = false;
+		boolean blank = true;
+		while (position < length) {
+			buffer.clear();
+			int read = channel.read(buffer, position);
+			if (read <= 0) {
+				break;
+			}
+			for (int i=0;i<read;i++) {
+				byte b = buffer.get(i);
+				if (b == '\n') {
+					if (lineStart && blank) {
+						return position + i + 1;
+					}
+					lineStart = true;
+					blank = true;
+				} else if (!isWhitespace(b)) {
+					blank = false;
+				}
+			}
+			position += read;
+		}
+		return length;
+	}
+
+	private static boolean isWhitespace(byte b) {
+		return b == ' ' || b == '\t' || b == '\r';
+	}
+
+	/**
+	 * Parses a range into the unique stacks of the sections found in it
+	 */
+	private static RangeResult parseRange(MappedByteBuffer buffer) throws IOException {
+		RangeResult result = new RangeResult();
+		Segment segment = new Segment();
+		result.segments.add(segment);
+
+		//lines of the current stack, separated by new lines
+		byte[] entry = new byte[4096];
+		int entryLength = 0;
+		int lastLineStart = 0;
+		boolean inEntry = false;
+
+		int length = buffer.limit();
+		int position = 0;
+		while (position < length) {
+			int end = position;
+			while (end < length && buffer.get(end) != '\n') {
+				end++;
+			}
+			//trim the line
+			int start = position;
+			int trimmedEnd = end;
+			while (start < trimmedEnd && isWhitespace(buffer.get(start))) {
+				start++;
+			}
+			while (trimmedEnd > start && isWhitespace(buffer.get(trimmedEnd-1))) {
+				trimmedEnd--;
+			}
+			position = end + 1;
+
+			if (start == trimmedEnd) {
+				//blank line, end of the current stack
+				if (inEntry) {
+					segment.addEntry(entry, lastLineStart, entryLength);
+					result.entries++;
+					inEntry = false;
+				}
+			} else if (trimmedEnd - start >= 2 && buffer.get(start) == '=' && buffer.get(start+1) == '=') {
+				//start of the next section
+				if (inEntry) {
+					segment.addEntry(entry, lastLineStart, entryLength);
+					result.entries++;
+					inEntry = false;
+				}
+				segment = new Segment();
+				result.segments.add(segment);
+			} else {
+				if (!inEntry) {
+					entryLength = 0;
+					inEntry = true;
+				}
+				int lineLength = trimmedEnd - start;
+				if (entryLength + lineLength + 1 > entry.length) {
+					entry = Arrays.copyOf(entry, Math.max(entry.length * 2, entryLength + lineLength + 1));
+				}
+				lastLineStart = entryLength;
+				for (int i=start;i<trimmedEnd;i++) {
+					entry[entryLength++] = buffer.get(i);
+				}
+				entry[entryLength++] = '\n';
+			}
+		}
+		if (inEntry) {
+			segment.addEntry(entry, lastLineStart, entryLength);
+			result.entries++;
+		}
+		return result;
+	}
+
+	/**
+	 * The unique stacks of a processed file
+	 */
+	public static class ParseResult {
+		private final Map<String, DTLeakAnalyzer.StackOccurence> allocationStacks = new LinkedHashMap<String, DTLeakAnalyzer.StackOccurence>();
+		private final Map<String, DTLeakAnalyzer.StackOccurence> deallocationStacks = new LinkedHashMap<String, DTLeakAnalyzer.StackOccurence>();
+		private long entries;
+
+		/**
+		 * @return the unique allocation stacks, in the order of their first appearance
+		 */
+		public List<DTLeakAnalyzer.StackOccurence> getAllocationStacks() {
+			return new ArrayList<DTLeakAnalyzer.StackOccurence>(allocationStacks.values());
+		}
+
+		/**
+		 * @return the unique deallocation stacks, in the order of their first appearance
+		 */
+		public List<DTLeakAnalyzer.StackOccurence> getDeallocationStacks() {
+			return new ArrayList<DTLeakAnalyzer.StackOccurence>(deallocationStacks.values());
+		}
+
+		/**
+		 * @return the stacks read (before merging the same stacks)
+		 */
+		public long getEntries() {
+			return entries;
+		}
+	}
+
+	/**
+	 * The stacks of a range
+	 */
+	private static class RangeResult {
+		//the stacks before the first == line of the range and after each == line
+		private final List<Segment> segments = new ArrayList<Segment>();
+		private long entries;
+	}
+
+	/**
+	 * The unique stacks of the part of a range that belongs to a single section
+	 */
+	private static class Segment {
+		private final Map<String, DTLeakAnalyzer.StackOccurence> stacks = new LinkedHashMap<String, DTLeakAnalyzer.StackOccurence>();
+		//the first stack that could not be decoded, reported only if the section is a stack section
+		private IOException error;
+
+		/**
+		 * Adds a stack, the last line of the entry is its count
+		 */
+		private void addEntry(byte[] entry, int countStart, int entryLength) {
+			String countText = new String(entry, countStart, entryLength - countStart - 1, Charset.defaultCharset());
+			long count;
+			try {
+				count = Long.parseLong(countText);
+			} catch (NumberFormatException e) {
+				if (error == null) {
+					error = new IOException("cannot decode stack count:"+countText);
+				}
+				return;
+			}
+			String stack = DTLeakAnalyzer.clearTopLevelStackReturnPointer(new String(entry, 0, countStart, Charset.defaultCharset()));
+			stack = StackKeyer.getInstance().key(stack);
+			DTLeakAnalyzer.StackOccurence existing = stacks.get(stack);
+			if (existing == null) {
+				stacks.put(stack, new DTLeakAnalyzer.StackOccurence(stack, count));
+			} else {
+				existing.increaseTimesFound(count);
+			}
+		}
+	}
+}
@@ -0,0 +1,137 @@
+import java.io.File;
+import java.util.Locale;
+
+/**
+ * Prints a progress line at a fixed interval while the analysis runs.
+ *
+ * The progress is the bytes consumed by the trace readers of all scheduled files against
+ * their total size (as kept by the AnalyzerMonitor), so in the -d and -p modes it covers
+ * all files. The entries/s and MB/s are measured over the last interval, the ETA uses
+ * the average rate since the start.
+ *
+ */
+public class ProgressReporter {
+	private static final double bytesPerMegabyte = 1024.0 * 1024.0;
+
+	private final AnalyzerMonitor monitor;
+	private final long intervalMillis;
+
+	private Thread thread;
+
+	//values of the previous progress line
+	private long startNanos;
+	private long lastNanos;
+	private long lastBytes;
+	private long lastEntries;
+
+	/**
+	 * new progress reporter
+	 * @param monitor the monitor of the running analyses
+	 * @param intervalSeconds the seconds between two progress lines
+	 */
+	public ProgressReporter(AnalyzerMonitor monitor, long intervalSeconds) {
+		if (intervalSeconds <= 0) {
+			throw new IllegalArgumentException("progress interval must be positive:"+intervalSeconds);
+		}
+		this.monitor = monitor;
+		this.intervalMillis = intervalSeconds * 1000;
+	}
+
+	/**
+	 * Starts printing the progress
+	 */
+	public synchronized void start() {
+		if (thread != null) {
+			return;
+		}
+		startNanos = System.nanoTime();
+		lastNanos = startNanos;
+		lastBytes = monitor.getTotalBytesConsumed();
+		lastEntries = monitor.getTotalEntriesDecoded();
+		thread = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					while (!Thread.currentThread().isInterrupted()) {
+						Thread.sleep(intervalMillis);
+						report();
+					}
+				} catch (InterruptedException e) {
+					//stopped
+				}
+			}
+		}, "progress-reporter");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/**
+	 * Stops printing the progress
+	 */
+	public synchronized void stop() {
+		if (thread == null) {
+			return;
+		}
+		thread.interrupt();
+		try {
+			thread.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		thread = null;
+	}
+
+	/**
+	 * Prints a progress line, if any file is being analyzed
+	 */
+	private void report() {
+		AnalysisMetrics current = monitor.getCurrent();
+		if (current == null) {
+			return;
+		}
+		long now = System.nanoTime();
+		long bytes = monitor.getTotalBytesConsumed();
+		long entries = monitor.getTotalEntriesDecoded();
+		long scheduledBytes = monitor.getScheduledBytes();
+
+		double intervalSeconds = (now - lastNanos) / 1000000000.0;
+		double elapsedSeconds = (now - startNanos) / 1000000000.0;
+		double entryRate = (entries - lastEntries) / intervalSeconds;
+		double byteRate = (bytes - lastBytes) / intervalSeconds;
+		lastNanos = now;
+		lastBytes = bytes;
+		lastEntries = entries;
+
+		StringBuffer line = new StringBuffer("progress: ");
+		if (scheduledBytes > 0) {
+			double done = Math.min(1.0, (double)bytes / scheduledBytes);
+			double averageRate = bytes / elapsedSeconds;
+			line.append(String.format(Locale.US, "%.1f%% of %.1f MB, ", done * 100, scheduledBytes / bytesPerMegabyte));
+			line.append(entries).append(" entries");
+			line.append(String.format(Locale.US, " (%.0f entries/s, %.2f MB/s), ETA ", entryRate, byteRate / bytesPerMegabyte));
+			line.append(averageRate > 0 ? formatDuration((long)((scheduledBytes - Math.min(bytes, scheduledBytes)) / averageRate)) : "unknown");
+		} else {
+			line.append(entries).append(" entries");
+			line.append(String.format(Locale.US, " (%.0f entries/s, %.2f MB/s)", entryRate, byteRate / bytesPerMegabyte));
+		}
+
+		AnalysisMetrics.Phase phase = current.getCurrentPhase();
+		line.append(" - file ").append(Math.min(monitor.getFilesCompleted()+1, Math.max(1, monitor.getFilesScheduled())));
+		line.append(" of ").append(Math.max(1, monitor.getFilesScheduled()));
+		if (current.getFile() != null) {
+			line.append(" (").append(new File(current.getFile()).getName());
+			if (phase != null) {
+				line.append(", ").append(phase.getDescription());
+			}
+			line.append(")");
+		}
+		System.out.println(line);
+	}
+
+	/**
+	 * @return the duration as h:mm:ss
+	 */
+	private static String formatDuration(long seconds) {
+		return String.format(Locale.US, "%d:%02d:%02d", seconds / 3600, (seconds / 60) % 60, seconds % 60);
+	}
+}
@@ -0,0 +1,75 @@
+/**
+ * Buckets of the requested allocation sizes: power of two buckets, and the size classes of
+ * the libumem allocation caches (umem_alloc_8 ... umem_alloc_16384) that serve the requests of
+ * malloc, calloc and realloc. The requests above the largest cache are served by the vmem
+ * arenas and counted in the oversize class.
+ *
+ * The sizes are the requested sizes as traced (for calloc the number of elements times the
+ * element size), without the allocator headers.
+ *
+ */
+public class SizeClasses {
+	//power of two buckets, bucket n holds the sizes from 2^(n-1)+1 to 2^n (bucket 0 holds 0 and 1)
+	public static final int powerOfTwoBuckets = 65;
+
+	//upper limits of the libumem cache size classes
+	private static final long[] sizeClassLimits = {8, 16, 24, 32, 40, 48, 56, 64, 80, 96, 112, 128, 160, 192, 224, 256,
+			320, 384, 448, 512, 640, 768, 896, 1152, 1344, 1600, 2048, 2688, 4096, 8192, 12288, 16384};
+
+	//the size classes, the last one for the oversize requests
+	public static final int sizeClasses = sizeClassLimits.length + 1;
+	public static final int oversizeClass = sizeClasses - 1;
+
+	private SizeClasses() {
+	}
+
+	/**
+	 * @param size the requested size
+	 * @return the power of two bucket of a size
+	 */
+	public static int getPowerOfTwoBucket(long size) {
+		return size <= 1 ? 0 : 64 - Long.numberOfLeadingZeros(size - 1);
+	}
+
+	/**
+	 * @param size the requested size
+	 * @return the size class of a size, oversizeClass for the oversize requests
+	 */
+	public static int getSizeClass(long size) {
+		int low = 0;
+		int high = sizeClassLimits.length;
+		while (low < high) {
+			int middle = (low + high) >>> 1;
+			if (sizeClassLimits[middle] < size) {
+				low = middle + 1;
+			} else {
+				high = middle;
+			}
+		}
+		return low;
+	}
+
+	/**
+	 * @param sizeClass the size class
+	 * @return the largest size of a size class, -1 for the oversize class
+	 */
+	public static long getSizeClassLimit(int sizeClass) {
+		return sizeClass < sizeClassLimits.length ? sizeClassLimits[sizeClass] : -1;
+	}
+
+	/**
+	 * @param sizeClass the size class
+	 * @return the name of a size class for the reports, i.e. 64 or >16384
+	 */
+	public static String getSizeClassName(int sizeClass) {
+		return sizeClass < sizeClassLimits.length ? Long.toString(sizeClassLimits[sizeClass]) : ">"+sizeClassLimits[sizeClassLimits.length - 1];
+	}
+
+	/**
+	 * @param bucket the power of two bucket
+	 * @return the name of a power of two bucket for the reports, i.e. <=64
+	 */
+	public static String getPowerOfTwoName(int bucket) {
+		return bucket == 64 ? ">2^63" : "<="+(1L << bucket);
+	}
+}
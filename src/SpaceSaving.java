@@ -0,0 +1,201 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Space-Saving top-k counter (Metwally et al.) of 64-bit keys, with a fixed number of monitored
+ * keys. A key that is not monitored replaces the monitored key with the lowest count and takes over
+ * its count as its error, so the count of a key is an upper bound of its frequency and the count
+ * minus the error a lower bound. Any key more frequent than total / capacity is monitored.
+ *
+ * The monitored keys are kept in a min-heap of their counts, an offer costs a hash lookup and
+ * a sift of the heap. A text (i.e. the stack of the key) can be attached to each monitored key,
+ * it is dropped when the key is replaced.
+ *
+ */
+public class SpaceSaving {
+	private final int capacity;
+	private final long[] keys;
+	private final long[] counts;
+	private final long[] errors;
+	private final String[] texts;
+
+	//min-heap of the slots by count, and the heap position of each slot
+	private final int[] heap;
+	private final int[] positions;
+	private int size;
+
+	private final Map<Long, Integer> slots;
+	private long total;
+
+	/**
+	 * new counter
+	 * @param capacity the number of monitored keys
+	 */
+	public SpaceSaving(int capacity) {
+		this.capacity = capacity;
+		this.keys = new long[capacity];
+		this.counts = new long[capacity];
+		this.errors = new long[capacity];
+		this.texts = new String[capacity];
+		this.heap = new int[capacity];
+		this.positions = new int[capacity];
+		this.slots = new HashMap<Long, Integer>(capacity * 2);
+	}
+
+	/**
+	 * Counts a key
+	 * @param key the key
+	 * @param weight the count to add
+	 * @return the slot of the key, its text is null if the key was not monitored before
+	 */
+	public int offer(long key, long weight) {
+		total += weight;
+		Integer slot = slots.get(key);
+		if (slot != null) {
+			counts[slot] += weight;
+			siftDown(positions[slot]);
+			return slot;
+		}
+		int newSlot;
+		if (size < capacity) {
+			newSlot = size;
+			heap[size] = newSlot;
+			positions[newSlot] = size;
+			size++;
+			errors[newSlot] = 0;
+			counts[newSlot] = weight;
+			siftUp(positions[newSlot]);
+		} else {
+			//replace the key with the lowest count
+			newSlot = heap[0];
+			slots.remove(keys[newSlot]);
+			errors[newSlot] = counts[newSlot];
+			counts[newSlot] += weight;
+			siftDown(0);
+		}
+		keys[newSlot] = key;
+		texts[newSlot] = null;
+		slots.put(key, newSlot);
+		return newSlot;
+	}
+
+	/**
+	 * @param key the key
+	 * @return the slot of a monitored key, -1 if the key is not monitored
+	 */
+	public int getSlot(long key) {
+		Integer slot = slots.get(key);
+		return slot == null ? -1 : slot;
+	}
+
+	public String getText(int slot) {
+		return texts[slot];
+	}
+
+	public void setText(int slot, String text) {
+		texts[slot] = text;
+	}
+
+	/**
+	 * @return the total count offered
+	 */
+	public long getTotal() {
+		return total;
+	}
+
+	public int getCapacity() {
+		return capacity;
+	}
+
+	/**
+	 * @return the highest error of a count, total / capacity
+	 */
+	public long getMaxError() {
+		return total / capacity;
+	}
+
+	/**
+	 * @return the monitored slots with the highest counts, the highest first
+	 * @param k the slots returned
+	 */
+	public List<Integer> getTop(int k) {
+		List<Integer> ret = new ArrayList<Integer>();
+		for (int i=0;i<size;i++) {
+			ret.add(i);
+		}
+		Collections.sort(ret, new Comparator<Integer>() {
+			@Override
+			public int compare(Integer o1, Integer o2) {
+				return Long.compare(counts[o2], counts[o1]);
+			}
+		});
+		return ret.size() > k ? ret.subList(0, k) : ret;
+	}
+
+	public long getKey(int slot) {
+		return keys[slot];
+	}
+
+	/**
+	 * @return the count of a slot, an upper bound of the frequency of its key
+	 */
+	public long getCount(int slot) {
+		return counts[slot];
+	}
+
+	/**
+	 * @return the error of a slot, the count minus the error is a lower bound of the frequency of its key
+	 */
+	public long getError(int slot) {
+		return errors[slot];
+	}
+
+	/**
+	 * @return the estimated bytes used by the counter
+	 */
+	public long getMemoryBytes() {
+		//arrays, and the boxed keys and slots of the lookup map
+		return capacity * (8L * 3 + 4 * 3 + 8) + capacity * 64L;
+	}
+
+	private void siftUp(int position) {
+		int slot = heap[position];
+		while (position > 0) {
+			int parent = (position - 1) >>> 1;
+			if (counts[heap[parent]] <= counts[slot]) {
+				break;
+			}
+			move(heap[parent], position);
+			position = parent;
+		}
+		move(slot, position);
+	}
+
+	private void siftDown(int position) {
+		int slot = heap[position];
+		while (true) {
+			int child = 2 * position + 1;
+			if (child >= size) {
+				break;
+			}
+			if (child + 1 < size && counts[heap[child + 1]] < counts[heap[child]]) {
+				child++;
+			}
+			if (counts[heap[child]] >= counts[slot]) {
+				break;
+			}
+			move(heap[child], position);
+			position = child;
+		}
+		move(slot, position);
+	}
+
+	private void move(int slot, int position) {
+		heap[position] = slot;
+		positions[slot] = position;
+	}
+}
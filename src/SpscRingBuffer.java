@@ -0,0 +1,114 @@
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Bounded ring buffer between a single producer thread and a single consumer thread.
+ *
+ * The slots are allocated once. The producer only writes the tail and the consumer only writes
+ * the head, so an element is handed over with an ordered write of one counter and no lock.
+ * A producer on a full buffer (backpressure) and a consumer on an empty buffer spin for a short
+ * while, then yield and then park, and give up when their thread is interrupted.
+ *
+ */
+public class SpscRingBuffer<T> {
+	//spins and yields before parking on a full or empty buffer
+	private static final int spins = 100;
+	private static final int yields = 10;
+	private static final long parkNanos = 50000;
+
+	private final Object[] slots;
+	private final int mask;
+
+	//next slot to take, written by the consumer
+	private final AtomicLong head;
+	//next slot to put, written by the producer
+	private final AtomicLong tail;
+
+	/**
+	 * new ring buffer
+	 * @param capacity the elements it holds, rounded up to a power of two
+	 */
+	public SpscRingBuffer(int capacity) {
+		if (capacity <= 0) {
+			throw new IllegalArgumentException("ring buffer capacity must be positive:"+capacity);
+		}
+		int size = Integer.highestOneBit(capacity);
+		if (size < capacity) {
+			size <<= 1;
+		}
+		this.slots = new Object[size];
+		this.mask = size - 1;
+		this.head = new AtomicLong();
+		this.tail = new AtomicLong();
+	}
+
+	/**
+	 * Puts an element, waiting while the buffer is full. Called only by the producer.
+	 * @param element the element
+	 * @throws InterruptedException if the producer is interrupted while waiting
+	 */
+	public void put(T element) throws InterruptedException {
+		long position = tail.get();
+		int waits = 0;
+		while (position - head.get() == slots.length) {
+			waits = await(waits);
+		}
+		slots[(int)position & mask] = element;
+		tail.lazySet(position + 1);
+	}
+
+	/**
+	 * Puts an element if the buffer is not full. Called only by the producer.
+	 * @param element the element
+	 * @return false if the buffer is full
+	 */
+	public boolean offer(T element) {
+		long position = tail.get();
+		if (position - head.get() == slots.length) {
+			return false;
+		}
+		slots[(int)position & mask] = element;
+		tail.lazySet(position + 1);
+		return true;
+	}
+
+	/**
+	 * Takes the oldest element, waiting while the buffer is empty. Called only by the consumer.
+	 * @return the element
+	 * @throws InterruptedException if the consumer is interrupted while waiting
+	 */
+	@SuppressWarnings("unchecked")
+	public T take() throws InterruptedException {
+		long position = head.get();
+		int waits = 0;
+		while (position == tail.get()) {
+			waits = await(waits);
+		}
+		int slot = (int)position & mask;
+		T ret = (T)slots[slot];
+		slots[slot] = null;
+		head.lazySet(position + 1);
+		return ret;
+	}
+
+	/**
+	 * @return the capacity of the buffer
+	 */
+	public int capacity() {
+		return slots.length;
+	}
+
+	private static int await(int waits) throws InterruptedException {
+		if (Thread.interrupted()) {
+			throw new InterruptedException();
+		}
+		if (waits < spins) {
+			Thread.onSpinWait();
+		} else if (waits < spins + yields) {
+			Thread.yield();
+		} else {
+			LockSupport.parkNanos(parkNanos);
+		}
+		return waits + 1;
+	}
+}
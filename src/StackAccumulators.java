@@ -0,0 +1,421 @@
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Per-stack allocation counters of a replay shard, in primitive arrays indexed by the
+ * StackIndex id of the stack that allocated the memory: the allocations and their bytes, and
+ * the frees (or reallocs that released the memory) of these allocations and their bytes.
+ *
+ * A realloc releases the old allocation, on the stack that allocated it, and allocates the new
+ * size on the realloc stack, so the outstanding bytes of a stack (allocated - freed) are the
+ * bytes of its allocations that are live.
+ *
+ * The lifetimes of the released allocations (in trace entries and in seconds) are kept in a
+ * log histogram per stack, created for the stacks whose allocations are released.
+ *
+ * For the churn analysis the sizes of the allocations are kept in a log histogram per stack, the
+ * releases within the churn windows (in trace entries and in seconds) are counted, and the distinct
+ * (allocating stack, freeing stack) pairs are kept. The last freeing stack of each allocating stack
+ * is remembered, so the pair set is only looked up when the freeing stack changes.
+ *
+ * The requested sizes are also counted in power of two buckets and in allocator size classes
+ * (see SizeClasses), in fixed size blocks of a primitive array per stack id, and per size class
+ * over all stacks with the requested bytes.
+ *
+ * The releases by another thread than the allocating thread are counted per (allocating stack,
+ * freeing stack) pair, in a map that is only touched by the cross-thread releases.
+ *
+ * The realloc chains (an allocation and its successive reallocs) are counted when they end, by
+ * a free or at the end of the trace, on the stack of the allocation that started them.
+ *
+ */
+public class StackAccumulators {
+	private static final int initialCapacity = 1024;
+
+	private long[] allocations;
+	private long[] allocatedBytes;
+	private long[] frees;
+	private long[] freedBytes;
+	//lifetimes of the released allocations, only recorded when they are reported
+	private final boolean lifetimes;
+	private LogHistogram[] eventLifetimes;
+	private LogHistogram[] secondLifetimes;
+
+	//churn windows, the releases within them and the sizes
+	private final long churnEntries;
+	private final long churnSeconds;
+	private long[] churnedByEntries;
+	private long[] churnedBySeconds;
+	private LogHistogram[] sizes;
+
+	//distinct pairs of allocating stack (high int) and freeing stack (low int), and the last freeing stack + 1
+	private final Set<Long> freeingPairs;
+	private int[] lastFreeingStack;
+
+	//releases by another thread and their bytes, per pair of allocating stack (high int) and freeing stack (low int)
+	private final Map<Long, long[]> crossThreadPairs;
+
+	//allocations per stack and power of two bucket / size class (stackId * buckets + bucket), and per size class
+	private long[] powerOfTwoCounts;
+	private long[] sizeClassCounts;
+	private final long[] sizeClassAllocations;
+	private final long[] sizeClassBytes;
+
+	//realloc chains per originating stack: chains, reallocs, longest chain, moves, small growth steps and bytes copied
+	private long[] chains;
+	private long[] chainReallocs;
+	private long[] longestChain;
+	private long[] chainMoves;
+	private long[] chainSmallSteps;
+	private long[] chainBytesCopied;
+
+	/**
+	 * new counters without churn windows, to add the counters of the shards to
+	 */
+	public StackAccumulators() {
+		this(true, -1, -1);
+	}
+
+	/**
+	 * new counters
+	 * @param lifetimes whether the lifetimes of the released allocations are recorded
+	 * @param churnEntries the trace entries within which a released allocation is counted as churn
+	 * @param churnSeconds the seconds within which a released allocation is counted as churn
+	 */
+	public StackAccumulators(boolean lifetimes, long churnEntries, long churnSeconds) {
+		this.lifetimes = lifetimes;
+		this.churnEntries = churnEntries;
+		this.churnSeconds = churnSeconds;
+		allocations = new long[initialCapacity];
+		allocatedBytes = new long[initialCapacity];
+		frees = new long[initialCapacity];
+		freedBytes = new long[initialCapacity];
+		eventLifetimes = new LogHistogram[initialCapacity];
+		secondLifetimes = new LogHistogram[initialCapacity];
+		churnedByEntries = new long[initialCapacity];
+		churnedBySeconds = new long[initialCapacity];
+		sizes = new LogHistogram[initialCapacity];
+		freeingPairs = new HashSet<Long>();
+		crossThreadPairs = new HashMap<Long, long[]>();
+		lastFreeingStack = new int[initialCapacity];
+		powerOfTwoCounts = new long[initialCapacity * SizeClasses.powerOfTwoBuckets];
+		sizeClassCounts = new long[initialCapacity * SizeClasses.sizeClasses];
+		sizeClassAllocations = new long[SizeClasses.sizeClasses];
+		sizeClassBytes = new long[SizeClasses.sizeClasses];
+		chains = new long[initialCapacity];
+		chainReallocs = new long[initialCapacity];
+		longestChain = new long[initialCapacity];
+		chainMoves = new long[initialCapacity];
+		chainSmallSteps = new long[initialCapacity];
+		chainBytesCopied = new long[initialCapacity];
+	}
+
+	/**
+	 * Counts an allocation
+	 * @param stackId the id of the allocating stack
+	 * @param size the bytes allocated
+	 */
+	public void allocated(int stackId, long size) {
+		ensureCapacity(stackId);
+		allocations[stackId]++;
+		allocatedBytes[stackId] += size;
+		if (sizes[stackId] == null) {
+			sizes[stackId] = new LogHistogram();
+		}
+		sizes[stackId].record(size);
+		int sizeClass = SizeClasses.getSizeClass(size);
+		powerOfTwoCounts[stackId * SizeClasses.powerOfTwoBuckets + SizeClasses.getPowerOfTwoBucket(size)]++;
+		sizeClassCounts[stackId * SizeClasses.sizeClasses + sizeClass]++;
+		sizeClassAllocations[sizeClass]++;
+		sizeClassBytes[sizeClass] += size;
+	}
+
+	/**
+	 * Counts the release of an allocation
+	 * @param stackId the id of the stack that allocated the memory
+	 * @param size the bytes of the allocation
+	 * @param lifetimeEntries the trace entries between the allocation and its release
+	 * @param lifetimeSeconds the seconds between the allocation and its release
+	 * @param freeingStackId the id of the stack of the free or realloc
+	 */
+	public void freed(int stackId, long size, long lifetimeEntries, long lifetimeSeconds, int freeingStackId) {
+		ensureCapacity(stackId);
+		frees[stackId]++;
+		freedBytes[stackId] += size;
+		if (lifetimes) {
+			if (eventLifetimes[stackId] == null) {
+				eventLifetimes[stackId] = new LogHistogram();
+				secondLifetimes[stackId] = new LogHistogram();
+			}
+			eventLifetimes[stackId].record(lifetimeEntries);
+			secondLifetimes[stackId].record(lifetimeSeconds);
+		}
+		if (lifetimeEntries <= churnEntries) {
+			churnedByEntries[stackId]++;
+		}
+		if (lifetimeSeconds <= churnSeconds) {
+			churnedBySeconds[stackId]++;
+		}
+		if (lastFreeingStack[stackId] != freeingStackId + 1) {
+			lastFreeingStack[stackId] = freeingStackId + 1;
+			freeingPairs.add(((long)stackId << 32) | freeingStackId);
+		}
+	}
+
+	/**
+	 * Counts the release of an allocation by another thread than the one that allocated it
+	 * @param stackId the id of the stack that allocated the memory
+	 * @param freeingStackId the id of the stack of the free or realloc
+	 * @param size the bytes of the allocation
+	 */
+	public void crossThreadFreed(int stackId, int freeingStackId, long size) {
+		Long pair = ((long)stackId << 32) | freeingStackId;
+		long[] counts = crossThreadPairs.get(pair);
+		if (counts == null) {
+			counts = new long[2];
+			crossThreadPairs.put(pair, counts);
+		}
+		counts[0]++;
+		counts[1] += size;
+	}
+
+	/**
+	 * Counts a realloc chain that ended
+	 * @param originStackId the id of the stack of the allocation that started the chain
+	 * @param length the reallocs of the chain
+	 * @param moves the reallocs that moved the block
+	 * @param smallSteps the reallocs that grew the block by less than half of its size
+	 * @param bytesCopied the bytes copied by the moves
+	 */
+	public void chainEnded(int originStackId, long length, long moves, long smallSteps, long bytesCopied) {
+		ensureCapacity(originStackId);
+		chains[originStackId]++;
+		chainReallocs[originStackId] += length;
+		longestChain[originStackId] = Math.max(longestChain[originStackId], length);
+		chainMoves[originStackId] += moves;
+		chainSmallSteps[originStackId] += smallSteps;
+		chainBytesCopied[originStackId] += bytesCopied;
+	}
+
+	/**
+	 * Adds the counters of another shard
+	 * @param other the counters to add
+	 */
+	public void add(StackAccumulators other) {
+		ensureCapacity(other.allocations.length - 1);
+		for (int i=0;i<other.allocations.length;i++) {
+			allocations[i] += other.allocations[i];
+			allocatedBytes[i] += other.allocatedBytes[i];
+			frees[i] += other.frees[i];
+			freedBytes[i] += other.freedBytes[i];
+			if (other.eventLifetimes[i] != null) {
+				if (eventLifetimes[i] == null) {
+					eventLifetimes[i] = new LogHistogram();
+					secondLifetimes[i] = new LogHistogram();
+				}
+				eventLifetimes[i].add(other.eventLifetimes[i]);
+				secondLifetimes[i].add(other.secondLifetimes[i]);
+			}
+			churnedByEntries[i] += other.churnedByEntries[i];
+			churnedBySeconds[i] += other.churnedBySeconds[i];
+			chains[i] += other.chains[i];
+			chainReallocs[i] += other.chainReallocs[i];
+			longestChain[i] = Math.max(longestChain[i], other.longestChain[i]);
+			chainMoves[i] += other.chainMoves[i];
+			chainSmallSteps[i] += other.chainSmallSteps[i];
+			chainBytesCopied[i] += other.chainBytesCopied[i];
+			if (other.sizes[i] != null) {
+				if (sizes[i] == null) {
+					sizes[i] = new LogHistogram();
+				}
+				sizes[i].add(other.sizes[i]);
+			}
+		}
+		freeingPairs.addAll(other.freeingPairs);
+		for (Map.Entry<Long, long[]> entry : other.crossThreadPairs.entrySet()) {
+			long[] counts = crossThreadPairs.get(entry.getKey());
+			if (counts == null) {
+				crossThreadPairs.put(entry.getKey(), entry.getValue().clone());
+			} else {
+				counts[0] += entry.getValue()[0];
+				counts[1] += entry.getValue()[1];
+			}
+		}
+		for (int i=0;i<other.powerOfTwoCounts.length;i++) {
+			powerOfTwoCounts[i] += other.powerOfTwoCounts[i];
+		}
+		for (int i=0;i<other.sizeClassCounts.length;i++) {
+			sizeClassCounts[i] += other.sizeClassCounts[i];
+		}
+		for (int i=0;i<SizeClasses.sizeClasses;i++) {
+			sizeClassAllocations[i] += other.sizeClassAllocations[i];
+			sizeClassBytes[i] += other.sizeClassBytes[i];
+		}
+	}
+
+	private void ensureCapacity(int stackId) {
+		if (stackId < allocations.length) {
+			return;
+		}
+		int capacity = Math.max(allocations.length * 2, stackId + 1);
+		allocations = Arrays.copyOf(allocations, capacity);
+		allocatedBytes = Arrays.copyOf(allocatedBytes, capacity);
+		frees = Arrays.copyOf(frees, capacity);
+		freedBytes = Arrays.copyOf(freedBytes, capacity);
+		eventLifetimes = Arrays.copyOf(eventLifetimes, capacity);
+		secondLifetimes = Arrays.copyOf(secondLifetimes, capacity);
+		churnedByEntries = Arrays.copyOf(churnedByEntries, capacity);
+		churnedBySeconds = Arrays.copyOf(churnedBySeconds, capacity);
+		sizes = Arrays.copyOf(sizes, capacity);
+		lastFreeingStack = Arrays.copyOf(lastFreeingStack, capacity);
+		powerOfTwoCounts = Arrays.copyOf(powerOfTwoCounts, capacity * SizeClasses.powerOfTwoBuckets);
+		sizeClassCounts = Arrays.copyOf(sizeClassCounts, capacity * SizeClasses.sizeClasses);
+		chains = Arrays.copyOf(chains, capacity);
+		chainReallocs = Arrays.copyOf(chainReallocs, capacity);
+		longestChain = Arrays.copyOf(longestChain, capacity);
+		chainMoves = Arrays.copyOf(chainMoves, capacity);
+		chainSmallSteps = Arrays.copyOf(chainSmallSteps, capacity);
+		chainBytesCopied = Arrays.copyOf(chainBytesCopied, capacity);
+	}
+
+	/**
+	 * @return the number of stack ids with counters (some may be zero)
+	 */
+	public int getCapacity() {
+		return allocations.length;
+	}
+
+	public long getAllocations(int stackId) {
+		return stackId < allocations.length ? allocations[stackId] : 0;
+	}
+
+	public long getAllocatedBytes(int stackId) {
+		return stackId < allocatedBytes.length ? allocatedBytes[stackId] : 0;
+	}
+
+	public long getFrees(int stackId) {
+		return stackId < frees.length ? frees[stackId] : 0;
+	}
+
+	public long getFreedBytes(int stackId) {
+		return stackId < freedBytes.length ? freedBytes[stackId] : 0;
+	}
+
+	/**
+	 * @return the lifetimes in trace entries of the released allocations of a stack, or null if none was released
+	 */
+	public LogHistogram getEventLifetimes(int stackId) {
+		return stackId < eventLifetimes.length ? eventLifetimes[stackId] : null;
+	}
+
+	/**
+	 * @return the lifetimes in seconds of the released allocations of a stack, or null if none was released
+	 */
+	public LogHistogram getSecondLifetimes(int stackId) {
+		return stackId < secondLifetimes.length ? secondLifetimes[stackId] : null;
+	}
+
+	/**
+	 * @return the releases of the allocations of a stack within the churn window in trace entries
+	 */
+	public long getChurnedByEntries(int stackId) {
+		return stackId < churnedByEntries.length ? churnedByEntries[stackId] : 0;
+	}
+
+	/**
+	 * @return the releases of the allocations of a stack within the churn window in seconds
+	 */
+	public long getChurnedBySeconds(int stackId) {
+		return stackId < churnedBySeconds.length ? churnedBySeconds[stackId] : 0;
+	}
+
+	/**
+	 * @return the sizes of the allocations of a stack, or null if it did not allocate
+	 */
+	public LogHistogram getSizes(int stackId) {
+		return stackId < sizes.length ? sizes[stackId] : null;
+	}
+
+	/**
+	 * @return the number of distinct freeing stacks of each allocating stack, by the id of the allocating stack
+	 */
+	public int[] getFreeingStackCounts() {
+		int[] ret = new int[allocations.length];
+		for (Long pair : freeingPairs) {
+			ret[(int)(pair >>> 32)]++;
+		}
+		return ret;
+	}
+
+	/**
+	 * @return the allocations of a stack per power of two bucket
+	 */
+	public long[] getPowerOfTwoCounts(int stackId) {
+		return getBlock(powerOfTwoCounts, stackId, SizeClasses.powerOfTwoBuckets);
+	}
+
+	/**
+	 * @return the allocations of a stack per size class
+	 */
+	public long[] getSizeClassCounts(int stackId) {
+		return getBlock(sizeClassCounts, stackId, SizeClasses.sizeClasses);
+	}
+
+	/**
+	 * @return the allocations of all stacks in a size class
+	 */
+	public long getSizeClassAllocations(int sizeClass) {
+		return sizeClassAllocations[sizeClass];
+	}
+
+	/**
+	 * @return the requested bytes of all the allocations in a size class
+	 */
+	public long getSizeClassBytes(int sizeClass) {
+		return sizeClassBytes[sizeClass];
+	}
+
+	/**
+	 * @return the releases by another thread (count and bytes) per pair of allocating stack id (high int) and freeing stack id (low int)
+	 */
+	public Map<Long, long[]> getCrossThreadPairs() {
+		return crossThreadPairs;
+	}
+
+	/**
+	 * @return the realloc chains started by the allocations of a stack
+	 */
+	public long getChains(int stackId) {
+		return stackId < chains.length ? chains[stackId] : 0;
+	}
+
+	public long getChainReallocs(int stackId) {
+		return stackId < chainReallocs.length ? chainReallocs[stackId] : 0;
+	}
+
+	public long getLongestChain(int stackId) {
+		return stackId < longestChain.length ? longestChain[stackId] : 0;
+	}
+
+	public long getChainMoves(int stackId) {
+		return stackId < chainMoves.length ? chainMoves[stackId] : 0;
+	}
+
+	public long getChainSmallSteps(int stackId) {
+		return stackId < chainSmallSteps.length ? chainSmallSteps[stackId] : 0;
+	}
+
+	public long getChainBytesCopied(int stackId) {
+		return stackId < chainBytesCopied.length ? chainBytesCopied[stackId] : 0;
+	}
+
+	private long[] getBlock(long[] counts, int stackId, int buckets) {
+		if (stackId >= allocations.length) {
+			return new long[buckets];
+		}
+		return Arrays.copyOfRange(counts, stackId * buckets, (stackId + 1) * buckets);
+	}
+}
@@ -0,0 +1,190 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Concurrent aggregation of the times stacks were found, for the free stack relationships of the -p mode,
+ * which replays the memory allocator trace files on several threads.
+ *
+ * The counts are kept in a ConcurrentHashMap of LongAdder counters, so the threads that add to the same
+ * stack update different cells instead of racing on one field, and no count is lost (unlike a ++ on a
+ * volatile field). Each stack can have a nested aggregation of related stacks (i.e. the allocation
+ * stacks whose memory a free stack released).
+ *
+ * A thread with many small updates aggregates into its own Local maps first and merges them once,
+ * which keeps the concurrent map out of its hot loop. The counts do not depend on the order of the
+ * updates and merges, and the stacks are returned sorted (the most found first, then by stack), so
+ * the results are deterministic.
+ *
+ */
+public class StackAggregation {
+	//key of the entries without a stack (a ConcurrentHashMap has no null keys), as in StackIndex
+	private static final String noStack = "";
+
+	private final ConcurrentHashMap<String, Totals> totals;
+
+	public StackAggregation() {
+		this.totals = new ConcurrentHashMap<String, Totals>();
+	}
+
+	/**
+	 * Adds to the times a stack was found
+	 * @param stack the stack, may be null
+	 * @param times the times found
+	 */
+	public void add(String stack, long times) {
+		getTotals(stack).timesFound.add(times);
+	}
+
+	/**
+	 * @param stack the stack, may be null
+	 * @return the aggregation of the stacks related to a stack, created on first use
+	 */
+	public StackAggregation getRelated(String stack) {
+		Totals stackTotals = getTotals(stack);
+		StackAggregation ret = stackTotals.related;
+		if (ret == null) {
+			synchronized (stackTotals) {
+				ret = stackTotals.related;
+				if (ret == null) {
+					ret = new StackAggregation();
+					stackTotals.related = ret;
+				}
+			}
+		}
+		return ret;
+	}
+
+	private Totals getTotals(String stack) {
+		String key = stack == null ? noStack : stack;
+		Totals ret = totals.get(key);
+		if (ret == null) {
+			ret = new Totals();
+			Totals existing = totals.putIfAbsent(key, ret);
+			if (existing != null) {
+				ret = existing;
+			}
+		}
+		return ret;
+	}
+
+	/**
+	 * @return a new thread local aggregation, to be merged into this one
+	 */
+	public Local newLocal() {
+		return new Local();
+	}
+
+	/**
+	 * @return the number of stacks
+	 */
+	public int size() {
+		return totals.size();
+	}
+
+	/**
+	 * @return the stacks with the times they were found, the most found first
+	 */
+	public List<DTLeakAnalyzer.StackOccurence> getStackOccurences() {
+		List<DTLeakAnalyzer.StackOccurence> ret = new ArrayList<DTLeakAnalyzer.StackOccurence>(totals.size());
+		for (Map.Entry<String, Totals> stackTotals : totals.entrySet()) {
+			ret.add(new DTLeakAnalyzer.StackOccurence(getStack(stackTotals.getKey()), stackTotals.getValue().timesFound.sum()));
+		}
+		sort(ret);
+		return ret;
+	}
+
+	private static String getStack(String key) {
+		return key.equals(noStack) ? null : key;
+	}
+
+	private static void sort(List<DTLeakAnalyzer.StackOccurence> stackOccurences) {
+		Collections.sort(stackOccurences, new Comparator<DTLeakAnalyzer.StackOccurence>() {
+			@Override
+			public int compare(DTLeakAnalyzer.StackOccurence o1, DTLeakAnalyzer.StackOccurence o2) {
+				int ret = Long.compare(o2.getTimesFound(), o1.getTimesFound());
+				if (ret != 0) {
+					return ret;
+				}
+				String stack1 = o1.getStack() == null ? noStack : o1.getStack();
+				String stack2 = o2.getStack() == null ? noStack : o2.getStack();
+				return stack1.compareTo(stack2);
+			}
+		});
+	}
+
+	/**
+	 * The times found of a stack and its related stacks
+	 */
+	private static class Totals {
+		private final LongAdder timesFound = new LongAdder();
+		private volatile StackAggregation related;
+	}
+
+	/**
+	 * Aggregation of a single thread, merged into the shared aggregation by merge()
+	 */
+	public class Local {
+		//times found of each stack, and of its related stacks
+		private final Map<String, long[]> values = new HashMap<String, long[]>();
+		private final Map<String, Map<String, long[]>> relatedValues = new HashMap<String, Map<String, long[]>>();
+
+		private Local() {
+		}
+
+		/**
+		 * Adds to the times a stack was found
+		 * @param stack the stack, may be null
+		 * @param times the times found
+		 */
+		public void add(String stack, long times) {
+			add(values, stack, times);
+		}
+
+		/**
+		 * Adds to the times a stack related to a stack was found
+		 * @param stack the stack, may be null
+		 * @param relatedStack the related stack, may be null
+		 * @param times the times found
+		 */
+		public void addRelated(String stack, String relatedStack, long times) {
+			Map<String, long[]> related = relatedValues.get(stack);
+			if (related == null) {
+				related = new HashMap<String, long[]>();
+				relatedValues.put(stack, related);
+			}
+			add(related, relatedStack, times);
+		}
+
+		private void add(Map<String, long[]> stackValues, String stack, long times) {
+			long[] value = stackValues.get(stack);
+			if (value == null) {
+				value = new long[1];
+				stackValues.put(stack, value);
+			}
+			value[0] += times;
+		}
+
+		/**
+		 * Adds the counts of this thread to the shared aggregation, and clears them
+		 */
+		public void merge() {
+			for (Map.Entry<String, long[]> value : values.entrySet()) {
+				StackAggregation.this.add(value.getKey(), value.getValue()[0]);
+			}
+			for (Map.Entry<String, Map<String, long[]>> related : relatedValues.entrySet()) {
+				StackAggregation relatedAggregation = getRelated(related.getKey());
+				for (Map.Entry<String, long[]> value : related.getValue().entrySet()) {
+					relatedAggregation.add(value.getKey(), value.getValue()[0]);
+				}
+			}
+			values.clear();
+			relatedValues.clear();
+		}
+	}
+}
@@ -0,0 +1,65 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Assigns a dense int id to every distinct stack, so that the per-stack values of the replay
+ * can be kept in primitive arrays indexed by the stack id.
+ *
+ * The index is shared by all replay shards, so an allocation keeps the same stack id when it
+ * is handed over from a shard to another by a realloc. The lookup of a known stack does not lock.
+ *
+ */
+public class StackIndex {
+	//key of the entries without a stack
+	private static final String noStack = "";
+
+	private final ConcurrentHashMap<String, Integer> ids;
+	private final List<String> stacks;
+
+	public StackIndex() {
+		this.ids = new ConcurrentHashMap<String, Integer>();
+		this.stacks = new ArrayList<String>();
+	}
+
+	/**
+	 * Returns the id of a stack, assigning the next id to a new stack
+	 * @param stack the stack, may be null
+	 * @return the id
+	 */
+	public int getId(String stack) {
+		String key = stack == null ? noStack : stack;
+		Integer id = ids.get(key);
+		if (id != null) {
+			return id;
+		}
+		synchronized (stacks) {
+			id = ids.get(key);
+			if (id == null) {
+				id = stacks.size();
+				stacks.add(stack);
+				ids.put(key, id);
+			}
+			return id;
+		}
+	}
+
+	/**
+	 * @param id the id
+	 * @return the stack of an id
+	 */
+	public String getStack(int id) {
+		synchronized (stacks) {
+			return stacks.get(id);
+		}
+	}
+
+	/**
+	 * @return the number of stacks
+	 */
+	public int size() {
+		synchronized (stacks) {
+			return stacks.size();
+		}
+	}
+}
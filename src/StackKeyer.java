@@ -0,0 +1,237 @@
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Builds the stack that keys the analysis from a (normalized) full stack.
+ *
+ * By default the full stack is the key. The stacks can be truncated to the top N frames, or to
+ * the first application frame (the allocation call site), after skipping the leading frames of
+ * the allocator modules (i.e. libc.so.1`malloc, libumem.so.1`umem_alloc). All stacks with the same
+ * truncated stack are then analyzed as one stack, which shrinks the unique stack space.
+ *
+ * The first full stack found for each truncated stack is kept as its exemplar, it is printed on the
+ * reports next to the truncated stack and used to build the merged stack trees.
+ *
+ */
+public class StackKeyer {
+	//separator of the module and the function of a frame
+	private static final char moduleSeparator = '`';
+
+	//allocator modules skipped by default
+	private static final String[] defaultAllocatorModules = {"libc.so.1", "libumem.so.1", "libmtmalloc.so.1", "libCrun.so.1", "libc.so.6", "libstdc++.so.6"};
+
+	//the keyer used by the trace readers
+	private static volatile StackKeyer instance = new StackKeyer(Mode.FULL, 0, getDefaultAllocatorModules());
+
+	/**
+	 * How the stacks are truncated
+	 */
+	public static enum Mode {
+		FULL,
+		TOP,
+		CALL_SITE
+	}
+
+	private final Mode mode;
+	private final int frames;
+	private final Set<String> allocatorModules;
+
+	//exemplar full stack of each truncated stack
+	private final ConcurrentHashMap<String, String> exemplars;
+
+	/**
+	 * new keyer
+	 * @param mode how the stacks are truncated
+	 * @param frames the frames kept, for Mode.TOP
+	 * @param allocatorModules the modules whose leading frames are skipped
+	 */
+	public StackKeyer(Mode mode, int frames, Set<String> allocatorModules) {
+		this.mode = mode;
+		this.frames = mode == Mode.CALL_SITE ? 1 : frames;
+		this.allocatorModules = allocatorModules;
+		this.exemplars = new ConcurrentHashMap<String, String>();
+	}
+
+	/**
+	 * Creates a keyer from the values of the --stack-key and --allocator-modules options
+	 * @param value full, top:<N> or callsite
+	 * @param modules a comma separated list of the allocator modules, or null for the default ones
+	 * @return the keyer
+	 */
+	public static StackKeyer fromOptions(String value, String modules) {
+		Set<String> allocatorModules = getDefaultAllocatorModules();
+		if (modules != null) {
+			allocatorModules = new HashSet<String>();
+			for (String module : modules.split(",")) {
+				if (!module.trim().isEmpty()) {
+					allocatorModules.add(module.trim());
+				}
+			}
+		}
+		if (value == null || value.equals("full")) {
+			return new StackKeyer(Mode.FULL, 0, allocatorModules);
+		} else if (value.equals("callsite")) {
+			return new StackKeyer(Mode.CALL_SITE, 1, allocatorModules);
+		} else if (value.startsWith("top:")) {
+			int frames;
+			try {
+				frames = Integer.parseInt(value.substring("top:".length()));
+			} catch (NumberFormatException e) {
+				frames = 0;
+			}
+			if (frames > 0) {
+				return new StackKeyer(Mode.TOP, frames, allocatorModules);
+			}
+		}
+		throw new IllegalArgumentException("option --stack-key expects full, top:<frames> or callsite, found:"+value);
+	}
+
+	public static StackKeyer getInstance() {
+		return instance;
+	}
+
+	public static void setInstance(StackKeyer keyer) {
+		instance = keyer;
+	}
+
+	private static Set<String> getDefaultAllocatorModules() {
+		return new HashSet<String>(Arrays.asList(defaultAllocatorModules));
+	}
+
+	/**
+	 * @return true if the stacks are truncated
+	 */
+	public boolean isTruncating() {
+		return mode != Mode.FULL;
+	}
+
+	/**
+	 * Returns the stack that keys the analysis and keeps the full stack as its exemplar, if it is the first one.
+	 * Stacks that have only allocator frames are kept as they are.
+	 * @param stack the normalized stack, one frame per line with the top frame first
+	 * @return the truncated stack
+	 */
+	public String key(String stack) {
+		return key(stack, exemplars);
+	}
+
+	/**
+	 * Returns the stack that keys the analysis and keeps the full stack in the given exemplars, if it is the
+	 * first one there (i.e. the exemplars of a part of the trace, kept later with putExemplar in the trace order)
+	 * @param stack the normalized stack, one frame per line with the top frame first
+	 * @param exemplars where the exemplar is kept, null for the exemplars of this keyer
+	 * @return the truncated stack
+	 */
+	public String key(String stack, Map<String, String> exemplars) {
+		if (mode == Mode.FULL) {
+			return stack;
+		}
+		int length = stack.length();
+		int start = 0;
+		//skip the allocator frames
+		while (start < length) {
+			int end = stack.indexOf('\n', start);
+			if (end < 0) {
+				end = length;
+			}
+			if (!isAllocatorFrame(stack, start, end)) {
+				break;
+			}
+			start = end + 1;
+		}
+		if (start >= length) {
+			return stack;
+		}
+		//keep the next frames
+		int end = start;
+		for (int i=0;i<frames && end < length;i++) {
+			int next = stack.indexOf('\n', end == start ? start : end + 1);
+			end = next < 0 ? length : next;
+		}
+		String key = stack.substring(start, end);
+		if (exemplars == null) {
+			exemplars = this.exemplars;
+		}
+		if (!exemplars.containsKey(key)) {
+			exemplars.putIfAbsent(key, stack);
+		}
+		return key;
+	}
+
+	/**
+	 * @param key the truncated stack
+	 * @return the exemplar full stack of a truncated stack, or the stack itself if none was kept
+	 */
+	public String getExemplar(String key) {
+		String exemplar = exemplars.get(key);
+		return exemplar == null ? key : exemplar;
+	}
+
+	/**
+	 * @return the number of exemplars kept
+	 */
+	public int getExemplarCount() {
+		return exemplars.size();
+	}
+
+	/**
+	 * Keeps the exemplar of a truncated stack read from a summary, if none was kept yet
+	 * @param key the truncated stack
+	 * @param exemplar the exemplar full stack
+	 */
+	public void putExemplar(String key, String exemplar) {
+		exemplars.putIfAbsent(key, exemplar);
+	}
+
+	/**
+	 * @param key the truncated stack
+	 * @return the stack as printed on the reports, followed by its exemplar full stack when it was truncated
+	 */
+	public String describe(String key) {
+		String exemplar = exemplars.get(key);
+		if (exemplar == null || exemplar.equals(key)) {
+			return key;
+		}
+		return key+"\nexemplar full stack:\n"+exemplar;
+	}
+
+	/**
+	 * @return a description of the truncation, for the reports
+	 */
+	public String getDescription() {
+		switch (mode) {
+		case TOP : {
+			return "top "+frames+" frames after the allocator frames";
+		}
+		case CALL_SITE : {
+			return "allocation call site (first frame after the allocator frames)";
+		}
+		default : {
+			return "full stack";
+		}
+		}
+	}
+
+	/**
+	 * @return the frames kept after the allocator frames, 0 if the stacks are not truncated
+	 */
+	public int getKeyFrames() {
+		return mode == Mode.FULL ? 0 : frames;
+	}
+
+	/**
+	 * @param frame a normalized frame
+	 * @return true if the frame is a frame of an allocator module
+	 */
+	public boolean isAllocatorFrame(String frame) {
+		return isAllocatorFrame(frame, 0, frame.length());
+	}
+
+	private boolean isAllocatorFrame(String stack, int start, int end) {
+		int separator = stack.indexOf(moduleSeparator, start);
+		return separator > start && separator < end && allocatorModules.contains(stack.substring(start, separator));
+	}
+}
@@ -0,0 +1,49 @@
+import java.io.IOException;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+
+/**
+ * Decodes the walltimestamps of the trace entries (dtrace %Y format, i.e. 2018 Nov  8 08:03:54)
+ * to seconds. Consecutive entries almost always share the same second, so the last decoded
+ * timestamp is kept.
+ *
+ */
+public class TimestampDecoder {
+	private final SimpleDateFormat timestampFormat;
+	private String lastTimestampText;
+	private long lastTimestamp;
+
+	public TimestampDecoder() {
+		this.timestampFormat = new SimpleDateFormat("yyyy MMM d HH:mm:ss", Locale.US);
+	}
+
+	/**
+	 * Decodes a trace walltimestamp to seconds
+	 * @param timestampText the timestamp as printed by dtrace
+	 * @return the timestamp in seconds
+	 * @throws IOException if it cannot be decoded
+	 */
+	public long decode(String timestampText) throws IOException {
+		if (timestampText.equals(lastTimestampText)) {
+			return lastTimestamp;
+		}
+		try {
+			lastTimestamp = timestampFormat.parse(timestampText.trim().replaceAll(" +", " ")).getTime() / 1000;
+		} catch (ParseException e) {
+			throw new IOException("cannot decode timestamp:"+timestampText);
+		}
+		lastTimestampText = timestampText;
+		return lastTimestamp;
+	}
+
+	/**
+	 * Formats seconds as a timestamp in the trace format
+	 * @param seconds the timestamp in seconds
+	 * @return the formatted timestamp
+	 */
+	public String format(long seconds) {
+		return timestampFormat.format(new Date(seconds * 1000));
+	}
+}
@@ -0,0 +1,688 @@
+import java.io.BufferedWriter;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.GregorianCalendar;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Generates synthetic traces in the output formats of the D scripts, for scale testing
+ * and for checking the findings of the analyzer:
+ * - trace-memalloc.d (memalloc)
+ * - trace-memalloc-proc.d (proc)
+ * - trace-procmem-increase.d (brk)
+ *
+ * Known issues are injected in the traces: memory leaks (allocations from dedicated stacks that are
+ * never freed), double frees and frees of memory that was never allocated. All other allocations
+ * are freed before the end of the trace, so the findings of the analyzer can be compared exactly
+ * with the ground truth manifest that is written next to the trace (<output file>.manifest).
+ *
+ * The generated stacks only depend on the seed, the number of stacks and the stack depth,
+ * so memalloc and proc traces generated with the same values can be combined in -p mode.
+ *
+ */
+public class TraceGenerator {
+	//allocator frames
+	private static final String mallocFrame = "libc.so.1`malloc";
+	private static final String callocFrame = "libc.so.1`calloc";
+	private static final String reallocFrame = "libc.so.1`realloc";
+	private static final String freeFrame = "libc.so.1`free";
+	private static final String brkFrame = "libc.so.1`_brk_unlocked";
+	private static final String sbrkFrame = "libc.so.1`sbrk";
+
+	//frame indentation of ustack()
+	private static final String frameIndentation = "              ";
+
+	//settings
+	private final long seed;
+	private final int stackCount;
+	private final int stackDepth;
+	private final int threads;
+	private final int leakStackCount;
+	private final long leaks;
+	private final long doubleFrees;
+	private final long wrongFrees;
+	private final int maxLiveAllocations;
+	private final double reallocRatio;
+	private final long entriesPerSecond;
+
+	private final Random random;
+
+	//generated stacks (normalized, top level frame first without the return offset)
+	private final List<String> allocationStacks;
+	private final List<String> reallocStacks;
+	private final List<String> freeStacks;
+	private final List<String> leakStacks;
+	private final List<String> doubleFreeStacks;
+	private final List<String> wrongFreeStacks;
+
+	//top level frame return offsets, as printed on the traces
+	private final Map<String, String> topFrameOffsets;
+
+	//timestamps
+	private final Calendar calendar;
+	private long currentSecond = -1;
+	private String currentTimestamp;
+
+	public static void printArgs() {
+		System.out.println("arguments: <type> <output file> [options]");
+		System.out.println("<type> = memalloc, proc or brk. A ground truth manifest is written to <output file>.manifest");
+		System.out.println("options:");
+		System.out.println("  --entries=<n>          number of trace entries (default 100000)");
+		System.out.println("  --size=<n>[K|M|G]      approximate trace size, instead of --entries");
+		System.out.println("  --stacks=<n>           unique (normal) allocation stacks (default 1000)");
+		System.out.println("  --depth=<n>            maximum stack depth, up to 50 (default 50)");
+		System.out.println("  --threads=<n>          number of threads (default 8)");
+		System.out.println("  --leak-stacks=<n>      stacks that leak memory (default 5)");
+		System.out.println("  --leaks=<n>            leaked allocations (default 0.1% of the entries)");
+		System.out.println("  --double-frees=<n>     injected double frees (default 0.01% of the entries)");
+		System.out.println("  --wrong-frees=<n>      injected frees of unallocated memory (default 0.01% of the entries)");
+		System.out.println("  --live=<n>             maximum live (not leaked) allocations (default 10000)");
+		System.out.println("  --realloc-ratio=<r>    share of reallocs among the allocations (default 0.1)");
+		System.out.println("  --rate=<n>             trace entries per second (default 20000)");
+		System.out.println("  --seed=<n>             random seed (default 1)");
+	}
+
+	/**
+	 * Entry point of the generator
+	 * @param args arguments: <type> <output file> [options]
+	 */
+	public static void main(String[] args) throws IOException {
+		AnalyzerOptions options;
+		try {
+			options = AnalyzerOptions.parse(args);
+		} catch (IllegalArgumentException e) {
+			System.out.println(e.getMessage());
+			printArgs();
+			return;
+		}
+		String[] arguments = options.getArguments();
+		if (arguments.length != 2) {
+			printArgs();
+			return;
+		}
+
+		TraceGenerator generator;
+		long entries;
+		try {
+			generator = new TraceGenerator(options);
+			if (options.isSet("size")) {
+				entries = Math.max(1, options.getSize("size", 0) / generator.getAverageEntrySize());
+			} else {
+				entries = options.getLong("entries", 100000);
+			}
+		} catch (IllegalArgumentException e) {
+			System.out.println(e.getMessage());
+			printArgs();
+			return;
+		}
+
+		System.out.println("Generating "+arguments[0]+" trace "+arguments[1]+" with "+entries+" entries");
+		if (arguments[0].equals("memalloc")) {
+			generator.generateMemoryAllocatorTrace(arguments[1], entries);
+		} else if (arguments[0].equals("proc")) {
+			generator.generateProcessedTrace(arguments[1], entries);
+		} else if (arguments[0].equals("brk")) {
+			generator.generateBrkTrace(arguments[1], entries);
+		} else {
+			printArgs();
+			return;
+		}
+		System.out.println("Ground truth written to "+arguments[1]+".manifest");
+	}
+
+	/**
+	 * new generator
+	 * @param options the generator options
+	 */
+	public TraceGenerator(AnalyzerOptions options) {
+		seed = options.getLong("seed", 1);
+		stackCount = options.getInt("stacks", 1000);
+		stackDepth = options.getInt("depth", 50);
+		threads = options.getInt("threads", 8);
+		leakStackCount = options.getInt("leak-stacks", 5);
+		leaks = options.getLong("leaks", -1);
+		doubleFrees = options.getLong("double-frees", -1);
+		wrongFrees = options.getLong("wrong-frees", -1);
+		maxLiveAllocations = options.getInt("live", 10000);
+		reallocRatio = options.getDouble("realloc-ratio", 0.1);
+		entriesPerSecond = options.getLong("rate", 20000);
+
+		if (stackCount < 1 || stackDepth < 4 || stackDepth > 50 || threads < 1 || leakStackCount < 1 || maxLiveAllocations < 1 || entriesPerSecond < 1) {
+			throw new IllegalArgumentException("invalid generator options: stacks >= 1, 4 <= depth <= 50, threads >= 1, leak-stacks >= 1, live >= 1, rate >= 1");
+		}
+
+		random = new Random(seed);
+		topFrameOffsets = new LinkedHashMap<String, String>();
+		allocationStacks = new ArrayList<String>();
+		reallocStacks = new ArrayList<String>();
+		freeStacks = new ArrayList<String>();
+		leakStacks = new ArrayList<String>();
+		doubleFreeStacks = new ArrayList<String>();
+		wrongFreeStacks = new ArrayList<String>();
+
+		//the stacks only depend on the seed, the number of stacks and the depth
+		for (int i=0;i<stackCount;i++) {
+			String callers = callers("alloc", i);
+			allocationStacks.add(stack(i % 5 == 0 ? callocFrame : mallocFrame, callers));
+			reallocStacks.add(stack(reallocFrame, callers));
+		}
+		for (int i=0;i<Math.max(1, stackCount/4);i++) {
+			freeStacks.add(stack(freeFrame, callers("release", i)));
+		}
+		for (int i=0;i<leakStackCount;i++) {
+			leakStacks.add(stack(mallocFrame, callers("leak", i)));
+		}
+		for (int i=0;i<2;i++) {
+			doubleFreeStacks.add(stack(freeFrame, callers("dfree", i)));
+		}
+		for (int i=0;i<3;i++) {
+			wrongFreeStacks.add(stack(freeFrame, callers("wfree", i)));
+		}
+
+		calendar = new GregorianCalendar(2018, Calendar.NOVEMBER, 8, 8, 3, 54);
+	}
+
+	/**
+	 * Creates the caller frames of a stack. Stacks of a category share their outer frames
+	 * like a call tree, the frame closest to the allocator is unique.
+	 */
+	private String callers(String category, int index) {
+		int depth = 4 + random.nextInt(stackDepth - 3);
+		StringBuilder sb = new StringBuilder();
+		sb.append("libapp.so.1`").append(category).append("_site_").append(index).append("+0x").append(Integer.toHexString(16 + random.nextInt(512))).append('\n');
+		for (int d=depth-4;d>=0;d--) {
+			int branch = d >= 24 ? index : index % (1 << (d+1));
+			sb.append(d % 3 == 0 ? "app`" : "libapp.so.1`").append(category).append("_level").append(d).append('_').append(branch);
+			sb.append("+0x").append(Integer.toHexString(16 + (branch * 37 + d) % 1024)).append('\n');
+		}
+		sb.append("app`main+0x5c\n");
+		sb.append("app`_start+0x7c");
+		return sb.toString();
+	}
+
+	private String stack(String allocatorFrame, String callers) {
+		String stack = allocatorFrame+"\n"+callers;
+		topFrameOffsets.put(stack, "+0x"+Integer.toHexString(8 + 4 * random.nextInt(64)));
+		return stack;
+	}
+
+	/**
+	 * Writes a stack the way ustack() prints it
+	 */
+	private void writeStack(StringBuilder sb, String stack) {
+		int end = stack.indexOf('\n');
+		sb.append(frameIndentation).append(stack, 0, end).append(topFrameOffsets.get(stack)).append('\n');
+		int start = end+1;
+		while ((end = stack.indexOf('\n', start)) != -1) {
+			sb.append(frameIndentation).append(stack, start, end).append('\n');
+			start = end+1;
+		}
+		sb.append(frameIndentation).append(stack, start, stack.length()).append('\n');
+	}
+
+	/**
+	 * Returns the dtrace %Y timestamp of an entry
+	 */
+	private String getTimestamp(long entry) {
+		long second = entry / entriesPerSecond;
+		if (second != currentSecond) {
+			Calendar c = (Calendar)calendar.clone();
+			c.add(Calendar.SECOND, (int)second);
+			currentTimestamp = String.format(Locale.US, "%1$tY %1$tb %2$2d %1$tH:%1$tM:%1$tS", c, c.get(Calendar.DAY_OF_MONTH));
+			currentSecond = second;
+		}
+		return currentTimestamp;
+	}
+
+	/**
+	 * Returns the approximate size of a trace entry, used to convert a size to a number of entries
+	 */
+	private long getAverageEntrySize() {
+		long stackBytes = 0;
+		for (String stack : allocationStacks) {
+			stackBytes += stack.length() + stack.split("\n").length * (frameIndentation.length()+1);
+		}
+		return 64 + stackBytes / allocationStacks.size();
+	}
+
+	/**
+	 * Receives the generated memory allocator events
+	 */
+	private static interface MemoryAllocatorEventSink {
+		void allocation(String type, long entry, int thread, long previousAddress, long address, long size, String stack) throws IOException;
+		void free(long entry, int thread, long address, String stack) throws IOException;
+	}
+
+	/**
+	 * Ground truth of the memory allocator traces
+	 */
+	private static class MemoryAllocatorGroundTruth {
+		private long mallocCalls;
+		private long callocCalls;
+		private long reallocCalls;
+		private long freeCalls;
+		private long reallocMoves;
+		private final Map<String, Long> leaks = new LinkedHashMap<String, Long>();
+		private final Map<String, Long> doubleFrees = new LinkedHashMap<String, Long>();
+		private final Map<String, Long> wrongFrees = new LinkedHashMap<String, Long>();
+
+		private static void count(Map<String, Long> counts, String stack) {
+			Long count = counts.get(stack);
+			counts.put(stack, count == null ? 1 : count+1);
+		}
+
+		private static long total(Map<String, Long> counts) {
+			long total = 0;
+			for (long count : counts.values()) {
+				total += count;
+			}
+			return total;
+		}
+	}
+
+	/**
+	 * Generates the memory allocator events. Issues are spread evenly over the trace,
+	 * the remaining live allocations are freed at the end of the trace.
+	 * @return the ground truth
+	 */
+	private MemoryAllocatorGroundTruth generateMemoryAllocatorEvents(long entries, MemoryAllocatorEventSink sink) throws IOException {
+		MemoryAllocatorGroundTruth truth = new MemoryAllocatorGroundTruth();
+		long leakCount = leaks >= 0 ? leaks : Math.max(1, entries / 1000);
+		long doubleFreeCount = doubleFrees >= 0 ? doubleFrees : Math.max(1, entries / 10000);
+		long wrongFreeCount = wrongFrees >= 0 ? wrongFrees : Math.max(1, entries / 10000);
+
+		//live allocations, swap-removed
+		long[] liveAddresses = new long[maxLiveAllocations];
+		int[] liveStacks = new int[maxLiveAllocations];
+		boolean[] liveReallocated = new boolean[maxLiveAllocations];
+		int live = 0;
+
+		//recently freed addresses, candidates for double frees (addresses are never reused)
+		long[] freedAddresses = new long[1024];
+		int freed = 0;
+
+		//allocations grow upwards, unallocated memory is below the heap
+		long nextAddress = 0x8100000L;
+		long nextUnallocatedAddress = 0x10000L;
+
+		long injectedLeaks = 0;
+		long injectedDoubleFrees = 0;
+		long injectedWrongFrees = 0;
+
+		long entry = 0;
+		for (long i=0;i<entries;i++) {
+			int thread = 1 + random.nextInt(threads);
+
+			//issues are injected on evenly spaced entries
+			if (injectedLeaks < (i+1) * leakCount / entries) {
+				String stack = leakStacks.get(random.nextInt(leakStacks.size()));
+				nextAddress += 16 * (1 + random.nextInt(16));
+				sink.allocation("malloc", entry++, thread, 0, nextAddress, 8 + random.nextInt(1024), stack);
+				truth.mallocCalls++;
+				MemoryAllocatorGroundTruth.count(truth.leaks, stack);
+				injectedLeaks++;
+				continue;
+			}
+			if (injectedDoubleFrees < (i+1) * doubleFreeCount / entries && freed > 0) {
+				String stack = doubleFreeStacks.get(random.nextInt(doubleFreeStacks.size()));
+				//each freed address is double freed once
+				int index = random.nextInt(freed);
+				long address = freedAddresses[index];
+				freedAddresses[index] = freedAddresses[--freed];
+				sink.free(entry++, thread, address, stack);
+				truth.freeCalls++;
+				MemoryAllocatorGroundTruth.count(truth.doubleFrees, stack);
+				injectedDoubleFrees++;
+				continue;
+			}
+			if (injectedWrongFrees < (i+1) * wrongFreeCount / entries) {
+				String stack = wrongFreeStacks.get(random.nextInt(wrongFreeStacks.size()));
+				nextUnallocatedAddress += 16;
+				sink.free(entry++, thread, nextUnallocatedAddress, stack);
+				truth.freeCalls++;
+				MemoryAllocatorGroundTruth.count(truth.wrongFrees, stack);
+				injectedWrongFrees++;
+				continue;
+			}
+
+			//normal activity
+			double r = random.nextDouble();
+			boolean allocate = live == 0 || (live < maxLiveAllocations && r < 0.5);
+			if (allocate) {
+				//the first allocations go through all stacks, so each stack is freed at least once
+				int stackIndex = i < stackCount ? (int)i : random.nextInt(stackCount);
+				String stack = allocationStacks.get(stackIndex);
+				nextAddress += 16 * (1 + random.nextInt(16));
+				long size = 1 + random.nextInt(random.nextInt(8) == 0 ? 65536 : 512);
+				if (stack.startsWith(callocFrame)) {
+					sink.allocation("calloc", entry++, thread, 0, nextAddress, size, stack);
+					truth.callocCalls++;
+				} else {
+					sink.allocation("malloc", entry++, thread, 0, nextAddress, size, stack);
+					truth.mallocCalls++;
+				}
+				liveAddresses[live] = nextAddress;
+				liveStacks[live] = stackIndex;
+				liveReallocated[live] = false;
+				live++;
+			} else if (random.nextDouble() < reallocRatio) {
+				int index = random.nextInt(live);
+				long previousAddress = liveAddresses[index];
+				long address = previousAddress;
+				if (random.nextBoolean()) {
+					//the realloc moved the memory
+					nextAddress += 16 * (1 + random.nextInt(64));
+					address = nextAddress;
+					truth.reallocMoves++;
+				}
+				sink.allocation("realloc", entry++, thread, previousAddress, address, 1 + random.nextInt(131072), reallocStacks.get(liveStacks[index]));
+				truth.reallocCalls++;
+				liveAddresses[index] = address;
+				liveReallocated[index] = true;
+			} else {
+				int index = random.nextInt(live);
+				freeLive(sink, truth, entry++, thread, liveAddresses[index], liveStacks[index]);
+				if (freed < freedAddresses.length) {
+					freedAddresses[freed++] = liveAddresses[index];
+				} else {
+					freedAddresses[random.nextInt(freed)] = liveAddresses[index];
+				}
+				live--;
+				liveAddresses[index] = liveAddresses[live];
+				liveStacks[index] = liveStacks[live];
+				liveReallocated[index] = liveReallocated[live];
+			}
+		}
+
+		//free the remaining live allocations
+		for (int i=0;i<live;i++) {
+			freeLive(sink, truth, entry++, 1 + random.nextInt(threads), liveAddresses[i], liveStacks[i]);
+		}
+		return truth;
+	}
+
+	private void freeLive(MemoryAllocatorEventSink sink, MemoryAllocatorGroundTruth truth, long entry, int thread, long address, int stackIndex) throws IOException {
+		sink.free(entry, thread, address, freeStacks.get(stackIndex % freeStacks.size()));
+		truth.freeCalls++;
+	}
+
+	/**
+	 * Generates a trace-memalloc.d trace and its ground truth manifest
+	 * @param outFile the trace file
+	 * @param entries the number of trace entries, before the final frees of the live allocations
+	 * @throws IOException if the files cannot be written
+	 */
+	public void generateMemoryAllocatorTrace(String outFile, long entries) throws IOException {
+		try (final Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(outFile), StandardCharsets.UTF_8), 1 << 20)) {
+			final StringBuilder sb = new StringBuilder(4096);
+			MemoryAllocatorGroundTruth truth = generateMemoryAllocatorEvents(entries, new MemoryAllocatorEventSink() {
+				@Override
+				public void allocation(String type, long entry, int thread, long previousAddress, long address, long size, String stack) throws IOException {
+					sb.setLength(0);
+					sb.append("<__").append(entry).append(';').append(getTimestamp(entry)).append(';').append(thread).append(';').append(type).append(";0x");
+					if (type.equals("realloc")) {
+						sb.append(Long.toHexString(previousAddress)).append(";0x");
+					}
+					sb.append(Long.toHexString(address)).append(';').append(size).append(";\n");
+					writeStack(sb, stack);
+					sb.append("__>\n\n");
+					writer.append(sb);
+				}
+
+				@Override
+				public void free(long entry, int thread, long address, String stack) throws IOException {
+					sb.setLength(0);
+					sb.append("<__").append(entry).append(';').append(getTimestamp(entry)).append(';').append(thread).append(";free;0x").append(Long.toHexString(address)).append(";\n");
+					writeStack(sb, stack);
+					sb.append("__>\n\n");
+					writer.append(sb);
+				}
+			});
+			writer.write("== FINISHED ==\n\n");
+
+			try (PrintWriter manifest = new PrintWriter(outFile+".manifest", "UTF-8")) {
+				manifest.println("# ground truth of the synthetic trace-memalloc.d trace "+outFile);
+				manifest.println("type=memalloc");
+				printSettings(manifest);
+				manifest.println("malloc="+truth.mallocCalls);
+				manifest.println("calloc="+truth.callocCalls);
+				manifest.println("realloc="+truth.reallocCalls);
+				manifest.println("realloc.moves="+truth.reallocMoves);
+				manifest.println("free="+truth.freeCalls);
+				manifest.println("leaks="+MemoryAllocatorGroundTruth.total(truth.leaks));
+				manifest.println("leak.stacks="+truth.leaks.size());
+				manifest.println("double.frees="+MemoryAllocatorGroundTruth.total(truth.doubleFrees));
+				manifest.println("double.free.stacks="+truth.doubleFrees.size());
+				manifest.println("wrong.frees="+MemoryAllocatorGroundTruth.total(truth.wrongFrees));
+				manifest.println("wrong.free.stacks="+truth.wrongFrees.size());
+				manifest.println("# the analyzer reports double frees also as frees of unallocated memory");
+				manifest.println("expected.unallocated.frees="+(MemoryAllocatorGroundTruth.total(truth.wrongFrees)+MemoryAllocatorGroundTruth.total(truth.doubleFrees)));
+				manifest.println("# all other allocations are freed, so the leaks are the only memory that is not freed");
+				manifest.println("expected.unfreed.allocations="+MemoryAllocatorGroundTruth.total(truth.leaks));
+				printStacks(manifest, "leak stacks", truth.leaks);
+				printStacks(manifest, "double free stacks", truth.doubleFrees);
+				printStacks(manifest, "wrong free stacks", truth.wrongFrees);
+			}
+		}
+	}
+
+	/**
+	 * Generates a trace-memalloc-proc.d (aggregated) trace and its ground truth manifest.
+	 * The same events as for a memalloc trace are generated and aggregated per stack.
+	 * @param outFile the trace file
+	 * @param entries the number of generated allocator events
+	 * @throws IOException if the files cannot be written
+	 */
+	public void generateProcessedTrace(String outFile, long entries) throws IOException {
+		final Map<String, Long> allocations = new LinkedHashMap<String, Long>();
+		final Map<String, Long> deallocations = new LinkedHashMap<String, Long>();
+		MemoryAllocatorGroundTruth truth = generateMemoryAllocatorEvents(entries, new MemoryAllocatorEventSink() {
+			@Override
+			public void allocation(String type, long entry, int thread, long previousAddress, long address, long size, String stack) {
+				if (type.equals("realloc")) {
+					//the D script counts a realloc as a de-allocation and an allocation
+					MemoryAllocatorGroundTruth.count(deallocations, stack);
+				}
+				MemoryAllocatorGroundTruth.count(allocations, stack);
+			}
+
+			@Override
+			public void free(long entry, int thread, long address, String stack) {
+				MemoryAllocatorGroundTruth.count(deallocations, stack);
+			}
+		});
+
+		long created = truth.mallocCalls + truth.callocCalls;
+		long deleted = truth.freeCalls;
+		try (Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(outFile), StandardCharsets.UTF_8), 1 << 20)) {
+			StringBuilder sb = new StringBuilder();
+			sb.append("== FINISHED ==\n\n== allocation stacks ==\n\n");
+			writeAggregation(writer, sb, allocations);
+			sb.append("\n== deallocation stacks ==\n\n");
+			writeAggregation(writer, sb, deallocations);
+			sb.append("\n== mem allocations vs deletions ==\n\n");
+			sb.append("  created                                                    ").append(created).append('\n');
+			sb.append("  deleted                                                    ").append(deleted).append('\n');
+			sb.append("number of allocations - number of deallocations: ").append(created - deleted);
+			writer.append(sb);
+		}
+
+		try (PrintWriter manifest = new PrintWriter(outFile+".manifest", "UTF-8")) {
+			manifest.println("# ground truth of the synthetic trace-memalloc-proc.d trace "+outFile);
+			manifest.println("# the relationships must come from memalloc traces generated with the same seed, stacks and depth");
+			manifest.println("type=proc");
+			printSettings(manifest);
+			manifest.println("allocation.stacks="+allocations.size());
+			manifest.println("deallocation.stacks="+deallocations.size());
+			manifest.println("created="+created);
+			manifest.println("deleted="+deleted);
+			manifest.println("leaks="+MemoryAllocatorGroundTruth.total(truth.leaks));
+			manifest.println("# the leak stacks are the expected suspect memory leak stacks, the double free and wrong free stacks the expected unknown free stacks");
+			printStacks(manifest, "leak stacks", truth.leaks);
+			printStacks(manifest, "double free stacks", truth.doubleFrees);
+			printStacks(manifest, "wrong free stacks", truth.wrongFrees);
+		}
+	}
+
+	/**
+	 * Writes an aggregation the way printa() prints a stack aggregation
+	 */
+	private void writeAggregation(Writer writer, StringBuilder sb, Map<String, Long> counts) throws IOException {
+		for (Map.Entry<String, Long> count : counts.entrySet()) {
+			sb.append('\n');
+			writeStack(sb, count.getKey());
+			sb.append("           ").append(count.getValue()).append('\n');
+			if (sb.length() > (1 << 16)) {
+				writer.append(sb);
+				sb.setLength(0);
+			}
+		}
+	}
+
+	/**
+	 * Generates a trace-procmem-increase.d trace and its ground truth manifest
+	 * @param outFile the trace file
+	 * @param entries the number of trace entries
+	 * @throws IOException if the files cannot be written
+	 */
+	public void generateBrkTrace(String outFile, long entries) throws IOException {
+		//per stack number of calls and break address change
+		Map<String, long[]> increases = new LinkedHashMap<String, long[]>();
+		Map<String, long[]> decreases = new LinkedHashMap<String, long[]>();
+		Map<String, long[]> failed = new LinkedHashMap<String, long[]>();
+		long neutral = 0;
+
+		//brk stacks are allocation stacks with the break frames on top
+		List<String> brkStacks = new ArrayList<String>();
+		List<String> sbrkStacks = new ArrayList<String>();
+		for (int i=0;i<Math.max(1, stackCount/10);i++) {
+			String callers = allocationStacks.get(i).substring(allocationStacks.get(i).indexOf('\n')+1);
+			brkStacks.add(stack(brkFrame, sbrkFrame+"+0x34\n"+callers));
+			sbrkStacks.add(stack(sbrkFrame, callers));
+		}
+
+		long breakAddress = 0x8100000L;
+		long initialBreakAddress = breakAddress;
+		try (Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(outFile), StandardCharsets.UTF_8), 1 << 20)) {
+			StringBuilder sb = new StringBuilder(4096);
+			for (long entry=0;entry<entries;entry++) {
+				sb.setLength(0);
+				int thread = 1 + random.nextInt(threads);
+				int stackIndex = random.nextInt(brkStacks.size());
+				//mostly growth, with some shrinks, queries and failures
+				long change = 4096L * (random.nextInt(10) - 2);
+				boolean failure = random.nextInt(200) == 0;
+				if (entry == 0 || random.nextBoolean()) {
+					String stack = brkStacks.get(stackIndex);
+					long newBreakAddress = breakAddress + change;
+					sb.append("<__").append(entry).append(';').append(getTimestamp(entry)).append(';').append(thread).append(";brk;0x").append(Long.toHexString(newBreakAddress)).append(';').append(failure ? -1 : 0).append(";\n");
+					writeStack(sb, stack);
+					if (entry == 0) {
+						//the first brk call establishes the break address
+						breakAddress = failure ? breakAddress : newBreakAddress;
+						initialBreakAddress = breakAddress;
+					} else if (failure) {
+						count(failed, stack, change);
+					} else {
+						breakAddress = newBreakAddress;
+						neutral += countChange(increases, decreases, stack, change);
+					}
+				} else {
+					String stack = sbrkStacks.get(stackIndex);
+					sb.append("<__").append(entry).append(';').append(getTimestamp(entry)).append(';').append(thread).append(";sbrk;");
+					sb.append(failure ? "-0x1" : "0x"+Long.toHexString(breakAddress)).append(';').append(change).append(";\n");
+					writeStack(sb, stack);
+					if (failure) {
+						count(failed, stack, change);
+					} else {
+						breakAddress += change;
+						neutral += countChange(increases, decreases, stack, change);
+					}
+				}
+				sb.append("__>\n\n");
+				writer.append(sb);
+			}
+		}
+
+		try (PrintWriter manifest = new PrintWriter(outFile+".manifest", "UTF-8")) {
+			manifest.println("# ground truth of the synthetic trace-procmem-increase.d trace "+outFile);
+			manifest.println("# the first brk call establishes the break address and is not counted");
+			manifest.println("type=brk");
+			printSettings(manifest);
+			manifest.println("increase.calls="+total(increases, 0));
+			manifest.println("increase.bytes="+total(increases, 1));
+			manifest.println("decrease.calls="+total(decreases, 0));
+			manifest.println("decrease.bytes="+total(decreases, 1));
+			manifest.println("neutral.calls="+neutral);
+			manifest.println("failed.calls="+total(failed, 0));
+			manifest.println("initial.break=0x"+Long.toHexString(initialBreakAddress));
+			manifest.println("final.break=0x"+Long.toHexString(breakAddress));
+			manifest.println("growth.bytes="+(breakAddress - initialBreakAddress));
+			printBrkStacks(manifest, "increase stacks", increases);
+			printBrkStacks(manifest, "decrease stacks", decreases);
+			printBrkStacks(manifest, "failed stacks", failed);
+		}
+	}
+
+	private static long countChange(Map<String, long[]> increases, Map<String, long[]> decreases, String stack, long change) {
+		if (change > 0) {
+			count(increases, stack, change);
+		} else if (change < 0) {
+			count(decreases, stack, change);
+		} else {
+			return 1;
+		}
+		return 0;
+	}
+
+	private static void count(Map<String, long[]> counts, String stack, long change) {
+		long[] count = counts.get(stack);
+		if (count == null) {
+			count = new long[2];
+			counts.put(stack, count);
+		}
+		count[0]++;
+		count[1] += change;
+	}
+
+	private static long total(Map<String, long[]> counts, int field) {
+		long total = 0;
+		for (long[] count : counts.values()) {
+			total += count[field];
+		}
+		return total;
+	}
+
+	private void printSettings(PrintWriter manifest) {
+		manifest.println("seed="+seed);
+		manifest.println("stacks="+stackCount);
+		manifest.println("depth="+stackDepth);
+		manifest.println("threads="+threads);
+	}
+
+	private static void printStacks(PrintWriter manifest, String title, Map<String, Long> counts) {
+		manifest.println("\n== "+title+" ==\n");
+		for (Map.Entry<String, Long> count : counts.entrySet()) {
+			manifest.println("count="+count.getValue());
+			manifest.println(count.getKey());
+		}
+	}
+
+	private static void printBrkStacks(PrintWriter manifest, String title, Map<String, long[]> counts) {
+		manifest.println("\n== "+title+" ==\n");
+		for (Map.Entry<String, long[]> count : counts.entrySet()) {
+			manifest.println("count="+count.getValue()[0]+" bytes="+count.getValue()[1]);
+			manifest.println(count.getKey());
+		}
+	}
+}
@@ -0,0 +1,348 @@
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reads and decodes the entries of a trace file on a pipeline of threads, and returns them in the trace order.
+ *
+ * A reader thread fills byte chunks from the trace and cuts each chunk after the last line that ends an
+ * entry, the rest of the chunk is carried over to the next chunk. The chunks are dealt round robin to N
+ * decoder threads, which decode each chunk into a batch of entries. The thread that replays the entries
+ * takes the batches from the decoders in the same round robin order, so the entries come out in the trace
+ * order while reading, decoding and replaying overlap.
+ *
+ * The stages are connected by single producer / single consumer ring buffers, one from the reader to each
+ * decoder, one from each decoder to the replay, and one from the replay back to the reader with the consumed
+ * chunks for reuse. The chunks are allocated once per decoder, so a reader that runs ahead of the replay
+ * waits for a chunk to be returned (backpressure).
+ *
+ * The decoders keep the exemplars of the truncated stacks (see StackKeyer) of each chunk apart, they are
+ * kept by the replay when it takes the chunk, so the first full stack in the trace order is the exemplar as
+ * with a single thread. A failure of the reader or of a decoder is thrown by next() at its place in the trace.
+ *
+ */
+public class TracePipeline<T> implements Closeable {
+	//bytes of each chunk, a chunk grows for an entry that does not fit
+	private static final int chunkSize = 1 << 18;
+
+	//chunks of each decoder
+	private static final int chunksPerDecoder = 4;
+
+	/**
+	 * Decodes the entries of a chunk
+	 */
+	public interface Decoder<T> {
+		/**
+		 * reads the next entry
+		 * @param br the reader of the chunk
+		 * @param exemplars where the exemplars of the truncated stacks of the chunk are kept
+		 * @return the entry, null at the end of the chunk
+		 * @throws IOException if the entry cannot be decoded
+		 */
+		T read(BufferedReader br, Map<String, String> exemplars) throws IOException;
+	}
+
+	private final InputStream in;
+	private final Decoder<T> decoder;
+	private final byte[] entryEnd;
+
+	//ring buffers from the reader to the decoders, from the decoders to the replay and back to the reader
+	private final List<SpscRingBuffer<Chunk<T>>> decoderInputs;
+	private final List<SpscRingBuffer<Chunk<T>>> replayInputs;
+	private final List<SpscRingBuffer<Chunk<T>>> freeChunks;
+
+	private final Thread reader;
+	private final Thread[] decoders;
+
+	//state of the replay
+	private Chunk<T> current;
+	private int position;
+	private int nextDecoder;
+	private boolean finished;
+
+	/**
+	 * new pipeline, starts reading and decoding the trace
+	 * @param in the trace, closed by close()
+	 * @param decoderCount the decoder threads (0 = number of processors)
+	 * @param entryEnd the char sequence that ends an entry
+	 * @param decoder decodes the entries
+	 */
+	public TracePipeline(InputStream in, int decoderCount, String entryEnd, Decoder<T> decoder) {
+		if (decoderCount <= 0) {
+			decoderCount = Runtime.getRuntime().availableProcessors();
+		}
+		this.in = in;
+		this.decoder = decoder;
+		this.entryEnd = entryEnd.getBytes(StandardCharsets.US_ASCII);
+		decoderInputs = new ArrayList<SpscRingBuffer<Chunk<T>>>(decoderCount);
+		replayInputs = new ArrayList<SpscRingBuffer<Chunk<T>>>(decoderCount);
+		freeChunks = new ArrayList<SpscRingBuffer<Chunk<T>>>(decoderCount);
+		for (int i=0;i<decoderCount;i++) {
+			decoderInputs.add(new SpscRingBuffer<Chunk<T>>(chunksPerDecoder));
+			replayInputs.add(new SpscRingBuffer<Chunk<T>>(chunksPerDecoder));
+			SpscRingBuffer<Chunk<T>> free = new SpscRingBuffer<Chunk<T>>(chunksPerDecoder);
+			for (int j=0;j<chunksPerDecoder;j++) {
+				free.offer(new Chunk<T>(i));
+			}
+			freeChunks.add(free);
+		}
+
+		reader = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				read();
+			}
+		}, "trace-reader");
+		reader.setDaemon(true);
+		decoders = new Thread[decoderCount];
+		for (int i=0;i<decoderCount;i++) {
+			final int index = i;
+			decoders[i] = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					decode(index);
+				}
+			}, "trace-decoder-"+i);
+			decoders[i].setDaemon(true);
+		}
+		reader.start();
+		for (Thread thread : decoders) {
+			thread.start();
+		}
+	}
+
+	/**
+	 * Returns the next entry of the trace
+	 * @return the entry, null at the end of the trace
+	 * @throws IOException if the trace cannot be read or the entry cannot be decoded
+	 */
+	public T next() throws IOException {
+		while (true) {
+			if (current != null) {
+				if (position < current.entries.size()) {
+					return current.entries.get(position++);
+				}
+				Chunk<T> chunk = current;
+				current = null;
+				if (chunk.failure != null) {
+					//after the entries decoded before the failure
+					finished = true;
+					if (chunk.failure instanceof IOException) {
+						throw (IOException)chunk.failure;
+					} else if (chunk.failure instanceof RuntimeException) {
+						throw (RuntimeException)chunk.failure;
+					}
+					throw new IOException("cannot read the trace:"+chunk.failure, chunk.failure);
+				} else if (chunk.last) {
+					finished = true;
+				} else {
+					recycle(chunk);
+				}
+			}
+			if (finished) {
+				return null;
+			}
+			try {
+				current = replayInputs.get(nextDecoder).take();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IOException("interrupted while reading the trace");
+			}
+			nextDecoder = (nextDecoder + 1) % decoders.length;
+			position = 0;
+			//the first full stack in the trace order is the exemplar
+			for (Map.Entry<String, String> exemplar : current.exemplars.entrySet()) {
+				StackKeyer.getInstance().putExemplar(exemplar.getKey(), exemplar.getValue());
+			}
+		}
+	}
+
+	/**
+	 * Stops the reader and the decoders, and closes the trace
+	 */
+	@Override
+	public void close() throws IOException {
+		reader.interrupt();
+		for (Thread thread : decoders) {
+			thread.interrupt();
+		}
+		try {
+			reader.join();
+			for (Thread thread : decoders) {
+				thread.join();
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * Returns a consumed chunk to the reader
+	 */
+	private void recycle(Chunk<T> chunk) throws IOException {
+		chunk.entries.clear();
+		chunk.exemplars.clear();
+		if (chunk.bytes.length > chunkSize) {
+			//a chunk that grew for a large entry
+			chunk.bytes = new byte[chunkSize];
+		}
+		try {
+			freeChunks.get(chunk.decoder).put(chunk);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("interrupted while reading the trace");
+		}
+	}
+
+	/**
+	 * Fills the chunks with the complete entries of the trace, then sends an end chunk to each decoder
+	 */
+	private void read() {
+		byte[] carry = new byte[chunkSize];
+		int carryLength = 0;
+		int next = 0;
+		try {
+			boolean end = false;
+			while (!end) {
+				Chunk<T> chunk = freeChunks.get(next).take();
+				//the bytes after the last complete entry of the previous chunk come first
+				if (chunk.bytes.length <= carryLength) {
+					chunk.bytes = new byte[Math.max(chunkSize, carryLength * 2)];
+				}
+				System.arraycopy(carry, 0, chunk.bytes, 0, carryLength);
+				chunk.length = carryLength;
+				int cut = -1;
+				while (cut < 0) {
+					if (chunk.length == chunk.bytes.length) {
+						//no complete entry in the chunk
+						chunk.bytes = Arrays.copyOf(chunk.bytes, chunk.bytes.length * 2);
+					}
+					int read = in.read(chunk.bytes, chunk.length, chunk.bytes.length - chunk.length);
+					if (read < 0) {
+						end = true;
+						cut = chunk.length;
+					} else {
+						chunk.length += read;
+						if (chunk.length == chunk.bytes.length) {
+							cut = findCut(chunk.bytes, chunk.length);
+						}
+					}
+				}
+				carryLength = chunk.length - cut;
+				if (carry.length < carryLength) {
+					carry = new byte[carryLength * 2];
+				}
+				System.arraycopy(chunk.bytes, cut, carry, 0, carryLength);
+				chunk.length = cut;
+				decoderInputs.get(next).put(chunk);
+				next = (next + 1) % decoders.length;
+			}
+			for (int i=0;i<decoders.length;i++) {
+				Chunk<T> chunk = freeChunks.get(next).take();
+				chunk.length = 0;
+				chunk.last = true;
+				decoderInputs.get(next).put(chunk);
+				next = (next + 1) % decoders.length;
+			}
+		} catch (InterruptedException e) {
+			//closed
+		} catch (Throwable t) {
+			//thrown by the replay after the entries read before it
+			try {
+				Chunk<T> chunk = freeChunks.get(next).take();
+				chunk.length = 0;
+				chunk.failure = t;
+				decoderInputs.get(next).put(chunk);
+			} catch (InterruptedException e) {
+				//closed
+			}
+		}
+	}
+
+	/**
+	 * @return the position after the last line of the bytes that ends an entry, -1 if there is none
+	 */
+	private int findCut(byte[] bytes, int length) {
+		int lineEnd = -1;
+		for (int i=length - 1;i>=0;i--) {
+			if (bytes[i] == '\n') {
+				lineEnd = i;
+			} else if (lineEnd >= 0 && i + entryEnd.length <= lineEnd && matchesEntryEnd(bytes, i)) {
+				return lineEnd + 1;
+			}
+		}
+		return -1;
+	}
+
+	private boolean matchesEntryEnd(byte[] bytes, int offset) {
+		for (int i=0;i<entryEnd.length;i++) {
+			if (bytes[offset + i] != entryEnd[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Decodes the chunks of a decoder until its end chunk
+	 */
+	private void decode(int index) {
+		SpscRingBuffer<Chunk<T>> input = decoderInputs.get(index);
+		SpscRingBuffer<Chunk<T>> output = replayInputs.get(index);
+		try {
+			while (true) {
+				Chunk<T> chunk = input.take();
+				if (!chunk.last && chunk.failure == null) {
+					try {
+						BufferedReader br = new BufferedReader(new InputStreamReader(new ByteArrayInputStream(chunk.bytes, 0, chunk.length)));
+						T entry;
+						while ((entry = decoder.read(br, chunk.exemplars)) != null) {
+							chunk.entries.add(entry);
+						}
+					} catch (Throwable t) {
+						//thrown by the replay after the entries decoded before it
+						chunk.failure = t;
+					}
+				}
+				output.put(chunk);
+				if (chunk.last || chunk.failure != null) {
+					return;
+				}
+			}
+		} catch (InterruptedException e) {
+			//closed
+		}
+	}
+
+	/**
+	 * The bytes of a part of the trace and its decoded entries
+	 */
+	private static class Chunk<T> {
+		//the decoder of the chunk, it returns to its free chunks
+		private final int decoder;
+		private byte[] bytes;
+		private int length;
+		private final List<T> entries;
+		private final Map<String, String> exemplars;
+		private Throwable failure;
+		private boolean last;
+
+		private Chunk(int decoder) {
+			this.decoder = decoder;
+			this.bytes = new byte[chunkSize];
+			this.entries = new ArrayList<T>();
+			this.exemplars = new HashMap<String, String>();
+		}
+	}
+}
@@ -0,0 +1,327 @@
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Time-windowed growth analysis of the memory allocator traces.
+ *
+ * The trace time line (walltimestamp of each entry) is split in windows of a fixed length.
+ * For each allocation stack we keep the allocations and frees of the current window and the
+ * outstanding (allocated and not freed) count and bytes. When a window closes, the outstanding
+ * values are fed into running least squares sums, so that the growth slope of each stack is
+ * available at the end of the trace without storing any trace entry.
+ *
+ * A stack whose outstanding count grows linearly (high slope, good fit) is a steady leak,
+ * while a stack with a high allocation peak in a few windows and a bad fit is a burst.
+ *
+ */
+public class WindowedGrowthAnalysis {
+	//minimum fit (coefficient of determination) for a growth to be considered steady
+	private static final double steadyGrowthMinFit = 0.75;
+
+	//a window with this many times the mean window allocations is considered a burst
+	private static final double burstPeakFactor = 4.0;
+
+	//window length
+	private final long windowSeconds;
+
+	//per stack accumulators
+	private final Map<String, StackGrowth> stackGrowths;
+
+	//timestamp of the first entry
+	private long firstTimestamp = -1;
+
+	//index of the window that is currently open
+	private long currentWindow = 0;
+
+	//walltimestamp decoding
+	private final TimestampDecoder timestampDecoder;
+
+	/**
+	 * new windowed growth analysis
+	 * @param windowSeconds the window length in seconds
+	 */
+	public WindowedGrowthAnalysis(long windowSeconds) {
+		if (windowSeconds <= 0) {
+			throw new IllegalArgumentException("window length must be positive:"+windowSeconds);
+		}
+		this.windowSeconds = windowSeconds;
+		this.stackGrowths = new HashMap<String, StackGrowth>();
+		this.timestampDecoder = new TimestampDecoder();
+	}
+
+	/**
+	 * Records a memory allocation
+	 * @param stack the allocation stack
+	 * @param size the allocated bytes
+	 * @param timestamp the walltimestamp of the trace entry
+	 * @throws IOException if the timestamp cannot be decoded
+	 */
+	public void recordAllocation(String stack, long size, String timestamp) throws IOException {
+		advance(timestamp);
+		StackGrowth growth = stackGrowths.get(stack);
+		if (growth == null) {
+			growth = new StackGrowth(stack);
+			//the stack had nothing outstanding on the previous windows
+			growth.addSamples(0, currentWindow-1, 0, 0);
+			stackGrowths.put(stack, growth);
+		}
+		growth.windowAllocations++;
+		growth.outstandingCount++;
+		growth.outstandingBytes += size;
+	}
+
+	/**
+	 * Records a memory de-allocation of memory that was allocated during the trace
+	 * @param allocationStack the stack that allocated the memory
+	 * @param size the bytes of the allocation
+	 * @param timestamp the walltimestamp of the free trace entry
+	 * @throws IOException if the timestamp cannot be decoded
+	 */
+	public void recordFree(String allocationStack, long size, String timestamp) throws IOException {
+		advance(timestamp);
+		StackGrowth growth = stackGrowths.get(allocationStack);
+		if (growth == null) {
+			//allocation was not recorded, nothing to account
+			return;
+		}
+		growth.windowFrees++;
+		growth.outstandingCount--;
+		growth.outstandingBytes -= size;
+	}
+
+	/**
+	 * Closes the last window. Must be called after the last trace entry.
+	 */
+	public void finish() {
+		if (firstTimestamp != -1) {
+			closeWindow();
+		}
+	}
+
+	/**
+	 * Moves the current window up to the window of the passed timestamp
+	 * @param timestampText the walltimestamp
+	 * @throws IOException if the timestamp cannot be decoded
+	 */
+	private void advance(String timestampText) throws IOException {
+		long timestamp = timestampDecoder.decode(timestampText);
+		if (firstTimestamp == -1) {
+			firstTimestamp = timestamp;
+		}
+		long window = (timestamp - firstTimestamp) / windowSeconds;
+		if (window > currentWindow) {
+			//close the current window, then skip the empty ones in a single step
+			closeWindow();
+			for (StackGrowth growth : stackGrowths.values()) {
+				growth.addSamples(currentWindow+1, window-1, growth.outstandingCount, growth.outstandingBytes);
+			}
+			currentWindow = window;
+		}
+	}
+
+	/**
+	 * Samples the outstanding values of all stacks on the current window
+	 */
+	private void closeWindow() {
+		for (StackGrowth growth : stackGrowths.values()) {
+			growth.closeWindow(currentWindow);
+		}
+	}
+
+	/**
+	 * Returns the number of (closed) windows of the trace
+	 * @return the number of windows
+	 */
+	public long getWindows() {
+		return currentWindow+1;
+	}
+
+	public long getWindowSeconds() {
+		return windowSeconds;
+	}
+
+	/**
+	 * Returns the stacks that have outstanding memory at the end of the trace,
+	 * sorted by their outstanding growth slope
+	 * @return the stacks
+	 */
+	public List<StackGrowth> getGrowingStacks() {
+		List<StackGrowth> ret = new ArrayList<StackGrowth>();
+		for (StackGrowth growth : stackGrowths.values()) {
+			if (growth.outstandingCount > 0) {
+				ret.add(growth);
+			}
+		}
+		Collections.sort(ret, new Comparator<StackGrowth>() {
+			@Override
+			public int compare(StackGrowth o1, StackGrowth o2) {
+				return Double.compare(o2.getCountSlope(), o1.getCountSlope());
+			}
+		});
+		return ret;
+	}
+
+	/**
+	 * Growth classification of a stack
+	 */
+	public static enum GrowthType {
+		STEADY,
+		BURST,
+		STABLE
+	}
+
+	/**
+	 * Rolling accumulators of a single allocation stack
+	 */
+	public static class StackGrowth {
+		private final String stack;
+
+		//values of the current window
+		private long windowAllocations;
+		private long windowFrees;
+
+		//outstanding memory
+		private long outstandingCount;
+		private long outstandingBytes;
+
+		//allocation peak and totals over all windows
+		private long peakWindowAllocations;
+		private long totalAllocations;
+		private long totalFrees;
+
+		//least squares sums, x is the window index and y the outstanding count / bytes
+		private double samples;
+		private double sumX;
+		private double sumXX;
+		private double sumCount;
+		private double sumCountCount;
+		private double sumXCount;
+		private double sumBytes;
+		private double sumXBytes;
+
+		private StackGrowth(String stack) {
+			this.stack = stack;
+		}
+
+		private void closeWindow(long window) {
+			addSamples(window, window, outstandingCount, outstandingBytes);
+			if (windowAllocations > peakWindowAllocations) {
+				peakWindowAllocations = windowAllocations;
+			}
+			totalAllocations += windowAllocations;
+			totalFrees += windowFrees;
+			windowAllocations = 0;
+			windowFrees = 0;
+		}
+
+		/**
+		 * Adds the same outstanding values for the windows from - to (inclusive)
+		 */
+		private void addSamples(long from, long to, long count, long bytes) {
+			if (to < from) {
+				return;
+			}
+			double n = to - from + 1;
+			//sum of x and x^2 over [from, to]
+			double sx = sumOfRange(to) - sumOfRange(from-1);
+			double sxx = sumOfSquares(to) - sumOfSquares(from-1);
+			samples += n;
+			sumX += sx;
+			sumXX += sxx;
+			sumCount += n * count;
+			sumCountCount += n * (double)count * count;
+			sumXCount += sx * count;
+			sumBytes += n * bytes;
+			sumXBytes += sx * bytes;
+		}
+
+		private static double sumOfRange(long k) {
+			return k < 0 ? 0 : k * (k+1.0) / 2.0;
+		}
+
+		private static double sumOfSquares(long k) {
+			return k < 0 ? 0 : k * (k+1.0) * (2.0*k+1.0) / 6.0;
+		}
+
+		private double getSlope(double sumY, double sumXY) {
+			double denominator = samples * sumXX - sumX * sumX;
+			if (samples < 2 || denominator == 0) {
+				return 0;
+			}
+			return (samples * sumXY - sumX * sumY) / denominator;
+		}
+
+		/**
+		 * @return outstanding allocations growth per window
+		 */
+		public double getCountSlope() {
+			return getSlope(sumCount, sumXCount);
+		}
+
+		/**
+		 * @return outstanding bytes growth per window
+		 */
+		public double getBytesSlope() {
+			return getSlope(sumBytes, sumXBytes);
+		}
+
+		/**
+		 * @return the coefficient of determination of the outstanding count fit
+		 */
+		public double getFit() {
+			double sxx = samples * sumXX - sumX * sumX;
+			double syy = samples * sumCountCount - sumCount * sumCount;
+			if (samples < 2 || sxx <= 0 || syy <= 0) {
+				return 0;
+			}
+			double sxy = samples * sumXCount - sumX * sumCount;
+			return (sxy * sxy) / (sxx * syy);
+		}
+
+		public GrowthType getGrowthType() {
+			double meanWindowAllocations = samples == 0 ? 0 : totalAllocations / samples;
+			if (getCountSlope() > 0 && getFit() >= steadyGrowthMinFit) {
+				return GrowthType.STEADY;
+			} else if (peakWindowAllocations > 0 && peakWindowAllocations >= burstPeakFactor * meanWindowAllocations) {
+				return GrowthType.BURST;
+			} else {
+				return GrowthType.STABLE;
+			}
+		}
+
+		public String getStack() {
+			return stack;
+		}
+
+		public long getOutstandingCount() {
+			return outstandingCount;
+		}
+
+		public long getOutstandingBytes() {
+			return outstandingBytes;
+		}
+
+		public long getPeakWindowAllocations() {
+			return peakWindowAllocations;
+		}
+
+		public long getTotalAllocations() {
+			return totalAllocations;
+		}
+
+		public long getTotalFrees() {
+			return totalFrees;
+		}
+
+		public String getInformation() {
+			return String.format(Locale.US, "%s growth, outstanding %d allocations / %d bytes, slope %.2f allocations / %.1f bytes per window (fit %.2f), %d allocations, %d frees, peak %d allocations per window",
+					getGrowthType().name().toLowerCase(), outstandingCount, outstandingBytes, getCountSlope(), getBytesSlope(), getFit(), totalAllocations, totalFrees, peakWindowAllocations);
+		}
+	}
+}